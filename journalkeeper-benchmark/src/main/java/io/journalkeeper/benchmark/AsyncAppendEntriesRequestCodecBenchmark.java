@@ -0,0 +1,97 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.benchmark;
+
+import io.journalkeeper.rpc.codec.AsyncAppendEntriesRequestCodec;
+import io.journalkeeper.rpc.codec.RpcTypes;
+import io.journalkeeper.rpc.header.JournalKeeperHeader;
+import io.journalkeeper.rpc.payload.GenericPayload;
+import io.journalkeeper.rpc.remoting.transport.command.Direction;
+import io.journalkeeper.rpc.server.AsyncAppendEntriesRequest;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AsyncAppendEntriesRequest编解码的性能测试。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AsyncAppendEntriesRequestCodecBenchmark {
+    @Param({"128", "1024"})
+    public int entrySize;
+    @Param({"1", "64"})
+    public int batchSize;
+    private final AsyncAppendEntriesRequestCodec codec = new AsyncAppendEntriesRequestCodec();
+    private JournalKeeperHeader header;
+    private GenericPayload<AsyncAppendEntriesRequest> payload;
+    private ByteBuf encodeBuffer;
+    private ByteBuf decodeBuffer;
+
+    @Setup
+    public void setup() throws Exception {
+        URI leader = URI.create("jk://192.168.1.1:9999");
+        header = new JournalKeeperHeader(JournalKeeperHeader.DEFAULT_VERSION, Direction.REQUEST,
+                RpcTypes.ASYNC_APPEND_ENTRIES_REQUEST, URI.create("jk://192.168.1.2:9999"));
+        List<byte[]> entries = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            entries.add(BenchmarkSupport.createPayload(entrySize));
+        }
+        payload = new GenericPayload<>(new AsyncAppendEntriesRequest(
+                8, leader, 1000L, 8, entries, 999L, 1000L + batchSize));
+
+        encodeBuffer = PooledByteBufAllocator.DEFAULT.directBuffer();
+        decodeBuffer = PooledByteBufAllocator.DEFAULT.directBuffer();
+        codec.encode(payload, decodeBuffer, header);
+    }
+
+    @TearDown
+    public void tearDown() {
+        encodeBuffer.release();
+        decodeBuffer.release();
+    }
+
+    @Benchmark
+    public ByteBuf encode() throws Exception {
+        encodeBuffer.clear();
+        codec.encode(payload, encodeBuffer, header);
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        decodeBuffer.readerIndex(0);
+        return codec.decode(header, decodeBuffer);
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.benchmark;
+
+import io.journalkeeper.core.api.JournalEntry;
+import io.journalkeeper.core.api.JournalEntryParser;
+import io.journalkeeper.core.api.RaftJournal;
+import io.journalkeeper.core.api.State;
+import io.journalkeeper.core.api.StateResult;
+import io.journalkeeper.core.journal.Journal;
+import io.journalkeeper.core.state.ConfigState;
+import io.journalkeeper.core.state.InternalState;
+import io.journalkeeper.persistence.BufferPool;
+import io.journalkeeper.persistence.PersistenceFactory;
+import io.journalkeeper.utils.files.FileUtils;
+import io.journalkeeper.utils.spi.ServiceSupport;
+import io.journalkeeper.utils.threads.AsyncLoopThread;
+import io.journalkeeper.utils.threads.ThreadBuilder;
+import io.journalkeeper.utils.threads.Worker;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Benchmark公用的工具方法。
+ * 测试数据默认写在系统临时目录下，可以通过系统属性journalkeeper.benchmark.dir指定。
+ */
+public class BenchmarkSupport {
+    private static final String BENCHMARK_DIR_KEY = "journalkeeper.benchmark.dir";
+    static final Set<Integer> PARTITIONS = Collections.singleton(0);
+    static final URI LOCAL_URI = URI.create("local://benchmark");
+
+    static Path createBaseDir(String name) throws IOException {
+        String dir = System.getProperty(BENCHMARK_DIR_KEY, System.getProperty("java.io.tmpdir"));
+        Path parent = Paths.get(dir);
+        Files.createDirectories(parent);
+        return Files.createTempDirectory(parent, name);
+    }
+
+    static void destroyBaseDir(Path base) throws IOException {
+        if (null != base) {
+            FileUtils.deleteFolder(base);
+        }
+    }
+
+    static Journal createJournal(Path path, JournalEntryParser journalEntryParser) throws IOException {
+        PersistenceFactory persistenceFactory = ServiceSupport.load(PersistenceFactory.class);
+        BufferPool bufferPool = ServiceSupport.load(BufferPool.class);
+        Journal journal = new Journal(persistenceFactory, bufferPool, journalEntryParser);
+        journal.recover(path, 0L, new InternalState(new ConfigState(Collections.singletonList(LOCAL_URI)), PARTITIONS, LOCAL_URI), new Properties());
+        return journal;
+    }
+
+    static byte[] createPayload(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    static List<JournalEntry> createEntries(JournalEntryParser journalEntryParser, int entrySize, int count) {
+        List<JournalEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            JournalEntry entry = journalEntryParser.createJournalEntry(createPayload(entrySize));
+            entry.setTerm(1);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * 模拟Server的刷盘线程，避免脏数据无限增长。
+     */
+    static AsyncLoopThread startFlushThread(String name, Worker flush) {
+        AsyncLoopThread thread = ThreadBuilder.builder()
+                .name(name)
+                .doWork(flush)
+                .sleepTime(10L, 10L)
+                .daemon(true)
+                .build();
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * 什么也不做的状态机，用于测量JournalKeeper自身的开销。
+     */
+    public static class NoopState implements State {
+        private static final byte[] EMPTY = new byte[0];
+
+        @Override
+        public StateResult execute(byte[] entry, int partition, long index, int batchSize, RaftJournal journal) {
+            return new StateResult(EMPTY);
+        }
+
+        @Override
+        public byte[] query(byte[] query, RaftJournal journal) {
+            return EMPTY;
+        }
+
+        @Override
+        public void recover(Path path, Properties properties) {
+        }
+    }
+}
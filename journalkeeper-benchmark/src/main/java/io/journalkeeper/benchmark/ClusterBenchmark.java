@@ -0,0 +1,124 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.benchmark;
+
+import io.journalkeeper.core.BootStrap;
+import io.journalkeeper.core.api.RaftClient;
+import io.journalkeeper.core.api.RaftServer;
+import io.journalkeeper.utils.net.NetworkingUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 端到端的性能测试：在同一个进程中启动3个节点的集群，节点之间通过网络复制，
+ * 客户端使用Leader节点的本地客户端（LocalClientRpc）写入，
+ * 分别测量单个请求的延迟和有多个并发请求时的吞吐量。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ClusterBenchmark {
+    private static final int NODES = 3;
+    private static final int INFLIGHT = 256;
+    private static final long CLUSTER_READY_TIMEOUT_MS = 60000L;
+    @Param({"128", "1024"})
+    public int entrySize;
+    private Path base;
+    private final List<BootStrap> bootStraps = new ArrayList<>(NODES);
+    private RaftClient client;
+    private byte[] entry;
+
+    @Setup
+    public void setup() throws Exception {
+        base = BenchmarkSupport.createBaseDir("ClusterBenchmark");
+        List<URI> voters = new ArrayList<>(NODES);
+        for (int i = 0; i < NODES; i++) {
+            voters.add(URI.create("jk://localhost:" + NetworkingUtils.findRandomOpenPortOnAllLocalInterfaces()));
+        }
+        URI preferredLeader = voters.get(0);
+        for (int i = 0; i < NODES; i++) {
+            Properties properties = new Properties();
+            properties.setProperty("working_dir", base.resolve("server" + i).toString());
+            properties.setProperty("disable_logo", "true");
+            BootStrap bootStrap = new BootStrap(RaftServer.Roll.VOTER, BenchmarkSupport.NoopState::new, properties);
+            bootStrap.getServer().init(voters.get(i), voters, BenchmarkSupport.PARTITIONS, preferredLeader);
+            bootStrap.getServer().recover();
+            bootStrap.getServer().start();
+            bootStraps.add(bootStrap);
+        }
+
+        BootStrap leader = bootStraps.get(0);
+        leader.getAdminClient().waitForClusterReady(CLUSTER_READY_TIMEOUT_MS);
+        // 等待首选Leader当选，保证客户端请求的是本地的Leader
+        long deadline = System.currentTimeMillis() + CLUSTER_READY_TIMEOUT_MS;
+        while (!preferredLeader.equals(leader.getAdminClient().getClusterConfiguration().get().getLeader())) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new TimeoutException("Wait for the preferred leader timeout!");
+            }
+            Thread.sleep(100L);
+        }
+        client = leader.getLocalClient();
+        entry = BenchmarkSupport.createPayload(entrySize);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (BootStrap bootStrap : bootStraps) {
+            bootStrap.shutdown();
+        }
+        bootStraps.clear();
+        BenchmarkSupport.destroyBaseDir(base);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public byte[] updateLatency() throws Exception {
+        return client.update(entry).get();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INFLIGHT)
+    public void updateThroughput() throws Exception {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[INFLIGHT];
+        for (int i = 0; i < INFLIGHT; i++) {
+            futures[i] = client.update(entry);
+        }
+        CompletableFuture.allOf(futures).get();
+    }
+}
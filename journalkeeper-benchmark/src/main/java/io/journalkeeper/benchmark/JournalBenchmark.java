@@ -0,0 +1,107 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.benchmark;
+
+import io.journalkeeper.core.api.JournalEntry;
+import io.journalkeeper.core.api.JournalEntryParser;
+import io.journalkeeper.core.entry.DefaultJournalEntryParser;
+import io.journalkeeper.core.journal.Journal;
+import io.journalkeeper.utils.threads.AsyncLoopThread;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journal写入、提交和读取的性能测试。
+ * 每轮迭代使用一个新的Journal，后台线程模拟Server的刷盘线程。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JournalBenchmark {
+    /**
+     * 预先写入的entry数量，用于读测试
+     */
+    private static final int PRELOAD_ENTRIES = 64 * 1024;
+    private final JournalEntryParser journalEntryParser = new DefaultJournalEntryParser();
+    @Param({"128", "1024"})
+    public int entrySize;
+    @Param({"1", "64"})
+    public int batchSize;
+    private Path base;
+    private Journal journal;
+    private AsyncLoopThread flushThread;
+    private List<JournalEntry> entries;
+    private long readIndex = 0L;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        base = BenchmarkSupport.createBaseDir("JournalBenchmark");
+        journal = BenchmarkSupport.createJournal(base, journalEntryParser);
+        entries = BenchmarkSupport.createEntries(journalEntryParser, entrySize, batchSize);
+        while (journal.maxIndex() < PRELOAD_ENTRIES) {
+            journal.append(entries);
+        }
+        journal.commit(journal.maxIndex());
+        journal.flush();
+        flushThread = BenchmarkSupport.startFlushThread("JournalBenchmarkFlushThread", journal::flush);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        flushThread.stop();
+        journal.close();
+        BenchmarkSupport.destroyBaseDir(base);
+    }
+
+    @Benchmark
+    public List<Long> append() {
+        return journal.append(entries);
+    }
+
+    @Benchmark
+    public long appendAndCommit() throws IOException {
+        journal.append(entries);
+        journal.commit(journal.maxIndex());
+        return journal.commitIndex();
+    }
+
+    @Benchmark
+    public List<byte[]> readRaw() {
+        if (readIndex + batchSize > PRELOAD_ENTRIES) {
+            readIndex = 0L;
+        }
+        List<byte[]> rawEntries = journal.readRaw(readIndex, batchSize);
+        readIndex += batchSize;
+        return rawEntries;
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.benchmark;
+
+import io.journalkeeper.core.api.EntryFuture;
+import io.journalkeeper.core.api.JournalEntry;
+import io.journalkeeper.core.api.JournalEntryParser;
+import io.journalkeeper.core.api.StateResult;
+import io.journalkeeper.core.entry.DefaultJournalEntryParser;
+import io.journalkeeper.core.journal.Journal;
+import io.journalkeeper.core.state.EntryFutureImpl;
+import io.journalkeeper.core.state.JournalKeeperState;
+import io.journalkeeper.persistence.PersistenceFactory;
+import io.journalkeeper.utils.spi.ServiceSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JournalKeeperState.applyEntry的性能测试。
+ * 使用不做任何事情的用户状态机，测量的是JournalKeeper执行entry本身的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JournalKeeperStateBenchmark {
+    private static final int ENTRIES = 4096;
+    private final JournalEntryParser journalEntryParser = new DefaultJournalEntryParser();
+    @Param({"128", "1024"})
+    public int entrySize;
+    private Path base;
+    private Journal journal;
+    private JournalKeeperState state;
+    private JournalEntry[] headers;
+    private EntryFuture[] entryFutures;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        base = BenchmarkSupport.createBaseDir("JournalKeeperStateBenchmark");
+        journal = BenchmarkSupport.createJournal(base.resolve("journal"), journalEntryParser);
+        journal.append(BenchmarkSupport.createEntries(journalEntryParser, entrySize, ENTRIES));
+        journal.commit(journal.maxIndex());
+        journal.flush();
+
+        headers = new JournalEntry[ENTRIES];
+        entryFutures = new EntryFuture[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            long offset = journal.readOffset(i);
+            headers[i] = journal.readEntryHeaderByOffset(offset);
+            entryFutures[i] = new EntryFutureImpl(journal, offset);
+        }
+
+        PersistenceFactory persistenceFactory = ServiceSupport.load(PersistenceFactory.class);
+        Path statePath = base.resolve("state");
+        state = new JournalKeeperState(BenchmarkSupport.NoopState::new, persistenceFactory.createMetadataPersistenceInstance());
+        state.init(statePath, Collections.singletonList(BenchmarkSupport.LOCAL_URI), BenchmarkSupport.PARTITIONS, BenchmarkSupport.LOCAL_URI);
+        state.recover(statePath, new Properties());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        state.close();
+        journal.close();
+        BenchmarkSupport.destroyBaseDir(base);
+    }
+
+    @Benchmark
+    public StateResult applyEntry() {
+        int i = next;
+        next = (i + 1) % ENTRIES;
+        return state.applyEntry(headers[i], entryFutures[i], journal);
+    }
+}
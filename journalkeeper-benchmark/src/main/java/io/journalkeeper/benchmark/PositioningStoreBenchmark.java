@@ -0,0 +1,94 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.benchmark;
+
+import io.journalkeeper.persistence.local.journal.PositioningStore;
+import io.journalkeeper.utils.threads.AsyncLoopThread;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PositioningStore追加写入和随机读取的性能测试。
+ * 每轮迭代使用一个新的Store，后台线程模拟Server的刷盘线程。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PositioningStoreBenchmark {
+    /**
+     * 预先写入的数据大小，用于读测试
+     */
+    private static final long PRELOAD_SIZE = 64L * 1024 * 1024;
+    @Param({"128", "1024", "65536"})
+    public int recordSize;
+    private Path base;
+    private PositioningStore store;
+    private AsyncLoopThread flushThread;
+    private byte[] record;
+    private long readPosition = 0L;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        base = BenchmarkSupport.createBaseDir("PositioningStoreBenchmark");
+        store = new PositioningStore();
+        store.recover(base, 0L, new Properties());
+        record = BenchmarkSupport.createPayload(recordSize);
+        while (store.max() < PRELOAD_SIZE) {
+            store.append(record);
+        }
+        store.flush();
+        flushThread = BenchmarkSupport.startFlushThread("PositioningStoreBenchmarkFlushThread", store::flush);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        flushThread.stop();
+        store.close();
+        BenchmarkSupport.destroyBaseDir(base);
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        return store.append(record);
+    }
+
+    @Benchmark
+    public byte[] read() throws IOException {
+        if (readPosition + recordSize > PRELOAD_SIZE) {
+            readPosition = 0L;
+        }
+        byte[] bytes = store.read(readPosition, recordSize);
+        readPosition += recordSize;
+        return bytes;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.benchmark;
+
+import io.journalkeeper.persistence.local.cache.BufferHolder;
+import io.journalkeeper.persistence.local.cache.PreloadBufferPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PreloadBufferPool申请和释放缓存页的性能测试，包括单线程和多线程竞争两种场景。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PreloadBufferPoolBenchmark {
+    @Param({"4096", "1048576"})
+    public int bufferSize;
+    private PreloadBufferPool bufferPool;
+
+    @Setup
+    public void setup() {
+        bufferPool = new PreloadBufferPool();
+        bufferPool.addPreLoad(bufferSize, 16, 64);
+    }
+
+    @TearDown
+    public void tearDown() {
+        bufferPool.removePreLoad(bufferSize);
+        bufferPool.close();
+    }
+
+    @Benchmark
+    public ByteBuffer allocateAndRelease(Holder holder) {
+        return allocateAndRelease(holder, bufferSize);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ByteBuffer allocateAndReleaseContended(Holder holder) {
+        return allocateAndRelease(holder, bufferSize);
+    }
+
+    private ByteBuffer allocateAndRelease(Holder holder, int size) {
+        ByteBuffer buffer = bufferPool.allocateDirect(size, holder);
+        buffer.put(0, (byte) 1);
+        bufferPool.releaseDirect(buffer, holder);
+        return buffer;
+    }
+
+    /**
+     * 每个线程一个BufferHolder，模拟每个线程操作不同的缓存页。
+     */
+    @State(Scope.Thread)
+    public static class Holder implements BufferHolder {
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public boolean isFree() {
+            return false;
+        }
+
+        @Override
+        public boolean evict() {
+            return false;
+        }
+
+        @Override
+        public long lastAccessTime() {
+            return System.currentTimeMillis();
+        }
+    }
+}
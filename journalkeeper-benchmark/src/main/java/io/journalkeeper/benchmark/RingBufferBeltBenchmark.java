@@ -0,0 +1,82 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.benchmark;
+
+import io.journalkeeper.core.server.RingBufferBeltAccessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RingBufferBelt放入回调和按位置执行回调的性能测试。
+ * RingBufferBelt是包内可见的，通过core的test-jar中的{@link RingBufferBeltAccessor}访问。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RingBufferBeltBenchmark {
+    private static final int BATCH_SIZE = 128;
+    private static final byte[] RESULT = new byte[0];
+    private RingBufferBeltAccessor replicationBelt;
+    private RingBufferBeltAccessor flushBelt;
+    private long position = 0L;
+
+    @Setup
+    public void setup() {
+        replicationBelt = new RingBufferBeltAccessor(60000L, 1024);
+        flushBelt = new RingBufferBeltAccessor(60000L, 1024);
+    }
+
+    /**
+     * 模拟Leader提交后逐条回调
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long putAndCallback() throws InterruptedException {
+        long start = position;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            replicationBelt.putReplicationCallback(position++);
+        }
+        for (long p = start; p < position; p++) {
+            replicationBelt.callback(p, RESULT);
+        }
+        return position;
+    }
+
+    /**
+     * 模拟刷盘后批量回调
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long putAndCallbackBefore() throws InterruptedException {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            flushBelt.putFlushCallback(position++);
+        }
+        flushBelt.callbackBefore(position - 1);
+        return position;
+    }
+}
@@ -53,5 +53,14 @@ public interface ReplicableIterator {
 
     byte[] nextTrunk() throws IOException;
 
+    /**
+     * 跳过下一个分片，用于断点续传。
+     * @return 跳过的分片长度
+     * @throws IOException 发生IO异常时抛出
+     */
+    default int skipTrunk() throws IOException {
+        return nextTrunk().length;
+    }
+
     boolean hasMoreTrunks();
 }
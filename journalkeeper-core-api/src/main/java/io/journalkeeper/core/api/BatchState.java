@@ -0,0 +1,40 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.core.api;
+
+import java.util.List;
+
+/**
+ * 支持批量执行命令的状态机接口。
+ *
+ * JournalKeeper在批量执行模式下（配置apply_batch_size大于1），
+ * 会把一段连续的、已提交的用户entries一次交给状态机执行，
+ * 状态机可以在一次提交（例如一个数据库事务）中执行完这批命令。
+ */
+public interface BatchState extends State {
+
+    /**
+     * 在状态state上按顺序执行一批命令，JournalKeeper保证执行操作命令的线性语义。要求：
+     * <ul>
+     *     <li>原子性：这批命令要么全部执行成功，要么全部不执行</li>
+     *     <li>幂等性</li>
+     * </ul>
+     * 成功返回执行结果，否则抛异常。
+     *
+     * @param entries 待执行的命令，按照索引序号连续且有序
+     * @param journal 当前的journal
+     * @return 执行结果，与entries一一对应。See {@link StateResult}
+     */
+    List<StateResult> executeBatch(List<StateEntry> entries, RaftJournal journal);
+}
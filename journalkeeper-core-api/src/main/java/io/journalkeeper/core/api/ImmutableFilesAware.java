@@ -0,0 +1,35 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.core.api;
+
+import java.nio.file.Path;
+
+/**
+ * 用户状态机可以实现这个接口，声明哪些状态文件是不可变的，用于增量快照。
+ *
+ * 不可变文件是指写入完成后内容不会再被修改，只会被整体删除的文件，
+ * 例如RocksDB的SST文件、已经写满的日志分段文件等。
+ * 创建快照时，JournalKeeper使用硬链接共享这些文件，只复制其它文件，
+ * 快照的耗时和占用的磁盘空间只与状态的变化量有关，与状态的总大小无关。
+ *
+ * 注意：被声明为不可变的文件一旦被原地修改，所有共享这个文件的快照都会被破坏。
+ */
+public interface ImmutableFilesAware {
+    /**
+     * 判断状态文件是否不可变
+     * @param file 状态文件相对于状态机目录（即{@link State#recover(Path, java.util.Properties)}的path参数）的相对路径
+     * @return 不可变返回true，否则返回false
+     */
+    boolean isImmutable(Path file);
+}
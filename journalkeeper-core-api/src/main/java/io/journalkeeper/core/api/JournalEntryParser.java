@@ -29,9 +29,24 @@ public interface JournalEntryParser {
     default JournalEntry createJournalEntry(byte[] payload) {
         int headerLength = headerLength();
         byte[] rawEntry = new byte[headerLength + payload.length];
-        for (int i = 0; i < payload.length; i++) {
-            rawEntry[headerLength + i] = payload[i];
-        }
+        System.arraycopy(payload, 0, rawEntry, headerLength, payload.length);
         return parse(rawEntry);
     }
+
+    /**
+     * 创建JournalEntry，同时写入分区、批量大小和任期。
+     * 实现类可以在一次分配中写完整个Header，避免创建后再逐个调用setter修改Header。
+     * @param payload 日志内容
+     * @param partition 分区
+     * @param batchSize 批量大小
+     * @param term 任期
+     * @return 创建的JournalEntry
+     */
+    default JournalEntry createJournalEntry(byte[] payload, int partition, int batchSize, int term) {
+        JournalEntry entry = createJournalEntry(payload);
+        entry.setPartition(partition);
+        entry.setBatchSize(batchSize);
+        entry.setTerm(term);
+        return entry;
+    }
 }
@@ -0,0 +1,63 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.core.api;
+
+/**
+ * 批量执行时，交给状态机的一条entry。
+ */
+public class StateEntry {
+    private final EntryFuture entryFuture;
+    private final int partition;
+    private final long index;
+    private final int batchSize;
+
+    public StateEntry(EntryFuture entryFuture, int partition, long index, int batchSize) {
+        this.entryFuture = entryFuture;
+        this.partition = partition;
+        this.index = index;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 待执行的命令
+     * @return 待执行的命令
+     */
+    public EntryFuture getEntryFuture() {
+        return entryFuture;
+    }
+
+    /**
+     * 分区
+     * @return 分区
+     */
+    public int getPartition() {
+        return partition;
+    }
+
+    /**
+     * entry在Journal中的索引序号
+     * @return entry在Journal中的索引序号
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    /**
+     * 如果当前entry是一个批量entry，batchSize为这批entry的数量，否则为1；
+     * @return 批量entry的数量
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+}
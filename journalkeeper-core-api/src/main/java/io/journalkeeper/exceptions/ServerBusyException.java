@@ -19,16 +19,33 @@ package io.journalkeeper.exceptions;
  * Date: 2019-03-25
  */
 public class ServerBusyException extends RuntimeException {
+    /**
+     * 建议客户端等待多长时间之后重试，单位毫秒，-1表示没有建议。
+     */
+    private final long retryAfterMs;
+
     public ServerBusyException() {
         super();
+        this.retryAfterMs = -1L;
     }
 
     public ServerBusyException(String msg) {
         super(msg);
+        this.retryAfterMs = -1L;
+    }
+
+    public ServerBusyException(String msg, long retryAfterMs) {
+        super(msg);
+        this.retryAfterMs = retryAfterMs;
     }
 
     public ServerBusyException(Throwable throwable) {
         super(throwable);
+        this.retryAfterMs = -1L;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
     }
 
 }
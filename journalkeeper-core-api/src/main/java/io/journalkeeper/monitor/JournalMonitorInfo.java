@@ -42,6 +42,10 @@ public class JournalMonitorInfo {
     private long indexMaxOffset = -1L;
     // 索引存储物理刷盘位置
     private long indexFlushOffset = -1L;
+    // 累计组提交刷盘次数
+    private long groupCommits = 0L;
+    // 累计组提交刷盘的日志条数，除以组提交次数即为平均每批的条数
+    private long groupCommitEntries = 0L;
     // 分区信息
     private Collection<JournalPartitionMonitorInfo> partitions = null;
 
@@ -141,6 +145,22 @@ public class JournalMonitorInfo {
         this.partitions = partitions;
     }
 
+    public long getGroupCommits() {
+        return groupCommits;
+    }
+
+    public void setGroupCommits(long groupCommits) {
+        this.groupCommits = groupCommits;
+    }
+
+    public long getGroupCommitEntries() {
+        return groupCommitEntries;
+    }
+
+    public void setGroupCommitEntries(long groupCommitEntries) {
+        this.groupCommitEntries = groupCommitEntries;
+    }
+
     public long getUsedSpace() {
         return maxOffset - minOffset +
                 indexMaxOffset - indexMinOffset +
@@ -162,6 +182,8 @@ public class JournalMonitorInfo {
                 ", indexMinOffset=" + indexMinOffset +
                 ", indexMaxOffset=" + indexMaxOffset +
                 ", indexFlushOffset=" + indexFlushOffset +
+                ", groupCommits=" + groupCommits +
+                ", groupCommitEntries=" + groupCommitEntries +
                 ", partitions=" + partitions +
                 ", usedSpace=" + getUsedSpace() +
                 '}';
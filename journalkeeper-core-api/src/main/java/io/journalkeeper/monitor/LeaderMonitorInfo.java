@@ -27,6 +27,8 @@ public class LeaderMonitorInfo {
     private StateServer.ServerState state = null;
     // 请求队列排队数	写入请求队列当前排队数量。所有写入请求先进入这个队列然后再异步串行处理，如何这个数量持续保持高位，说明写入积压。
     private int requestQueueSize = -1;
+    // 拒绝的请求数	请求队列已满被拒绝（返回SERVER_BUSY）的写入请求总数。如果这个数量持续增长，说明写入超过了处理能力。
+    private long rejectedRequests = -1L;
     // 是否可写	正常情况为true可写，管理员可以通过调用接口禁止写入。
     private boolean writeEnabled = false;
     // 从节点信息
@@ -48,6 +50,14 @@ public class LeaderMonitorInfo {
         this.requestQueueSize = requestQueueSize;
     }
 
+    public long getRejectedRequests() {
+        return rejectedRequests;
+    }
+
+    public void setRejectedRequests(long rejectedRequests) {
+        this.rejectedRequests = rejectedRequests;
+    }
+
     public boolean isWriteEnabled() {
         return writeEnabled;
     }
@@ -69,6 +79,7 @@ public class LeaderMonitorInfo {
         return "LeaderMonitorInfo{" +
                 "state=" + state +
                 ", requestQueueSize=" + requestQueueSize +
+                ", rejectedRequests=" + rejectedRequests +
                 ", writeEnabled=" + writeEnabled +
                 ", followers=" + followers +
                 '}';
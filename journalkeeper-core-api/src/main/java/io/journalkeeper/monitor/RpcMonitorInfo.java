@@ -0,0 +1,70 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.monitor;
+
+/**
+ * 节点发往其它节点的RPC请求统计
+ */
+public class RpcMonitorInfo {
+    // 已发送、还没有收到应答的请求数
+    private int inflightRequests = 0;
+    // 累计超时的请求数
+    private long timeoutRequests = 0L;
+    // 剩余的异步请求许可数，不限制时为-1
+    private int availableAsyncPermits = -1;
+    // 剩余的单向请求许可数，不限制时为-1
+    private int availableOnewayPermits = -1;
+
+    public int getInflightRequests() {
+        return inflightRequests;
+    }
+
+    public void setInflightRequests(int inflightRequests) {
+        this.inflightRequests = inflightRequests;
+    }
+
+    public long getTimeoutRequests() {
+        return timeoutRequests;
+    }
+
+    public void setTimeoutRequests(long timeoutRequests) {
+        this.timeoutRequests = timeoutRequests;
+    }
+
+    public int getAvailableAsyncPermits() {
+        return availableAsyncPermits;
+    }
+
+    public void setAvailableAsyncPermits(int availableAsyncPermits) {
+        this.availableAsyncPermits = availableAsyncPermits;
+    }
+
+    public int getAvailableOnewayPermits() {
+        return availableOnewayPermits;
+    }
+
+    public void setAvailableOnewayPermits(int availableOnewayPermits) {
+        this.availableOnewayPermits = availableOnewayPermits;
+    }
+
+    @Override
+    public String toString() {
+        return "RpcMonitorInfo{" +
+                "inflightRequests=" + inflightRequests +
+                ", timeoutRequests=" + timeoutRequests +
+                ", availableAsyncPermits=" + availableAsyncPermits +
+                ", availableOnewayPermits=" + availableOnewayPermits +
+                '}';
+    }
+}
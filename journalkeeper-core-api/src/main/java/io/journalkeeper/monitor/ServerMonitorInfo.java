@@ -43,6 +43,8 @@ public class ServerMonitorInfo {
     private VoterMonitorInfo voter = null;
     // 磁盘信息
     private DiskMonitorInfo disk = null;
+    // RPC信息
+    private RpcMonitorInfo rpc = null;
 
     public URI getUri() {
         return uri;
@@ -116,6 +118,14 @@ public class ServerMonitorInfo {
         this.disk = disk;
     }
 
+    public RpcMonitorInfo getRpc() {
+        return rpc;
+    }
+
+    public void setRpc(RpcMonitorInfo rpc) {
+        this.rpc = rpc;
+    }
+
     @Override
     public String toString() {
         return "ServerMonitorInfo{" +
@@ -128,6 +138,7 @@ public class ServerMonitorInfo {
                 ", journal=" + journal +
                 ", voter=" + voter +
                 ", disk=" + disk +
+                ", rpc=" + rpc +
                 '}';
     }
 }
@@ -47,6 +47,7 @@ import java.util.stream.Collectors;
  */
 public class DefaultRaftClient extends AbstractClient implements RaftClient {
     private static final Logger logger = LoggerFactory.getLogger(DefaultRaftClient.class);
+    // 客户端看到过的最大的lastApplied，SEQUENTIAL查询要求被查询的节点至少执行到这个位置
     private final AtomicLong lastApplied = new AtomicLong(-1L);
     public DefaultRaftClient(ClientRpc clientRpc,
                              Properties properties) {
@@ -40,19 +40,17 @@ public class DefaultJournalEntryParser implements JournalEntryParser {
 
     @Override
     public JournalEntry createJournalEntry(byte[] payload) {
+        return createJournalEntry(payload, 0, 0, 0);
+    }
+
+    @Override
+    public JournalEntry createJournalEntry(byte[] payload, int partition, int batchSize, int term) {
         int headerLength = headerLength();
 
         byte[] rawEntry = new byte[headerLength + payload.length];
-        ByteBuffer buffer = ByteBuffer.wrap(rawEntry);
-        JournalEntryParseSupport.setInt(buffer, JournalEntryParseSupport.LENGTH, rawEntry.length);
-        JournalEntryParseSupport.setShort(buffer, JournalEntryParseSupport.MAGIC, DefaultJournalEntry.MAGIC_CODE);
-        JournalEntryParseSupport.setLong(buffer, JournalEntryParseSupport.TIMESTAMP, System.currentTimeMillis());
-
-
-        for (int i = 0; i < payload.length; i++) {
-            rawEntry[headerLength + i] = payload[i];
-        }
+        JournalEntryParseSupport.writeHeader(ByteBuffer.wrap(rawEntry), rawEntry.length, partition, term,
+                DefaultJournalEntry.MAGIC_CODE, batchSize, System.currentTimeMillis());
+        System.arraycopy(payload, 0, rawEntry, headerLength, payload.length);
         return new DefaultJournalEntry(rawEntry, false, false);
-
     }
 }
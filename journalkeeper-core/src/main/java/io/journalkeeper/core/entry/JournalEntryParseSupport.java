@@ -16,6 +16,7 @@ package io.journalkeeper.core.entry;
 import io.journalkeeper.core.journal.ParseJournalException;
 import io.journalkeeper.utils.parser.EntryParser;
 
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -49,6 +50,19 @@ public class JournalEntryParseSupport extends EntryParser {
         return firstVarOffset;
     }
 
+    /**
+     * 一次写入Header中所有的定长属性
+     * @param buffer 序列化后的Entry，从buffer的position开始写入
+     */
+    static void writeHeader(ByteBuffer buffer, int length, int partition, int term, short magic, int batchSize, long timestamp) {
+        setInt(buffer, LENGTH, length);
+        setShort(buffer, PARTITION, (short) partition);
+        setInt(buffer, TERM, term);
+        setShort(buffer, MAGIC, magic);
+        setShort(buffer, BATCH_SIZE, (short) batchSize);
+        setLong(buffer, TIMESTAMP, timestamp);
+    }
+
     /**
      * 定长消息直接返回offset
      * 变长消息返回属性相对于第一个变长属性的索引值的偏移量的负值：第一个变长属性在attributes中的索引值 - 属性在attributes中的索引值
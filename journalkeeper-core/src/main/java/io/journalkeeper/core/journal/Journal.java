@@ -34,6 +34,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -44,6 +45,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -57,6 +59,8 @@ import java.util.stream.Stream;
 public class Journal implements RaftJournal, Flushable, Closeable {
     public static final int INDEX_STORAGE_SIZE = Long.BYTES;
     private static final Logger logger = LoggerFactory.getLogger(Journal.class);
+    // 提交时每次批量读取索引的最大数量
+    private static final int COMMIT_BATCH_SIZE = 1024;
     private static final String PARTITION_PATH = "index";
     private static final String INDEX_PATH = "index/all";
     private static final String JOURNAL_PROPERTIES_PATTERN = "^persistence\\.journal\\.(.*)$";
@@ -69,6 +73,7 @@ public class Journal implements RaftJournal, Flushable, Closeable {
         DEFAULT_JOURNAL_PROPERTIES.put("cached_file_core_count", String.valueOf(3));
         DEFAULT_JOURNAL_PROPERTIES.put("cached_file_max_count", String.valueOf(10));
         DEFAULT_JOURNAL_PROPERTIES.put("max_dirty_size", String.valueOf(128 * 1024 * 1024));
+        DEFAULT_JOURNAL_PROPERTIES.put("preallocate_file_count", String.valueOf(0));
         DEFAULT_INDEX_PROPERTIES.put("file_data_size", String.valueOf(16 * 1024 * 1024));
         DEFAULT_INDEX_PROPERTIES.put("cached_file_core_count", String.valueOf(12));
         DEFAULT_INDEX_PROPERTIES.put("cached_file_max_count", String.valueOf(40));
@@ -92,7 +97,7 @@ public class Journal implements RaftJournal, Flushable, Closeable {
     private ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
 
     public Journal(PersistenceFactory persistenceFactory, BufferPool bufferPool, JournalEntryParser journalEntryParser) {
-        this.indexPersistence = persistenceFactory.createJournalPersistenceInstance();
+        this.indexPersistence = persistenceFactory.createIndexPersistenceInstance();
         this.journalPersistence = persistenceFactory.createJournalPersistenceInstance();
         this.persistenceFactory = persistenceFactory;
         this.journalEntryParser = journalEntryParser;
@@ -168,7 +173,7 @@ public class Journal implements RaftJournal, Flushable, Closeable {
             for (Map.Entry<Integer, Long> entry : partitionMinIndices.entrySet()) {
                 int partition = entry.getKey();
                 if (!partitionMap.containsKey(partition)) {
-                    JournalPersistence partitionPersistence = persistenceFactory.createJournalPersistenceInstance();
+                    JournalPersistence partitionPersistence = persistenceFactory.createIndexPersistenceInstance();
                     partitionPersistence.recover(basePath.resolve(PARTITION_PATH).resolve(String.valueOf(partition)),
                             partitionMinIndices.get(partition) * INDEX_STORAGE_SIZE,
                             indexProperties);
@@ -237,7 +242,7 @@ public class Journal implements RaftJournal, Flushable, Closeable {
 
             for (Map.Entry<Integer, Long> entry : partitionMinIndices.entrySet()) {
                 int partition = entry.getKey();
-                JournalPersistence partitionPersistence = persistenceFactory.createJournalPersistenceInstance();
+                JournalPersistence partitionPersistence = persistenceFactory.createIndexPersistenceInstance();
                 partitionPersistence.recover(basePath.resolve(PARTITION_PATH).resolve(String.valueOf(partition)),
                         partitionMinIndices.get(partition) * INDEX_STORAGE_SIZE,
                         indexProperties);
@@ -294,14 +299,21 @@ public class Journal implements RaftJournal, Flushable, Closeable {
     public void commit(long index) throws IOException {
         long finalCommitIndex;
         while ((finalCommitIndex = commitIndex.get()) < index &&
-                finalCommitIndex < maxIndex() &&
-                commitIndex.compareAndSet(finalCommitIndex, finalCommitIndex + 1)) {
-            long offset = readOffset(finalCommitIndex);
+                finalCommitIndex < maxIndex()) {
+            // 批量读取待提交的索引
+            int count = (int) Math.min(COMMIT_BATCH_SIZE, Math.min(index, maxIndex()) - finalCommitIndex);
+            long[] offsets = indexPersistence.readLongs(finalCommitIndex * INDEX_STORAGE_SIZE, count);
+            for (long offset : offsets) {
+                if (!commitIndex.compareAndSet(finalCommitIndex, finalCommitIndex + 1)) {
+                    return;
+                }
+                finalCommitIndex++;
 
-            JournalEntry header = readEntryHeaderByOffset(offset);
-            commitIndexBuffer.clear();
-            commitIndexBuffer.putLong(offset);
-            appendPartitionIndex(commitIndexBytes, header.getPartition(), header.getBatchSize());
+                JournalEntry header = readEntryHeaderByOffset(offset);
+                commitIndexBuffer.clear();
+                commitIndexBuffer.putLong(offset);
+                appendPartitionIndex(commitIndexBytes, header.getPartition(), header.getBatchSize());
+            }
         }
     }
 
@@ -408,7 +420,10 @@ public class Journal implements RaftJournal, Flushable, Closeable {
     @Override
     public JournalEntry readByPartition(int partition, long index) {
         JournalPersistence pp = getPartitionPersistence(partition);
-        long offset = readOffset(pp, index);
+        return readByPartition(pp, index, readOffset(pp, index));
+    }
+
+    private JournalEntry readByPartition(JournalPersistence pp, long index, long offset) {
         long journalOffset;
         int relIndex;
         if (offset < 0) {
@@ -430,8 +445,19 @@ public class Journal implements RaftJournal, Flushable, Closeable {
         List<JournalEntry> list = new LinkedList<>();
         int size = 0;
         long index = startPartitionIndex;
+        JournalPersistence pp = getPartitionPersistence(partition);
+        // 一次读出可能用到的分区索引，不用逐条读取
+        int offsetCount = (int) Math.max(0L, Math.min(maxSize, pp.max() / INDEX_STORAGE_SIZE - startPartitionIndex));
+        long[] offsets;
+        try {
+            offsets = offsetCount > 0 ? pp.readLongs(startPartitionIndex * INDEX_STORAGE_SIZE, offsetCount) : new long[0];
+        } catch (IOException e) {
+            throw new JournalException(e);
+        }
         while (size < maxSize) {
-            JournalEntry batchEntry = readByPartition(partition, index);
+            int i = (int) (index - startPartitionIndex);
+            JournalEntry batchEntry = i < offsets.length ?
+                    readByPartition(pp, index, offsets[i]) : readByPartition(partition, index);
             int count = batchEntry.getBatchSize() - batchEntry.getOffset();
             size += count;
             index += count;
@@ -509,13 +535,98 @@ public class Journal implements RaftJournal, Flushable, Closeable {
      * @throws IndexOverflowException 如果index 不小于 maxIndex()
      */
     public List<byte[]> readRaw(long index, int size) {
-        checkIndex(index);
-        List<byte[]> list = new ArrayList<>(size);
-        long i = index;
-        while (list.size() < size && i < maxIndex()) {
-            list.add(readRaw(i++));
+        readWriteLock.readLock().lock();
+        try {
+            checkIndex(index);
+            long[] boundaries = readEntryBoundaries(index, size);
+            List<byte[]> list = new ArrayList<>(Math.max(boundaries.length - 1, 0));
+            // 每条entry直接读到最终返回的数组中，只复制一次
+            for (int i = 0; i + 1 < boundaries.length; i++) {
+                list.add(journalPersistence.read(boundaries[i], (int) (boundaries[i + 1] - boundaries[i])));
+            }
+            return list;
+        } catch (IOException e) {
+            throw new JournalException(e);
+        } finally {
+            readWriteLock.readLock().unlock();
         }
-        return list;
+    }
+
+    /**
+     * 批量读取StorageEntry。
+     * 先从全局索引中一次读出这批entry的offset，相邻两条entry的offset之差就是entry的长度，
+     * 再把这批entry作为一段连续的数据从Journal中一次读出。
+     * @param index 起始索引位置
+     * @param size 期望读取的条数
+     * @return 未反序列化的StorageEntry列表，每个ByteBuffer是读出数据的一个切片，不会再复制数据。
+     * @throws IndexUnderflowException 如果 index 小于 minIndex()
+     * @throws IndexOverflowException 如果index 不小于 maxIndex()
+     */
+    public List<ByteBuffer> readRawBuffers(long index, int size) {
+        readWriteLock.readLock().lock();
+        try {
+            checkIndex(index);
+            long[] boundaries = readEntryBoundaries(index, size);
+            int count = boundaries.length - 1;
+            if (count <= 0) {
+                return Collections.emptyList();
+            }
+            long startOffset = boundaries[0];
+            long endOffset = boundaries[count];
+
+            List<ByteBuffer> journalBuffers = journalPersistence.readBuffers(startOffset, (int) (endOffset - startOffset));
+
+            // entry不会跨越文件存储，按照offset切分读出的数据即可
+            List<ByteBuffer> entries = new ArrayList<>(count);
+            Iterator<ByteBuffer> iterator = journalBuffers.iterator();
+            ByteBuffer journalBuffer = iterator.next();
+            for (int i = 0; i < count; i++) {
+                int length = (int) (boundaries[i + 1] - boundaries[i]);
+                while (!journalBuffer.hasRemaining()) {
+                    journalBuffer = iterator.next();
+                }
+                if (journalBuffer.remaining() < length) {
+                    throw new JournalException(String.format("Entry at offset %s is incomplete, index: %s!",
+                            ThreadSafeFormat.formatWithComma(boundaries[i]),
+                            ThreadSafeFormat.formatWithComma(index + i)));
+                }
+                ByteBuffer entry = journalBuffer.slice();
+                entry.limit(length);
+                entries.add(entry);
+                journalBuffer.position(journalBuffer.position() + length);
+            }
+            return entries;
+        } catch (IOException e) {
+            throw new JournalException(e);
+        } finally {
+            readWriteLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 从全局索引中一次读出一批entry的offset，最后再加上最后一条entry的结束位置。
+     * 返回的数组比entry的条数多1，第i条entry的数据位于[boundaries[i], boundaries[i + 1])。
+     */
+    private long[] readEntryBoundaries(long index, int size) throws IOException {
+        long maxIndex = maxIndex();
+        int count = (int) Math.min(size, maxIndex - index);
+        if (count <= 0) {
+            return new long[0];
+        }
+
+        // 多读一条索引，作为最后一条entry的结束位置
+        boolean hasNext = index + count < maxIndex;
+        long[] offsets = readOffsets(index, hasNext ? count + 1 : count);
+        if (hasNext) {
+            return offsets;
+        }
+        long[] boundaries = Arrays.copyOf(offsets, count + 1);
+        boundaries[count] = offsets[count - 1] + readEntryLengthByOffset(offsets[count - 1]);
+        return boundaries;
+    }
+
+    private long[] readOffsets(long index, int count) throws IOException {
+        return indexPersistence.readLongs(index * INDEX_STORAGE_SIZE, count);
     }
 
     /**
@@ -672,7 +783,7 @@ public class Journal implements RaftJournal, Flushable, Closeable {
         for (Map.Entry<Integer, Long> entry : partitionIndices.entrySet()) {
             int partition = entry.getKey();
             long lastIncludedIndex = entry.getValue();
-            JournalPersistence pp = persistenceFactory.createJournalPersistenceInstance();
+            JournalPersistence pp = persistenceFactory.createIndexPersistenceInstance();
             pp.recover(partitionPath.resolve(String.valueOf(partition)), lastIncludedIndex * INDEX_STORAGE_SIZE, properties);
             // 截掉末尾半条数据
             pp.truncate(pp.max() - pp.max() % INDEX_STORAGE_SIZE);
@@ -873,6 +984,50 @@ public class Journal implements RaftJournal, Flushable, Closeable {
         } while (flushed > 0);
     }
 
+    /**
+     * 将所有已刷盘的Journal和Index强制写入存储设备（fsync）。
+     */
+    public void force() {
+        Stream.concat(Stream.of(journalPersistence, indexPersistence), partitionMap.values().stream())
+                .forEach(p -> {
+                    try {
+                        p.force();
+                    } catch (IOException e) {
+                        logger.warn("Force {} exception: ", p.getBasePath(), e);
+                        throw new JournalException(e);
+                    }
+                });
+    }
+
+    /**
+     * 尚未刷盘的Journal数据长度
+     * @return 未刷盘的数据长度，单位Byte
+     */
+    public long dirtySize() {
+        return journalPersistence.max() - journalPersistence.flushed();
+    }
+
+    /**
+     * 未刷盘的Journal和Index是否都没有超过上限，可以继续写入。
+     * @return 可以写入返回true，否则返回false
+     */
+    public boolean isWritable() {
+        return journalPersistence.isWritable() && indexPersistence.isWritable();
+    }
+
+    /**
+     * 等待刷盘，直到可以继续写入或者超时。
+     * @param timeout 最长等待时间
+     * @param unit 时间单位
+     * @return 超时前可以写入返回true，否则返回false
+     * @throws InterruptedException 等待时线程被中断
+     */
+    public boolean awaitWritable(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return journalPersistence.awaitWritable(timeout, unit) &&
+                indexPersistence.awaitWritable(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
     public boolean isDirty() {
         return Stream.concat(Stream.of(journalPersistence, indexPersistence), partitionMap.values().stream())
                 .anyMatch(p -> p.flushed() < p.max());
@@ -988,7 +1143,7 @@ public class Journal implements RaftJournal, Flushable, Closeable {
     public void addPartition(int partition, long minIndex) throws IOException {
         synchronized (partitionMap) {
             if (!partitionMap.containsKey(partition)) {
-                JournalPersistence partitionPersistence = persistenceFactory.createJournalPersistenceInstance();
+                JournalPersistence partitionPersistence = persistenceFactory.createIndexPersistenceInstance();
                 partitionPersistence.recover(
                         basePath.resolve(PARTITION_PATH).resolve(String.valueOf(partition)),
                         minIndex * INDEX_STORAGE_SIZE,
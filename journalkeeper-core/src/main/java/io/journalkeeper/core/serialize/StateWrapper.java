@@ -1,5 +1,6 @@
 package io.journalkeeper.core.serialize;
 
+import io.journalkeeper.core.api.ImmutableFilesAware;
 import io.journalkeeper.core.api.RaftJournal;
 import io.journalkeeper.core.api.State;
 import io.journalkeeper.core.api.StateResult;
@@ -13,7 +14,7 @@ import java.util.Properties;
  * @author LiYue
  * Date: 2020/2/18
  */
-public class StateWrapper<E, ER, Q, QR> implements State, Flushable {
+public class StateWrapper<E, ER, Q, QR> implements State, Flushable, ImmutableFilesAware {
     private final SerializeExtensionPoint serializeExtensionPoint;
     private final WrappedState<E, ER, Q, QR> wrappedState;
     private final Flushable flushable;
@@ -64,4 +65,9 @@ public class StateWrapper<E, ER, Q, QR> implements State, Flushable {
         }
     }
 
+    @Override
+    public boolean isImmutable(Path file) {
+        return wrappedState instanceof ImmutableFilesAware && ((ImmutableFilesAware) wrappedState).isImmutable(file);
+    }
+
 }
@@ -104,12 +104,15 @@ import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.StreamSupport;
@@ -144,6 +147,10 @@ public abstract class AbstractServer
     private static final int COMPACT_PERIOD_SEC = 60;
     private final static JMetric DUMMY_METRIC = new DummyMetric();
     private final static String METRIC_APPLY_ENTRIES = "APPLY_ENTRIES";
+    // 组提交模式下，每次fsync的时延和刷盘流量
+    private final static String METRIC_FLUSH_JOURNAL = "FLUSH_JOURNAL";
+    // 组提交模式下，刷盘线程等待触发条件时每次最长的休眠时间
+    private final static long GROUP_COMMIT_PARK_NS = TimeUnit.MICROSECONDS.toNanos(100L);
     /**
      * 节点上的最新状态 和 被状态机执行的最大日志条目的索引值（从 0 开始递增）
      */
@@ -167,7 +174,21 @@ public abstract class AbstractServer
     private  JMetricFactory metricFactory;
     private  Map<String, JMetric> metricMap;
     private final JMetric applyEntriesMetric;
+    private final JMetric flushJournalMetric;
+    /**
+     * 组提交模式下，上次刷盘时的最大索引序号
+     */
+    private long lastGroupCommitIndex = 0L;
+    /**
+     * 组提交模式下，fsync的次数和这些fsync确认的日志条数
+     */
+    private final AtomicLong groupCommits = new AtomicLong(0L);
+    private final AtomicLong groupCommitEntries = new AtomicLong(0L);
     private final AtomicInteger nextSnapshotIteratorId = new AtomicInteger();
+    /**
+     * 等待状态机执行到指定位置的请求，按照位置排序
+     */
+    private final PriorityBlockingQueue<AppliedIndexWaiter> appliedIndexWaiters = new PriorityBlockingQueue<>();
     /**
      * 当前Server URI
      */
@@ -243,6 +264,7 @@ public abstract class AbstractServer
             this.metricMap = null;
         }
         applyEntriesMetric = getMetric(METRIC_APPLY_ENTRIES);
+        flushJournalMetric = getMetric(METRIC_FLUSH_JOURNAL);
 
 
         this.eventBus = new EventBus(config.getRpcTimeoutMs());
@@ -292,7 +314,7 @@ public abstract class AbstractServer
         return ThreadBuilder.builder()
                 .name(threadName(FLUSH_JOURNAL_THREAD))
                 .doWork(this::flushJournal)
-                .sleepTime(config.getFlushIntervalMs(), config.getFlushIntervalMs())
+                .sleepTime(flushJournalSleepMs(), flushJournalSleepMs())
                 .onException(new DefaultExceptionListener(FLUSH_JOURNAL_THREAD))
                 .daemon(true)
                 .build();
@@ -382,21 +404,68 @@ public abstract class AbstractServer
      *
      */
     private void applyEntries() {
+        if (config.getApplyBatchSize() > 1) {
+            batchApplyEntries();
+            return;
+        }
         while (state.lastApplied() < journal.commitIndex()) {
             applyEntriesMetric.start();
             long offset = journal.readOffset(state.lastApplied());
             JournalEntry entryHeader = journal.readEntryHeaderByOffset(offset);
             StateResult stateResult = state.applyEntry(entryHeader, new EntryFutureImpl(journal, offset), journal);
-            afterStateChanged(stateResult.getUserResult());
+            afterStateChanged(stateResult.getLastApplied(), stateResult.getUserResult());
 
             if(config.isEnableEvents()) {
                 stateResult.putEventData("lastApplied", String.valueOf(state.lastApplied()));
                 fireEvent(EventType.ON_STATE_CHANGE, stateResult.getEventData());
             }
+            completeAppliedIndexWaiters(stateResult.getLastApplied());
             applyEntriesMetric.end(() -> (long) entryHeader.getLength());
         }
     }
 
+    /**
+     * 批量执行模式：每次从Journal中批量读出至多applyBatchSize条已提交的entries，
+     * 在状态机的一次加锁中执行完，再批量触发事件。
+     */
+    private void batchApplyEntries() {
+        long lastApplied;
+        while ((lastApplied = state.lastApplied()) < journal.commitIndex()) {
+            applyEntriesMetric.start();
+            int size = (int) Math.min(config.getApplyBatchSize(), journal.commitIndex() - lastApplied);
+            List<JournalEntry> entries = new ArrayList<>(size);
+            for (byte[] rawEntry : journal.readRaw(lastApplied, size)) {
+                entries.add(journalEntryParser.parse(rawEntry));
+            }
+            List<StateResult> stateResults = new ArrayList<>(size);
+            try {
+                state.applyEntries(entries, journal, stateResults);
+            } finally {
+                // 执行失败时，先完成失败之前已经生效的entries，再抛出异常
+                afterEntriesApplied(entries, stateResults);
+            }
+        }
+    }
+
+    private void afterEntriesApplied(List<JournalEntry> entries, List<StateResult> stateResults) {
+        long traffic = 0L;
+        List<Map<String, String>> eventDataList = config.isEnableEvents() ? new ArrayList<>(stateResults.size()) : null;
+        for (int i = 0; i < stateResults.size(); i++) {
+            StateResult stateResult = stateResults.get(i);
+            afterStateChanged(stateResult.getLastApplied(), stateResult.getUserResult());
+            if (null != eventDataList) {
+                stateResult.putEventData("lastApplied", String.valueOf(stateResult.getLastApplied()));
+                eventDataList.add(stateResult.getEventData());
+            }
+            traffic += entries.get(i).getLength();
+        }
+        if (null != eventDataList && !eventDataList.isEmpty()) {
+            fireEvents(EventType.ON_STATE_CHANGE, eventDataList);
+        }
+        completeAppliedIndexWaiters(state.lastApplied());
+        applyEntriesMetric.end(traffic);
+    }
+
     private void fireOnLeaderChangeEvent(int term, URI leaderUri) {
         if(config.isEnableEvents()) {
             Map<String, String> eventData = new HashMap<>();
@@ -447,31 +516,74 @@ public abstract class AbstractServer
         }
     }
 
+    protected void fireEvents(int eventType, List<Map<String, String>> eventDataList) {
+        if(config.isEnableEvents() && !eventDataList.isEmpty()) {
+            List<Event> events = new ArrayList<>(eventDataList.size());
+            for (Map<String, String> eventData : eventDataList) {
+                events.add(new Event(eventType, eventData));
+            }
+            eventBus.fireEvents(events);
+        }
+    }
+
     /**
      * 当状态变化后触发事件
+     * @param lastApplied 执行之后状态机的lastApplied
      * @param updateResult 状态机执行结果
      */
-    protected void afterStateChanged(byte[] updateResult) {
+    protected void afterStateChanged(long lastApplied, byte[] updateResult) {
+    }
+
+    /**
+     * 异步等待状态机执行到指定的位置，即lastApplied &gt;= index。
+     * 超过rpc超时时间仍未执行到指定位置时，抛出TimeoutException。
+     * @param index 等待的位置
+     * @return 执行到指定位置后完成的Future
+     */
+    protected CompletableFuture<Void> waitForApplied(long index) {
+        if (state.lastApplied() >= index) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        appliedIndexWaiters.add(new AppliedIndexWaiter(index, future));
+        // 加入队列之前状态机可能已经执行到了index
+        completeAppliedIndexWaiters(state.lastApplied());
+        if (!future.isDone()) {
+            ScheduledFuture<?> timeoutFuture = scheduledExecutor.schedule(() -> future.completeExceptionally(
+                    new TimeoutException(String.format("Wait for applied index %d timeout, lastApplied: %d.", index, state.lastApplied()))),
+                    config.getRpcTimeoutMs(), TimeUnit.MILLISECONDS);
+            future.whenComplete((aVoid, throwable) -> timeoutFuture.cancel(false));
+        }
+        return future;
+    }
+
+    private void completeAppliedIndexWaiters(long lastApplied) {
+        AppliedIndexWaiter waiter;
+        // 队首的位置不大于lastApplied时，poll出来的位置一定也不大于lastApplied
+        while ((waiter = appliedIndexWaiters.peek()) != null && waiter.getIndex() <= lastApplied) {
+            waiter = appliedIndexWaiters.poll();
+            if (null != waiter) {
+                waiter.getFuture().complete(null);
+            }
+        }
     }
 
     /**
      * 如果需要，保存一次快照
      */
 
+    /**
+     * 查询当前节点的状态。如果请求中指定了位置，先等待状态机执行到该位置再查询，
+     * 保证客户端读到的状态不会比它已经看到的更旧。
+     */
     @Override
     public CompletableFuture<QueryStateResponse> queryServerState(QueryStateRequest request) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                if (request.getIndex() > 0 && state.lastApplied() < request.getIndex()) {
-                    return new QueryStateResponse(new IllegalStateException());
-                } else {
+        return waitForApplied(request.getIndex())
+                .thenApplyAsync(aVoid -> {
                     StateQueryResult queryResult = state.query(request.getQuery(), journal);
                     return new QueryStateResponse(queryResult.getResult(), queryResult.getLastApplied());
-                }
-            } catch (Throwable throwable) {
-                return new QueryStateResponse(throwable);
-            }
-        }, asyncExecutor);
+                }, asyncExecutor)
+                .exceptionally(QueryStateResponse::new);
     }
 
     /**
@@ -611,6 +723,26 @@ public abstract class AbstractServer
                         Config.ENABLE_EVENTS_KEY,
                         String.valueOf(Config.DEFAULT_ENABLE_EVENTS))));
 
+        config.setApplyBatchSize(Integer.parseInt(
+                properties.getProperty(
+                        Config.APPLY_BATCH_SIZE_KEY,
+                        String.valueOf(Config.DEFAULT_APPLY_BATCH_SIZE))));
+
+        config.setEnableGroupCommit(Boolean.parseBoolean(
+                properties.getProperty(
+                        Config.ENABLE_GROUP_COMMIT_KEY,
+                        String.valueOf(Config.DEFAULT_ENABLE_GROUP_COMMIT))));
+
+        config.setGroupCommitMaxBytes(Long.parseLong(
+                properties.getProperty(
+                        Config.GROUP_COMMIT_MAX_BYTES_KEY,
+                        String.valueOf(Config.DEFAULT_GROUP_COMMIT_MAX_BYTES))));
+
+        config.setGroupCommitMaxDelayUs(Long.parseLong(
+                properties.getProperty(
+                        Config.GROUP_COMMIT_MAX_DELAY_US_KEY,
+                        String.valueOf(Config.DEFAULT_GROUP_COMMIT_MAX_DELAY_US))));
+
         return config;
     }
 
@@ -752,12 +884,100 @@ public abstract class AbstractServer
         flushState();
     }
 
-    private void flushJournal() {
-        this.journal.flush();
-        onJournalFlushed();
+    private long flushJournalSleepMs() {
+        if (config.isEnableGroupCommit()) {
+            return Math.max(1L, Math.min(config.getFlushIntervalMs(),
+                    TimeUnit.MICROSECONDS.toMillis(config.getGroupCommitMaxDelayUs())));
+        }
+        return config.getFlushIntervalMs();
     }
 
-    protected void onJournalFlushed() {
+    private void flushJournal() throws InterruptedException {
+        if (config.isEnableGroupCommit()) {
+            groupCommitJournal();
+        } else {
+            long flushIndex = journal.maxIndex();
+            this.journal.flush();
+            onJournalFlushed(flushIndex);
+        }
+    }
+
+    /**
+     * 组提交模式刷盘：当满足如下任一条件时，执行一次刷盘，并用一次fsync确认所有等待持久化的请求：
+     * 1. 未刷盘的数据超过groupCommitMaxBytes；
+     * 2. 最早的未刷盘数据已经等待超过groupCommitMaxDelayUs；
+     * 3. 有等待持久化（PERSISTENCE 或 ALL）的请求。
+     */
+    private void groupCommitJournal() throws InterruptedException {
+        long maxDelayNs = TimeUnit.MICROSECONDS.toNanos(config.getGroupCommitMaxDelayUs());
+        long firstDirtyTime = 0L;
+        while (journal.isDirty()) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            long now = System.nanoTime();
+            if (firstDirtyTime == 0L) {
+                firstDirtyTime = now;
+            }
+            long dirtySize = journal.dirtySize();
+            if (dirtySize >= config.getGroupCommitMaxBytes() ||
+                    now - firstDirtyTime >= maxDelayNs ||
+                    hasPendingFlushCallbacks()) {
+                long flushIndex = journal.maxIndex();
+                journal.flush();
+                forceJournal(flushIndex, dirtySize);
+                firstDirtyTime = 0L;
+            } else {
+                LockSupport.parkNanos(Math.min(GROUP_COMMIT_PARK_NS, firstDirtyTime + maxDelayNs - now));
+            }
+        }
+
+        // 刷盘时可能顺带写入了刷盘开始之后才追加的日志，这些日志只是写入了文件，还没有fsync，
+        // 如果之后没有新的日志写入，不会再触发刷盘，需要在这里fsync之后再确认。
+        long maxIndex = journal.maxIndex();
+        if (maxIndex > lastGroupCommitIndex && !journal.isDirty()) {
+            forceJournal(maxIndex, 0L);
+        }
+    }
+
+    /**
+     * 组提交模式下fsync，fsync完成之后才确认flushIndex之前的日志已经持久化
+     * @param flushIndex 这个位置之前的日志都已经写入文件
+     * @param dirtySize 本次刷盘写入的字节数
+     */
+    private void forceJournal(long flushIndex, long dirtySize) {
+        long t0 = System.nanoTime();
+        journal.force();
+        flushJournalMetric.mark(System.nanoTime() - t0, dirtySize);
+        groupCommits.incrementAndGet();
+        groupCommitEntries.addAndGet(Math.max(0L, flushIndex - lastGroupCommitIndex));
+        lastGroupCommitIndex = flushIndex;
+        onJournalFlushed(flushIndex);
+    }
+
+    // for monitor only
+    long getGroupCommits() {
+        return groupCommits.get();
+    }
+
+    // for monitor only
+    long getGroupCommitEntries() {
+        return groupCommitEntries.get();
+    }
+
+    /**
+     * Journal刷盘之后调用
+     * @param flushIndex 刷盘前的最大索引序号，这个位置之前的数据都已经刷盘
+     */
+    protected void onJournalFlushed(long flushIndex) {
+    }
+
+    /**
+     * 是否有等待刷盘的请求
+     * @return 有等待刷盘的请求返回true，否则返回false
+     */
+    protected boolean hasPendingFlushCallbacks() {
+        return false;
     }
 
     private void flushState() {
@@ -1040,6 +1260,8 @@ public abstract class AbstractServer
                 journal.compact(snapshot.getJournalSnapshot());
                 logger.info("Compact journal finished, journal: {}.", journal);
 
+                // 快照之间通过硬链接共享不可变文件，删除快照只删除它自己的链接，
+                // 不影响其它快照中的同一个文件。
                 NavigableMap<Long, JournalKeeperState> headMap = snapshots.headMap(index, false);
                 while (!headMap.isEmpty()) {
                     snapshot = headMap.remove(headMap.firstKey());
@@ -1106,6 +1328,10 @@ public abstract class AbstractServer
         return journal;
     }
 
+    ServerRpcAccessPoint getServerRpcAccessPoint() {
+        return serverRpcAccessPoint;
+    }
+
     void installSnapshot(long offset, long lastIncludedIndex, int lastIncludedTerm, byte[] data, boolean isDone) throws IOException, TimeoutException {
         synchronized (partialSnapshot) {
             logger.debug("Install snapshot, offset: {}, lastIncludedIndex: {}, lastIncludedTerm: {}, data length: {}, isDone: {}... " +
@@ -1123,9 +1349,7 @@ public abstract class AbstractServer
             JournalKeeperState snapshot;
             long lastApplied = lastIncludedIndex + 1;
             Path snapshotPath = snapshotsPath().resolve(String.valueOf(lastApplied));
-            partialSnapshot.installTrunk(offset, data, snapshotPath);
-
-            if (isDone) {
+            if (partialSnapshot.installTrunk(offset, data, isDone, snapshotPath)) {
                 logger.debug("All snapshot files received, discard any existing snapshot with a same or smaller index...");
                 // discard any existing snapshot with a same or smaller index
                 NavigableMap<Long, JournalKeeperState> headMap = snapshots.headMap(lastApplied, true);
@@ -1174,6 +1398,7 @@ public abstract class AbstractServer
                     state.clear();
                     snapshot.dump(statePath());
                     state.recover(statePath(), properties);
+                    completeAppliedIndexWaiters(state.lastApplied());
                 } finally {
                     threads.startThread(threadName(ThreadNames.STATE_MACHINE_THREAD));
                     flushStateFuture = scheduledExecutor.scheduleAtFixedRate(this::flushState,
@@ -1195,6 +1420,29 @@ public abstract class AbstractServer
     protected void onPrintMetric() {
     }
 
+    private static class AppliedIndexWaiter implements Comparable<AppliedIndexWaiter> {
+        private final long index;
+        private final CompletableFuture<Void> future;
+
+        AppliedIndexWaiter(long index, CompletableFuture<Void> future) {
+            this.index = index;
+            this.future = future;
+        }
+
+        long getIndex() {
+            return index;
+        }
+
+        CompletableFuture<Void> getFuture() {
+            return future;
+        }
+
+        @Override
+        public int compareTo(AppliedIndexWaiter o) {
+            return Long.compare(index, o.index);
+        }
+    }
+
     public static class Config {
         public final static int DEFAULT_SNAPSHOT_INTERVAL_SEC = 0;
         public final static long DEFAULT_RPC_TIMEOUT_MS = 1000L;
@@ -1205,6 +1453,10 @@ public abstract class AbstractServer
         public final static int DEFAULT_PRINT_METRIC_INTERVAL_SEC = 0;
         public final static int DEFAULT_JOURNAL_RETENTION_MIN = 0;
         public final static boolean DEFAULT_ENABLE_EVENTS = true;
+        public final static int DEFAULT_APPLY_BATCH_SIZE = 1;
+        public final static boolean DEFAULT_ENABLE_GROUP_COMMIT = false;
+        public final static long DEFAULT_GROUP_COMMIT_MAX_BYTES = 1024 * 1024;
+        public final static long DEFAULT_GROUP_COMMIT_MAX_DELAY_US = 1000L;
         public final static String SNAPSHOT_INTERVAL_SEC_KEY = "snapshot_interval_sec";
         public final static String RPC_TIMEOUT_MS_KEY = "rpc_timeout_ms";
         public final static String FLUSH_INTERVAL_MS_KEY = "flush_interval_ms";
@@ -1215,6 +1467,10 @@ public abstract class AbstractServer
         public final static String PRINT_METRIC_INTERVAL_SEC_KEY = "print_metric_interval_sec";
         public final static String JOURNAL_RETENTION_MIN_KEY = "journal_retention_min";
         public final static String ENABLE_EVENTS_KEY = "enable_events";
+        public final static String APPLY_BATCH_SIZE_KEY = "apply_batch_size";
+        public final static String ENABLE_GROUP_COMMIT_KEY = "enable_group_commit";
+        public final static String GROUP_COMMIT_MAX_BYTES_KEY = "group_commit_max_bytes";
+        public final static String GROUP_COMMIT_MAX_DELAY_US_KEY = "group_commit_max_delay_us";
 
         private int snapshotIntervalSec = DEFAULT_SNAPSHOT_INTERVAL_SEC;
         private long rpcTimeoutMs = DEFAULT_RPC_TIMEOUT_MS;
@@ -1226,6 +1482,22 @@ public abstract class AbstractServer
         private int printMetricIntervalSec = DEFAULT_PRINT_METRIC_INTERVAL_SEC;
         private int journalRetentionMin = DEFAULT_JOURNAL_RETENTION_MIN;
         private boolean enableEvents = DEFAULT_ENABLE_EVENTS;
+        /**
+         * 状态机每次批量执行的最大entry数量，等于1时逐条执行
+         */
+        private int applyBatchSize = DEFAULT_APPLY_BATCH_SIZE;
+        /**
+         * 是否开启组提交刷盘模式，开启后每次刷盘都会执行fsync
+         */
+        private boolean enableGroupCommit = DEFAULT_ENABLE_GROUP_COMMIT;
+        /**
+         * 组提交模式下，未刷盘的数据超过这个长度时立即刷盘
+         */
+        private long groupCommitMaxBytes = DEFAULT_GROUP_COMMIT_MAX_BYTES;
+        /**
+         * 组提交模式下，未刷盘数据的最长等待时间，单位微秒
+         */
+        private long groupCommitMaxDelayUs = DEFAULT_GROUP_COMMIT_MAX_DELAY_US;
         int getSnapshotIntervalSec() {
             return snapshotIntervalSec;
         }
@@ -1305,5 +1577,37 @@ public abstract class AbstractServer
         public void setEnableEvents(boolean enableEvents) {
             this.enableEvents = enableEvents;
         }
+
+        public int getApplyBatchSize() {
+            return applyBatchSize;
+        }
+
+        public void setApplyBatchSize(int applyBatchSize) {
+            this.applyBatchSize = applyBatchSize;
+        }
+
+        public boolean isEnableGroupCommit() {
+            return enableGroupCommit;
+        }
+
+        public void setEnableGroupCommit(boolean enableGroupCommit) {
+            this.enableGroupCommit = enableGroupCommit;
+        }
+
+        public long getGroupCommitMaxBytes() {
+            return groupCommitMaxBytes;
+        }
+
+        public void setGroupCommitMaxBytes(long groupCommitMaxBytes) {
+            this.groupCommitMaxBytes = groupCommitMaxBytes;
+        }
+
+        public long getGroupCommitMaxDelayUs() {
+            return groupCommitMaxDelayUs;
+        }
+
+        public void setGroupCommitMaxDelayUs(long groupCommitMaxDelayUs) {
+            this.groupCommitMaxDelayUs = groupCommitMaxDelayUs;
+        }
     }
 }
@@ -20,6 +20,8 @@ package io.journalkeeper.core.server;
 interface CallbackResultBelt {
     boolean full();
 
+    boolean empty();
+
     void put(Callback callback) throws InterruptedException;
 
     void callbackBefore(long position);
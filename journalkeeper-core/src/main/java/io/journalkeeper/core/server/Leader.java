@@ -32,8 +32,11 @@ import io.journalkeeper.core.state.ConfigState;
 import io.journalkeeper.core.state.JournalKeeperState;
 import io.journalkeeper.core.transaction.JournalTransactionManager;
 import io.journalkeeper.exceptions.IndexUnderflowException;
+import io.journalkeeper.exceptions.InstallSnapshotException;
 import io.journalkeeper.exceptions.NotLeaderException;
+import io.journalkeeper.exceptions.ServerBusyException;
 import io.journalkeeper.metric.JMetric;
+import io.journalkeeper.rpc.StatusCode;
 import io.journalkeeper.rpc.client.ClientServerRpc;
 import io.journalkeeper.rpc.client.UpdateClusterStateRequest;
 import io.journalkeeper.rpc.client.UpdateClusterStateResponse;
@@ -42,7 +45,8 @@ import io.journalkeeper.rpc.server.AsyncAppendEntriesResponse;
 import io.journalkeeper.rpc.server.InstallSnapshotRequest;
 import io.journalkeeper.rpc.server.InstallSnapshotResponse;
 import io.journalkeeper.rpc.server.ServerRpc;
-import io.journalkeeper.utils.async.Async;
+import io.journalkeeper.utils.threads.NamedThreadFactory;
+import io.journalkeeper.utils.buffer.LockFreeRingBuffer;
 import io.journalkeeper.utils.state.ServerStateMachine;
 import io.journalkeeper.utils.state.StateServer;
 import io.journalkeeper.utils.threads.AsyncLoopThread;
@@ -53,9 +57,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -63,18 +70,21 @@ import java.util.NavigableMap;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static io.journalkeeper.core.api.RaftJournal.INTERNAL_PARTITION;
 import static io.journalkeeper.core.server.MetricNames.METRIC_APPEND_ENTRIES_RPC;
@@ -82,6 +92,7 @@ import static io.journalkeeper.core.server.ThreadNames.FLUSH_JOURNAL_THREAD;
 import static io.journalkeeper.core.server.ThreadNames.LEADER_APPEND_ENTRY_THREAD;
 import static io.journalkeeper.core.server.ThreadNames.LEADER_CALLBACK_THREAD;
 import static io.journalkeeper.core.server.ThreadNames.LEADER_COMMIT_THREAD;
+import static io.journalkeeper.core.server.ThreadNames.LEADER_INSTALL_SNAPSHOT_THREAD;
 import static io.journalkeeper.core.server.ThreadNames.LEADER_REPLICATION_THREAD;
 import static io.journalkeeper.core.server.ThreadNames.STATE_MACHINE_THREAD;
 
@@ -91,14 +102,23 @@ import static io.journalkeeper.core.server.ThreadNames.STATE_MACHINE_THREAD;
  */
 class Leader extends ServerStateMachine implements StateServer {
     private static final Logger logger = LoggerFactory.getLogger(Leader.class);
+    /**
+     * FOLLOWER还没有成功响应过任何请求
+     */
+    private static final long NOT_ACKED = Long.MIN_VALUE;
     /**
      * 节点上的最新状态 和 被状态机执行的最大日志条目的索引值（从 0 开始递增）
      */
     protected final JournalKeeperState state;
     /**
-     * 客户端更新状态请求队列
+     * 客户端更新状态请求队列，多个线程并发写入，写入日志的线程串行读取。
+     * 队列满时不阻塞写入线程，直接给客户端返回ServerBusyException。
      */
-    private final BlockingQueue<UpdateStateRequestResponse> pendingUpdateStateRequests;
+    private final LockFreeRingBuffer<UpdateStateRequestResponse> pendingUpdateStateRequests;
+    /**
+     * 队列满被拒绝的请求总数
+     */
+    private final AtomicLong rejectedUpdateStateRequests = new AtomicLong(0L);
     /**
      * 保存异步响应的回调方法
      */
@@ -115,6 +135,27 @@ class Leader extends ServerStateMachine implements StateServer {
     private final Threads threads;
     private final long heartbeatIntervalMs;
     private final int replicationBatchSize;
+    /**
+     * 每个FOLLOWER最多同时在途的复制请求数
+     */
+    private final int replicationWindowSize;
+    /**
+     * 安装快照时，每个FOLLOWER最多同时在途的分片数
+     */
+    private final int snapshotInstallWindowSize;
+    /**
+     * 每批最多合并写入的entry数量
+     */
+    private final int appendBatchSize;
+    /**
+     * 每批最多合并写入的字节数
+     */
+    private final long appendBatchBytes;
+    /**
+     * 合并写入时复用的请求和entry列表，只在写入日志的线程中访问
+     */
+    private final List<UpdateStateRequestResponse> appendBatchRequests = new ArrayList<>();
+    private final List<JournalEntry> appendBatchEntries = new ArrayList<>();
     private final long rpcTimeoutMs;
     private final Journal journal;
     /**
@@ -139,19 +180,34 @@ class Leader extends ServerStateMachine implements StateServer {
     private final AtomicBoolean isLeaderAnnouncementApplied = new AtomicBoolean(false);
     private final AtomicLong callbackBarrier = new AtomicLong(0L);
     /**
-     * Leader有效期，用于读取状态时判断leader是否还有效，每次从Follower收到心跳响应，定时更新leader的有效期。
+     * 租约时长（纳秒），小于等于0时不开启租约读。
+     * 在租约有效期内，LEADER不需要和FOLLOWER交换心跳就可以直接处理只读请求。
+     */
+    private final long leaseDurationNs;
+    /**
+     * 等待确认LEADER身份的ReadIndex请求，按照注册顺序排列
      */
-    private AtomicLong leaderShipDeadLineMs = new AtomicLong(0L);
+    private final Deque<ReadIndexRequest> pendingReadIndexRequests = new ArrayDeque<>();
+    /**
+     * 最近一次ReadIndex请求要求发送心跳的时间（System.nanoTime()），
+     * 晚于这个时间没有发送过请求的复制线程需要立即发送一次心跳。
+     */
+    private final AtomicLong heartbeatRequestNanos = new AtomicLong(System.nanoTime());
     private JMetric updateClusterStateMetric;
+    private JMetric updateClusterStateRejectedMetric;
     private JMetric appendJournalMetric;
     private ScheduledFuture takeSnapshotFuture;
+    /**
+     * 给FOLLOWER安装快照的线程池，安装快照时不阻塞复制线程
+     */
+    private ExecutorService snapshotInstallExecutor;
     private AtomicBoolean isAnyFollowerNextIndexUpdated = new AtomicBoolean(false);
 
     Leader(Journal journal, JournalKeeperState state, Map<Long, JournalKeeperState> immutableSnapshots,
            int currentTerm,
            URI serverUri,
-           int cacheRequests, long heartbeatIntervalMs, long rpcTimeoutMs, int replicationBatchSize,
-           int snapshotIntervalSec,
+           int cacheRequests, int appendBatchSize, long appendBatchBytes, long heartbeatIntervalMs, long rpcTimeoutMs, int replicationBatchSize,
+           int replicationWindowSize, int snapshotInstallWindowSize, int snapshotIntervalSec, long leaseDurationMs,
            Threads threads,
            ServerRpcProvider serverRpcProvider,
            ClientServerRpc server,
@@ -162,14 +218,19 @@ class Leader extends ServerStateMachine implements StateServer {
            long transactionTimeoutMs, NavigableMap<Long, JournalKeeperState> snapshots) {
 
         super(true);
-        this.pendingUpdateStateRequests = new LinkedBlockingQueue<>(cacheRequests);
+        this.pendingUpdateStateRequests = new LockFreeRingBuffer<>(UpdateStateRequestResponse.class, cacheRequests);
         this.state = state;
         this.serverUri = serverUri;
         this.replicationBatchSize = replicationBatchSize;
+        this.appendBatchSize = appendBatchSize;
+        this.appendBatchBytes = appendBatchBytes;
+        this.replicationWindowSize = replicationWindowSize;
+        this.snapshotInstallWindowSize = snapshotInstallWindowSize;
         this.rpcTimeoutMs = rpcTimeoutMs;
         this.currentTerm = currentTerm;
         this.immutableSnapshots = immutableSnapshots;
         this.snapshotIntervalSec = snapshotIntervalSec;
+        this.leaseDurationNs = TimeUnit.MILLISECONDS.toNanos(leaseDurationMs);
         this.threads = threads;
         this.serverRpcProvider = serverRpcProvider;
         this.scheduledExecutor = scheduledExecutor;
@@ -190,6 +251,7 @@ class Leader extends ServerStateMachine implements StateServer {
                 if (leaderAnnouncementEntry.getTerm() == currentTerm) {
                     logger.info("Leader announcement applied! Leader: {}, term: {}.", serverUri, currentTerm);
                     isLeaderAnnouncementApplied.compareAndSet(false, true);
+                    threads.wakeupThread(threadName(LEADER_COMMIT_THREAD));
                 }
             }
         };
@@ -211,7 +273,10 @@ class Leader extends ServerStateMachine implements StateServer {
     private AsyncLoopThread buildLeaderReplicationResponseThread() {
         return ThreadBuilder.builder()
                 .name(threadName(LEADER_COMMIT_THREAD))
-                .doWork(this::commit)
+                .doWork(() -> {
+                    commit();
+                    checkReadIndexRequests();
+                })
                 .sleepTime(heartbeatIntervalMs, heartbeatIntervalMs)
                 .onException(new DefaultExceptionListener(LEADER_COMMIT_THREAD))
                 .daemon(true)
@@ -233,60 +298,162 @@ class Leader extends ServerStateMachine implements StateServer {
     }
 
     /**
-     * 串行写入日志
+     * 串行写入日志。
+     * 每次取出队列中所有待写入的请求（不超过appendBatchSize条entry或appendBatchBytes字节），
+     * 合并成一次日志写入，每批请求只唤醒一次复制线程和刷盘线程。
+     * 配置变更等内部请求需要单独写入，写入之前先写入已经取出的请求，保证日志的顺序和请求的顺序一致。
      */
     private void appendJournalEntry() throws Exception {
+        if (!journal.isWritable()) {
+            // 未刷盘的数据超过上限，暂停从队列中取出新的请求，等待刷盘追上来。
+            // 队列满了之后，新的请求会被拒绝。
+            journal.awaitWritable(heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+            return;
+        }
+        UpdateStateRequestResponse rr = pendingUpdateStateRequests.remove();
+        if (null == rr) {
+            pendingUpdateStateRequests.awaitNotEmpty(heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+            return;
+        }
+        long batchBytes = 0L;
+        try {
+            do {
+                UpdateClusterStateRequest request = rr.getRequest();
+                if (isInternalRequest(request)) {
+                    appendBatch(appendBatchRequests, appendBatchEntries);
+                    batchBytes = 0L;
+                    appendInternalRequest(rr);
+                } else {
+                    batchBytes += addToBatch(rr);
+                }
+                rr = null;
+            } while (appendBatchEntries.size() < appendBatchSize && batchBytes < appendBatchBytes &&
+                    (rr = pendingUpdateStateRequests.remove()) != null);
+            appendBatch(appendBatchRequests, appendBatchEntries);
+        } catch (Throwable t) {
+            if (null != rr) {
+                rr.getResponseFuture().getResponseFuture().complete(new UpdateClusterStateResponse(t));
+            }
+            throw t;
+        }
+    }
 
-        UpdateStateRequestResponse rr = pendingUpdateStateRequests.take();
+    private boolean isInternalRequest(UpdateClusterStateRequest request) {
+        return request.getRequests().size() == 1 && request.getRequests().get(0).getPartition() == INTERNAL_PARTITION;
+    }
+
+    private void appendInternalRequest(UpdateStateRequestResponse rr) throws Exception {
         final UpdateClusterStateRequest request = rr.getRequest();
-        final ResponseFuture responseFuture = rr.getResponseFuture();
         try {
-
-            if (request.getRequests().size() == 1 && voterConfigManager.maybeUpdateLeaderConfig(request.getRequests().get(0),
-                    state.getConfigState(), journal, () -> doAppendJournalEntryCallable(request, responseFuture),
+            if (voterConfigManager.maybeUpdateLeaderConfig(request.getRequests().get(0),
+                    state.getConfigState(), journal, () -> doAppendJournalEntryCallable(rr),
                     serverUri, this)) {
                 return;
             }
-            doAppendJournalEntry(request, responseFuture);
-
+            doAppendJournalEntryCallable(rr);
         } catch (Throwable t) {
-            responseFuture.getResponseFuture().complete(new UpdateClusterStateResponse(t));
+            rr.getResponseFuture().getResponseFuture().complete(new UpdateClusterStateResponse(t));
             throw t;
         }
-
     }
 
-    private Void doAppendJournalEntryCallable(UpdateClusterStateRequest request, ResponseFuture responseFuture) throws InterruptedException {
-        doAppendJournalEntry(request, responseFuture);
+    private Void doAppendJournalEntryCallable(UpdateStateRequestResponse rr) throws InterruptedException {
+        List<UpdateStateRequestResponse> requests = new ArrayList<>(1);
+        List<JournalEntry> journalEntries = new ArrayList<>(rr.getRequest().getRequests().size());
+        if (addToBatch(rr, requests, journalEntries) >= 0) {
+            appendBatch(requests, journalEntries);
+        }
         return null;
     }
 
-    private void doAppendJournalEntry(UpdateClusterStateRequest request, ResponseFuture responseFuture) throws InterruptedException {
-        appendJournalMetric.start();
+    private long addToBatch(UpdateStateRequestResponse rr) {
+        return Math.max(0L, addToBatch(rr, appendBatchRequests, appendBatchEntries));
+    }
 
-        List<JournalEntry> journalEntries = new ArrayList<>(request.getRequests().size());
-        for (UpdateRequest serializedUpdateRequest : request.getRequests()) {
-            JournalEntry entry;
+    /**
+     * 把请求转换成日志entry，加入待写入的批次。
+     * @return 加入的entry的总长度，如果转换失败，给请求返回失败响应并返回-1
+     */
+    private long addToBatch(UpdateStateRequestResponse rr, List<UpdateStateRequestResponse> requests, List<JournalEntry> journalEntries) {
+        UpdateClusterStateRequest request = rr.getRequest();
+        int size = journalEntries.size();
+        long bytes = 0L;
+        try {
+            for (UpdateRequest serializedUpdateRequest : request.getRequests()) {
+                JournalEntry entry;
+
+                if (request.isIncludeHeader()) {
+                    entry = journalEntryParser.parse(serializedUpdateRequest.getEntry());
+                    entry.setPartition(serializedUpdateRequest.getPartition());
+                    entry.setBatchSize(serializedUpdateRequest.getBatchSize());
+                    entry.setTerm(currentTerm);
+                } else {
+                    entry = journalEntryParser.createJournalEntry(serializedUpdateRequest.getEntry(),
+                            serializedUpdateRequest.getPartition(), serializedUpdateRequest.getBatchSize(), currentTerm);
+                }
 
-            if (request.isIncludeHeader()) {
-                entry = journalEntryParser.parse(serializedUpdateRequest.getEntry());
-            } else {
-                entry = journalEntryParser.createJournalEntry(serializedUpdateRequest.getEntry());
-            }
-            entry.setPartition(serializedUpdateRequest.getPartition());
-            entry.setBatchSize(serializedUpdateRequest.getBatchSize());
-            entry.setTerm(currentTerm);
 
+                if (request.getTransactionId() != null) {
+                    entry = journalTransactionManager.wrapTransactionalEntry(entry, request.getTransactionId(), journalEntryParser);
+                }
+                journalEntries.add(entry);
+                bytes += entry.getLength();
+            }
+        } catch (Throwable t) {
+            logger.warn("Invalid update request: {}!", request, t);
+            journalEntries.subList(size, journalEntries.size()).clear();
+            rr.getResponseFuture().getResponseFuture().complete(new UpdateClusterStateResponse(t));
+            return -1L;
+        }
+        requests.add(rr);
+        return bytes;
+    }
 
-            if (request.getTransactionId() != null) {
-                entry = journalTransactionManager.wrapTransactionalEntry(entry, request.getTransactionId(), journalEntryParser);
+    /**
+     * 一次写入一批请求的所有entry，批量注册回调，然后唤醒复制线程和刷盘线程。
+     * 写入完成后清空requests和journalEntries。
+     */
+    private void appendBatch(List<UpdateStateRequestResponse> requests, List<JournalEntry> journalEntries) throws InterruptedException {
+        if (journalEntries.isEmpty()) {
+            requests.clear();
+            return;
+        }
+        try {
+            appendJournalMetric.start();
+            List<Long> indices;
+            try {
+                indices = journal.append(journalEntries);
+            } catch (Throwable t) {
+                for (UpdateStateRequestResponse rr : requests) {
+                    rr.getResponseFuture().getResponseFuture().complete(new UpdateClusterStateResponse(t));
+                }
+                throw t;
+            }
+            int i = 0, registered = 0;
+            try {
+                for (UpdateStateRequestResponse rr : requests) {
+                    UpdateClusterStateRequest request = rr.getRequest();
+                    for (int j = 0; j < request.getRequests().size(); j++) {
+                        setCallback(request.getResponseConfig(), rr.getResponseFuture(), indices.get(i++));
+                    }
+                    registered++;
+                }
+            } catch (Throwable t) {
+                // 日志已经写入，注册回调失败（例如停止时被中断）时，需要把callbackBarrier推进到这批日志的末尾，
+                // 否则回调线程和状态机线程会一直等待，没注册完回调的请求直接返回失败。
+                callbackBarrier.set(indices.get(indices.size() - 1));
+                for (UpdateStateRequestResponse rr : requests.subList(registered, requests.size())) {
+                    rr.getResponseFuture().getResponseFuture().complete(new UpdateClusterStateResponse(t));
+                }
+                throw t;
             }
-            journalEntries.add(entry);
+            wakeupReplicationThreads();
+            threads.wakeupThread(threadName(FLUSH_JOURNAL_THREAD));
+            appendJournalMetric.end(() -> journalEntries.stream().mapToLong(JournalEntry::getLength).sum());
+        } finally {
+            requests.clear();
+            journalEntries.clear();
         }
-        appendAndCallback(journalEntries, request.getResponseConfig(), responseFuture);
-        wakeupReplicationThreads();
-        threads.wakeupThread(threadName(FLUSH_JOURNAL_THREAD));
-        appendJournalMetric.end(() -> journalEntries.stream().mapToLong(JournalEntry::getLength).sum());
     }
 
     private void wakeupReplicationThreads() {
@@ -302,18 +469,6 @@ class Leader extends ServerStateMachine implements StateServer {
         }
     }
 
-    private void appendAndCallback(List<JournalEntry> journalEntries, ResponseConfig responseConfig, ResponseFuture responseFuture) throws InterruptedException {
-        if (journalEntries.size() == 1) {
-            long offset = journal.append(journalEntries.get(0));
-            setCallback(responseConfig, responseFuture, offset);
-        } else {
-            List<Long> offsets = journal.append(journalEntries);
-            for (Long offset : offsets) {
-                setCallback(responseConfig, responseFuture, offset);
-            }
-        }
-    }
-
     private void setCallback(ResponseConfig responseConfig, ResponseFuture responseFuture, long offset) throws InterruptedException {
         if (responseConfig == ResponseConfig.REPLICATION) {
             replicationCallbacks.put(new Callback(offset, responseFuture));
@@ -323,6 +478,8 @@ class Leader extends ServerStateMachine implements StateServer {
             replicationCallbacks.put(new Callback(offset, responseFuture));
             flushCallbacks.put(new Callback(offset, responseFuture));
         }
+        // 回调队列满时put会等待回调线程消费，所以每注册一个回调就推进callbackBarrier，
+        // 不能等到整批注册完成，否则回调线程无法越过callbackBarrier消费回调。
         callbackBarrier.set(offset);
     }
 
@@ -425,38 +582,83 @@ class Leader extends ServerStateMachine implements StateServer {
         }
     }
 
+    /**
+     * 给FOLLOWER安装快照，在{@link #snapshotInstallExecutor}中执行。
+     * 同时最多发送{@link #snapshotInstallWindowSize}个分片，
+     * 第一个分片和最后一个分片需要等之前的分片都确认之后单独发送：
+     * 第一个分片在FOLLOWER上开始一次新的安装，最后一个分片触发FOLLOWER加载快照。
+     * 安装中断后，下次安装同一个快照时从FOLLOWER已经确认的位置继续发送。
+     * @param follower FOLLOWER
+     * @param snapshot 需要安装的快照
+     */
     private void installSnapshot(ReplicationDestination follower, JournalKeeperState snapshot) {
-
         try {
-            logger.info("Install snapshot to {} ...", follower.getUri());
             ServerRpc rpc = serverRpcProvider.getServerRpc(follower.getUri()).get(heartbeatIntervalMs, TimeUnit.MILLISECONDS);
-            int offset = 0;
             ReplicableIterator iterator = snapshot.iterator();
+            long resumeOffset = follower.getSnapshotInstallOffset(snapshot.lastIncludedIndex());
+            while (iterator.hasMoreTrunks() && iterator.offset() < resumeOffset) {
+                iterator.skipTrunk();
+            }
+            if (iterator.offset() != resumeOffset || !iterator.hasMoreTrunks()) {
+                // 分片边界发生了变化，从头开始安装
+                iterator = snapshot.iterator();
+            }
+            logger.info("Install snapshot to {}, lastIncludedIndex: {}, offset: {}...",
+                    follower.getUri(), snapshot.lastIncludedIndex(), iterator.offset());
+
+            Deque<InflightTrunk> inflightTrunks = new ArrayDeque<>(snapshotInstallWindowSize);
             while (iterator.hasMoreTrunks()) {
+                long offset = iterator.offset();
                 byte[] trunk = iterator.nextTrunk();
+                boolean isDone = !iterator.hasMoreTrunks();
+                boolean isExclusive = offset == 0 || isDone;
+                if (isExclusive) {
+                    waitForInstallSnapshotResponses(follower, snapshot, inflightTrunks, 0);
+                }
                 InstallSnapshotRequest request = new InstallSnapshotRequest(
                         currentTerm, serverUri, snapshot.lastIncludedIndex(), snapshot.lastIncludedTerm(),
-                        offset, trunk, !iterator.hasMoreTrunks()
+                        offset, trunk, isDone
                 );
-                InstallSnapshotResponse response = rpc.installSnapshot(request).get();
-                if (!response.success()) {
-                    logger.warn("Install snapshot to {} failed! Cause: {}.", follower.getUri(), response.errorString());
-                    return;
-                }
-                offset += trunk.length;
+                inflightTrunks.addLast(new InflightTrunk(offset + trunk.length, rpc.installSnapshot(request)));
+                waitForInstallSnapshotResponses(follower, snapshot, inflightTrunks,
+                        isExclusive ? 0 : snapshotInstallWindowSize - 1);
             }
             logger.info("Install snapshot to {} success!", follower.getUri());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
         } catch (Throwable t) {
             logger.warn("Install snapshot to {} failed!", follower.getUri(), t);
+            throw new CompletionException(t);
+        }
+    }
+
+    /**
+     * 按照发送顺序等待分片的响应，直到在途的分片数不超过maxInflightTrunks。
+     */
+    private void waitForInstallSnapshotResponses(ReplicationDestination follower, JournalKeeperState snapshot,
+                                                 Deque<InflightTrunk> inflightTrunks, int maxInflightTrunks)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        while (inflightTrunks.size() > Math.max(0, maxInflightTrunks)) {
+            InflightTrunk inflightTrunk = inflightTrunks.pollFirst();
+            InstallSnapshotResponse response = inflightTrunk.getResponseFuture().get(rpcTimeoutMs, TimeUnit.MILLISECONDS);
+            if (!response.success()) {
+                if (response.getStatusCode() == StatusCode.EXCEPTION) {
+                    // FOLLOWER拒绝了这个分片，下次需要从头开始安装
+                    follower.setSnapshotInstallOffset(snapshot.lastIncludedIndex(), 0L);
+                }
+                throw new InstallSnapshotException(response.errorString());
+            }
+            follower.setSnapshotInstallOffset(snapshot.lastIncludedIndex(), inflightTrunk.getEndOffset());
         }
     }
 
     private void callback() {
         long callbackIndex = journalFlushIndex.get();
-        if (callbackIndex > callbackBarrier.get()) {
-            flushCallbacks.callbackBefore(callbackBarrier.get());
-        }
-        while (callbackIndex > callbackBarrier.get()) {
+        long barrier;
+        // 批量写入时，写入线程在回调队列满时会等待，这里需要边等边消费已经注册的回调
+        while (callbackIndex > (barrier = callbackBarrier.get())) {
+            flushCallbacks.callbackBefore(barrier);
             Thread.yield();
         }
         flushCallbacks.callbackBefore(callbackIndex);
@@ -482,7 +684,12 @@ class Leader extends ServerStateMachine implements StateServer {
                 throw new IllegalStateException("Server disabled temporarily.");
             }
 
-            pendingUpdateStateRequests.put(requestResponse);
+            if (!pendingUpdateStateRequests.put(requestResponse)) {
+                rejectedUpdateStateRequests.incrementAndGet();
+                updateClusterStateRejectedMetric.mark();
+                throw new ServerBusyException(String.format("Too many pending update requests, capacity: %d, retry after %d ms.",
+                        pendingUpdateStateRequests.capacity(), heartbeatIntervalMs), heartbeatIntervalMs);
+            }
             if (request.getResponseConfig() == ResponseConfig.RECEIVE) {
                 requestResponse.getResponseFuture().getResponseFuture().complete(new UpdateClusterStateResponse());
             }
@@ -516,8 +723,11 @@ class Leader extends ServerStateMachine implements StateServer {
                         metricProvider.getMetric(MetricNames.compose(METRIC_APPEND_ENTRIES_RPC, follower.getUri()))));
         this.appendJournalMetric = metricProvider.getMetric(MetricNames.METRIC_APPEND_JOURNAL);
         this.updateClusterStateMetric = metricProvider.getMetric(MetricNames.METRIC_UPDATE_CLUSTER_STATE);
+        this.updateClusterStateRejectedMetric = metricProvider.getMetric(MetricNames.METRIC_UPDATE_CLUSTER_STATE_REJECTED);
 
 
+        this.snapshotInstallExecutor = Executors.newCachedThreadPool(
+                new NamedThreadFactory(threadName(LEADER_INSTALL_SNAPSHOT_THREAD), true));
         this.threads.createThread(buildLeaderAppendJournalEntryThread());
         this.threads.createThread(buildLeaderReplicationResponseThread());
         this.threads.createThread(buildCallbackThread());
@@ -541,11 +751,9 @@ class Leader extends ServerStateMachine implements StateServer {
         // Leader announcement
         try {
             byte[] payload = InternalEntriesSerializeSupport.serialize(new LeaderAnnouncementEntry(currentTerm, serverUri));
-            JournalEntry journalEntry = journalEntryParser.createJournalEntry(payload);
-            journalEntry.setTerm(currentTerm);
-            journalEntry.setPartition(INTERNAL_PARTITION);
-            appendAndCallback(Collections.singletonList(journalEntry), null, null);
-        } catch (InterruptedException e) {
+            JournalEntry journalEntry = journalEntryParser.createJournalEntry(payload, INTERNAL_PARTITION, 0, currentTerm);
+            callbackBarrier.set(journal.append(journalEntry));
+        } catch (Throwable e) {
             logger.warn("Exception: ", e);
         }
     }
@@ -579,9 +787,11 @@ class Leader extends ServerStateMachine implements StateServer {
         journalTransactionManager.stop();
         this.threads.stopThread(threadName(LEADER_APPEND_ENTRY_THREAD));
         this.followers.forEach(ReplicationDestination::stop);
+        this.snapshotInstallExecutor.shutdownNow();
 
         this.threads.stopThread(threadName(LEADER_CALLBACK_THREAD));
         failAllPendingCallbacks();
+        failAllReadIndexRequests();
         this.threads.stopThread(threadName(LEADER_COMMIT_THREAD));
         this.threads.removeThread(threadName(LEADER_APPEND_ENTRY_THREAD));
         this.threads.removeThread(threadName(LEADER_CALLBACK_THREAD));
@@ -589,12 +799,13 @@ class Leader extends ServerStateMachine implements StateServer {
         removeAppendEntriesRpcMetrics();
         metricProvider.removeMetric(MetricNames.METRIC_APPEND_JOURNAL);
         metricProvider.removeMetric(MetricNames.METRIC_UPDATE_CLUSTER_STATE);
+        metricProvider.removeMetric(MetricNames.METRIC_UPDATE_CLUSTER_STATE_REJECTED);
         super.doStop();
 
     }
 
     private void mayBeWaitingForAppendJournals() {
-        while (!pendingUpdateStateRequests.isEmpty()) {
+        while (!pendingUpdateStateRequests.empty()) {
             try {
                 Thread.sleep(50L);
             } catch (InterruptedException e) {
@@ -615,6 +826,10 @@ class Leader extends ServerStateMachine implements StateServer {
                 metricProvider.removeMetric(MetricNames.compose(METRIC_APPEND_ENTRIES_RPC, followerUri)));
     }
 
+    boolean hasPendingFlushCallbacks() {
+        return !flushCallbacks.empty();
+    }
+
     void callback(long lastApplied, byte[] result) {
         while (lastApplied > callbackBarrier.get()) {
             Thread.yield();
@@ -622,9 +837,9 @@ class Leader extends ServerStateMachine implements StateServer {
         replicationCallbacks.callback(lastApplied, result);
     }
 
-    void onJournalFlushed() {
+    void onJournalFlushed(long flushIndex) {
 
-        journalFlushIndex.set(journal.maxIndex());
+        journalFlushIndex.set(flushIndex);
         if (serverState() == ServerState.RUNNING) {
             threads.wakeupThread(threadName(LEADER_APPEND_ENTRY_THREAD));
             threads.wakeupThread(threadName(LEADER_CALLBACK_THREAD));
@@ -633,55 +848,121 @@ class Leader extends ServerStateMachine implements StateServer {
     }
 
     /**
-     * 异步检测Leader有效性，成功返回null，失败抛出异常。
+     * LEADER有效性检查
+     * 只读的操作可以直接处理而不需要记录日志。
+     * 但是，在不增加任何限制的情况下，这么做可能会冒着返回过期数据的风险，因为LEADER响应客户端请求时可能已经被新的LEADER废除了，
+     * 但是它还不知道。LEADER在处理只读的请求之前必须检查自己是否已经被废除了。
+     * <p>
+     * JournalKeeper采用ReadIndex的方式：返回一个读取位置readIndex，调用方等待状态机执行到readIndex之后再读取状态。
+     * 1. 如果开启了租约读并且租约有效，直接返回当前的commitIndex；
+     * 2. 否则将请求加入队列，通知所有复制线程立即发送一次心跳，当超过半数的FOLLOWER成功响应了在请求注册之后发出的心跳（或复制请求），
+     *    说明注册请求时LEADER依然有效，返回当前的commitIndex。一轮心跳可以确认这轮心跳发出之前注册的所有请求，
+     *    并发的只读请求共用一轮心跳。
+     * 超过rpc超时时间仍未确认时，抛出NotLeaderException。
+     * <p>
+     * 租约：FOLLOWER在收到心跳之后的一个最小选举超时内会拒绝投票，
+     * 所以从超过半数的FOLLOWER成功响应的心跳的发送时刻开始，一个租约时长（最小选举超时减去时钟漂移）之内不会产生新的LEADER。
+     * @return 读取位置readIndex
      */
-    CompletableFuture<Void> waitLeadership() {
-        return waitLeadership(System.currentTimeMillis() + rpcTimeoutMs);
+    CompletableFuture<Long> readIndex() {
+        if (isLeaderAnnouncementApplied.get() && (followers.isEmpty() || isLeaseValid(System.nanoTime()))) {
+            return CompletableFuture.completedFuture(journal.commitIndex());
+        }
+        ReadIndexRequest request;
+        synchronized (pendingReadIndexRequests) {
+            // 在锁内获取时间戳，保证队列中的请求按照注册时间排序
+            request = new ReadIndexRequest(System.nanoTime());
+            pendingReadIndexRequests.addLast(request);
+        }
+        long registerNanos = request.getRegisterNanos();
+        heartbeatRequestNanos.accumulateAndGet(registerNanos, (current, given) -> given - current > 0 ? given : current);
+        wakeupReplicationThreads();
+        return request.getFuture();
     }
 
-    private CompletableFuture<Void> waitLeadership(long deadLineTimestamp) {
-        if (System.currentTimeMillis() > deadLineTimestamp) {
-            CompletableFuture<Void> future = new CompletableFuture<>();
-            future.completeExceptionally(new NotLeaderException(null));
-            return future;
-        } else if (checkLeadership()) {
-            return CompletableFuture.completedFuture(null);
-        } else {
-            return Async.scheduleAsync(scheduledExecutor, () -> waitLeadership(deadLineTimestamp), heartbeatIntervalMs / 10, TimeUnit.MILLISECONDS);
+    private boolean isLeaseValid(long now) {
+        if (leaseDurationNs <= 0) {
+            return false;
+        }
+        // 推荐Leader发起的投票不受选举超时的限制，这时租约不再可靠
+        URI preferredLeader = state.getPreferredLeader();
+        if (null != preferredLeader && !preferredLeader.equals(serverUri)) {
+            return false;
         }
+        long ackNanos = quorumAckedRequestNanos();
+        return ackNanos != NOT_ACKED && now - ackNanos < leaseDurationNs;
     }
 
     /**
-     * LEADER有效性检查
-     * 只读的操作可以直接处理而不需要记录日志。
-     * 但是，在不增加任何限制的情况下，这么做可能会冒着返回过期数据的风险，因为LEADER响应客户端请求时可能已经被新的LEADER废除了，
-     * 但是它还不知道。LEADER在处理只读的请求之前必须检查自己是否已经被废除了。RAFT中通过让领导人在响应只读请求之前，
-     * 先和集群中的大多数节点交换一次心跳信息来处理这个问题。考虑到和每次只读都进行一轮心跳交换时延较高，
-     * JournalKeeper采用一种近似的有效性检查。LEADER记录每个FOLLOWER最近返回的心跳成功响应时间戳，每次处理只读请求之前，检查这些时间戳，
-     * 如果半数以上的时间戳距离当前时间的差值不大于平均心跳间隔，则认为LEADER当前有效，
-     * 否则反复重新检查（这段时间有可能会有新的心跳响应回来更新上次心跳时间），直到成功或者超时。
+     * 确认所有注册时间不晚于半数以上FOLLOWER成功响应的请求发送时间的ReadIndex请求，并让超时的请求失败。
      */
-    private boolean checkLeadership() {
-        if (!isLeaderAnnouncementApplied.get()) {
-            return false;
+    private void checkReadIndexRequests() {
+        List<ReadIndexRequest> confirmed = null;
+        List<ReadIndexRequest> expired = null;
+        synchronized (pendingReadIndexRequests) {
+            if (pendingReadIndexRequests.isEmpty()) {
+                return;
+            }
+            long ackNanos = isLeaderAnnouncementApplied.get() ? quorumAckedRequestNanos() : NOT_ACKED;
+            ReadIndexRequest request;
+            while (ackNanos != NOT_ACKED && (request = pendingReadIndexRequests.peekFirst()) != null &&
+                    ackNanos - request.getRegisterNanos() >= 0) {
+                if (null == confirmed) confirmed = new ArrayList<>();
+                confirmed.add(pendingReadIndexRequests.pollFirst());
+            }
+            long now = System.nanoTime();
+            while ((request = pendingReadIndexRequests.peekFirst()) != null &&
+                    now - request.getRegisterNanos() > TimeUnit.MILLISECONDS.toNanos(rpcTimeoutMs)) {
+                if (null == expired) expired = new ArrayList<>();
+                expired.add(pendingReadIndexRequests.pollFirst());
+            }
         }
+        if (null != confirmed) {
+            long readIndex = journal.commitIndex();
+            confirmed.forEach(request -> request.getFuture().complete(readIndex));
+        }
+        if (null != expired) {
+            expired.forEach(request -> request.getFuture().completeExceptionally(new NotLeaderException(null)));
+        }
+    }
 
-        if (followers.isEmpty()) {
-            return true;
+    private void failAllReadIndexRequests() {
+        List<ReadIndexRequest> requests;
+        synchronized (pendingReadIndexRequests) {
+            requests = new ArrayList<>(pendingReadIndexRequests);
+            pendingReadIndexRequests.clear();
         }
+        requests.forEach(request -> request.getFuture().completeExceptionally(new NotLeaderException(null)));
+    }
 
-        if (System.currentTimeMillis() <= leaderShipDeadLineMs.get()) {
-            return true;
+    /**
+     * 超过半数的FOLLOWER已经成功响应的请求的最晚发送时间，
+     * 联合共识状态下，需要新旧配置中都有超过半数的FOLLOWER成功响应。
+     * @return 请求发送时间（System.nanoTime()），如果还没有超过半数的FOLLOWER成功响应，返回NOT_ACKED。
+     */
+    private long quorumAckedRequestNanos() {
+        ConfigState configState = state.getConfigState();
+        if (configState.isJointConsensus()) {
+            long ackNanosInOldConfig = quorumAckedRequestNanos(followers.stream()
+                    .filter(follower -> configState.getConfigOld().contains(follower.getUri())));
+            long ackNanosInNewConfig = quorumAckedRequestNanos(followers.stream()
+                    .filter(follower -> configState.getConfigNew().contains(follower.getUri())));
+            if (ackNanosInOldConfig == NOT_ACKED || ackNanosInNewConfig == NOT_ACKED) {
+                return NOT_ACKED;
+            }
+            return ackNanosInOldConfig - ackNanosInNewConfig < 0 ? ackNanosInOldConfig : ackNanosInNewConfig;
         } else {
-            // 重新计算leaderShipDeadLineMs
-
-            long[] sortedHeartbeatResponseTimes = followers.stream().mapToLong(ReplicationDestination::getLastHeartbeatResponseTime)
-                    .sorted().toArray();
+            return quorumAckedRequestNanos(followers.stream());
+        }
+    }
 
-            leaderShipDeadLineMs.set(
-                    (sortedHeartbeatResponseTimes[sortedHeartbeatResponseTimes.length / 2]) + heartbeatIntervalMs);
-            return System.currentTimeMillis() <= leaderShipDeadLineMs.get();
+    private long quorumAckedRequestNanos(Stream<ReplicationDestination> destinations) {
+        long[] sortedAckNanos = destinations.mapToLong(ReplicationDestination::getLastAckedRequestNanos)
+                .sorted().toArray();
+        if (sortedAckNanos.length == 0) {
+            return System.nanoTime();
         }
+        return sortedAckNanos[sortedAckNanos.length / 2];
     }
 
     CompletableFuture<JournalKeeperTransactionContext> createTransaction(Map<String, String> context) {
@@ -701,6 +982,11 @@ class Leader extends ServerStateMachine implements StateServer {
         return pendingUpdateStateRequests.size();
     }
 
+    // for monitor only
+    long getRejectedRequests() {
+        return rejectedUpdateStateRequests.get();
+    }
+
     boolean isWriteEnabled() {
         return writeEnabled.get();
     }
@@ -772,14 +1058,53 @@ class Leader extends ServerStateMachine implements StateServer {
          */
         private long lastHeartbeatResponseTime;
         private long lastHeartbeatRequestTime = 0L;
+        /**
+         * 上次发送请求的时间（System.nanoTime()），只在复制线程中访问
+         */
+        private long lastRequestNanos = System.nanoTime();
+        /**
+         * 上次发送给FOLLOWER的commitIndex，只在复制线程中访问
+         */
+        private long lastSentCommitIndex = 0L;
+        /**
+         * FOLLOWER成功响应的请求中，最晚的发送时间（System.nanoTime()），用于确认LEADER身份
+         */
+        private volatile long lastAckedRequestNanos = NOT_ACKED;
 
         private final String replicationThreadName;
         private final JMetric metric;
 
+        /**
+         * 流水线模式下，下一个需要发送的日志条目的索引，总是大于等于nextIndex
+         */
+        private long sendIndex;
+        /**
+         * 流水线模式下，已经发送但还没有处理响应的复制请求，按照发送顺序排列，只在复制线程中访问
+         */
+        private final Deque<InflightRequest> inflightRequests = new ArrayDeque<>();
+        /**
+         * 流水线模式下，这一轮在途请求中FOLLOWER成功响应确认的日志位置，丢弃在途请求时重置，只在复制线程中访问
+         */
+        private long inflightMatchIndex = -1L;
+        /**
+         * 正在进行的快照安装，完成时返回安装的快照对应的日志位置，只在复制线程中访问
+         */
+        private CompletableFuture<Long> installSnapshotFuture = null;
+        /**
+         * 最近一次成功安装的快照对应的日志位置，只在复制线程中访问
+         */
+        private long installedSnapshotIndex = -1L;
+        /**
+         * 断点续传：上次安装的快照的lastIncludedIndex和FOLLOWER已经确认的偏移量
+         */
+        private volatile long snapshotInstallIndex = -1L;
+        private volatile long snapshotInstallOffset = 0L;
+
 
         ReplicationDestination(URI uri, long nextIndex) {
             this.uri = uri;
             this.nextIndex = nextIndex;
+            this.sendIndex = nextIndex;
             this.lastHeartbeatResponseTime = 0L;
             replicationThreadName = LEADER_REPLICATION_THREAD + "-" + serverUri +  "->" + uri;
             metric = Leader.this.appendEntriesRpcMetricMap.get(uri);
@@ -810,33 +1135,54 @@ class Leader extends ServerStateMachine implements StateServer {
         }
 
         private void replication() {
+            if (replicationWindowSize > 1) {
+                pipelinedReplication();
+            } else {
+                stopAndWaitReplication();
+            }
+        }
+
+        /**
+         * 停等模式：每次只发送一个复制请求，收到响应后再发送下一个。
+         */
+        private void stopAndWaitReplication() {
             long maxIndex;
             while (serverState() == ServerState.RUNNING &&
                     !Thread.currentThread().isInterrupted() &&
                     (nextIndex < (maxIndex = journal.maxIndex()) // 还有需要复制的数据
                     ||
-                    System.currentTimeMillis() - lastHeartbeatRequestTime >= heartbeatIntervalMs) // 距离上次复制/心跳已经超过一个心跳超时了
+                    System.currentTimeMillis() - lastHeartbeatRequestTime >= heartbeatIntervalMs // 距离上次复制/心跳已经超过一个心跳超时了
+                    ||
+                    isReadIndexHeartbeatRequested() // 有等待确认LEADER身份的只读请求
+                    ||
+                    isCommitIndexBehind()) // FOLLOWER还不知道最新的commitIndex
             ) {
                 long start = metric == null ? 0L : System.nanoTime();
 
                 // 如果有必要，先安装第一个快照
                 Map.Entry<Long, JournalKeeperState> fistSnapShotEntry = snapshots.firstEntry();
-                maybeInstallSnapshotFirst(fistSnapShotEntry);
+                if (!maybeInstallSnapshotFirst(fistSnapShotEntry)) {
+                    break;
+                }
 
                 // 读取需要复制的Entry
-                List<byte[]> entries;
+                List<ByteBuffer> entries;
                 if (nextIndex < maxIndex) { // 复制
-                    entries = journal.readRaw(nextIndex, Leader.this.replicationBatchSize);
+                    entries = journal.readRawBuffers(nextIndex, Leader.this.replicationBatchSize);
                 } else { // 心跳
                     entries = Collections.emptyList();
                 }
 
                 // 构建请求并发送
+                long commitIndex = journal.commitIndex();
                 AsyncAppendEntriesRequest request =
-                        new AsyncAppendEntriesRequest(Leader.this.currentTerm, Leader.this.serverUri,
+                        AsyncAppendEntriesRequest.fromEntryBuffers(Leader.this.currentTerm, Leader.this.serverUri,
                                 nextIndex - 1, Leader.this.getPreLogTerm(nextIndex),
-                                entries, journal.commitIndex(), maxIndex);
+                                entries, commitIndex, maxIndex);
+                lastSentCommitIndex = commitIndex;
                 AsyncAppendEntriesResponse response = null;
+                long requestNanos = System.nanoTime();
+                lastRequestNanos = requestNanos;
                 try {
                     response = serverRpcProvider.getServerRpc(uri)
                             .thenCompose(serverRpc -> serverRpc.asyncAppendEntries(request)).get();
@@ -854,6 +1200,7 @@ class Leader extends ServerStateMachine implements StateServer {
                 // 处理返回的响应
                 if(null != response && response.success()) { // 成功收到响应响应
                     lastHeartbeatResponseTime = System.currentTimeMillis();
+                    onRequestAcked(requestNanos, response);
 
                     if (response.isSuccess()) { // 复制成功
                         if (entries.size() > 0) {
@@ -868,7 +1215,7 @@ class Leader extends ServerStateMachine implements StateServer {
                         nextIndex -= rollbackSize;
                     }
                     if (null != metric) {
-                        metric.mark(() -> System.nanoTime() - start, () -> request.getEntries().stream().mapToLong(e -> e.length).sum());
+                        metric.mark(() -> System.nanoTime() - start, request::getEntriesLength);
                     }
                 } else { // 没收到响应或者请求失败
                     // 等下一个心跳超时之后，再进入这个方法会自动重试
@@ -878,13 +1225,234 @@ class Leader extends ServerStateMachine implements StateServer {
             }
         }
 
-        private void maybeInstallSnapshotFirst(Map.Entry<Long, JournalKeeperState> fistSnapShotEntry) {
-            if (nextIndex <= fistSnapShotEntry.getKey()) {
-                installSnapshot(this, fistSnapShotEntry.getValue());
-                nextIndex = fistSnapShotEntry.getKey();
+        /**
+         * 流水线模式：不等待响应，乐观的推进sendIndex，连续发送复制请求，直到在途请求数达到replicationWindowSize。
+         * 由于FOLLOWER按照日志索引位置串行处理请求，在途请求按照发送顺序排列，
+         * 总是按顺序处理队首的响应，保证按照日志索引位置的顺序更新nextIndex和matchIndex：
+         * <p>
+         * 1. 队首响应成功，更新nextIndex和matchIndex，继续处理下一个响应；
+         * 2. 队首响应日志不匹配，丢弃所有在途请求，回退nextIndex，从nextIndex重新开始发送；
+         * 如果同一轮在途请求中前面的请求已经确认了这个位置，说明请求是乱序到达FOLLOWER的，不回退nextIndex；
+         * 3. 队首请求失败或者没有收到响应，丢弃所有在途请求，等下一个心跳超时之后从nextIndex开始重试。
+         */
+        private void pipelinedReplication() {
+            while (serverState() == ServerState.RUNNING && !Thread.currentThread().isInterrupted()) {
+
+                // 按照发送顺序处理已经收到的响应
+                if (!handleInflightResponses()) {
+                    break;
+                }
+
+                long maxIndex = journal.maxIndex();
+                boolean hasMoreEntries = sendIndex < maxIndex;
+                boolean isHeartbeatTimeout = (inflightRequests.isEmpty() &&
+                        (System.currentTimeMillis() - lastHeartbeatRequestTime >= heartbeatIntervalMs || isCommitIndexBehind())) ||
+                        isReadIndexHeartbeatRequested();
+                if (!hasMoreEntries && !isHeartbeatTimeout) {
+                    // 没有需要复制的数据，在途请求的响应返回时会唤醒复制线程
+                    break;
+                }
+
+                if (inflightRequests.size() >= replicationWindowSize) {
+                    // 窗口已满，等待队首的响应
+                    if (!waitForFirstInflightResponse()) {
+                        break;
+                    }
+                    continue;
+                }
+
+                if (inflightRequests.isEmpty()) {
+                    // 如果有必要，先安装第一个快照
+                    if (!maybeInstallSnapshotFirst(snapshots.firstEntry())) {
+                        break;
+                    }
+                    sendIndex = nextIndex;
+                    hasMoreEntries = sendIndex < maxIndex;
+                }
+
+                // 读取需要复制的Entry
+                List<ByteBuffer> entries = hasMoreEntries ?
+                        journal.readRawBuffers(sendIndex, Leader.this.replicationBatchSize) : Collections.emptyList();
+
+                // 构建请求并异步发送
+                long commitIndex = journal.commitIndex();
+                AsyncAppendEntriesRequest request =
+                        AsyncAppendEntriesRequest.fromEntryBuffers(Leader.this.currentTerm, Leader.this.serverUri,
+                                sendIndex - 1, Leader.this.getPreLogTerm(sendIndex),
+                                entries, commitIndex, maxIndex);
+                lastSentCommitIndex = commitIndex;
+                InflightRequest inflightRequest = new InflightRequest(request);
+                inflightRequests.addLast(inflightRequest);
+                sendIndex += entries.size();
+                lastHeartbeatRequestTime = System.currentTimeMillis();
+                lastRequestNanos = inflightRequest.getStart();
+
+                serverRpcProvider.getServerRpc(uri)
+                        .thenCompose(serverRpc -> serverRpc.asyncAppendEntries(request))
+                        .whenComplete((response, throwable) -> {
+                            inflightRequest.getResponseFuture().complete(throwable == null ? response : new AsyncAppendEntriesResponse(throwable));
+                            wakeupReplicationThread();
+                        });
+            }
+        }
+
+        /**
+         * 按照发送顺序处理所有已经收到的响应，直到遇到一个还没有收到响应的请求。
+         * @return 复制失败需要等待下一个心跳超时之后重试时返回false，否则返回true。
+         */
+        private boolean handleInflightResponses() {
+            InflightRequest inflightRequest;
+            while ((inflightRequest = inflightRequests.peekFirst()) != null && inflightRequest.getResponseFuture().isDone()) {
+                inflightRequests.pollFirst();
+                if (!handleInflightResponse(inflightRequest, inflightRequest.getResponseFuture().getNow(null))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean waitForFirstInflightResponse() {
+            InflightRequest inflightRequest = inflightRequests.pollFirst();
+            if (null == inflightRequest) {
+                return true;
+            }
+            AsyncAppendEntriesResponse response = null;
+            try {
+                response = inflightRequest.getResponseFuture().get(rpcTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                logger.warn("Replication was interrupted, from {} to {}.", Leader.this.serverUri, uri);
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                logger.warn("Replication execution exception, from {} to {}, cause: {}.", Leader.this.serverUri, uri, e.getMessage());
+            }
+            return handleInflightResponse(inflightRequest, response);
+        }
+
+        private boolean handleInflightResponse(InflightRequest inflightRequest, AsyncAppendEntriesResponse response) {
+            AsyncAppendEntriesRequest request = inflightRequest.getRequest();
+            if (null == response || !response.success()) { // 没收到响应或者请求失败
+                if (null != response) {
+                    logger.warn("Replication failed, from {} to {}, cause: {}.", Leader.this.serverUri, uri, response.errorString());
+                }
+                // 丢弃所有在途请求，等下一个心跳超时之后，从nextIndex开始重试
+                resetInflightRequests();
+                return false;
+            }
+
+            lastHeartbeatResponseTime = System.currentTimeMillis();
+            onRequestAcked(inflightRequest.getStart(), response);
+            if (request.getPrevLogIndex() + 1 != nextIndex) {
+                // 在途请求与nextIndex不连续，丢弃所有在途请求，从nextIndex重新开始发送
+                resetInflightRequests();
+                return true;
+            }
+            if (response.isSuccess()) { // 复制成功
+                if (request.getEntryCount() > 0) {
+                    nextIndex += request.getEntryCount();
+                    matchIndex = nextIndex;
+                    inflightMatchIndex = nextIndex;
+                    isAnyFollowerNextIndexUpdated.compareAndSet(false, true);
+                    Leader.this.threads.wakeupThread(Leader.this.threadName(LEADER_COMMIT_THREAD));
+                }
+            } else if (request.getPrevLogIndex() + 1 == inflightMatchIndex) {
+                // 同一轮在途请求中，前面的请求已经确认FOLLOWER上有prevLogIndex位置的日志，
+                // 这个请求是乱序先于前面的请求到达FOLLOWER才被拒绝的，不回退nextIndex，丢弃所有在途请求，从nextIndex重新发送
+                resetInflightRequests();
+            } else {
+                // 不匹配，回退，丢弃所有在途请求
+                int rollbackSize = (int) Math.min(replicationBatchSize, nextIndex - snapshots.firstKey());
+                nextIndex -= rollbackSize;
+                resetInflightRequests();
+            }
+            if (null != metric) {
+                metric.mark(() -> System.nanoTime() - inflightRequest.getStart(), request::getEntriesLength);
+            }
+            return true;
+        }
+
+        /**
+         * LEADER提交之后，尽快把新的commitIndex通知给FOLLOWER，
+         * 避免FOLLOWER要等到下一次心跳才能执行新提交的日志，SEQUENTIAL读请求在FOLLOWER上等待的时间过长。
+         */
+        private boolean isCommitIndexBehind() {
+            return lastSentCommitIndex < journal.commitIndex();
+        }
+
+        private boolean isReadIndexHeartbeatRequested() {
+            return heartbeatRequestNanos.get() - lastRequestNanos > 0;
+        }
+
+        /**
+         * FOLLOWER用当前任期成功响应了请求，说明请求发送时LEADER依然有效
+         */
+        private void onRequestAcked(long requestNanos, AsyncAppendEntriesResponse response) {
+            if (response.getTerm() != currentTerm) {
+                return;
+            }
+            if (lastAckedRequestNanos == NOT_ACKED || requestNanos - lastAckedRequestNanos > 0) {
+                lastAckedRequestNanos = requestNanos;
+            }
+            checkReadIndexRequests();
+        }
+
+        private void resetInflightRequests() {
+            inflightRequests.clear();
+            inflightMatchIndex = -1L;
+            sendIndex = nextIndex;
+        }
+
+        private void wakeupReplicationThread() {
+            try {
+                Leader.this.threads.wakeupThread(replicationThreadName);
+            } catch (NoSuchElementException ignored) {
+                // 复制线程已经停止
             }
         }
 
+        /**
+         * 如果FOLLOWER需要的日志已经被删除，先给FOLLOWER安装第一个快照。
+         * 快照在{@link #snapshotInstallExecutor}中异步安装，安装完成之后唤醒复制线程。
+         * @return 不需要安装快照或者快照已经安装完成时返回true，需要等待快照安装完成时返回false。
+         */
+        private boolean maybeInstallSnapshotFirst(Map.Entry<Long, JournalKeeperState> fistSnapShotEntry) {
+            if (null == installSnapshotFuture) {
+                if (nextIndex > fistSnapShotEntry.getKey() ||
+                        (nextIndex == fistSnapShotEntry.getKey() && installedSnapshotIndex == nextIndex)) {
+                    return true;
+                }
+                long snapshotIndex = fistSnapShotEntry.getKey();
+                JournalKeeperState snapshot = fistSnapShotEntry.getValue();
+                installSnapshotFuture = CompletableFuture.supplyAsync(() -> {
+                    installSnapshot(this, snapshot);
+                    return snapshotIndex;
+                }, snapshotInstallExecutor);
+                installSnapshotFuture.whenComplete((index, throwable) -> wakeupReplicationThread());
+                return false;
+            }
+
+            if (!installSnapshotFuture.isDone()) {
+                return false;
+            }
+            CompletableFuture<Long> future = installSnapshotFuture;
+            installSnapshotFuture = null;
+            if (future.isCompletedExceptionally()) {
+                // 等下一个心跳超时之后，再进入这个方法会自动重试
+                return false;
+            }
+            nextIndex = future.join();
+            installedSnapshotIndex = nextIndex;
+            return true;
+        }
+
+        long getSnapshotInstallOffset(long lastIncludedIndex) {
+            return snapshotInstallIndex == lastIncludedIndex ? snapshotInstallOffset : 0L;
+        }
+
+        void setSnapshotInstallOffset(long lastIncludedIndex, long offset) {
+            snapshotInstallOffset = offset;
+            snapshotInstallIndex = lastIncludedIndex;
+        }
+
         URI getUri() {
             return uri;
         }
@@ -905,6 +1473,10 @@ class Leader extends ServerStateMachine implements StateServer {
             return lastHeartbeatRequestTime;
         }
 
+        long getLastAckedRequestNanos() {
+            return lastAckedRequestNanos;
+        }
+
         @Override
         public String toString() {
             return "{" +
@@ -915,5 +1487,65 @@ class Leader extends ServerStateMachine implements StateServer {
         }
     }
 
+    private static class InflightTrunk {
+        /**
+         * 分片的结束位置，也就是FOLLOWER确认这个分片之后，下次安装的开始位置
+         */
+        private final long endOffset;
+        private final CompletableFuture<InstallSnapshotResponse> responseFuture;
+
+        InflightTrunk(long endOffset, CompletableFuture<InstallSnapshotResponse> responseFuture) {
+            this.endOffset = endOffset;
+            this.responseFuture = responseFuture;
+        }
+
+        long getEndOffset() {
+            return endOffset;
+        }
+
+        CompletableFuture<InstallSnapshotResponse> getResponseFuture() {
+            return responseFuture;
+        }
+    }
+
+    private static class ReadIndexRequest {
+        private final long registerNanos;
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        ReadIndexRequest(long registerNanos) {
+            this.registerNanos = registerNanos;
+        }
+
+        long getRegisterNanos() {
+            return registerNanos;
+        }
+
+        CompletableFuture<Long> getFuture() {
+            return future;
+        }
+    }
+
+    private static class InflightRequest {
+        private final AsyncAppendEntriesRequest request;
+        private final CompletableFuture<AsyncAppendEntriesResponse> responseFuture = new CompletableFuture<>();
+        private final long start = System.nanoTime();
+
+        InflightRequest(AsyncAppendEntriesRequest request) {
+            this.request = request;
+        }
+
+        AsyncAppendEntriesRequest getRequest() {
+            return request;
+        }
+
+        CompletableFuture<AsyncAppendEntriesResponse> getResponseFuture() {
+            return responseFuture;
+        }
+
+        long getStart() {
+            return start;
+        }
+    }
+
 
 }
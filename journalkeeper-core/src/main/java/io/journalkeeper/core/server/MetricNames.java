@@ -21,6 +21,7 @@ import java.net.URI;
  */
 class MetricNames {
     final static String METRIC_UPDATE_CLUSTER_STATE = "UPDATE_CLUSTER_STATE";
+    final static String METRIC_UPDATE_CLUSTER_STATE_REJECTED = "UPDATE_CLUSTER_STATE_REJECTED";
     final static String METRIC_APPEND_JOURNAL = "APPEND_JOURNAL";
     final static String METRIC_APPEND_ENTRIES_RPC = "APPEND_ENTRIES_RPC";
     final static String METRIC_OBSERVER_REPLICATION = "OBSERVER_REPLICATION";
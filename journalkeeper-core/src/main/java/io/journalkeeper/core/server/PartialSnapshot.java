@@ -49,6 +49,9 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 /**
  *
@@ -60,6 +63,14 @@ class PartialSnapshot {
     private final Path partialSnapshotPath;
     private Path snapshotPath = null;
     private long offset = 0;
+    /**
+     * 最后一个分片的结束位置，还没有收到最后一个分片时为-1
+     */
+    private long endOffset = -1L;
+    /**
+     * 已经收到但是还不能写入的分片，key为分片的偏移量
+     */
+    private final NavigableMap<Long, byte[]> pendingTrunks = new TreeMap<>();
 
     PartialSnapshot(Path partialSnapshotPath) {
         this.partialSnapshotPath = partialSnapshotPath;
@@ -79,12 +90,18 @@ class PartialSnapshot {
      * 状态数据先被安装在{@link #partialSnapshotPath}中，当全部状态数据安装完成后，
      * 再复制到{@link #snapshotPath}中
      * 所有数据都复制完成后，将状态。
+     *
+     * LEADER会并发发送多个分片，分片到达的顺序可能和偏移量的顺序不一致：
+     * 偏移量大于当前位置的分片先缓存在内存中，等前面的分片都写入之后再按顺序写入；
+     * 偏移量小于当前位置的分片是重复发送的分片，直接忽略。
      * @param offset 快照偏移量
      * @param data 快照数据
+     * @param isDone 是否是最后一个分片
      * @param snapshotPath 安装路径
+     * @return 所有分片都已经写入时返回true，否则返回false
      * @throws IOException 发生IO异常时抛出
      */
-    void installTrunk(long offset, byte[] data, Path snapshotPath) throws IOException {
+    boolean installTrunk(long offset, byte[] data, boolean isDone, Path snapshotPath) throws IOException {
 
         if (offset == 0) {
             begin(snapshotPath);
@@ -101,14 +118,37 @@ class PartialSnapshot {
                 );
             }
 
-            if (offset != getOffset()) {
-                throw new InstallSnapshotException(
-                        String.format("Partial snapshot offset not match! Partial snapshot: %s, request offset: %d.", this, offset)
-                );
+            if (offset < getOffset()) {
+                logger.info("Ignore duplicate snapshot trunk, offset: {}, partial snapshot: {}.", offset, this);
+                return false;
             }
 
         }
 
+        if (isDone) {
+            endOffset = offset + data.length;
+        }
+
+        if (offset > getOffset()) {
+            pendingTrunks.put(offset, data);
+            return false;
+        }
+
+        writeTrunk(data);
+
+        // 按顺序写入已经缓存的后续分片
+        Map.Entry<Long, byte[]> entry;
+        while ((entry = pendingTrunks.firstEntry()) != null && entry.getKey() <= getOffset()) {
+            pendingTrunks.pollFirstEntry();
+            if (entry.getKey() == getOffset()) {
+                writeTrunk(entry.getValue());
+            }
+        }
+
+        return endOffset == getOffset();
+    }
+
+    private void writeTrunk(byte[] data) throws IOException {
         ByteBuffer buffer = ByteBuffer.wrap(data);
         int filenameLength = buffer.getInt();
         byte[] filenameBytes = new byte[filenameLength];
@@ -137,7 +177,6 @@ class PartialSnapshot {
                     )
             );
         }
-
     }
 
     void finish() throws IOException {
@@ -145,6 +184,8 @@ class PartialSnapshot {
         FileUtils.dump(partialSnapshotPath, snapshotPath);
         snapshotPath = null;
         offset = 0;
+        endOffset = -1L;
+        pendingTrunks.clear();
     }
 
     private void begin(Path path) throws IOException {
@@ -153,6 +194,8 @@ class PartialSnapshot {
         }
         this.snapshotPath = path;
         offset = 0;
+        endOffset = -1L;
+        pendingTrunks.clear();
 
         if (Files.exists(partialSnapshotPath)) {
             FileUtils.deleteFolder(partialSnapshotPath);
@@ -169,6 +212,7 @@ class PartialSnapshot {
         return "PartialSnapshot{" +
                 "path=" + snapshotPath +
                 ", offset=" + offset +
+                ", pendingTrunks=" + pendingTrunks.size() +
                 '}';
     }
 }
@@ -17,7 +17,9 @@ import io.journalkeeper.utils.buffer.LockFreeRingBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * @author LiYue
@@ -25,6 +27,7 @@ import java.util.concurrent.TimeoutException;
  */
 public class RingBufferBelt implements CallbackResultBelt {
     private static final Logger logger = LoggerFactory.getLogger(RingBufferBelt.class);
+    private static final long PUT_RETRY_INTERVAL_NS = TimeUnit.MICROSECONDS.toNanos(50L);
     private final long timeoutMs;
     private final LockFreeRingBuffer<Callback> buffer;
 
@@ -39,10 +42,19 @@ public class RingBufferBelt implements CallbackResultBelt {
         return buffer.full();
     }
 
+    @Override
+    public boolean empty() {
+        return buffer.empty();
+    }
+
     @Override
     public void put(Callback callback) throws InterruptedException {
+        // 写入请求在进入Leader时已经做了限流，这里只有单个请求的entry数量超过队列容量时才会等待
         while (!buffer.put(callback)) {
-            Thread.yield();
+            LockSupport.parkNanos(PUT_RETRY_INTERVAL_NS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
         }
     }
 
@@ -68,11 +68,15 @@ public class ServerMonitorInfoProvider implements MonitoredServer {
             NodeMonitorInfo nodeMonitorInfo = collectNodeMonitorInfo(abstractServer.getState().getConfigState());
             serverMonitorInfo.setNodes(nodeMonitorInfo);
             JournalMonitorInfo journalMonitorInfo = collectJournalMonitorInfo(abstractServer.getJournal(), abstractServer.getState());
+            journalMonitorInfo.setGroupCommits(abstractServer.getGroupCommits());
+            journalMonitorInfo.setGroupCommitEntries(abstractServer.getGroupCommitEntries());
             serverMonitorInfo.setJournal(journalMonitorInfo);
 
             DiskMonitorInfo diskMonitorInfo = collectDistMonitorInfo(abstractServer.getJournal().getJournalPersistence());
             serverMonitorInfo.setDisk(diskMonitorInfo);
 
+            serverMonitorInfo.setRpc(abstractServer.getServerRpcAccessPoint().collectMonitorInfo());
+
             if (server.roll() == RaftServer.Roll.VOTER) {
                 Voter voter = (Voter) abstractServer;
                 VoterMonitorInfo voterMonitorInfo = collectVoterMonitorInfo(voter);
@@ -133,6 +137,7 @@ public class ServerMonitorInfoProvider implements MonitoredServer {
             leaderMonitorInfo = new LeaderMonitorInfo();
             leaderMonitorInfo.setState(leader.serverState());
             leaderMonitorInfo.setRequestQueueSize(leader.getRequestQueueSize());
+            leaderMonitorInfo.setRejectedRequests(leader.getRejectedRequests());
             leaderMonitorInfo.setWriteEnabled(leader.isWriteEnabled());
             @SuppressWarnings("unchecked")
             List<Leader.ReplicationDestination> replicationDestinations = leader.getFollowers();
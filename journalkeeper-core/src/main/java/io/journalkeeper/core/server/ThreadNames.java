@@ -51,6 +51,10 @@ class ThreadNames {
      * Leader 提交线程
      */
     static final String LEADER_COMMIT_THREAD = "leaderCommitThread";
+    /**
+     * Leader 给FOLLOWER安装快照的线程
+     */
+    static final String LEADER_INSTALL_SNAPSHOT_THREAD = "LeaderInstallSnapshotThread";
 
     /**
      * Observer 从其它节点拉取消息线程
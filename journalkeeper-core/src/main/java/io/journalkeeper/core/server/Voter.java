@@ -151,12 +151,18 @@ class Voter extends AbstractServer implements CheckTermInterceptor {
     }
 
     @Override
-    protected void onJournalFlushed() {
+    protected void onJournalFlushed(long flushIndex) {
         if (null != leader) {
-            leader.onJournalFlushed();
+            leader.onJournalFlushed(flushIndex);
         }
     }
 
+    @Override
+    protected boolean hasPendingFlushCallbacks() {
+        Leader finalLeader = leader;
+        return null != finalLeader && finalLeader.hasPendingFlushCallbacks();
+    }
+
     private Config toConfig(Properties properties) {
         Config config = new Config();
         config.setElectionTimeoutMs(Long.parseLong(
@@ -184,14 +190,38 @@ class Voter extends AbstractServer implements CheckTermInterceptor {
                 properties.getProperty(
                         Config.REPLICATION_BATCH_SIZE_KEY,
                         String.valueOf(Config.DEFAULT_REPLICATION_BATCH_SIZE))));
+        config.setReplicationWindowSize(Integer.parseInt(
+                properties.getProperty(
+                        Config.REPLICATION_WINDOW_SIZE_KEY,
+                        String.valueOf(Config.DEFAULT_REPLICATION_WINDOW_SIZE))));
+        config.setSnapshotInstallWindowSize(Integer.parseInt(
+                properties.getProperty(
+                        Config.SNAPSHOT_INSTALL_WINDOW_SIZE_KEY,
+                        String.valueOf(Config.DEFAULT_SNAPSHOT_INSTALL_WINDOW_SIZE))));
         config.setCacheRequests(Integer.parseInt(
                 properties.getProperty(
                         Config.CACHE_REQUESTS_KEY,
                         String.valueOf(Config.DEFAULT_CACHE_REQUESTS))));
+        config.setAppendBatchSize(Integer.parseInt(
+                properties.getProperty(
+                        Config.APPEND_BATCH_SIZE_KEY,
+                        String.valueOf(Config.DEFAULT_APPEND_BATCH_SIZE))));
+        config.setAppendBatchBytes(Long.parseLong(
+                properties.getProperty(
+                        Config.APPEND_BATCH_BYTES_KEY,
+                        String.valueOf(Config.DEFAULT_APPEND_BATCH_BYTES))));
         config.setEnablePreVote(Boolean.parseBoolean(
                 properties.getProperty(
                         Config.ENABLE_PRE_VOTE_KEY,
                         String.valueOf(Config.DEFAULT_ENABLE_EVENTS))));
+        config.setEnableLeaseRead(Boolean.parseBoolean(
+                properties.getProperty(
+                        Config.ENABLE_LEASE_READ_KEY,
+                        String.valueOf(Config.DEFAULT_ENABLE_LEASE_READ))));
+        config.setLeaseClockDriftMs(Long.parseLong(
+                properties.getProperty(
+                        Config.LEASE_CLOCK_DRIFT_MS_KEY,
+                        String.valueOf(Config.DEFAULT_LEASE_CLOCK_DRIFT_MS))));
 
         config.setRpcTimeoutMs(Long.parseLong(
                 properties.getProperty(
@@ -403,9 +433,12 @@ class Voter extends AbstractServer implements CheckTermInterceptor {
             voterState.convertToLeader();
 
             this.leader = new Leader(journal, state, snapshots, currentTerm.get(),
-                    uri, config.getCacheRequests(), config.getHeartbeatIntervalMs(), config.getRpcTimeoutMs(),
-                    config.getReplicationBatchSize(),
-                    config.getSnapshotIntervalSec(), threads,
+                    uri, config.getCacheRequests(), config.getAppendBatchSize(), config.getAppendBatchBytes(),
+                    config.getHeartbeatIntervalMs(), config.getRpcTimeoutMs(),
+                    config.getReplicationBatchSize(), config.getReplicationWindowSize(), config.getSnapshotInstallWindowSize(),
+                    config.getSnapshotIntervalSec(),
+                    config.isEnableLeaseRead() ? config.getElectionTimeoutMs() - config.getLeaseClockDriftMs() : 0L,
+                    threads,
                     this, this, scheduledExecutor, voterConfigManager, this,
                     this.journalEntryParser, config.getTransactionTimeoutMs(), snapshots);
             leader.start();
@@ -639,7 +672,8 @@ class Voter extends AbstractServer implements CheckTermInterceptor {
 
     @Override
     public CompletableFuture<QueryStateResponse> queryClusterState(QueryStateRequest request) {
-        return waitLeadership()
+        return readIndex()
+                .thenCompose(this::waitForApplied)
                 .thenApplyAsync(aVoid -> state.query(request.getQuery(), journal).getResult(), asyncExecutor)
                 .thenApply(QueryStateResponse::new)
                 .exceptionally(exception -> {
@@ -676,8 +710,9 @@ class Voter extends AbstractServer implements CheckTermInterceptor {
     @Override
     public CompletableFuture<LastAppliedResponse> lastApplied() {
 
-        return waitLeadership()
-                .thenApplyAsync(aVoid -> new LastAppliedResponse(state.lastApplied()), asyncExecutor)
+        return readIndex()
+                .thenCompose(this::waitForApplied)
+                .thenApply(aVoid -> new LastAppliedResponse(state.lastApplied()))
                 .exceptionally(exception -> {
                     try {
                         throw exception instanceof CompletionException ? exception.getCause() : exception;
@@ -687,12 +722,15 @@ class Voter extends AbstractServer implements CheckTermInterceptor {
                 });
     }
 
-    private CompletableFuture<Void> waitLeadership() {
+    /**
+     * 确认LEADER身份有效，返回可以安全读取的位置。
+     */
+    private CompletableFuture<Long> readIndex() {
         Leader finalLeader = leader;
         if (isLeaderAvailable(finalLeader)) {
-            return finalLeader.waitLeadership();
+            return finalLeader.readIndex();
         } else {
-            CompletableFuture<Void> future = new CompletableFuture<>();
+            CompletableFuture<Long> future = new CompletableFuture<>();
             future.completeExceptionally(new NotLeaderException(this.leaderUri));
             return future;
         }
@@ -806,7 +844,7 @@ class Voter extends AbstractServer implements CheckTermInterceptor {
 
     @Override
     public CompletableFuture<CheckLeadershipResponse> checkLeadership() {
-        return waitLeadership()
+        return readIndex()
                 .thenApply(aVoid -> new CheckLeadershipResponse())
                 .exceptionally(exception -> {
                     try {
@@ -890,11 +928,11 @@ class Voter extends AbstractServer implements CheckTermInterceptor {
     }
 
     @Override
-    protected void afterStateChanged(byte[] updateResult) {
-        super.afterStateChanged(updateResult);
+    protected void afterStateChanged(long lastApplied, byte[] updateResult) {
+        super.afterStateChanged(lastApplied, updateResult);
         if (null != leader) {
             try {
-                leader.callback(state.lastApplied(), updateResult);
+                leader.callback(lastApplied, updateResult);
             } catch (Throwable e) {
                 logger.warn("Callback exception! {}", voterInfo(), e);
             }
@@ -1036,26 +1074,62 @@ class Voter extends AbstractServer implements CheckTermInterceptor {
         public final static long DEFAULT_HEARTBEAT_INTERVAL_MS = 100L;
         public final static long DEFAULT_ELECTION_TIMEOUT_MS = 300L;
         public final static int DEFAULT_REPLICATION_BATCH_SIZE = 128;
+        public final static int DEFAULT_REPLICATION_WINDOW_SIZE = 1;
+        public final static int DEFAULT_SNAPSHOT_INSTALL_WINDOW_SIZE = 4;
         public final static int DEFAULT_CACHE_REQUESTS = 1024;
+        public final static int DEFAULT_APPEND_BATCH_SIZE = 1024;
+        public final static long DEFAULT_APPEND_BATCH_BYTES = 4L * 1024 * 1024;
         public final static long DEFAULT_TRANSACTION_TIMEOUT_MS = 10L * 60 * 1000;
         public final static int DEFAULT_PRINT_STATE_INTERVAL_SEC = 0;
         public final static boolean DEFAULT_ENABLE_PRE_VOTE = true;
+        public final static boolean DEFAULT_ENABLE_LEASE_READ = false;
+        public final static long DEFAULT_LEASE_CLOCK_DRIFT_MS = 30L;
 
         public final static String HEARTBEAT_INTERVAL_KEY = "heartbeat_interval_ms";
         public final static String ELECTION_TIMEOUT_KEY = "election_timeout_ms";
         public final static String REPLICATION_BATCH_SIZE_KEY = "replication_batch_size";
+        public final static String REPLICATION_WINDOW_SIZE_KEY = "replication_window_size";
+        public final static String SNAPSHOT_INSTALL_WINDOW_SIZE_KEY = "snapshot_install_window_size";
         public final static String CACHE_REQUESTS_KEY = "cache_requests";
+        public final static String APPEND_BATCH_SIZE_KEY = "append_batch_size";
+        public final static String APPEND_BATCH_BYTES_KEY = "append_batch_bytes";
         public final static String TRANSACTION_TIMEOUT_MS_KEY = "transaction_timeout_ms";
         public final static String PRINT_STATE_INTERVAL_SEC_KEY = "print_state_interval_sec";
         public final static String ENABLE_PRE_VOTE_KEY = "enable_pre_vote";
+        public final static String ENABLE_LEASE_READ_KEY = "enable_lease_read";
+        public final static String LEASE_CLOCK_DRIFT_MS_KEY = "lease_clock_drift_ms";
 
         private long heartbeatIntervalMs = DEFAULT_HEARTBEAT_INTERVAL_MS;
         private long electionTimeoutMs = DEFAULT_ELECTION_TIMEOUT_MS;  // 最小选举超时
         private int replicationBatchSize = DEFAULT_REPLICATION_BATCH_SIZE;
+        /**
+         * 每个FOLLOWER最多同时在途的复制请求数，等于1时为停等模式，大于1时开启流水线复制
+         */
+        private int replicationWindowSize = DEFAULT_REPLICATION_WINDOW_SIZE;
+        /**
+         * 安装快照时，每个FOLLOWER最多同时在途的分片数
+         */
+        private int snapshotInstallWindowSize = DEFAULT_SNAPSHOT_INSTALL_WINDOW_SIZE;
         private int cacheRequests = DEFAULT_CACHE_REQUESTS;
+        /**
+         * LEADER每次写入日志时，最多合并多少条待写入的entry
+         */
+        private int appendBatchSize = DEFAULT_APPEND_BATCH_SIZE;
+        /**
+         * LEADER每次写入日志时，最多合并多少字节待写入的entry
+         */
+        private long appendBatchBytes = DEFAULT_APPEND_BATCH_BYTES;
         private long transactionTimeoutMs = DEFAULT_TRANSACTION_TIMEOUT_MS;
         private int printStateIntervalSec = DEFAULT_PRINT_STATE_INTERVAL_SEC;
         private boolean enablePreVote = DEFAULT_ENABLE_PRE_VOTE;
+        /**
+         * 是否开启租约读。开启后，LEADER在租约有效期内处理只读请求时，不需要和FOLLOWER交换心跳确认自己的身份
+         */
+        private boolean enableLeaseRead = DEFAULT_ENABLE_LEASE_READ;
+        /**
+         * 节点之间时钟漂移的上限，租约时长等于最小选举超时减去时钟漂移
+         */
+        private long leaseClockDriftMs = DEFAULT_LEASE_CLOCK_DRIFT_MS;
         public int getReplicationBatchSize() {
             return replicationBatchSize;
         }
@@ -1064,6 +1138,22 @@ class Voter extends AbstractServer implements CheckTermInterceptor {
             this.replicationBatchSize = replicationBatchSize;
         }
 
+        public int getReplicationWindowSize() {
+            return replicationWindowSize;
+        }
+
+        public void setReplicationWindowSize(int replicationWindowSize) {
+            this.replicationWindowSize = replicationWindowSize;
+        }
+
+        public int getSnapshotInstallWindowSize() {
+            return snapshotInstallWindowSize;
+        }
+
+        public void setSnapshotInstallWindowSize(int snapshotInstallWindowSize) {
+            this.snapshotInstallWindowSize = snapshotInstallWindowSize;
+        }
+
 
         public long getHeartbeatIntervalMs() {
             return heartbeatIntervalMs;
@@ -1089,6 +1179,22 @@ class Voter extends AbstractServer implements CheckTermInterceptor {
             this.cacheRequests = cacheRequests;
         }
 
+        public int getAppendBatchSize() {
+            return appendBatchSize;
+        }
+
+        public void setAppendBatchSize(int appendBatchSize) {
+            this.appendBatchSize = appendBatchSize;
+        }
+
+        public long getAppendBatchBytes() {
+            return appendBatchBytes;
+        }
+
+        public void setAppendBatchBytes(long appendBatchBytes) {
+            this.appendBatchBytes = appendBatchBytes;
+        }
+
         public long getTransactionTimeoutMs() {
             return transactionTimeoutMs;
         }
@@ -1112,6 +1218,22 @@ class Voter extends AbstractServer implements CheckTermInterceptor {
         public void setEnablePreVote(boolean enablePreVote) {
             this.enablePreVote = enablePreVote;
         }
+
+        public boolean isEnableLeaseRead() {
+            return enableLeaseRead;
+        }
+
+        public void setEnableLeaseRead(boolean enableLeaseRead) {
+            this.enableLeaseRead = enableLeaseRead;
+        }
+
+        public long getLeaseClockDriftMs() {
+            return leaseClockDriftMs;
+        }
+
+        public void setLeaseClockDriftMs(long leaseClockDriftMs) {
+            this.leaseClockDriftMs = leaseClockDriftMs;
+        }
     }
 
 
@@ -129,14 +129,28 @@ public class FolderTrunkIterator implements ReplicableIterator {
             }
         }
 
-        offsetOfCurrentFile += sizeToRead;
+        forward(fileSize, sizeToRead, trunk.length);
+        return trunk;
+    }
+
+    @Override
+    public int skipTrunk() throws IOException {
+        Path relFile = files.get(fileIndex);
+        long fileSize = Files.size(root.resolve(relFile));
+        int headerSize = Integer.BYTES + relFile.toString().getBytes(StandardCharsets.UTF_8).length + Long.BYTES;
+        int trunkSize = (int) Math.min(fileSize + headerSize - offsetOfCurrentFile, maxTrunkSize);
+        forward(fileSize, trunkSize - headerSize, trunkSize);
+        return trunkSize;
+    }
+
+    private void forward(long fileSize, int dataSize, int trunkSize) {
+        offsetOfCurrentFile += dataSize;
 
         if (offsetOfCurrentFile == fileSize) {
             fileIndex++;
             offsetOfCurrentFile = 0;
         }
-        offset += trunk.length;
-        return trunk;
+        offset += trunkSize;
     }
 
     @Override
@@ -40,16 +40,20 @@ package io.journalkeeper.core.state;
 
 import io.journalkeeper.base.Replicable;
 import io.journalkeeper.base.ReplicableIterator;
+import io.journalkeeper.core.api.BatchState;
 import io.journalkeeper.core.api.EntryFuture;
+import io.journalkeeper.core.api.ImmutableFilesAware;
 import io.journalkeeper.core.api.JournalEntry;
 import io.journalkeeper.core.api.RaftJournal;
 import io.journalkeeper.core.api.State;
+import io.journalkeeper.core.api.StateEntry;
 import io.journalkeeper.core.api.StateFactory;
 import io.journalkeeper.core.api.StateResult;
 import io.journalkeeper.core.entry.internal.InternalEntriesSerializeSupport;
 import io.journalkeeper.core.entry.internal.InternalEntryType;
 import io.journalkeeper.core.entry.internal.ScalePartitionsEntry;
 import io.journalkeeper.core.entry.internal.SetPreferredLeaderEntry;
+import io.journalkeeper.exceptions.StateExecutionException;
 import io.journalkeeper.exceptions.StateRecoverException;
 import io.journalkeeper.core.journal.Journal;
 import io.journalkeeper.core.journal.JournalSnapshot;
@@ -67,6 +71,8 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -242,28 +248,94 @@ public class JournalKeeperState implements Replicable, Flushable {
     }
 
     public StateResult applyEntry(JournalEntry entryHeader, EntryFuture entryFuture, RaftJournal journal) {
-        int partition = entryHeader.getPartition();
-        int batchSize = entryHeader.getBatchSize();
-
-        StateResult result = new StateResult(null);
         long stamp = stateLock.writeLock();
         try {
-            if (partition < RESERVED_PARTITIONS_START) {
-                result = userState.execute(entryFuture, partition, lastApplied(), batchSize, journal);
-            } else if (partition == INTERNAL_PARTITION) {
-                applyInternalEntry(entryFuture.get());
-            } else {
+            return applyEntryUnsafe(entryHeader, entryFuture, journal);
+        } finally {
+            stateLock.unlockWrite(stamp);
+        }
+    }
 
-                for (ApplyReservedEntryInterceptor reservedEntryInterceptor : reservedEntryInterceptors) {
-                    reservedEntryInterceptor.applyReservedEntry(entryHeader, entryFuture, lastApplied());
+    /**
+     * 在一次加锁中按顺序执行一批连续的entries，执行结果依次加入results。
+     * 如果用户状态机实现了{@link BatchState}，连续的用户entries会一次交给状态机执行。
+     * 执行过程中发生异常时，停止执行并抛出异常：
+     * <ul>
+     *     <li>异常之前已经执行成功的entries已经生效，它们的结果已经加入results，lastApplied指向第一条没有生效的entry；</li>
+     *     <li>一次交给{@link BatchState#executeBatch(List, RaftJournal)}执行的用户entries要么全部生效，要么全部不生效：
+     *     executeBatch抛出异常或者返回的结果数量不对时，这些entries都不生效，lastApplied停在其中的第一条entry。</li>
+     * </ul>
+     * 调用方需要先处理results中已生效的entries，再处理异常，下次从lastApplied开始会重新执行没有生效的entries。
+     *
+     * @param entries 待执行的entries，第一条entry的索引序号必须等于lastApplied()
+     * @param journal 当前的journal
+     * @param results 执行结果，与已生效的entries一一对应
+     */
+    public void applyEntries(List<JournalEntry> entries, RaftJournal journal, List<StateResult> results) {
+        long stamp = stateLock.writeLock();
+        try {
+            int i = 0;
+            while (i < entries.size()) {
+                if (userState instanceof BatchState && entries.get(i).getPartition() < RESERVED_PARTITIONS_START) {
+                    int end = i + 1;
+                    while (end < entries.size() && entries.get(end).getPartition() < RESERVED_PARTITIONS_START) {
+                        end++;
+                    }
+                    results.addAll(applyUserEntriesUnsafe(entries.subList(i, end), journal));
+                    i = end;
+                } else {
+                    JournalEntry entry = entries.get(i);
+                    results.add(applyEntryUnsafe(entry, () -> entry.getPayload().getBytes(), journal));
+                    i++;
                 }
             }
-            internalState.setLastIncludedTerm(entryHeader.getTerm());
-            internalState.next();
-            result.setLastApplied(lastApplied());
         } finally {
             stateLock.unlockWrite(stamp);
         }
+    }
+
+    private List<StateResult> applyUserEntriesUnsafe(List<JournalEntry> entries, RaftJournal journal) {
+        List<StateEntry> stateEntries = new ArrayList<>(entries.size());
+        long index = lastApplied();
+        for (JournalEntry entry : entries) {
+            stateEntries.add(new StateEntry(() -> entry.getPayload().getBytes(), entry.getPartition(), index++, entry.getBatchSize()));
+        }
+        List<StateResult> results = ((BatchState) userState).executeBatch(stateEntries, journal);
+        if (null == results || results.size() != entries.size()) {
+            throw new StateExecutionException(String.format("Batch state should return %d results, actual: %s!",
+                    entries.size(), null == results ? null : results.size()));
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            StateResult result = results.get(i);
+            if (null == result) {
+                result = new StateResult(null);
+                results.set(i, result);
+            }
+            internalState.setLastIncludedTerm(entries.get(i).getTerm());
+            internalState.next();
+            result.setLastApplied(lastApplied());
+        }
+        return results;
+    }
+
+    private StateResult applyEntryUnsafe(JournalEntry entryHeader, EntryFuture entryFuture, RaftJournal journal) {
+        int partition = entryHeader.getPartition();
+        int batchSize = entryHeader.getBatchSize();
+
+        StateResult result = new StateResult(null);
+        if (partition < RESERVED_PARTITIONS_START) {
+            result = userState.execute(entryFuture, partition, lastApplied(), batchSize, journal);
+        } else if (partition == INTERNAL_PARTITION) {
+            applyInternalEntry(entryFuture.get());
+        } else {
+
+            for (ApplyReservedEntryInterceptor reservedEntryInterceptor : reservedEntryInterceptors) {
+                reservedEntryInterceptor.applyReservedEntry(entryHeader, entryFuture, lastApplied());
+            }
+        }
+        internalState.setLastIncludedTerm(entryHeader.getTerm());
+        internalState.next();
+        result.setLastApplied(lastApplied());
         return result;
     }
 
@@ -332,12 +404,21 @@ public class JournalKeeperState implements Replicable, Flushable {
         return result;
     }
 
+    /**
+     * 将状态复制到destPath。
+     * 用户状态机通过{@link ImmutableFilesAware}声明的不可变文件使用硬链接共享，不复制，
+     * 相邻的快照之间未变化的不可变文件是同一个文件，删除快照时只删除链接，
+     * 文件在所有引用它的快照都被删除后才会被释放。
+     * @param destPath 目标路径
+     * @throws IOException 发生IO异常时抛出
+     */
     public void dump(Path destPath) throws IOException {
         flush();
         try {
             stateFilesLock.readLock().lock();
-
-            FileUtils.dump(path, destPath);
+            Path userStatePath = Paths.get(USER_STATE_PATH);
+            FileUtils.dump(path, destPath,
+                    file -> file.startsWith(userStatePath) && isImmutableUserFile(userStatePath.relativize(file)));
         } finally {
             stateFilesLock.readLock().unlock();
         }
@@ -347,12 +428,17 @@ public class JournalKeeperState implements Replicable, Flushable {
         flush();
         try {
             stateFilesLock.readLock().lock();
-            FileUtils.dump(path.resolve(USER_STATE_PATH), destPath.resolve(USER_STATE_PATH));
+            FileUtils.dump(path.resolve(USER_STATE_PATH), destPath.resolve(USER_STATE_PATH), this::isImmutableUserFile);
         } finally {
             stateFilesLock.readLock().unlock();
         }
     }
 
+    private boolean isImmutableUserFile(Path file) {
+        State userState = this.userState;
+        return userState instanceof ImmutableFilesAware && ((ImmutableFilesAware) userState).isImmutable(file);
+    }
+
 
     /**
      * 列出所有复制时需要拷贝的文件。
@@ -336,11 +336,7 @@ class JournalTransactionState extends ServerStateMachine {
             int term = entry.getTerm();
             TransactionEntry transactionEntry = new TransactionEntry(transactionId, bizPartition, batchSize, entry.getPayload().getBytes());
             byte[] serializedTransactionEntry = transactionEntrySerializer.serialize(transactionEntry);
-            JournalEntry wrappedEntry = journalEntryParser.createJournalEntry(serializedTransactionEntry);
-            wrappedEntry.setPartition(transactionPartition);
-            wrappedEntry.setTerm(term);
-
-            return wrappedEntry;
+            return journalEntryParser.createJournalEntry(serializedTransactionEntry, transactionPartition, 0, term);
 
         } else {
             throw new TransactionException(
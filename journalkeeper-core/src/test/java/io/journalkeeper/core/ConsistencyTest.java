@@ -56,6 +56,27 @@ public class ConsistencyTest {
         }
     }
 
+    /**
+     * 远程客户端的SEQUENTIAL查询会随机发往任意节点，落后的节点需要等待状态机执行到客户端已经看到的位置
+     */
+    @Test
+    public void testSequentialRemoteClient() throws Exception {
+        Path path = TestPathUtils.prepareBaseDir("TestSequentialRemoteClient");
+        List<WrappedBootStrap<Integer, Integer, Integer, Integer>> serverBootStraps = createServers(3, path);
+        List<URI> serverUris = serverBootStraps.stream().map(b -> b.getServer().serverUri()).collect(Collectors.toList());
+        WrappedBootStrap<Integer, Integer, Integer, Integer> clientBootStrap = new WrappedBootStrap<Integer, Integer, Integer, Integer>(serverUris, new Properties());
+        WrappedRaftClient<Integer, Integer, Integer, Integer> client = clientBootStrap.getClient();
+        try {
+            for (int i = 0; i < 100; i++) {
+                Integer value = client.update(1).get();
+                Assert.assertEquals(value, client.query(null, QueryConsistency.SEQUENTIAL).get());
+            }
+        } finally {
+            clientBootStrap.shutdown();
+            stopServers(serverBootStraps);
+        }
+    }
+
     @Test
     public void testAvailability() throws Exception {
         Path path = TestPathUtils.prepareBaseDir("TestSequential");
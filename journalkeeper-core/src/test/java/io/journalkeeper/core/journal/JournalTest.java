@@ -38,6 +38,7 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -359,6 +360,33 @@ public class JournalTest {
 
     }
 
+    @Test
+    public void createJournalEntryWithHeaderTest() {
+        int term = 8;
+        int partition = 6;
+        int batchSize = 10;
+        byte[] payload = ByteUtils.createFixedSizeBytes(1024);
+
+        JournalEntry expected = journalEntryParser.createJournalEntry(payload);
+        expected.setPartition(partition);
+        expected.setBatchSize(batchSize);
+        expected.setTerm(term);
+        JournalEntry entry = journalEntryParser.createJournalEntry(payload, partition, batchSize, term);
+
+        Assert.assertEquals(expected.getLength(), entry.getLength());
+        Assert.assertEquals(partition, entry.getPartition());
+        Assert.assertEquals(batchSize, entry.getBatchSize());
+        Assert.assertEquals(term, entry.getTerm());
+        Assert.assertArrayEquals(payload, entry.getPayload().getBytes());
+
+        JournalEntry parsed = journalEntryParser.parse(entry.getSerializedBytes());
+        Assert.assertEquals(partition, parsed.getPartition());
+        Assert.assertEquals(batchSize, parsed.getBatchSize());
+        Assert.assertEquals(term, parsed.getTerm());
+        Assert.assertEquals(entry.getTimestamp(), parsed.getTimestamp());
+        Assert.assertArrayEquals(payload, parsed.getPayload().getBytes());
+    }
+
     @Test
     public void batchWriteTest() {
         int maxLength = 1024;
@@ -499,6 +527,59 @@ public class JournalTest {
 
     }
 
+    @Test
+    public void readRawBuffersTest() throws IOException, InterruptedException {
+        int maxLength = 1024;
+        int size = 1024;
+        int term = 8;
+
+        // 文件足够小，保证批量读取时跨越多个文件
+        journal.close();
+        Properties properties = new Properties();
+        properties.setProperty("persistence.journal.file_data_size", String.valueOf(16 * 1024));
+        properties.setProperty("persistence.index.file_data_size", String.valueOf(Long.BYTES * 100));
+        journal = createJournal(properties);
+
+        List<byte[]> entries = ByteUtils.createRandomSizeByteList(maxLength, size);
+        List<byte[]> storageEntries =
+                entries.stream()
+                        .map(entry -> journalEntryParser.createJournalEntry(entry))
+                        .peek(entry -> entry.setTerm(term))
+                        .peek(entry -> entry.setPartition(0))
+                        .map(this::serialize)
+                        .collect(Collectors.toList());
+        for (byte[] storageEntry : storageEntries) {
+            journal.appendBatchRaw(Collections.singletonList(storageEntry));
+        }
+        Assert.assertEquals(size, journal.maxIndex());
+
+        int[] batchSizes = {1, 7, 100, size};
+        for (int batchSize : batchSizes) {
+            long index = journal.minIndex();
+            while (index < journal.maxIndex()) {
+                List<ByteBuffer> buffers = journal.readRawBuffers(index, batchSize);
+                Assert.assertEquals(Math.min(batchSize, journal.maxIndex() - index), buffers.size());
+                for (ByteBuffer buffer : buffers) {
+                    byte[] bytes = new byte[buffer.remaining()];
+                    buffer.get(bytes);
+                    Assert.assertArrayEquals(storageEntries.get((int) index), bytes);
+                    index++;
+                }
+            }
+
+            // readRaw按照相同的边界读取
+            index = journal.minIndex();
+            while (index < journal.maxIndex()) {
+                List<byte[]> raws = journal.readRaw(index, batchSize);
+                Assert.assertEquals(Math.min(batchSize, journal.maxIndex() - index), raws.size());
+                for (byte[] raw : raws) {
+                    Assert.assertArrayEquals(storageEntries.get((int) index), raw);
+                    index++;
+                }
+            }
+        }
+    }
+
     private byte[] serialize(JournalEntry storageEntry) {
         return storageEntry.getSerializedBytes();
     }
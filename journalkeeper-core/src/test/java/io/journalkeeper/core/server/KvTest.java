@@ -228,6 +228,46 @@ public class KvTest {
     }
 
 
+    /**
+     * 验证开启租约读时，读写结果是否正确
+     */
+    @Test
+    public void leaseReadTest() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        final int nodes = 3;
+        logger.info("{} nodes lease read test.", nodes);
+        Path path = TestPathUtils.prepareBaseDir("leaseRead" + nodes);
+        List<URI> serverURIs = new ArrayList<>(nodes);
+        List<Properties> propertiesList = new ArrayList<>(nodes);
+        for (int i = 0; i < nodes; i++) {
+            URI uri = URI.create("local://test" + i);
+            serverURIs.add(uri);
+            Path workingDir = path.resolve("server" + i);
+            Properties properties = new Properties();
+            properties.setProperty("working_dir", workingDir.toString());
+            properties.setProperty("persistence.journal.file_data_size", String.valueOf(128 * 1024));
+            properties.setProperty("persistence.index.file_data_size", String.valueOf(16 * 1024));
+            properties.setProperty("disable_logo", "true");
+            properties.setProperty("enable_lease_read", "true");
+            propertiesList.add(properties);
+        }
+        List<WrappedBootStrap<String, String, String, String>> kvServers = createServers(serverURIs, propertiesList, RaftServer.Roll.VOTER, true);
+        try {
+            WrappedRaftClient<String, String, String, String> kvClient = kvServers.get(0).getClient();
+            for (int i = 0; i < 100; i++) {
+                kvClient.update("SET key" + i + " value" + i).get();
+                Assert.assertEquals("value" + i, kvClient.query("GET key" + i).get());
+            }
+
+            // 超过一个租约周期后，租约应当已经被心跳续期
+            Thread.sleep(2 * Voter.Config.DEFAULT_ELECTION_TIMEOUT_MS);
+            Assert.assertEquals("value99", kvServers.get(1).getClient().query("GET key99").get());
+        } finally {
+            stopServers(kvServers);
+            TestPathUtils.destroyBaseDir(path.toFile());
+        }
+    }
+
+
     private WrappedBootStrap<String, String, String, String> recoverServer(String serverPath, Path path) throws IOException {
         Path workingDir = path.resolve(serverPath);
         Properties properties = new Properties();
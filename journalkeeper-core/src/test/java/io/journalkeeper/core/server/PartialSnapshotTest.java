@@ -0,0 +1,120 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.core.server;
+
+import io.journalkeeper.base.ReplicableIterator;
+import io.journalkeeper.core.state.FolderTrunkIterator;
+import io.journalkeeper.utils.test.ByteUtils;
+import io.journalkeeper.utils.test.TestPathUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class PartialSnapshotTest {
+    private static final int MAX_TRUNK_SIZE = 100;
+    private Path base = null;
+    private Path source = null;
+
+    @Test
+    public void outOfOrderInstallTest() throws IOException {
+        List<Long> offsets = new ArrayList<>();
+        List<byte[]> trunks = new ArrayList<>();
+        ReplicableIterator iterator = createIterator();
+        while (iterator.hasMoreTrunks()) {
+            offsets.add(iterator.offset());
+            trunks.add(iterator.nextTrunk());
+        }
+        Assert.assertTrue(trunks.size() > 10);
+
+        // 第一个和最后一个分片单独发送，中间的分片乱序到达，并且有重复
+        List<Integer> order = new ArrayList<>();
+        for (int i = 1; i < trunks.size() - 1; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(42));
+        order.add(0, 0);
+        order.add(3, 2);
+        order.add(trunks.size() - 1);
+
+        Path snapshotPath = base.resolve("snapshot");
+        PartialSnapshot partialSnapshot = new PartialSnapshot(base.resolve("partial"));
+        for (int i = 0; i < order.size(); i++) {
+            int trunkIndex = order.get(i);
+            boolean isDone = trunkIndex == trunks.size() - 1;
+            boolean finished = partialSnapshot.installTrunk(offsets.get(trunkIndex), trunks.get(trunkIndex), isDone, snapshotPath);
+            Assert.assertEquals(i == order.size() - 1, finished);
+        }
+        partialSnapshot.finish();
+
+        assertSameFiles(source, snapshotPath);
+    }
+
+    @Test
+    public void skipTrunkTest() throws IOException {
+        ReplicableIterator iterator = createIterator();
+        List<byte[]> trunks = new ArrayList<>();
+        while (iterator.hasMoreTrunks()) {
+            trunks.add(iterator.nextTrunk());
+        }
+
+        ReplicableIterator skipIterator = createIterator();
+        for (int i = 0; i < trunks.size() / 2; i++) {
+            Assert.assertEquals(trunks.get(i).length, skipIterator.skipTrunk());
+        }
+        for (int i = trunks.size() / 2; i < trunks.size(); i++) {
+            Assert.assertArrayEquals(trunks.get(i), skipIterator.nextTrunk());
+        }
+        Assert.assertFalse(skipIterator.hasMoreTrunks());
+    }
+
+    private ReplicableIterator createIterator() throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.list(source).sorted().forEach(files::add);
+        return new FolderTrunkIterator(source, files, MAX_TRUNK_SIZE, 0L, 0);
+    }
+
+    private void assertSameFiles(Path expected, Path actual) throws IOException {
+        List<Path> expectedFiles = new ArrayList<>();
+        Files.list(expected).sorted().forEach(expectedFiles::add);
+        for (Path expectedFile : expectedFiles) {
+            Path actualFile = actual.resolve(expected.relativize(expectedFile));
+            Assert.assertArrayEquals(Files.readAllBytes(expectedFile), Files.readAllBytes(actualFile));
+        }
+    }
+
+    @Before
+    public void before() throws IOException {
+        base = TestPathUtils.prepareBaseDir("PartialSnapshotTest");
+        source = base.resolve("source");
+        Files.createDirectories(source);
+        int[] sizes = new int[]{1024, 7, 0, 333, 2048};
+        for (int i = 0; i < sizes.length; i++) {
+            Files.write(source.resolve("file" + i), ByteUtils.createFixedSizeBytes(sizes[i]));
+        }
+    }
+
+    @After
+    public void after() {
+        TestPathUtils.destroyBaseDir(base.toFile());
+    }
+}
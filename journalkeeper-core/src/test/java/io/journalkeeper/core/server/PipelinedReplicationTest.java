@@ -0,0 +1,312 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.core.server;
+
+import io.journalkeeper.core.api.RaftJournal;
+import io.journalkeeper.core.api.ResponseConfig;
+import io.journalkeeper.core.api.UpdateRequest;
+import io.journalkeeper.core.entry.DefaultJournalEntryParser;
+import io.journalkeeper.rpc.StatusCode;
+import io.journalkeeper.rpc.client.UpdateClusterStateRequest;
+import io.journalkeeper.rpc.client.UpdateClusterStateResponse;
+import io.journalkeeper.rpc.server.AsyncAppendEntriesRequest;
+import io.journalkeeper.rpc.server.AsyncAppendEntriesResponse;
+import io.journalkeeper.rpc.server.InstallSnapshotRequest;
+import io.journalkeeper.rpc.server.InstallSnapshotResponse;
+import io.journalkeeper.rpc.server.RequestVoteRequest;
+import io.journalkeeper.rpc.server.RequestVoteResponse;
+import io.journalkeeper.rpc.server.ServerRpc;
+import io.journalkeeper.rpc.server.ServerRpcAccessPoint;
+import io.journalkeeper.utils.test.TestPathUtils;
+import io.journalkeeper.utils.threads.NamedThreadFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流水线复制：LEADER同时有多个在途的复制请求，FOLLOWER乱序处理或者拒绝请求时，
+ * LEADER需要回退nextIndex，重新发送，最终在途请求全部处理完，FOLLOWER的日志和LEADER一致。
+ */
+public class PipelinedReplicationTest {
+    private static final int WINDOW_SIZE = 4;
+    /**
+     * FOLLOWER收到prevLogIndex不小于这个位置的复制请求时，丢弃最后几条日志，模拟FOLLOWER丢失了未刷盘的日志
+     */
+    private static final long TRUNCATE_AT = 32L;
+    private static final int TRUNCATE_SIZE = 3;
+    private Path base = null;
+
+    @Before
+    public void before() throws IOException {
+        base = TestPathUtils.prepareBaseDir();
+    }
+
+    @After
+    public void after() {
+        TestPathUtils.destroyBaseDir(base.toFile());
+    }
+
+    @Test
+    public void rejectAndReorderTest() throws Exception {
+        URI leaderUri = URI.create("local://leader");
+        URI followerUri = URI.create("local://follower");
+        FakeFollower follower = new FakeFollower(followerUri);
+        Voter voter = createVoter(leaderUri, follower);
+        Thread deliverThread = new Thread(follower::deliver, "FakeFollowerDeliverThread");
+        deliverThread.setDaemon(true);
+        deliverThread.start();
+
+        try {
+            voter.init(leaderUri, Arrays.asList(leaderUri, followerUri), null, leaderUri);
+            voter.recover();
+            voter.start();
+            // LEADER启动完成，并且第一条日志提交之后才能写入
+            UpdateClusterStateResponse response;
+            do {
+                Thread.sleep(50L);
+                response = voter.updateClusterState(new UpdateClusterStateRequest(new byte[]{1, 2, 3}, RaftJournal.DEFAULT_PARTITION, 1)).get();
+            } while (response.getStatusCode() == StatusCode.NOT_LEADER || response.getStatusCode() == StatusCode.RETRY_LATER);
+            Assert.assertTrue(response.success());
+
+            // 一次写入多条日志，LEADER持续的发送复制请求
+            List<CompletableFuture<UpdateClusterStateResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 128; i++) {
+                UpdateRequest updateRequest = new UpdateRequest(new byte[]{1, 2, (byte) i}, RaftJournal.DEFAULT_PARTITION, 1);
+                futures.add(voter.updateClusterState(new UpdateClusterStateRequest(
+                        Collections.singletonList(updateRequest), false, ResponseConfig.REPLICATION)));
+            }
+            // 两个节点的集群，提交必须复制到FOLLOWER
+            for (CompletableFuture<UpdateClusterStateResponse> future : futures) {
+                Assert.assertTrue(future.get(10, TimeUnit.SECONDS).success());
+            }
+
+            Leader.ReplicationDestination destination = voter.getLeader().getFollowers().get(0);
+            long maxIndex = voter.journal.maxIndex();
+            long timeout = System.currentTimeMillis() + 10000L;
+            while ((destination.getNextIndex() != maxIndex || destination.getMatchIndex() != maxIndex || follower.pendingSize() > 0) &&
+                    System.currentTimeMillis() < timeout) {
+                Thread.sleep(10L);
+            }
+
+            synchronized (follower) {
+                // 同时有多个复制请求在途，但不超过窗口大小
+                Assert.assertTrue(String.valueOf(follower.maxPending), follower.maxPending > 1);
+                Assert.assertTrue(String.valueOf(follower.maxPending), follower.maxPending <= WINDOW_SIZE);
+                Assert.assertTrue(follower.reordered);
+                Assert.assertTrue(follower.truncated);
+                Assert.assertTrue(follower.rejected > 0);
+                // 被拒绝之后，nextIndex回退，LEADER重新发送了已经发送过的日志
+                Assert.assertTrue(isAnyEntryResent(follower.requests));
+                // 乱序到达而被拒绝的请求不回退nextIndex，不会重新发送FOLLOWER已经确认的日志
+                Assert.assertTrue(follower.reorderedRequests < follower.truncatedRequests);
+                for (AsyncAppendEntriesRequest request :
+                        follower.requests.subList(follower.reorderedRequests, follower.truncatedRequests)) {
+                    Assert.assertTrue(request.toString(), request.getPrevLogIndex() + 1 >= follower.reorderedLogSize);
+                }
+            }
+
+            // 在途请求全部处理完，FOLLOWER的日志和LEADER一致
+            Assert.assertEquals(0, follower.pendingSize());
+            Assert.assertEquals(maxIndex, destination.getNextIndex());
+            Assert.assertEquals(maxIndex, destination.getMatchIndex());
+            List<byte[]> leaderEntries = voter.journal.readRaw(0L, (int) maxIndex);
+            synchronized (follower) {
+                Assert.assertEquals(leaderEntries.size(), follower.entries.size());
+                for (int i = 0; i < leaderEntries.size(); i++) {
+                    Assert.assertArrayEquals(leaderEntries.get(i), follower.entries.get(i));
+                }
+            }
+
+            // 流水线恢复之后，还可以继续复制
+            UpdateRequest updateRequest = new UpdateRequest(new byte[]{3, 2, 1}, RaftJournal.DEFAULT_PARTITION, 1);
+            Assert.assertTrue(voter.updateClusterState(new UpdateClusterStateRequest(
+                    Collections.singletonList(updateRequest), false, ResponseConfig.REPLICATION))
+                    .get(10, TimeUnit.SECONDS).success());
+        } finally {
+            voter.stop();
+            deliverThread.interrupt();
+            deliverThread.join();
+        }
+    }
+
+    private static boolean isAnyEntryResent(List<AsyncAppendEntriesRequest> requests) {
+        long sentIndex = 0L;
+        for (AsyncAppendEntriesRequest request : requests) {
+            if (request.getPrevLogIndex() + 1 < sentIndex) {
+                return true;
+            }
+            sentIndex = Math.max(sentIndex, request.getPrevLogIndex() + 1 + request.getEntries().size());
+        }
+        return false;
+    }
+
+    private Voter createVoter(URI leaderUri, FakeFollower follower) {
+        ServerRpc followerRpc = Mockito.mock(ServerRpc.class);
+        Mockito.when(followerRpc.serverUri()).thenReturn(follower.uri);
+        Mockito.when(followerRpc.requestVote(Mockito.any(RequestVoteRequest.class))).thenAnswer(invocation -> {
+            RequestVoteRequest request = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(new RequestVoteResponse(request.getTerm(), true));
+        });
+        Mockito.when(followerRpc.installSnapshot(Mockito.any(InstallSnapshotRequest.class))).thenAnswer(invocation -> {
+            InstallSnapshotRequest request = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(new InstallSnapshotResponse(request.getTerm()));
+        });
+        Mockito.when(followerRpc.asyncAppendEntries(Mockito.any(AsyncAppendEntriesRequest.class))).thenAnswer(invocation ->
+                follower.asyncAppendEntries(invocation.getArgument(0)));
+
+        ServerRpcAccessPoint serverRpcAccessPoint = new ServerRpcAccessPoint() {
+            @Override
+            public ServerRpc getServerRpcAgent(URI uri) {
+                return follower.uri.equals(uri) ? followerRpc : null;
+            }
+
+            @Override
+            public void stop() {
+            }
+        };
+
+        ScheduledExecutorService scheduledExecutorService = Executors.newScheduledThreadPool(4, new NamedThreadFactory("JournalKeeper-Scheduled-Executor"));
+        ExecutorService asyncExecutorService = new ScheduledThreadPoolExecutor(4, new NamedThreadFactory("JournalKeeper-Async-Executor"));
+        Properties properties = new Properties();
+        properties.setProperty("working_dir", base.resolve(leaderUri.getHost()).toString());
+        properties.setProperty("cache_requests", String.valueOf(1024));
+        properties.setProperty("election_timeout_ms", String.valueOf(300));
+        properties.setProperty("heartbeat_interval_ms", String.valueOf(50));
+        properties.setProperty("replication_batch_size", String.valueOf(1));
+        properties.setProperty("replication_window_size", String.valueOf(WINDOW_SIZE));
+        return new Voter(new VoterTest.NoopStateFactory(true), new DefaultJournalEntryParser(),
+                scheduledExecutorService, asyncExecutorService, serverRpcAccessPoint, properties);
+    }
+
+    /**
+     * 模拟FOLLOWER：攒一批复制请求之后再处理，使LEADER有多个在途的请求。
+     * 第一批包含多条日志的请求按照相反的顺序处理，收到prevLogIndex不小于{@link #TRUNCATE_AT}的请求时丢弃最后几条日志，
+     * 这两种情况下FOLLOWER都会因为日志不连续拒绝后面的请求。
+     */
+    private static class FakeFollower {
+        private final URI uri;
+        private final List<byte[]> entries = new ArrayList<>();
+        private final List<AsyncAppendEntriesRequest> requests = new ArrayList<>();
+        private final List<PendingRequest> pending = new ArrayList<>();
+        private int maxPending = 0;
+        private int rejected = 0;
+        private boolean reordered = false;
+        private boolean truncated = false;
+        /**
+         * 乱序处理完那一批请求时，FOLLOWER日志的长度和已经收到的请求数
+         */
+        private int reorderedLogSize = -1;
+        private int reorderedRequests = -1;
+        /**
+         * 丢弃日志时已经收到的请求数
+         */
+        private int truncatedRequests = -1;
+
+        FakeFollower(URI uri) {
+            this.uri = uri;
+        }
+
+        synchronized CompletableFuture<AsyncAppendEntriesResponse> asyncAppendEntries(AsyncAppendEntriesRequest request) {
+            PendingRequest pendingRequest = new PendingRequest(request);
+            requests.add(request);
+            pending.add(pendingRequest);
+            maxPending = Math.max(maxPending, pending.size());
+            notifyAll();
+            return pendingRequest.future;
+        }
+
+        synchronized int pendingSize() {
+            return pending.size();
+        }
+
+        void deliver() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    List<PendingRequest> batch;
+                    synchronized (this) {
+                        while (pending.isEmpty()) {
+                            wait();
+                        }
+                        // 等待在途请求填满窗口
+                        long deadline = System.currentTimeMillis() + 20L;
+                        long waitMs;
+                        while (pending.size() < WINDOW_SIZE && (waitMs = deadline - System.currentTimeMillis()) > 0) {
+                            wait(waitMs);
+                        }
+                        batch = new ArrayList<>(pending);
+                        pending.clear();
+                        if (!reordered && batch.stream().filter(p -> !p.request.getEntries().isEmpty()).count() > 1) {
+                            Collections.reverse(batch);
+                            reordered = true;
+                        }
+                        for (PendingRequest pendingRequest : batch) {
+                            pendingRequest.response = append(pendingRequest.request);
+                        }
+                        if (reordered && reorderedRequests < 0) {
+                            reorderedLogSize = entries.size();
+                            reorderedRequests = requests.size();
+                        }
+                    }
+                    for (PendingRequest pendingRequest : batch) {
+                        pendingRequest.future.complete(pendingRequest.response);
+                    }
+                }
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        private AsyncAppendEntriesResponse append(AsyncAppendEntriesRequest request) {
+            long prevLogIndex = request.getPrevLogIndex();
+            if (!truncated && !request.getEntries().isEmpty() && prevLogIndex >= TRUNCATE_AT) {
+                entries.subList((int) Math.min(entries.size(), prevLogIndex - TRUNCATE_SIZE), entries.size()).clear();
+                truncated = true;
+                truncatedRequests = requests.size();
+            }
+            if (prevLogIndex + 1 > entries.size()) {
+                rejected++;
+                return new AsyncAppendEntriesResponse(false, prevLogIndex + 1, request.getTerm(), request.getEntries().size());
+            }
+            entries.subList((int) prevLogIndex + 1, entries.size()).clear();
+            entries.addAll(request.getEntries());
+            return new AsyncAppendEntriesResponse(true, prevLogIndex + 1, request.getTerm(), request.getEntries().size());
+        }
+    }
+
+    private static class PendingRequest {
+        private final AsyncAppendEntriesRequest request;
+        private final CompletableFuture<AsyncAppendEntriesResponse> future = new CompletableFuture<>();
+        private AsyncAppendEntriesResponse response;
+
+        PendingRequest(AsyncAppendEntriesRequest request) {
+            this.request = request;
+        }
+    }
+}
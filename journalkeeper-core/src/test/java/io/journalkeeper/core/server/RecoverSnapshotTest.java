@@ -13,8 +13,10 @@
  */
 package io.journalkeeper.core.server;
 
+import io.journalkeeper.core.api.ImmutableFilesAware;
 import io.journalkeeper.core.serialize.WrappedBootStrap;
 import io.journalkeeper.core.serialize.WrappedRaftClient;
+import io.journalkeeper.core.state.KvState;
 import io.journalkeeper.core.state.KvStateFactory;
 import io.journalkeeper.utils.files.FileUtils;
 import org.junit.After;
@@ -23,7 +25,11 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -167,4 +173,58 @@ public class RecoverSnapshotTest {
         }
 
     }
+
+    @Test
+    public void incrementalSnapshotTest() throws Exception {
+        URI uri = URI.create("local://test");
+        File root = new File(ROOT);
+        Properties properties = new Properties();
+        properties.setProperty("working_dir", root.toString());
+
+        WrappedBootStrap<String, String, String, String> kvServer = new WrappedBootStrap<>(SealedKvState::new, properties);
+        kvServer.getServer().init(uri, Collections.singletonList(uri));
+        kvServer.getServer().recover();
+        kvServer.getServer().start();
+        kvServer.getAdminClient().waitForClusterReady(1000 * 5);
+
+        WrappedRaftClient<String, String, String, String> client = kvServer.getClient();
+        Assert.assertNull(client.update("SET key_1 value_1").get());
+        kvServer.getAdminClient().takeSnapshot().get();
+
+        // 不可变文件通过硬链接共享，其它文件复制
+        Path statePath = root.toPath().resolve("state").resolve("user");
+        Path snapshotPath = root.toPath().resolve("snapshots").resolve("2").resolve("user");
+        Assert.assertTrue(Files.isSameFile(statePath.resolve(SealedKvState.SEALED_FILE), snapshotPath.resolve(SealedKvState.SEALED_FILE)));
+        Assert.assertFalse(Files.isSameFile(statePath.resolve("map"), snapshotPath.resolve("map")));
+
+        Assert.assertNull(client.update("SET key_2 value_2").get());
+        kvServer.getAdminClient().recoverSnapshot(2).get();
+        Assert.assertEquals("value_1", client.query("GET key_1").get());
+        Assert.assertNull(client.query("GET key_2").get());
+        Assert.assertArrayEquals(SealedKvState.SEALED_CONTENT, Files.readAllBytes(statePath.resolve(SealedKvState.SEALED_FILE)));
+
+        kvServer.shutdown();
+    }
+
+    private static class SealedKvState extends KvState implements ImmutableFilesAware {
+        private static final String SEALED_FILE = "sealed";
+        private static final byte[] SEALED_CONTENT = "sealed".getBytes(StandardCharsets.UTF_8);
+
+        @Override
+        public void recover(Path statePath, Properties properties) {
+            super.recover(statePath, properties);
+            try {
+                if (!Files.exists(statePath.resolve(SEALED_FILE))) {
+                    Files.write(statePath.resolve(SEALED_FILE), SEALED_CONTENT);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public boolean isImmutable(Path file) {
+            return SEALED_FILE.equals(file.toString());
+        }
+    }
 }
\ No newline at end of file
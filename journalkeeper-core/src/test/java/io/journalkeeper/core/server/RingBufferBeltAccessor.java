@@ -0,0 +1,54 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.core.server;
+
+import io.journalkeeper.core.api.ResponseConfig;
+
+/**
+ * 在测试代码中访问包内可见的{@link RingBufferBelt}、{@link Callback}和{@link ResponseFuture}，
+ * 随core的test-jar发布，供benchmark使用。
+ */
+public class RingBufferBeltAccessor {
+    private final RingBufferBelt belt;
+
+    public RingBufferBeltAccessor(long timeoutMs, int capacity) {
+        this.belt = new RingBufferBelt(timeoutMs, capacity);
+    }
+
+    /**
+     * 放入一个等待复制的回调，与Leader中ResponseConfig.REPLICATION的请求相同
+     * @param position 日志的索引序号
+     * @throws InterruptedException 等待队列空间时被中断
+     */
+    public void putReplicationCallback(long position) throws InterruptedException {
+        belt.put(new Callback(position, new ResponseFuture(ResponseConfig.REPLICATION, 1)));
+    }
+
+    /**
+     * 放入一个等待刷盘的回调，与Leader中ResponseConfig.PERSISTENCE的请求相同
+     * @param position 日志的索引序号
+     * @throws InterruptedException 等待队列空间时被中断
+     */
+    public void putFlushCallback(long position) throws InterruptedException {
+        belt.put(new Callback(position, new ResponseFuture(ResponseConfig.PERSISTENCE, 1)));
+    }
+
+    public void callback(long position, byte[] result) {
+        belt.callback(position, result);
+    }
+
+    public void callbackBefore(long position) {
+        belt.callbackBefore(position);
+    }
+}
@@ -13,13 +13,16 @@
  */
 package io.journalkeeper.core.server;
 
+import io.journalkeeper.core.api.BatchState;
 import io.journalkeeper.core.api.EntryFuture;
+import io.journalkeeper.core.api.JournalEntry;
 import io.journalkeeper.core.api.JournalEntryParser;
 import io.journalkeeper.core.api.RaftJournal;
 import io.journalkeeper.core.api.RaftServer;
 import io.journalkeeper.core.api.ResponseConfig;
 import io.journalkeeper.core.api.ServerStatus;
 import io.journalkeeper.core.api.State;
+import io.journalkeeper.core.api.StateEntry;
 import io.journalkeeper.core.api.StateFactory;
 import io.journalkeeper.core.api.StateResult;
 import io.journalkeeper.core.api.UpdateRequest;
@@ -27,6 +30,7 @@ import io.journalkeeper.core.api.VoterState;
 import io.journalkeeper.core.entry.DefaultJournalEntryParser;
 import io.journalkeeper.core.entry.internal.InternalEntriesSerializeSupport;
 import io.journalkeeper.core.entry.internal.ScalePartitionsEntry;
+import io.journalkeeper.core.journal.Journal;
 import io.journalkeeper.metric.JMetric;
 import io.journalkeeper.metric.JMetricFactory;
 import io.journalkeeper.metric.JMetricSupport;
@@ -43,25 +47,33 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.mockito.Mockito;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -277,6 +289,298 @@ public class VoterTest {
     }
 
 
+    @Test
+    public void batchApplyTest() throws IOException, ExecutionException, InterruptedException {
+        Properties properties = new Properties();
+        properties.setProperty("apply_batch_size", String.valueOf(16));
+        BatchEchoState.Counter counter = new BatchEchoState.Counter();
+        Server voter = createVoter(properties, null, () -> new BatchEchoState(counter));
+
+        try {
+            List<byte[]> bytes = ByteUtils.createRandomSizeByteList(1024, 256);
+            while (voter.getServerStatus().get().getServerStatus().getVoterState() != VoterState.LEADER) {
+                Thread.sleep(50L);
+            }
+
+            List<CompletableFuture<UpdateClusterStateResponse>> futures = bytes.stream()
+                    .map(byteArray -> voter.updateClusterState(new UpdateClusterStateRequest(byteArray, RaftJournal.DEFAULT_PARTITION, 1)))
+                    .collect(Collectors.toList());
+
+            for (int i = 0; i < bytes.size(); i++) {
+                UpdateClusterStateResponse response = futures.get(i).get();
+                Assert.assertTrue(response.success());
+                Assert.assertArrayEquals(bytes.get(i), response.getResults().get(0));
+            }
+            // 用户entries都是批量执行的，每批不超过apply_batch_size
+            Assert.assertEquals(0, counter.executions.get());
+            Assert.assertTrue(counter.batches.get() > 0);
+            Assert.assertTrue(counter.batchedEntries.get() >= bytes.size());
+            Assert.assertTrue(counter.maxBatchSize.get() <= 16);
+        } finally {
+            voter.stop();
+        }
+    }
+
+    @Test
+    public void serverBusyTest() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("cache_requests", String.valueOf(4));
+        properties.setProperty("enable_metric", String.valueOf(true));
+        BlockingJournalEntryParser journalEntryParser = new BlockingJournalEntryParser();
+        Server voter = createVoter(properties, null, new NoopStateFactory(true), journalEntryParser);
+
+        try {
+            byte[] entry = new byte[]{1, 2, 3};
+            UpdateClusterStateResponse response;
+            do {
+                Thread.sleep(10);
+                response = voter.updateClusterState(new UpdateClusterStateRequest(entry, RaftJournal.DEFAULT_PARTITION, 1)).get();
+            } while (response.getStatusCode() == StatusCode.NOT_LEADER);
+            Assert.assertTrue(response.success());
+
+            // 阻塞写入日志的线程，然后写满队列
+            CompletableFuture<UpdateClusterStateResponse> blockedFuture = voter.updateClusterState(
+                    new UpdateClusterStateRequest(BlockingJournalEntryParser.BLOCKING_ENTRY, RaftJournal.DEFAULT_PARTITION, 1));
+            Assert.assertTrue(journalEntryParser.blocked.await(10, TimeUnit.SECONDS));
+            List<CompletableFuture<UpdateClusterStateResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(voter.updateClusterState(new UpdateClusterStateRequest(entry, RaftJournal.DEFAULT_PARTITION, 1)));
+            }
+
+            // 队列满时立即返回SERVER_BUSY，不阻塞调用线程，并建议重试的时间
+            Leader leader = ((Voter) voter.getServer()).getLeader();
+            response = voter.updateClusterState(new UpdateClusterStateRequest(entry, RaftJournal.DEFAULT_PARTITION, 1))
+                    .get(1, TimeUnit.SECONDS);
+            Assert.assertEquals(StatusCode.SERVER_BUSY, response.getStatusCode());
+            Assert.assertTrue(response.getError(), response.getError().contains("retry after"));
+            Assert.assertEquals(1L, leader.getRejectedRequests());
+            Assert.assertEquals(4, leader.getRequestQueueSize());
+            Assert.assertEquals(1L,
+                    voter.getServer().getMetric(MetricNames.METRIC_UPDATE_CLUSTER_STATE_REJECTED).get().requestsTotal());
+
+            // 写入线程恢复之后，队列中的请求都能成功写入
+            journalEntryParser.release.countDown();
+            Assert.assertTrue(blockedFuture.get().success());
+            for (CompletableFuture<UpdateClusterStateResponse> future : futures) {
+                Assert.assertTrue(future.get().success());
+            }
+            Assert.assertTrue(voter.updateClusterState(new UpdateClusterStateRequest(entry, RaftJournal.DEFAULT_PARTITION, 1)).get().success());
+        } finally {
+            journalEntryParser.release.countDown();
+            voter.stop();
+        }
+    }
+
+    @Test
+    public void appendBatchTest() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("append_batch_size", String.valueOf(4));
+        properties.setProperty("enable_metric", String.valueOf(true));
+        BlockingJournalEntryParser journalEntryParser = new BlockingJournalEntryParser();
+        Server voter = createVoter(properties, null, IndexState::new, journalEntryParser);
+
+        try {
+            waitForLeader(voter);
+            JMetric appendJournalMetric = voter.getServer().getMetric(MetricNames.METRIC_APPEND_JOURNAL);
+
+            // 阻塞写入日志的线程，让后面的请求在队列中排队，恢复之后一起写入
+            CompletableFuture<UpdateClusterStateResponse> blockedFuture = voter.updateClusterState(
+                    new UpdateClusterStateRequest(BlockingJournalEntryParser.BLOCKING_ENTRY, RaftJournal.DEFAULT_PARTITION, 1));
+            Assert.assertTrue(journalEntryParser.blocked.await(10, TimeUnit.SECONDS));
+            long batches = appendJournalMetric.get().requestsTotal();
+
+            List<CompletableFuture<UpdateClusterStateResponse>> futures = new ArrayList<>();
+            futures.add(blockedFuture);
+            List<Long> callbackIndices = Collections.synchronizedList(new ArrayList<>());
+            for (int i = 0; i < 3; i++) {
+                futures.add(updateAndRecordIndex(voter, new byte[]{1, 2, (byte) i}, callbackIndices));
+            }
+            CompletableFuture<UpdateClusterStateResponse> badFuture = voter.updateClusterState(
+                    new UpdateClusterStateRequest(BlockingJournalEntryParser.BAD_ENTRY, RaftJournal.DEFAULT_PARTITION, 1));
+            CompletableFuture<UpdateClusterStateResponse> internalFuture = voter.updateClusterState(new UpdateClusterStateRequest(
+                    InternalEntriesSerializeSupport.serialize(new ScalePartitionsEntry(
+                            Stream.of(RaftJournal.DEFAULT_PARTITION, 1).collect(Collectors.toSet()))),
+                    RaftJournal.INTERNAL_PARTITION, 1));
+            for (int i = 3; i < 9; i++) {
+                futures.add(updateAndRecordIndex(voter, new byte[]{1, 2, (byte) i}, callbackIndices));
+            }
+            journalEntryParser.release.countDown();
+
+            // 转换失败的请求单独返回失败，不影响同一批次中的其它请求
+            Assert.assertFalse(badFuture.get().success());
+            Assert.assertTrue(internalFuture.get().success());
+            List<Long> indices = new ArrayList<>(futures.size());
+            for (CompletableFuture<UpdateClusterStateResponse> future : futures) {
+                UpdateClusterStateResponse response = future.get();
+                Assert.assertTrue(response.errorString(), response.success());
+                indices.add(IndexState.parseIndex(response.getResults().get(0)));
+            }
+
+            // 日志的顺序与请求的顺序一致，内部entry写在它之前和之后的用户entry之间
+            for (int i = 1; i < indices.size(); i++) {
+                Assert.assertTrue(indices.get(i - 1) < indices.get(i));
+            }
+            long internalIndex = indices.get(3) + 1;
+            Assert.assertEquals(RaftJournal.INTERNAL_PARTITION, voter.getServer().journal.read(internalIndex).getPartition());
+            Assert.assertEquals(internalIndex + 1, (long) indices.get(4));
+
+            // 每批最多4条entry: [阻塞的请求, 0, 1, 2], [内部entry], [3, 4, 5, 6], [7, 8]
+            Assert.assertEquals(batches + 4, appendJournalMetric.get().requestsTotal());
+
+            // 回调按照日志的顺序完成
+            List<Long> sortedCallbackIndices = new ArrayList<>(callbackIndices);
+            Collections.sort(sortedCallbackIndices);
+            Assert.assertEquals(sortedCallbackIndices, callbackIndices);
+            Assert.assertEquals(9, callbackIndices.size());
+        } finally {
+            journalEntryParser.release.countDown();
+            voter.stop();
+        }
+    }
+
+    @Test
+    public void appendBatchBytesTest() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("append_batch_bytes", String.valueOf(1));
+        properties.setProperty("enable_metric", String.valueOf(true));
+        BlockingJournalEntryParser journalEntryParser = new BlockingJournalEntryParser();
+        Server voter = createVoter(properties, null, IndexState::new, journalEntryParser);
+
+        try {
+            waitForLeader(voter);
+            JMetric appendJournalMetric = voter.getServer().getMetric(MetricNames.METRIC_APPEND_JOURNAL);
+
+            CompletableFuture<UpdateClusterStateResponse> blockedFuture = voter.updateClusterState(
+                    new UpdateClusterStateRequest(BlockingJournalEntryParser.BLOCKING_ENTRY, RaftJournal.DEFAULT_PARTITION, 1));
+            Assert.assertTrue(journalEntryParser.blocked.await(10, TimeUnit.SECONDS));
+            long batches = appendJournalMetric.get().requestsTotal();
+
+            List<CompletableFuture<UpdateClusterStateResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(voter.updateClusterState(new UpdateClusterStateRequest(new byte[]{1, 2, (byte) i}, RaftJournal.DEFAULT_PARTITION, 1)));
+            }
+            journalEntryParser.release.countDown();
+
+            Assert.assertTrue(blockedFuture.get().success());
+            for (CompletableFuture<UpdateClusterStateResponse> future : futures) {
+                Assert.assertTrue(future.get().success());
+            }
+            // 每个请求的字节数都超过了append_batch_bytes，每个请求单独写入一批
+            Assert.assertEquals(batches + 5, appendJournalMetric.get().requestsTotal());
+        } finally {
+            journalEntryParser.release.countDown();
+            voter.stop();
+        }
+    }
+
+    private CompletableFuture<UpdateClusterStateResponse> updateAndRecordIndex(Server voter, byte[] entry, List<Long> callbackIndices) {
+        return voter.updateClusterState(new UpdateClusterStateRequest(entry, RaftJournal.DEFAULT_PARTITION, 1))
+                .thenApply(response -> {
+                    if (response.success()) {
+                        callbackIndices.add(IndexState.parseIndex(response.getResults().get(0)));
+                    }
+                    return response;
+                });
+    }
+
+    private void waitForLeader(Server voter) throws Exception {
+        UpdateClusterStateResponse response;
+        do {
+            Thread.sleep(10);
+            response = voter.updateClusterState(new UpdateClusterStateRequest(new byte[]{1, 2, 3}, RaftJournal.DEFAULT_PARTITION, 1)).get();
+        } while (response.getStatusCode() == StatusCode.NOT_LEADER);
+        Assert.assertTrue(response.success());
+    }
+
+    @Test
+    public void groupCommitTest() throws IOException, ExecutionException, InterruptedException {
+        Properties properties = new Properties();
+        properties.setProperty("enable_group_commit", String.valueOf(true));
+        properties.setProperty("group_commit_max_delay_us", String.valueOf(500));
+        Server voter = createVoter(properties);
+
+        try {
+            List<byte[]> bytes = ByteUtils.createRandomSizeByteList(1024, 256);
+            while (voter.getServerStatus().get().getServerStatus().getVoterState() != VoterState.LEADER) {
+                Thread.sleep(50L);
+            }
+
+            List<CompletableFuture<UpdateClusterStateResponse>> futures = new ArrayList<>(bytes.size());
+            for (int i = 0; i < bytes.size(); i++) {
+                ResponseConfig responseConfig = i % 2 == 0 ? ResponseConfig.PERSISTENCE : ResponseConfig.ALL;
+                UpdateRequest updateRequest = new UpdateRequest(bytes.get(i), RaftJournal.DEFAULT_PARTITION, 1);
+                futures.add(voter.updateClusterState(
+                        new UpdateClusterStateRequest(Collections.singletonList(updateRequest), false, responseConfig)));
+            }
+
+            for (int i = 0; i < bytes.size(); i++) {
+                UpdateClusterStateResponse response = futures.get(i).get();
+                Assert.assertTrue(response.success());
+                if (i % 2 == 1) {
+                    Assert.assertArrayEquals(bytes.get(i), response.getResults().get(0));
+                }
+            }
+            Assert.assertTrue(voter.getServer().journal.flushedIndex() >= bytes.size());
+        } finally {
+            voter.stop();
+        }
+    }
+
+    @Test
+    public void groupCommitAckAfterForceTest() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("enable_group_commit", String.valueOf(true));
+        properties.setProperty("group_commit_max_delay_us", String.valueOf(500));
+        Server voter = newVoter(properties, new NoopStateFactory(true), new DefaultJournalEntryParser());
+
+        // 记录fsync之后确定已经持久化的位置：fsync开始之前已经写入文件的日志
+        Journal journal = Mockito.spy(voter.getServer().journal);
+        AtomicLong forcedIndex = new AtomicLong(0L);
+        Mockito.doAnswer(invocation -> {
+            long flushedIndex = journal.flushedIndex();
+            invocation.callRealMethod();
+            forcedIndex.accumulateAndGet(flushedIndex, Math::max);
+            return null;
+        }).when(journal).force();
+        voter.getServer().journal = journal;
+        startVoter(voter, null);
+
+        // 模拟其它线程写入文件（只写入不fsync），刷盘线程会发现没有未写入的数据
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        Thread flushThread = new Thread(() -> {
+            while (!stopped.get()) {
+                try {
+                    journal.flush();
+                } catch (ConcurrentModificationException ignored) {
+                    // 和刷盘线程同时刷盘
+                }
+            }
+        }, "ConcurrentFlushThread");
+
+        try {
+            waitForLeader(voter);
+            flushThread.start();
+            for (int i = 0; i < 256; i++) {
+                long index = journal.maxIndex();
+                UpdateRequest updateRequest = new UpdateRequest(new byte[]{1, 2, (byte) i}, RaftJournal.DEFAULT_PARTITION, 1);
+                // 返回响应的时候，这条日志一定已经fsync了
+                long forcedWhenAcked = voter.updateClusterState(new UpdateClusterStateRequest(
+                        Collections.singletonList(updateRequest), false, ResponseConfig.PERSISTENCE))
+                        .thenApply(response -> {
+                            Assert.assertTrue(response.success());
+                            return forcedIndex.get();
+                        }).get();
+                Assert.assertTrue(String.format("index: %d, forced: %d", index, forcedWhenAcked), forcedWhenAcked > index);
+            }
+            Assert.assertTrue(voter.getServer().getGroupCommits() > 0L);
+            Assert.assertTrue(voter.getServer().getGroupCommitEntries() >= 256L);
+        } finally {
+            stopped.set(true);
+            flushThread.join();
+            voter.stop();
+        }
+    }
+
     // Running this test case takes about 4 minutes.
     @Ignore
     @Test
@@ -320,23 +624,40 @@ public class VoterTest {
         return createVoter(customProperties, partitions, true);
     }
     private Server createVoter(Properties customProperties, Set<Integer> partitions, boolean echo) throws IOException {
-        StateFactory stateFactory = new NoopStateFactory(echo);
+        return createVoter(customProperties, partitions, new NoopStateFactory(echo));
+    }
+
+    private Server createVoter(Properties customProperties, Set<Integer> partitions, StateFactory stateFactory) throws IOException {
+        return createVoter(customProperties, partitions, stateFactory, new DefaultJournalEntryParser());
+    }
+
+    private Server createVoter(Properties customProperties, Set<Integer> partitions, StateFactory stateFactory,
+                               JournalEntryParser journalEntryParser) throws IOException {
+        return startVoter(newVoter(customProperties, stateFactory, journalEntryParser), partitions);
+    }
+
+    private Server newVoter(Properties customProperties, StateFactory stateFactory,
+                            JournalEntryParser journalEntryParser) {
         ScheduledExecutorService scheduledExecutorService = Executors.newScheduledThreadPool(4, new NamedThreadFactory("JournalKeeper-Scheduled-Executor"));
         ExecutorService asyncExecutorService = new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors() * 2, new NamedThreadFactory("JournalKeeper-Async-Executor"));
         Properties properties = new Properties();
         properties.setProperty("working_dir", base.toString());
+        properties.setProperty("cache_requests", String.valueOf(10 * 1024));
         if (null != customProperties) {
             properties.putAll(customProperties);
         }
 //        properties.setProperty("enable_metric", "true");
 //        properties.setProperty("print_metric_interval_sec", "3");
-        properties.setProperty("cache_requests", String.valueOf(10 * 1024));
 
         Server voter =
                 new Server(
                         RaftServer.Roll.VOTER,
-                        stateFactory, new DefaultJournalEntryParser(),
+                        stateFactory, journalEntryParser,
                         scheduledExecutorService, asyncExecutorService, properties);
+        return voter;
+    }
+
+    private Server startVoter(Server voter, Set<Integer> partitions) throws IOException {
         URI uri = URI.create("local://test");
         voter.init(uri, Collections.singletonList(uri), partitions, uri);
         voter.recover();
@@ -370,6 +691,86 @@ public class VoterTest {
     }
 
 
+    static class BatchEchoState extends EchoState implements BatchState {
+        private final Counter counter;
+
+        BatchEchoState(Counter counter) {
+            super(true);
+            this.counter = counter;
+        }
+
+        @Override
+        public StateResult execute(EntryFuture getEntryFuture, int partition, long index, int batchSize, RaftJournal journal) {
+            counter.executions.incrementAndGet();
+            return super.execute(getEntryFuture, partition, index, batchSize, journal);
+        }
+
+        @Override
+        public List<StateResult> executeBatch(List<StateEntry> entries, RaftJournal journal) {
+            counter.batches.incrementAndGet();
+            counter.batchedEntries.addAndGet(entries.size());
+            counter.maxBatchSize.accumulateAndGet(entries.size(), Math::max);
+            return entries.stream()
+                    .map(entry -> new StateResult(entry.getEntryFuture().get()))
+                    .collect(Collectors.toList());
+        }
+
+        /**
+         * 统计状态机的执行次数，快照等创建的状态机共享同一个计数器
+         */
+        static class Counter {
+            final AtomicInteger executions = new AtomicInteger();
+            final AtomicInteger batches = new AtomicInteger();
+            final AtomicInteger batchedEntries = new AtomicInteger();
+            final AtomicInteger maxBatchSize = new AtomicInteger();
+        }
+    }
+
+    /**
+     * 返回entry的索引序号作为执行结果
+     */
+    static class IndexState extends EchoState {
+        IndexState() {
+            super(true);
+        }
+
+        static long parseIndex(byte[] result) {
+            return ByteBuffer.wrap(result).getLong();
+        }
+
+        @Override
+        public StateResult execute(EntryFuture getEntryFuture, int partition, long index, int batchSize, RaftJournal journal) {
+            return new StateResult(ByteBuffer.allocate(Long.BYTES).putLong(0, index).array());
+        }
+    }
+
+    /**
+     * 创建指定内容的日志时阻塞，直到被释放，用于模拟写入日志的线程处理不过来；
+     * 创建另一个指定内容的日志时抛出异常，用于模拟非法的请求。
+     */
+    static class BlockingJournalEntryParser extends DefaultJournalEntryParser {
+        static final byte[] BLOCKING_ENTRY = new byte[]{-1, -1, -1, -1};
+        static final byte[] BAD_ENTRY = new byte[]{-2, -2, -2, -2};
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public JournalEntry createJournalEntry(byte[] payload, int partition, int batchSize, int term) {
+            if (Arrays.equals(BAD_ENTRY, payload)) {
+                throw new IllegalArgumentException("Bad entry!");
+            }
+            if (Arrays.equals(BLOCKING_ENTRY, payload)) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.createJournalEntry(payload, partition, batchSize, term);
+        }
+    }
+
     static class NoopStateFactory implements StateFactory {
         private final boolean echo;
 
@@ -0,0 +1,187 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.core.state;
+
+import io.journalkeeper.core.api.BatchState;
+import io.journalkeeper.core.api.JournalEntry;
+import io.journalkeeper.core.api.JournalEntryParser;
+import io.journalkeeper.core.api.RaftJournal;
+import io.journalkeeper.core.api.StateEntry;
+import io.journalkeeper.core.api.StateResult;
+import io.journalkeeper.core.entry.DefaultJournalEntryParser;
+import io.journalkeeper.core.entry.internal.InternalEntriesSerializeSupport;
+import io.journalkeeper.core.entry.internal.ScalePartitionsEntry;
+import io.journalkeeper.exceptions.StateExecutionException;
+import io.journalkeeper.persistence.PersistenceFactory;
+import io.journalkeeper.utils.spi.ServiceSupport;
+import io.journalkeeper.utils.test.TestPathUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class JournalKeeperStateTest {
+    private static final byte[] BAD_ENTRY = new byte[]{-1, -1, -1, -1};
+    private final JournalEntryParser journalEntryParser = new DefaultJournalEntryParser();
+    private Path base = null;
+    private JournalKeeperState state = null;
+    private FailingBatchState userState = null;
+
+    @Before
+    public void before() throws IOException {
+        base = TestPathUtils.prepareBaseDir();
+        Path statePath = base.resolve("state");
+        URI uri = URI.create("local://test");
+        PersistenceFactory persistenceFactory = ServiceSupport.load(PersistenceFactory.class);
+        state = new JournalKeeperState(() -> userState = new FailingBatchState(),
+                persistenceFactory.createMetadataPersistenceInstance());
+        state.init(statePath, Collections.singletonList(uri), Collections.singleton(RaftJournal.DEFAULT_PARTITION), uri);
+        state.recover(statePath, new Properties());
+    }
+
+    @After
+    public void after() {
+        state.close();
+        TestPathUtils.destroyBaseDir(base.toFile());
+    }
+
+    @Test
+    public void applyEntriesTest() {
+        List<JournalEntry> entries = Arrays.asList(
+                userEntry(0), userEntry(1), scalePartitionsEntry(), userEntry(2), userEntry(3));
+        List<StateResult> results = new ArrayList<>();
+        state.applyEntries(entries, null, results);
+
+        // 连续的用户entries一次交给状态机执行，内部entry单独执行
+        Assert.assertEquals(Arrays.asList(2, 2), userState.batchSizes);
+        Assert.assertEquals(5, results.size());
+        Assert.assertEquals(5L, state.lastApplied());
+        for (int i = 0; i < results.size(); i++) {
+            Assert.assertEquals(i + 1L, results.get(i).getLastApplied());
+        }
+        Assert.assertEquals(Stream.of(RaftJournal.DEFAULT_PARTITION, 1).collect(Collectors.toSet()), state.getPartitions());
+    }
+
+    @Test
+    public void partialFailureTest() {
+        List<JournalEntry> entries = Arrays.asList(
+                userEntry(0), userEntry(1), scalePartitionsEntry(), userEntry(2), badEntry(), userEntry(3));
+        List<StateResult> results = new ArrayList<>();
+        try {
+            state.applyEntries(entries, null, results);
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+
+        // 失败之前的entries已经生效，失败的那一批用户entries都不生效，lastApplied停在这一批的第一条entry
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals(3L, state.lastApplied());
+        Assert.assertEquals(3L, results.get(2).getLastApplied());
+        Assert.assertEquals(Arrays.asList(2, 3), userState.batchSizes);
+
+        // 从lastApplied开始重新执行，仍然失败，不会有entry生效
+        List<JournalEntry> remaining = entries.subList((int) state.lastApplied(), entries.size());
+        results.clear();
+        try {
+            state.applyEntries(remaining, null, results);
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+        Assert.assertTrue(results.isEmpty());
+        Assert.assertEquals(3L, state.lastApplied());
+
+        // 状态机恢复之后，重新执行这一批entries
+        userState.failing = false;
+        state.applyEntries(remaining, null, results);
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals(6L, state.lastApplied());
+        Assert.assertArrayEquals(BAD_ENTRY, results.get(1).getUserResult());
+    }
+
+    @Test
+    public void wrongResultSizeTest() {
+        userState.resultSizeDelta = -1;
+        List<StateResult> results = new ArrayList<>();
+        try {
+            state.applyEntries(Arrays.asList(scalePartitionsEntry(), userEntry(0), userEntry(1)), null, results);
+            Assert.fail();
+        } catch (StateExecutionException ignored) {
+        }
+        Assert.assertEquals(1, results.size());
+        Assert.assertEquals(1L, state.lastApplied());
+    }
+
+    private JournalEntry userEntry(int i) {
+        return journalEntryParser.createJournalEntry(new byte[]{1, 2, (byte) i}, RaftJournal.DEFAULT_PARTITION, 1, 0);
+    }
+
+    private JournalEntry badEntry() {
+        return journalEntryParser.createJournalEntry(BAD_ENTRY, RaftJournal.DEFAULT_PARTITION, 1, 0);
+    }
+
+    private JournalEntry scalePartitionsEntry() {
+        Set<Integer> partitions = Stream.of(RaftJournal.DEFAULT_PARTITION, 1).collect(Collectors.toSet());
+        return journalEntryParser.createJournalEntry(InternalEntriesSerializeSupport.serialize(new ScalePartitionsEntry(partitions)),
+                RaftJournal.INTERNAL_PARTITION, 1, 0);
+    }
+
+    /**
+     * 批量执行时，遇到指定内容的entry抛出异常，或者返回数量不对的结果
+     */
+    private static class FailingBatchState implements BatchState {
+        private final List<Integer> batchSizes = new ArrayList<>();
+        private boolean failing = true;
+        private int resultSizeDelta = 0;
+
+        @Override
+        public List<StateResult> executeBatch(List<StateEntry> entries, RaftJournal journal) {
+            batchSizes.add(entries.size());
+            List<StateResult> results = new ArrayList<>(entries.size());
+            for (StateEntry entry : entries) {
+                byte[] bytes = entry.getEntryFuture().get();
+                if (failing && Arrays.equals(BAD_ENTRY, bytes)) {
+                    throw new IllegalStateException("Bad entry!");
+                }
+                results.add(new StateResult(bytes));
+            }
+            return results.subList(0, results.size() + resultSizeDelta);
+        }
+
+        @Override
+        public StateResult execute(byte[] entry, int partition, long index, int batchSize, RaftJournal journal) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void recover(Path path, Properties properties) {
+        }
+
+        @Override
+        public byte[] query(byte[] query, RaftJournal journal) {
+            return query;
+        }
+    }
+}
@@ -16,6 +16,7 @@ package io.journalkeeper.persistence.local;
 import io.journalkeeper.persistence.JournalPersistence;
 import io.journalkeeper.persistence.MetadataPersistence;
 import io.journalkeeper.persistence.PersistenceFactory;
+import io.journalkeeper.persistence.local.journal.IndexStore;
 import io.journalkeeper.persistence.local.journal.PositioningStore;
 import io.journalkeeper.persistence.local.metadata.JsonDoubleCopiesPersistence;
 
@@ -31,4 +32,14 @@ public class StoreFactory implements PersistenceFactory {
         return new PositioningStore();
     }
 
+    /**
+     * 索引存储默认使用{@link PositioningStore}，
+     * 配置persistence.index.store_type=mapped时使用{@link io.journalkeeper.persistence.local.journal.MappedIndexStore}，
+     * 见{@link IndexStore}。
+     */
+    @Override
+    public JournalPersistence createIndexPersistenceInstance() {
+        return new IndexStore();
+    }
+
 }
@@ -21,6 +21,16 @@ public interface MemoryCacheManager extends Closeable {
 
     void allocateMMap(BufferHolder bufferHolder);
 
+    /**
+     * 是否还有空闲的内存缓存给定大小的页面。
+     * 没有空闲内存时，读冷数据不应该加载整个文件，否则会把正在使用的热数据挤出缓存。
+     * @param size 页面大小
+     * @return 加载页面之后不会触发缓存清理返回true，否则返回false
+     */
+    default boolean hasFreeMemory(int size) {
+        return true;
+    }
+
     ByteBuffer allocateDirect(int bufferSize, BufferHolder bufferHolder);
 
     void releaseDirect(ByteBuffer byteBuffer, BufferHolder bufferHolder);
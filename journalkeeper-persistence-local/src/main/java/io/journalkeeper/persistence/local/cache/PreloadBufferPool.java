@@ -29,17 +29,20 @@ import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 /**
@@ -63,6 +66,8 @@ public class PreloadBufferPool implements MemoryCacheManager {
      */
     private static final float DEFAULT_CORE_RATIO = 0.8f;
     private final static long INTERVAL_MS = 50L;
+    // 内存不足时等待释放内存的最长时间
+    private final static long RESERVE_MEMORY_TIMEOUT_MS = 50L;
 
     private final static String MAX_MEMORY_KEY = "memory_cache.max_memory";
     private final static String EVICT_RATIO_KEY = "memory_cache.evict_ratio";
@@ -81,6 +86,12 @@ public class PreloadBufferPool implements MemoryCacheManager {
     private final Set<BufferHolder> directBufferHolders = ConcurrentHashMap.newKeySet();
     private final Set<BufferHolder> mMapBufferHolders = ConcurrentHashMap.newKeySet();
     private Map<Integer, PreLoadCache> bufferCache = new ConcurrentHashMap<>();
+    // 内存不足时，申请内存的线程在这个条件上等待，释放内存时唤醒
+    private final ReentrantLock memoryLock = new ReentrantLock();
+    private final Condition memoryReleased = memoryLock.newCondition();
+    private final AtomicInteger memoryWaiters = new AtomicInteger(0);
+    // 时钟算法上一次扫描的时间，这之后没有访问过的页面优先清理
+    private volatile long clockTime = 0L;
 
     public PreloadBufferPool() {
 
@@ -130,7 +141,7 @@ public class PreloadBufferPool implements MemoryCacheManager {
     }
 
     /**
-     * 清除文件缓存页。LRU。
+     * 清除文件缓存页。使用时钟算法近似LRU。
      */
     private synchronized void evict() {
 
@@ -147,23 +158,36 @@ public class PreloadBufferPool implements MemoryCacheManager {
             }
         }
 
-        // 清理使用中最旧的页面，直到内存占用率达标
+        // 清理使用中较旧的页面，直到内存占用率达标
         if (needEviction()) {
-            List<LruWrapper<BufferHolder>> sorted;
-            sorted = Stream.concat(directBufferHolders.stream(), mMapBufferHolders.stream())
-                    .filter(BufferHolder::isFree)
-                    .map(bufferHolder -> new LruWrapper<>(bufferHolder, bufferHolder.lastAccessTime()))
-                    .sorted(Comparator.comparing(LruWrapper::getLastAccessTime))
-                    .collect(Collectors.toList());
-
-            while (needEviction() && !sorted.isEmpty()) {
-                LruWrapper<BufferHolder> wrapper = sorted.remove(0);
-                BufferHolder holder = wrapper.get();
-                if (holder.lastAccessTime() == wrapper.getLastAccessTime()) {
+            evictByClock(holder -> true, this::needEviction);
+        }
+    }
+
+    /**
+     * 时钟算法：不排序，直接扫描所有页面。
+     * 第一轮只清理上一次扫描之后没有访问过的页面，相当于给最近访问过的页面第二次机会；
+     * 如果还不够，第二轮清理所有空闲的页面。
+     * @param filter 需要清理的页面
+     * @param condition 满足条件时继续清理
+     */
+    private void evictByClock(Predicate<BufferHolder> filter, BooleanSupplier condition) {
+        long now = System.currentTimeMillis();
+        long[] thresholds = {clockTime, now};
+        for (long threshold : thresholds) {
+            Iterator<BufferHolder> iterator = Stream.concat(directBufferHolders.stream(), mMapBufferHolders.stream())
+                    .filter(filter).iterator();
+            while (condition.getAsBoolean() && iterator.hasNext()) {
+                BufferHolder holder = iterator.next();
+                if (holder.lastAccessTime() < threshold && holder.isFree()) {
                     holder.evict();
                 }
             }
+            if (!condition.getAsBoolean()) {
+                break;
+            }
         }
+        clockTime = now;
     }
 
     @Override
@@ -173,10 +197,13 @@ public class PreloadBufferPool implements MemoryCacheManager {
             long cached = preLoadCache.cache.size();
             long usedPreLoad = preLoadCache.onFlyCounter.get();
             long totalSize = preLoadCache.bufferSize * (cached + usedPreLoad);
-            logger.info("PreloadCache usage: cached: {} * {} = {}, used: {} * {} = {}, total: {}",
+            logger.info("PreloadCache usage: cached: {} * {} = {}, used: {} * {} = {}, total: {}, " +
+                            "hit/miss: {}/{}, stall: {} times, {} ms",
                     Format.formatSize(preLoadCache.bufferSize), cached, Format.formatSize(preLoadCache.bufferSize * cached),
                     Format.formatSize(preLoadCache.bufferSize), usedPreLoad, Format.formatSize(preLoadCache.bufferSize * usedPreLoad),
-                    Format.formatSize(totalSize));
+                    Format.formatSize(totalSize),
+                    preLoadCache.getHitCount(), preLoadCache.getMissCount(),
+                    preLoadCache.getStallCount(), preLoadCache.getStallTimeMs());
             return totalSize;
         }).sum();
         long mmpUsed = mMapBufferHolders.stream().mapToLong(BufferHolder::size).sum();
@@ -224,6 +251,7 @@ public class PreloadBufferPool implements MemoryCacheManager {
     private void destroyOne(ByteBuffer byteBuffer) {
         usedSize.getAndAdd(-1 * byteBuffer.capacity());
         releaseIfDirect(byteBuffer);
+        signalMemoryReleased();
     }
 
     private void preLoadBuffer() {
@@ -238,18 +266,9 @@ public class PreloadBufferPool implements MemoryCacheManager {
                         return;
                     }
                 } else {
-                    List<LruWrapper<BufferHolder>> outdated = directBufferHolders.stream()
-                            .filter(b -> b.size() == preLoadCache.bufferSize)
-                            .filter(BufferHolder::isFree)
-                            .map(bufferHolder -> new LruWrapper<>(bufferHolder, bufferHolder.lastAccessTime()))
-                            .sorted(Comparator.comparing(LruWrapper::getLastAccessTime)).collect(Collectors.toList());
-                    while (preLoadCache.cache.size() < preLoadCache.coreCount && !outdated.isEmpty()) {
-                        LruWrapper<BufferHolder> wrapper = outdated.remove(0);
-                        BufferHolder holder = wrapper.get();
-                        if (holder.lastAccessTime() == wrapper.getLastAccessTime()) {
-                            holder.evict();
-                        }
-                    }
+                    // 内存已经用满，回收同样大小的旧页面放回缓存
+                    evictByClock(holder -> holder.size() == preLoadCache.bufferSize && directBufferHolders.contains(holder),
+                            () -> preLoadCache.cache.size() < preLoadCache.coreCount);
                 }
             }
         }
@@ -260,31 +279,36 @@ public class PreloadBufferPool implements MemoryCacheManager {
         return ByteBuffer.allocateDirect(size);
     }
 
-    private void reserveMemory(int size) {
+    /**
+     * 缓存为空时临时创建Buffer，记录因为内存不足等待的次数和时间
+     */
+    private ByteBuffer createOne(PreLoadCache preLoadCache) {
+        long stallNanos = reserveMemory(preLoadCache.bufferSize);
+        if (stallNanos > 0L) {
+            preLoadCache.stallCounter.incrementAndGet();
+            preLoadCache.stallNanos.addAndGet(stallNanos);
+        }
+        return ByteBuffer.allocateDirect(preLoadCache.bufferSize);
+    }
+
+    /**
+     * 预留内存
+     * @param size 内存大小
+     * @return 因为内存不足等待的时间，单位纳秒
+     */
+    private long reserveMemory(int size) {
         usedSize.addAndGet(size);
+        long stallNanos = 0L;
         try {
-            while (isOutOfMemory()) {
-                PreLoadCache preLoadCache = bufferCache.values().stream()
-                        .filter(p -> p.cache.size() > 0)
-                        .findAny().orElse(null);
-                if (null != preLoadCache) {
-                    destroyOne(preLoadCache.cache.remove());
-                } else {
-                    break;
-                }
-            }
+            destroyCachedBuffers();
 
             if (isOutOfMemory()) {
-                // 如果内存不足，唤醒清理线程立即执行清理
+                // 如果内存不足，唤醒清理线程立即执行清理，
+                // 等待内存释放，如果超时还不足抛出异常
                 threads.wakeupThread(EVICT_THREAD);
-                // 等待5x10ms，如果还不足抛出异常
-                for (int i = 0; i < 5 && isOutOfMemory(); i++) {
-                    try {
-                        Thread.sleep(10);
-                    } catch (InterruptedException e) {
-                        logger.warn("Interrupted: ", e);
-                    }
-                }
+                long start = System.nanoTime();
+                awaitMemoryReleased();
+                stallNanos = System.nanoTime() - start;
                 if (isOutOfMemory()) {
                     throw new OutOfMemoryError();
                 }
@@ -292,6 +316,56 @@ public class PreloadBufferPool implements MemoryCacheManager {
         } catch (Throwable t) {
             usedSize.getAndAdd(-1 * size);
         }
+        return stallNanos;
+    }
+
+    /**
+     * 内存不足时，销毁缓存中空闲的Buffer
+     */
+    private void destroyCachedBuffers() {
+        while (isOutOfMemory()) {
+            ByteBuffer byteBuffer = bufferCache.values().stream()
+                    .map(p -> p.cache.poll())
+                    .filter(b -> null != b)
+                    .findAny().orElse(null);
+            if (null != byteBuffer) {
+                destroyOne(byteBuffer);
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 等待释放内存，每次有内存释放或者Buffer放回缓存时被唤醒，
+     * 不再按固定的间隔睡眠，内存足够后立即返回。
+     */
+    private void awaitMemoryReleased() {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(RESERVE_MEMORY_TIMEOUT_MS);
+        memoryWaiters.incrementAndGet();
+        memoryLock.lock();
+        try {
+            while (isOutOfMemory() && nanos > 0L) {
+                nanos = memoryReleased.awaitNanos(nanos);
+                destroyCachedBuffers();
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Interrupted: ", e);
+        } finally {
+            memoryLock.unlock();
+            memoryWaiters.decrementAndGet();
+        }
+    }
+
+    private void signalMemoryReleased() {
+        if (memoryWaiters.get() > 0) {
+            memoryLock.lock();
+            try {
+                memoryReleased.signalAll();
+            } finally {
+                memoryLock.unlock();
+            }
+        }
     }
 
     private void releaseIfDirect(ByteBuffer byteBuffer) {
@@ -308,6 +382,11 @@ public class PreloadBufferPool implements MemoryCacheManager {
         }
     }
 
+    @Override
+    public boolean hasFreeMemory(int size) {
+        return usedSize.get() + size <= evictMemorySize;
+    }
+
     @Override
     public void allocateMMap(BufferHolder bufferHolder) {
         reserveMemory(bufferHolder.size());
@@ -328,10 +407,12 @@ public class PreloadBufferPool implements MemoryCacheManager {
                 try {
                     ByteBuffer byteBuffer = preLoadCache.cache.remove();
                     preLoadCache.onFlyCounter.getAndIncrement();
+                    preLoadCache.hitCounter.incrementAndGet();
                     return byteBuffer;
                 } catch (NoSuchElementException e) {
                     logger.warn("Pool is empty, create ByteBuffer: {}", Format.formatSize(bufferSize));
-                    ByteBuffer byteBuffer = createOne(bufferSize);
+                    preLoadCache.missCounter.incrementAndGet();
+                    ByteBuffer byteBuffer = createOne(preLoadCache);
                     preLoadCache.onFlyCounter.getAndIncrement();
                     threads.wakeupThread(PRELOAD_THREAD);
                     return byteBuffer;
@@ -358,6 +439,7 @@ public class PreloadBufferPool implements MemoryCacheManager {
             } else {
                 byteBuffer.clear();
                 preLoadCache.cache.add(byteBuffer);
+                signalMemoryReleased();
             }
             preLoadCache.onFlyCounter.getAndDecrement();
         } else {
@@ -370,6 +452,7 @@ public class PreloadBufferPool implements MemoryCacheManager {
     public void releaseMMap(BufferHolder bufferHolder) {
         mMapBufferHolders.remove(bufferHolder);
         usedSize.getAndAdd(-1 * bufferHolder.size());
+        signalMemoryReleased();
 
     }
 
@@ -426,6 +509,10 @@ public class PreloadBufferPool implements MemoryCacheManager {
         private final Queue<ByteBuffer> cache = new ConcurrentLinkedQueue<>();
         private final AtomicInteger onFlyCounter = new AtomicInteger(0);
         private final AtomicInteger referenceCount;
+        private final AtomicLong hitCounter = new AtomicLong(0L);
+        private final AtomicLong missCounter = new AtomicLong(0L);
+        private final AtomicLong stallCounter = new AtomicLong(0L);
+        private final AtomicLong stallNanos = new AtomicLong(0L);
 
         PreLoadCache(int bufferSize, int coreCount, int maxCount) {
             this.bufferSize = bufferSize;
@@ -453,23 +540,21 @@ public class PreloadBufferPool implements MemoryCacheManager {
         public int getCachedCount() {
             return cache.size();
         }
-    }
 
-    private static class LruWrapper<V> {
-        private final long lastAccessTime;
-        private final V t;
+        public long getHitCount() {
+            return hitCounter.get();
+        }
 
-        LruWrapper(V t, long lastAccessTime) {
-            this.lastAccessTime = lastAccessTime;
-            this.t = t;
+        public long getMissCount() {
+            return missCounter.get();
         }
 
-        private long getLastAccessTime() {
-            return lastAccessTime;
+        public long getStallCount() {
+            return stallCounter.get();
         }
 
-        private V get() {
-            return t;
+        public long getStallTimeMs() {
+            return TimeUnit.NANOSECONDS.toMillis(stallNanos.get());
         }
     }
 }
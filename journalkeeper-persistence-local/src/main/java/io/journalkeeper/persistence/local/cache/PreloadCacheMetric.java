@@ -15,4 +15,28 @@ public interface PreloadCacheMetric {
 
     int getCachedCount();
 
+    /**
+     * 直接从缓存中取到Buffer的次数
+     * @return 次数
+     */
+    long getHitCount();
+
+    /**
+     * 缓存为空，临时创建Buffer的次数
+     * @return 次数
+     */
+    long getMissCount();
+
+    /**
+     * 临时创建Buffer时，因为内存不足等待释放内存的次数
+     * @return 次数
+     */
+    long getStallCount();
+
+    /**
+     * 因为内存不足等待释放内存的总时间
+     * @return 时间，单位毫秒
+     */
+    long getStallTimeMs();
+
 }
@@ -0,0 +1,239 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.persistence.local.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文件句柄池：所有Store共享的、有上限的FileChannel LRU缓存。
+ * 文件的读、写、刷盘、截断都复用同一个FileChannel，不再每次操作都打开、关闭文件。
+ * 打开的文件数超过上限时，关闭最久没有使用的空闲句柄；
+ * 正在使用的句柄不会被关闭，等使用完释放时再关闭。
+ *
+ * 句柄用ConcurrentHashMap和每个句柄各自的引用计数管理，获取和释放句柄不需要全局锁。
+ *
+ * 线程在IO过程中被中断时（例如LoopThread.stop()），FileChannel会被关闭（ClosedByInterruptException），
+ * 获取和释放句柄时发现句柄已经关闭，就把它移出池，下次获取时重新打开文件。
+ *
+ * 打开文件数上限可以用JVM参数"file_channel_pool.max_open_files"指定，默认为1024。
+ *
+ * 文件删除或者改名之前，必须调用{@link #close(File)}关闭句柄，
+ * 否则之后同名的新文件会拿到旧文件的句柄。
+ */
+class FileChannelPool {
+    private static final Logger logger = LoggerFactory.getLogger(FileChannelPool.class);
+    private final static String MAX_OPEN_FILES_KEY = "file_channel_pool.max_open_files";
+    private final static int DEFAULT_MAX_OPEN_FILES = 1024;
+    private static final FileChannelPool instance = new FileChannelPool(getMaxOpenFiles());
+
+    private final int maxOpenFiles;
+    private final Map<File, PooledChannel> channels = new ConcurrentHashMap<>();
+    // 逻辑时钟，用于找出最久没有使用的句柄
+    private final AtomicLong clock = new AtomicLong(0L);
+    // 淘汰句柄时加锁，避免多个线程同时扫描
+    private final Object evictLock = new Object();
+
+    FileChannelPool(int maxOpenFiles) {
+        this.maxOpenFiles = maxOpenFiles;
+    }
+
+    static FileChannelPool getInstance() {
+        return instance;
+    }
+
+    private static int getMaxOpenFiles() {
+        try {
+            return Math.max(Integer.parseInt(System.getProperty(MAX_OPEN_FILES_KEY, String.valueOf(DEFAULT_MAX_OPEN_FILES))), 1);
+        } catch (NumberFormatException e) {
+            return DEFAULT_MAX_OPEN_FILES;
+        }
+    }
+
+    /**
+     * 获取文件的句柄，使用完毕后必须调用{@link PooledChannel#close()}释放。
+     * 池中的句柄已经关闭时，移出池并重新打开文件。
+     * @param file 文件
+     * @param create 文件不存在时是否创建文件
+     * @return 文件句柄
+     * @throws FileNotFoundException create为false并且文件不存在时抛出
+     * @throws IOException 打开文件失败时抛出
+     */
+    PooledChannel acquire(File file, boolean create) throws IOException {
+        while (true) {
+            PooledChannel channel = channels.get(file);
+            if (null == channel) {
+                if (!create && !file.exists()) {
+                    throw new FileNotFoundException(file.getAbsolutePath());
+                }
+                channel = new PooledChannel(file, new RandomAccessFile(file, "rw"));
+                channel.refCount.incrementAndGet();
+                PooledChannel prev = channels.putIfAbsent(file, channel);
+                if (null != prev) {
+                    // 其它线程已经打开了这个文件，用它的句柄
+                    channel.closeFile();
+                    continue;
+                }
+                channel.touch();
+                evictIdleChannels();
+                return channel;
+            }
+            if (!channel.retain()) {
+                // 句柄正在被移出池
+                continue;
+            }
+            if (!channel.isOpen()) {
+                channel.close();
+                continue;
+            }
+            channel.touch();
+            return channel;
+        }
+    }
+
+    private void release(PooledChannel channel) {
+        if (!channel.isOpen()) {
+            // 使用过程中句柄被关闭了（例如线程被中断），移出池，下次获取时重新打开
+            remove(channel);
+        }
+        if (channel.refCount.decrementAndGet() <= 0 && channel.removed) {
+            // 已经被移出池，最后一个使用者负责关闭
+            channel.closeFile();
+        }
+    }
+
+    /**
+     * 把句柄移出池，没有使用者时立即关闭，否则由最后一个使用者释放时关闭
+     */
+    private void remove(PooledChannel channel) {
+        channel.removed = true;
+        channels.remove(channel.file, channel);
+        if (channel.refCount.get() <= 0) {
+            channel.closeFile();
+        }
+    }
+
+    private void evictIdleChannels() {
+        if (channels.size() <= maxOpenFiles) {
+            return;
+        }
+        synchronized (evictLock) {
+            while (channels.size() > maxOpenFiles) {
+                PooledChannel eldest = null;
+                for (PooledChannel channel : channels.values()) {
+                    if (channel.refCount.get() <= 0 && (null == eldest || channel.lastAccess < eldest.lastAccess)) {
+                        eldest = channel;
+                    }
+                }
+                if (null == eldest) {
+                    // 所有句柄都在使用中
+                    return;
+                }
+                remove(eldest);
+            }
+        }
+    }
+
+    /**
+     * 关闭文件的句柄，正在使用的句柄等到释放时关闭。
+     * @param file 文件
+     */
+    void close(File file) {
+        PooledChannel channel = channels.get(file);
+        if (null != channel) {
+            remove(channel);
+        }
+    }
+
+    /**
+     * 当前打开的文件数
+     * @return 打开的文件数
+     */
+    int size() {
+        return channels.size();
+    }
+
+    /**
+     * 池中的文件句柄，同一个文件的句柄被多个线程共享，
+     * 只能使用不依赖position的读写方法，或者由调用方保证互斥。
+     */
+    class PooledChannel implements AutoCloseable {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final AtomicInteger refCount = new AtomicInteger(0);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        // 是否已经移出池
+        private volatile boolean removed = false;
+        private volatile long lastAccess = 0L;
+
+        private PooledChannel(File file, RandomAccessFile raf) {
+            this.file = file;
+            this.raf = raf;
+        }
+
+        FileChannel channel() {
+            return raf.getChannel();
+        }
+
+        private boolean isOpen() {
+            return raf.getChannel().isOpen();
+        }
+
+        /**
+         * 增加引用计数
+         * @return 句柄已经移出池时返回false
+         */
+        private boolean retain() {
+            refCount.incrementAndGet();
+            if (removed) {
+                release(this);
+                return false;
+            }
+            return true;
+        }
+
+        private void touch() {
+            lastAccess = clock.incrementAndGet();
+        }
+
+        private void closeFile() {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    logger.warn("Close file {} exception: ", file.getAbsolutePath(), e);
+                }
+            }
+        }
+
+        /**
+         * 释放句柄，不会真正关闭文件
+         */
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.persistence.local.journal;
+
+import io.journalkeeper.persistence.JournalPersistence;
+import io.journalkeeper.persistence.MonitoredPersistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 索引存储，恢复时根据属性{@link #STORE_TYPE_KEY}选择实现：
+ * positioning（默认）：{@link PositioningStore}；
+ * mapped：{@link MappedIndexStore}，恢复时将旧格式的文件迁移成定长的段文件。
+ *
+ * 从mapped切换回positioning时，恢复前先将段文件转换回旧格式的文件，
+ * 所以两种格式可以来回切换，不需要手动处理文件。
+ */
+public class IndexStore implements JournalPersistence, MonitoredPersistence, Closeable {
+    public final static String STORE_TYPE_KEY = "store_type";
+    public final static String STORE_TYPE_POSITIONING = "positioning";
+    public final static String STORE_TYPE_MAPPED = "mapped";
+    private final static String DEFAULT_STORE_TYPE = STORE_TYPE_POSITIONING;
+    private JournalPersistence store = null;
+
+    @Override
+    public void recover(Path path, long min, Properties properties) throws IOException {
+        if (null == store) {
+            store = createStore(path, properties);
+        }
+        store.recover(path, min, properties);
+    }
+
+    private JournalPersistence createStore(Path path, Properties properties) throws IOException {
+        String storeType = properties.getProperty(STORE_TYPE_KEY, DEFAULT_STORE_TYPE);
+        switch (storeType) {
+            case STORE_TYPE_POSITIONING:
+                MappedIndexStore.rollbackSegmentFiles(path, Integer.parseInt(
+                        properties.getProperty(
+                                PositioningStore.Config.FILE_HEADER_SIZE_KEY,
+                                String.valueOf(PositioningStore.Config.DEFAULT_FILE_HEADER_SIZE))));
+                return new PositioningStore();
+            case STORE_TYPE_MAPPED:
+                return new MappedIndexStore();
+            default:
+                throw new IllegalArgumentException(String.format("Invalid %s: %s!", STORE_TYPE_KEY, storeType));
+        }
+    }
+
+    @Override
+    public long min() {
+        return store.min();
+    }
+
+    @Override
+    public long physicalMin() {
+        return store.physicalMin();
+    }
+
+    @Override
+    public long max() {
+        return store.max();
+    }
+
+    @Override
+    public long flushed() {
+        return store.flushed();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        store.flush();
+    }
+
+    @Override
+    public void force() throws IOException {
+        store.force();
+    }
+
+    @Override
+    public boolean isWritable() {
+        return store.isWritable();
+    }
+
+    @Override
+    public boolean awaitWritable(long timeout, TimeUnit unit) throws InterruptedException {
+        return store.awaitWritable(timeout, unit);
+    }
+
+    @Override
+    public CompletableFuture<Long> flushFuture(long position) {
+        return store.flushFuture(position);
+    }
+
+    @Override
+    public void truncate(long givenMax) throws IOException {
+        store.truncate(givenMax);
+    }
+
+    @Override
+    public long compact(long givenMin) throws IOException {
+        return store.compact(givenMin);
+    }
+
+    @Override
+    public long append(byte[] entry) throws IOException {
+        return store.append(entry);
+    }
+
+    @Override
+    public long append(List<byte[]> entries) throws IOException {
+        return store.append(entries);
+    }
+
+    @Override
+    public byte[] read(long position, int length) throws IOException {
+        return store.read(position, length);
+    }
+
+    @Override
+    public List<ByteBuffer> readBuffers(long position, int length) throws IOException {
+        return store.readBuffers(position, length);
+    }
+
+    @Override
+    public Long readLong(long position) throws IOException {
+        return store.readLong(position);
+    }
+
+    @Override
+    public long[] readLongs(long position, int count) throws IOException {
+        return store.readLongs(position, count);
+    }
+
+    @Override
+    public void delete() throws IOException {
+        store.delete();
+    }
+
+    @Override
+    public Path getBasePath() {
+        return store.getBasePath();
+    }
+
+    @Override
+    public Path getPath() {
+        return ((MonitoredPersistence) store).getPath();
+    }
+
+    @Override
+    public long getFreeSpace() {
+        return ((MonitoredPersistence) store).getFreeSpace();
+    }
+
+    @Override
+    public long getTotalSpace() {
+        return ((MonitoredPersistence) store).getTotalSpace();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (null != store) {
+            store.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IndexStore{" +
+                "store=" + store +
+                '}';
+    }
+}
@@ -22,12 +22,12 @@ import sun.misc.Cleaner;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.lang.reflect.Method;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -38,6 +38,11 @@ import java.util.concurrent.locks.StampedLock;
  */
 public class LocalStoreFile implements StoreFile, BufferHolder {
     private static final Logger logger = LoggerFactory.getLogger(LocalStoreFile.class);
+    // 预分配的文件长度固定为文件最大长度，不能用文件长度计算数据长度，
+    // 文件头中：[8, 16) 魔数，标记这是预分配的文件；[16, 24) 已刷盘数据的长度。
+    static final int PREALLOCATED_MAGIC_OFFSET = 8;
+    static final int DATA_LENGTH_OFFSET = 16;
+    static final long PREALLOCATED_MAGIC = 0x4A4B505245414C4CL;
     // 缓存页类型
     // 只读：
     // MAPPED_BUFFER：mmap映射内存镜像文件；
@@ -59,6 +64,8 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
     private int bufferType = NO_BUFFER;
 
     private MemoryCacheManager bufferPool;
+    // 共享的文件句柄池
+    private final FileChannelPool channelPool = FileChannelPool.getInstance();
     private int capacity;
     private long lastAccessTime = System.currentTimeMillis();
 
@@ -69,20 +76,69 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
 
     private long timestamp = -1L;
     private AtomicBoolean flushGate = new AtomicBoolean(false);
+    // 直写模式：写入的数据不经过缓存页，直接聚合写入文件，读取时使用只读的mmap映射
+    private final boolean writeThrough;
+    // 是否是预分配的文件，预分配的文件数据长度记录在文件头中
+    private final boolean preallocated;
 
 
-    LocalStoreFile(long filePosition, File base, int headerSize, MemoryCacheManager bufferPool, int maxFileDataLength) {
+    LocalStoreFile(long filePosition, File base, int headerSize, MemoryCacheManager bufferPool, int maxFileDataLength) throws IOException {
+        this(filePosition, base, headerSize, bufferPool, maxFileDataLength, false);
+    }
+
+    LocalStoreFile(long filePosition, File base, int headerSize, MemoryCacheManager bufferPool, int maxFileDataLength, boolean writeThrough) throws IOException {
         this.filePosition = filePosition;
         this.headerSize = headerSize;
         this.bufferPool = bufferPool;
         this.capacity = maxFileDataLength;
+        this.writeThrough = writeThrough;
         this.file = new File(base, String.valueOf(filePosition));
-        if (file.exists() && file.length() > headerSize) {
+        this.preallocated = isPreallocated(file);
+        if (preallocated) {
+            long dataLength = readDataLength(file);
+            if (dataLength < 0 || dataLength > maxFileDataLength) {
+                throw new CorruptedStoreException(String.format("Invalid data length %d in header of file %s!", dataLength, file.getAbsolutePath()));
+            }
+            this.writePosition = (int) dataLength;
+            this.flushPosition = writePosition;
+        } else if (file.exists() && file.length() > headerSize) {
             this.writePosition = (int) (file.length() - headerSize);
             this.flushPosition = writePosition;
         }
     }
 
+    static boolean isPreallocated(File file) throws IOException {
+        return file.exists() && file.length() >= DATA_LENGTH_OFFSET + Long.BYTES &&
+                readHeaderLong(file, PREALLOCATED_MAGIC_OFFSET) == PREALLOCATED_MAGIC;
+    }
+
+    static long readDataLength(File file) throws IOException {
+        return readHeaderLong(file, DATA_LENGTH_OFFSET);
+    }
+
+    private static long readHeaderLong(File file, int offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (fileChannel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new CorruptedStoreException(String.format("Read header of file %s failed!", file.getAbsolutePath()));
+                }
+            }
+        }
+        return buffer.getLong(0);
+    }
+
+    /**
+     * 预分配的文件在数据写入之后更新文件头中的数据长度，恢复时以此为准
+     */
+    private void writeDataLength(FileChannel fileChannel, int dataLength) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        buffer.putLong(0, dataLength);
+        while (buffer.hasRemaining()) {
+            fileChannel.write(buffer, DATA_LENGTH_OFFSET + buffer.position());
+        }
+    }
+
     @Override
     public File file() {
         return file;
@@ -97,9 +153,9 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
         if (null != pageBuffer) throw new IOException("Buffer already loaded!");
         bufferPool.allocateMMap(this);
         ByteBuffer loadBuffer;
-        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel fileChannel = raf.getChannel()) {
+        try (FileChannelPool.PooledChannel pooledChannel = channelPool.acquire(file, false)) {
             loadBuffer =
-                    fileChannel.map(FileChannel.MapMode.READ_ONLY, headerSize, file.length() - headerSize);
+                    pooledChannel.channel().map(FileChannel.MapMode.READ_ONLY, headerSize, file.length() - headerSize);
             pageBuffer = loadBuffer;
             bufferType = MAPPED_BUFFER;
             pageBuffer.clear();
@@ -126,13 +182,16 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
     }
 
     private void loadDirectBuffer(ByteBuffer buffer) throws IOException {
-        if (file.exists() && file.length() > headerSize) {
-            try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel fileChannel = raf.getChannel()) {
-                fileChannel.position(headerSize);
+        if (file.exists() && flushPosition > 0) {
+            try (FileChannelPool.PooledChannel pooledChannel = channelPool.acquire(file, false)) {
+                FileChannel fileChannel = pooledChannel.channel();
+                // 只读取已有的数据，预分配文件的剩余部分不需要读取
+                buffer.limit(flushPosition);
+                long offset = headerSize;
                 int length;
-                do {
-                    length = fileChannel.read(buffer);
-                } while (length > 0);
+                while (buffer.hasRemaining() && (length = fileChannel.read(buffer, offset)) > 0) {
+                    offset += length;
+                }
             }
             buffer.clear();
         }
@@ -150,9 +209,8 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
 
     private void readTimestamp() {
         ByteBuffer timeBuffer = ByteBuffer.allocate(8);
-        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel fileChannel = raf.getChannel()) {
-            fileChannel.position(0);
-            fileChannel.read(timeBuffer);
+        try (FileChannelPool.PooledChannel pooledChannel = channelPool.acquire(file, false)) {
+            pooledChannel.channel().read(timeBuffer, 0L);
         } catch (Exception e) {
             logger.warn("Exception: ", e);
         } finally {
@@ -164,9 +222,8 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
         ByteBuffer timeBuffer = ByteBuffer.allocate(8);
         long creationTime = System.currentTimeMillis();
         timeBuffer.putLong(0, creationTime);
-        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel fileChannel = raf.getChannel()) {
-            fileChannel.position(0);
-            fileChannel.write(timeBuffer);
+        try (FileChannelPool.PooledChannel pooledChannel = channelPool.acquire(file, true)) {
+            pooledChannel.channel().write(timeBuffer, 0L);
         } catch (Exception e) {
             logger.warn("Exception:", e);
         } finally {
@@ -209,11 +266,17 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
         touch();
         long stamp = bufferLock.readLock();
         try {
+            if (isCold()) {
+                return readFromFile(position, length);
+            }
             while (!hasPage()) {
                 long ws = bufferLock.tryConvertToWriteLock(stamp);
                 if (ws != 0L) {
                     // 升级成写锁成功
                     stamp = ws;
+                    if (hasPage()) {
+                        unloadUnsafe();
+                    }
                     loadRoUnsafe();
                 } else {
                     bufferLock.unlockRead(stamp);
@@ -224,9 +287,12 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
             if (rs != 0L) {
                 stamp = rs;
             }
+            if (isBeyondPage(position, Math.min(length, writePosition - position))) {
+                return readFromFile(position, length);
+            }
             ByteBuffer byteBuffer = pageBuffer.asReadOnlyBuffer();
             byteBuffer.position(position);
-            byteBuffer.limit(writePosition);
+            byteBuffer.limit(Math.min(writePosition, byteBuffer.capacity()));
 
             ByteBuffer dest = ByteBuffer.allocate(Math.min(length, byteBuffer.remaining()));
             if (length < byteBuffer.remaining()) {
@@ -246,11 +312,17 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
         touch();
         long stamp = bufferLock.readLock();
         try {
+            if (isCold()) {
+                return readFromFile(position, Long.BYTES).getLong();
+            }
             while (!hasPage()) {
                 long ws = bufferLock.tryConvertToWriteLock(stamp);
                 if (ws != 0L) {
                     // 升级成写锁成功
                     stamp = ws;
+                    if (hasPage()) {
+                        unloadUnsafe();
+                    }
                     loadRoUnsafe();
                 } else {
                     bufferLock.unlockRead(stamp);
@@ -261,13 +333,79 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
             if (rs != 0L) {
                 stamp = rs;
             }
-
+            if (isBeyondPage(position, Long.BYTES)) {
+                return readFromFile(position, Long.BYTES).getLong();
+            }
             return pageBuffer.getLong(position);
         } finally {
             bufferLock.unlock(stamp);
         }
     }
 
+    /**
+     * 冷数据：文件没有加载，并且缓存已经没有空闲的内存。
+     * 这时加载整个文件会把正在使用的热数据挤出缓存，所以直接从文件中读取需要的数据。
+     * 没有加载缓存页时，文件中的数据一定是完整的。
+     */
+    private boolean isCold() {
+        return !hasPage() && !bufferPool.hasFreeMemory(capacity);
+    }
+
+    // 需要持有bufferLock
+    private ByteBuffer readFromFile(int position, int length) throws IOException {
+        ByteBuffer dest = ByteBuffer.allocate(Math.max(Math.min(length, writePosition - position), 0));
+        try (FileChannelPool.PooledChannel pooledChannel = channelPool.acquire(file, false)) {
+            FileChannel fileChannel = pooledChannel.channel();
+            while (dest.hasRemaining()) {
+                if (fileChannel.read(dest, headerSize + position + dest.position()) < 0) {
+                    break;
+                }
+            }
+        }
+        dest.flip();
+        return dest;
+    }
+
+    /**
+     * 直写模式下，文件在映射之后又追加了新的数据，这部分数据不在映射范围内。
+     * 不重新映射整个文件，超出映射范围的读取直接从文件中读取。
+     */
+    private boolean isBeyondPage(int position, int length) {
+        return position + length > pageBuffer.capacity();
+    }
+
+    /**
+     * 直写模式：用一次聚合写（gathering write）把所有buffer直接写入文件，不再复制到缓存页。
+     * 写入的位置和文件头、数据的布局与缓存页刷盘完全一致，写入后数据已经在操作系统的页缓存中，
+     * 所以刷盘位置同时推进到写入位置，持久化到存储设备仍然由force()负责。
+     */
+    // Not thread safe!
+    private int appendToFile(ByteBuffer[] byteBuffers) throws IOException {
+        long writeLength = 0L;
+        for (ByteBuffer byteBuffer : byteBuffers) {
+            writeLength += byteBuffer.remaining();
+        }
+        if (!file.exists()) {
+            // 第一次创建文件写入头部预留128字节中0位置开始的前8字节长度:文件创建时间戳
+            writeTimestamp();
+        }
+        try (FileChannelPool.PooledChannel pooledChannel = channelPool.acquire(file, true)) {
+            // 聚合写没有指定位置的版本，只有写入线程会移动句柄的position
+            FileChannel fileChannel = pooledChannel.channel();
+            fileChannel.position(headerSize + writePosition);
+            long written = 0L;
+            while (written < writeLength) {
+                written += fileChannel.write(byteBuffers);
+            }
+            if (preallocated) {
+                writeDataLength(fileChannel, (int) (writePosition + writeLength));
+            }
+        }
+        writePosition += writeLength;
+        flushPosition = writePosition;
+        return (int) writeLength;
+    }
+
     // Not thread safe!
     private int appendToPageBuffer(ByteBuffer byteBuffer) {
         pageBuffer.position(writePosition);
@@ -293,6 +431,9 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
     @Override
     public int append(ByteBuffer byteBuffer) throws IOException {
         touch();
+        if (writeThrough) {
+            return appendToFile(new ByteBuffer[]{byteBuffer});
+        }
         long stamp = bufferLock.readLock();
         try {
             while (bufferType != DIRECT_BUFFER) {
@@ -320,6 +461,9 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
     @Override
     public int append(List<ByteBuffer> byteBuffers) throws IOException {
         touch();
+        if (writeThrough) {
+            return appendToFile(byteBuffers.toArray(new ByteBuffer[0]));
+        }
         long stamp = bufferLock.readLock();
         try {
             while (bufferType != DIRECT_BUFFER) {
@@ -361,8 +505,8 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
                         // 第一次创建文件写入头部预留128字节中0位置开始的前8字节长度:文件创建时间戳
                         writeTimestamp();
                     }
-                    try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel fileChannel = raf.getChannel()) {
-                        return flushPageBuffer(fileChannel);
+                    try (FileChannelPool.PooledChannel pooledChannel = channelPool.acquire(file, true)) {
+                        return flushPageBuffer(pooledChannel.channel());
                     } finally {
                         flushGate.compareAndSet(true, false);
                     }
@@ -381,11 +525,14 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
         ByteBuffer flushBuffer = pageBuffer.asReadOnlyBuffer();
         flushBuffer.position(flushPosition);
         flushBuffer.limit(flushEnd);
-        fileChannel.position(headerSize + flushPosition);
+        long offset = headerSize + flushPosition;
         int flushSize = flushEnd - flushPosition;
 
         while (flushBuffer.hasRemaining()) {
-            fileChannel.write(flushBuffer);
+            offset += fileChannel.write(flushBuffer, offset);
+        }
+        if (preallocated) {
+            writeDataLength(fileChannel, flushEnd);
         }
         flushPosition = flushEnd;
         return flushSize;
@@ -394,6 +541,10 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
     // Not thread safe!
     @Override
     public void rollback(int position) throws IOException {
+        if (writeThrough && hasPage()) {
+            // 直写模式下缓存页是文件的只读映射，截断文件之前先解除映射
+            forceUnload();
+        }
         if (position < writePosition) {
             writePosition = position;
         }
@@ -403,8 +554,13 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
             }
             try {
                 flushPosition = position;
-                try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel fileChannel = raf.getChannel()) {
-                    fileChannel.truncate(position + headerSize);
+                try (FileChannelPool.PooledChannel pooledChannel = channelPool.acquire(file, true)) {
+                    if (preallocated) {
+                        // 预分配的文件保持文件长度不变，只回滚文件头中的数据长度
+                        writeDataLength(pooledChannel.channel(), position);
+                    } else {
+                        pooledChannel.channel().truncate(position + headerSize);
+                    }
                 }
             } finally {
                 flushGate.compareAndSet(true, false);
@@ -424,6 +580,9 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
 
     @Override
     public int fileDataSize() {
+        if (preallocated) {
+            return flushPosition;
+        }
         return Math.max((int) file.length() - headerSize, 0);
     }
 
@@ -488,9 +647,15 @@ public class LocalStoreFile implements StoreFile, BufferHolder {
 
     @Override
     public void force() throws IOException {
-        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel fileChannel = raf.getChannel()) {
-            fileChannel.force(true);
+        try (FileChannelPool.PooledChannel pooledChannel = channelPool.acquire(file, true)) {
+            pooledChannel.channel().force(true);
         }
     }
 
+    @Override
+    public void close() {
+        forceUnload();
+        channelPool.close(file);
+    }
+
 }
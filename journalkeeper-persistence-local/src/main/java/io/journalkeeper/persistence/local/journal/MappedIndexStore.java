@@ -0,0 +1,918 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.persistence.local.journal;
+
+import io.journalkeeper.persistence.JournalPersistence;
+import io.journalkeeper.persistence.MonitoredPersistence;
+import io.journalkeeper.persistence.TooManyBytesException;
+import io.journalkeeper.utils.ThreadSafeFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sun.misc.Cleaner;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于内存映射文件的定长索引存储，用于存放由8字节long组成的索引。
+ *
+ * 每个文件（段）的数据长度固定，文件的起始位置按数据长度对齐，
+ * 定位段只需要一次除法和一次数组访问，不需要查找。
+ * 段表采用写时复制，读操作不加锁，直接读取映射内存。
+ *
+ * 文件头：
+ * [0, 8) 创建时间；
+ * [8, 16) 魔数，用于区分旧格式（{@link PositioningStore}）的文件；
+ * [16, 24) 段内数据起始位置，只有第一个段可能不为0；
+ * [24, 32) 段内已刷盘数据的结束位置，数据刷盘之后才会更新，恢复时以此为准。
+ *
+ * 恢复时如果发现旧格式的文件，会将数据迁移到新格式的文件中。
+ * 迁移是单向的，如果需要切换回旧格式，使用{@link #rollbackSegmentFiles(Path, int)}将段文件转换回旧格式的文件，
+ * 见{@link IndexStore}。
+ */
+public class MappedIndexStore implements JournalPersistence, MonitoredPersistence, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(MappedIndexStore.class);
+    private static final int HEADER_SIZE = 128;
+    private static final long MAGIC = 0x4A4B4D4150494458L;
+    private static final int TIMESTAMP_OFFSET = 0;
+    private static final int MAGIC_OFFSET = 8;
+    private static final int START_OFFSET = 16;
+    private static final int END_OFFSET = 24;
+    // 迁移旧格式文件时使用的临时目录
+    private static final String LEGACY_PATH = "legacy";
+    // 迁移完成后，临时目录原子的重命名为这个目录，作为迁移完成的标记
+    private static final String MIGRATED_LEGACY_PATH = "legacy.migrated";
+    // 段文件转换回旧格式时使用的临时目录
+    private static final String SEGMENT_PATH = "segments";
+    // 转换完成后，临时目录原子的重命名为这个目录，作为转换完成的标记
+    private static final String ROLLED_BACK_SEGMENT_PATH = "segments.rolledback";
+    private static final int MIGRATE_BUFFER_SIZE = 1024 * 1024;
+    // 被删除的段延迟释放映射内存，避免无锁读取时访问已经释放的内存
+    private static final long RETIRED_SEGMENT_TIMEOUT_MS = 60 * 1000L;
+
+    // 删除、回滚和创建段不能同时操作段表，需要做一下互斥。
+    private final Object fileMapMutex = new Object();
+    private final AtomicLong flushPosition = new AtomicLong(0L);
+    // 已经强制写入存储设备（fsync）的位置
+    private final AtomicLong forcePosition = new AtomicLong(0L);
+    private final AtomicLong writePosition = new AtomicLong(0L);
+    private final AtomicLong leftPosition = new AtomicLong(0L);
+    private final List<Segment> retiredSegments = new ArrayList<>();
+    private volatile SegmentTable segmentTable = SegmentTable.EMPTY;
+    private File base;
+    private Config config = null;
+
+    @Override
+    public void recover(Path path, long min, Properties properties) throws IOException {
+        Files.createDirectories(path);
+        this.base = path.toFile();
+        this.config = toConfig(properties);
+
+        migrateLegacyFiles(min);
+        recoverSegments(min);
+
+        SegmentTable table = segmentTable;
+        long recoverPosition = table.isEmpty() ? min : table.last().position + table.last().end;
+        flushPosition.set(recoverPosition);
+        forcePosition.set(recoverPosition);
+        writePosition.set(recoverPosition);
+        leftPosition.set(table.isEmpty() ? min : table.first().position + table.first().start);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Store loaded, left: {}, right: {},  base: {}.",
+                    ThreadSafeFormat.formatWithComma(min()),
+                    ThreadSafeFormat.formatWithComma(max()),
+                    base.getAbsolutePath());
+        }
+    }
+
+    private Config toConfig(Properties properties) {
+        Config config = new Config();
+
+        int fileDataSize = Integer.parseInt(
+                properties.getProperty(
+                        Config.FILE_DATA_SIZE_KEY,
+                        String.valueOf(Config.DEFAULT_FILE_DATA_SIZE)));
+        // 段长度必须是long长度的整数倍，保证索引不会跨段
+        config.setFileDataSize(fileDataSize - fileDataSize % Long.BYTES);
+
+        config.setLegacyFileHeaderSize(Integer.parseInt(
+                properties.getProperty(
+                        Config.LEGACY_FILE_HEADER_SIZE_KEY,
+                        String.valueOf(Config.DEFAULT_LEGACY_FILE_HEADER_SIZE))));
+
+        if (config.getFileDataSize() <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid %s: %d!", Config.FILE_DATA_SIZE_KEY, fileDataSize));
+        }
+        return config;
+    }
+
+    private void recoverSegments(long min) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        File[] files = listSegmentFiles(base);
+        for (int i = 0; i < files.length; i++) {
+            File file = files[i];
+            long position = Long.parseLong(file.getName());
+            long fileLength = file.length();
+            boolean lastFile = i == files.length - 1;
+            // 最后一个文件的尾部可能因为宕机丢失，其它文件必须是完整的
+            if (position % config.getFileDataSize() != 0 || fileLength > HEADER_SIZE + config.getFileDataSize() ||
+                    (!lastFile && fileLength < HEADER_SIZE + config.getFileDataSize())) {
+                throw new CorruptedStoreException(String.format("Invalid segment file: %s, file length: %d, file data size: %d.",
+                        file.getAbsolutePath(), fileLength, config.getFileDataSize()));
+            }
+            if (fileLength < HEADER_SIZE + config.getFileDataSize()) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(HEADER_SIZE + config.getFileDataSize());
+                }
+            }
+            Segment segment = mapSegment(file, position);
+            if (segment.end > fileLength - HEADER_SIZE) {
+                logger.info("Truncate store file {} to relative position {}.", file.getAbsolutePath(), fileLength - HEADER_SIZE);
+                segment.end = (int) Math.max(segment.start, fileLength - HEADER_SIZE);
+                segment.header.putLong(END_OFFSET, segment.end);
+            }
+            if (position + segment.start >= min || position + segment.end > min) {
+                segments.add(segment);
+            } else {
+                logger.info("Ignore file {}, cause file position is smaller than given min position {}.", file.getAbsolutePath(), min);
+                unmap(segment);
+            }
+        }
+
+        // 检查文件是否连续完整
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            boolean continuous = i == 0 || segment.position == segments.get(i - 1).position + config.getFileDataSize();
+            boolean startOk = i == 0 || segment.start == 0;
+            boolean endOk = i == segments.size() - 1 || segment.end == config.getFileDataSize();
+            if (!continuous || !startOk || !endOk) {
+                segments.forEach(this::unmap);
+                throw new CorruptedStoreException(String.format("Files are not continuous! file: %s, start: %d, end: %d, store: %s.",
+                        segment.file.getAbsolutePath(), segment.start, segment.end, base.getAbsolutePath()));
+            }
+        }
+
+        segmentTable = segments.isEmpty() ? SegmentTable.EMPTY :
+                new SegmentTable(segments.get(0).position / config.getFileDataSize(), segments.toArray(new Segment[0]));
+    }
+
+    /**
+     * 将旧格式的文件迁移成定长的段文件。
+     * 先把旧文件移动到临时目录中，再逐个读出写入新的段文件，全部写入并刷盘后，
+     * 将临时目录原子的重命名为{@link #MIGRATED_LEGACY_PATH}，然后才删除其中的旧文件。
+     * 如果重命名之前宕机，下次恢复时删除不完整的段文件后重新迁移；
+     * 如果重命名之后宕机，说明新的段文件已经完整，只需要删除剩余的旧文件。
+     */
+    private void migrateLegacyFiles(long min) throws IOException {
+        Path legacyPath = base.toPath().resolve(LEGACY_PATH);
+        Path migratedPath = base.toPath().resolve(MIGRATED_LEGACY_PATH);
+        deleteLegacyDirectory(migratedPath);
+
+        for (File file : listSegmentFiles(base)) {
+            if (!isSegmentFile(file)) {
+                Files.createDirectories(legacyPath);
+                Files.move(file.toPath(), legacyPath.resolve(file.getName()));
+            }
+        }
+
+        if (!Files.isDirectory(legacyPath)) {
+            return;
+        }
+
+        File[] legacyFiles = listSegmentFiles(legacyPath.toFile());
+        if (legacyFiles.length > 0) {
+            logger.info("Migrating {} legacy index files, store: {}...", legacyFiles.length, base.getAbsolutePath());
+            for (File file : listSegmentFiles(base)) {
+                deleteFile(file);
+            }
+
+            long position = -1L;
+            ByteBuffer buffer = ByteBuffer.allocate(MIGRATE_BUFFER_SIZE);
+            for (File file : legacyFiles) {
+                long filePosition = Long.parseLong(file.getName());
+                long dataLength = file.length() - config.getLegacyFileHeaderSize();
+                if (filePosition < min && filePosition + dataLength <= min) {
+                    logger.info("Ignore file {}, cause file position is smaller than given min position {}.", file.getAbsolutePath(), min);
+                    continue;
+                }
+                if (position < 0) {
+                    position = filePosition;
+                    leftPosition.set(position);
+                    writePosition.set(position);
+                    flushPosition.set(position);
+                    forcePosition.set(position);
+                } else if (position != filePosition) {
+                    throw new CorruptedStoreException(String.format("Files are not continuous! expect: %d, actual file name: %d, store: %s.", position, filePosition, legacyPath));
+                }
+
+                try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    fileChannel.position(config.getLegacyFileHeaderSize());
+                    buffer.clear();
+                    while (fileChannel.read(buffer) > 0) {
+                        buffer.flip();
+                        write(position, buffer.array(), 0, buffer.remaining());
+                        position += buffer.remaining();
+                        buffer.clear();
+                    }
+                }
+                writePosition.set(position);
+            }
+
+            if (position >= 0) {
+                flush();
+                force();
+            }
+            unmapAll();
+            logger.info("Legacy index files migrated, left: {}, right: {}, store: {}.",
+                    ThreadSafeFormat.formatWithComma(leftPosition.get()),
+                    ThreadSafeFormat.formatWithComma(position),
+                    base.getAbsolutePath());
+        }
+
+        Files.move(legacyPath, migratedPath, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(base.toPath());
+        deleteLegacyDirectory(migratedPath);
+    }
+
+    /**
+     * 将段文件转换回旧格式（{@link PositioningStore}）的文件，用于从{@link MappedIndexStore}切换回{@link PositioningStore}。
+     * 每个段转换成一个旧格式的文件，文件名为段内数据的起始位置，文件头填0。
+     * 和迁移一样，先把段文件移动到临时目录中，全部转换并刷盘后，
+     * 将临时目录原子的重命名为{@link #ROLLED_BACK_SEGMENT_PATH}，然后才删除其中的段文件。
+     * 目录中没有段文件时什么都不做。
+     * @param path 存储目录
+     * @param legacyFileHeaderSize 旧格式文件的文件头长度
+     * @throws IOException 发生IO异常时抛出
+     */
+    static void rollbackSegmentFiles(Path path, int legacyFileHeaderSize) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return;
+        }
+        Path segmentPath = path.resolve(SEGMENT_PATH);
+        Path rolledBackPath = path.resolve(ROLLED_BACK_SEGMENT_PATH);
+        deleteLegacyDirectory(rolledBackPath);
+
+        for (File file : listSegmentFiles(path.toFile())) {
+            if (isSegmentFile(file)) {
+                Files.createDirectories(segmentPath);
+                Files.move(file.toPath(), segmentPath.resolve(file.getName()));
+            }
+        }
+
+        if (!Files.isDirectory(segmentPath)) {
+            return;
+        }
+
+        File[] segmentFiles = listSegmentFiles(segmentPath.toFile());
+        if (segmentFiles.length > 0) {
+            logger.info("Rolling back {} index segment files to legacy files, store: {}...", segmentFiles.length, path);
+            for (File file : listSegmentFiles(path.toFile())) {
+                deleteFile(file);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            for (File file : segmentFiles) {
+                try (FileChannel segmentChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    header.clear();
+                    while (header.hasRemaining() && segmentChannel.read(header) > 0) ;
+                    if (header.hasRemaining()) {
+                        throw new CorruptedStoreException(String.format("Read header of file %s failed!", file.getAbsolutePath()));
+                    }
+                    long start = header.getLong(START_OFFSET);
+                    long end = header.getLong(END_OFFSET);
+                    if (end <= start) {
+                        continue;
+                    }
+                    File legacyFile = path.resolve(String.valueOf(Long.parseLong(file.getName()) + start)).toFile();
+                    try (FileChannel legacyChannel = FileChannel.open(legacyFile.toPath(),
+                            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                        ByteBuffer legacyHeader = ByteBuffer.allocate(legacyFileHeaderSize);
+                        while (legacyHeader.hasRemaining()) {
+                            legacyChannel.write(legacyHeader);
+                        }
+                        long transferred = 0L;
+                        while (transferred < end - start) {
+                            transferred += segmentChannel.transferTo(HEADER_SIZE + start + transferred,
+                                    end - start - transferred, legacyChannel);
+                        }
+                        legacyChannel.force(true);
+                    }
+                }
+            }
+            logger.info("Index segment files rolled back, store: {}.", path);
+        }
+
+        forceDirectory(path);
+        Files.move(segmentPath, rolledBackPath, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(path);
+        deleteLegacyDirectory(rolledBackPath);
+    }
+
+    private static void deleteLegacyDirectory(Path legacyPath) throws IOException {
+        if (Files.isDirectory(legacyPath)) {
+            for (File file : listSegmentFiles(legacyPath.toFile())) {
+                deleteFile(file);
+            }
+            Files.deleteIfExists(legacyPath);
+        }
+    }
+
+    /**
+     * 同步目录，保证重命名已经写入存储设备。有些平台不支持打开目录，忽略即可。
+     */
+    private static void forceDirectory(Path dir) {
+        try (FileChannel fileChannel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            fileChannel.force(true);
+        } catch (IOException e) {
+            logger.debug("Force directory {} failed, ignored.", dir, e);
+        }
+    }
+
+    private static boolean isSegmentFile(File file) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+            fileChannel.position(MAGIC_OFFSET);
+            while (buffer.hasRemaining() && fileChannel.read(buffer) > 0) ;
+            buffer.flip();
+            return buffer.remaining() == Long.BYTES && buffer.getLong() == MAGIC;
+        }
+    }
+
+    private static File[] listSegmentFiles(File dir) {
+        File[] files = dir.listFiles(file -> file.isFile() && file.getName().matches("\\d+"));
+        if (null == files) {
+            return new File[0];
+        }
+        Arrays.sort(files, Comparator.comparingLong(file -> Long.parseLong(file.getName())));
+        return files;
+    }
+
+    @Override
+    public long append(byte[] bytes) throws IOException {
+        if (bytes.length > config.getFileDataSize()) {
+            throw new TooManyBytesException(bytes.length, config.getFileDataSize(), base.toPath());
+        }
+        long position = writePosition.get();
+        write(position, bytes, 0, bytes.length);
+        // 数据全部写入后再更新写入位置，读线程不会读到写了一半的数据
+        writePosition.set(position + bytes.length);
+        return position + bytes.length;
+    }
+
+    @Override
+    public long append(List<byte[]> bytesList) throws IOException {
+        int totalLength = 0;
+        for (byte[] bytes : bytesList) {
+            totalLength += bytes.length;
+        }
+        if (totalLength > config.getFileDataSize()) {
+            throw new TooManyBytesException(totalLength, config.getFileDataSize(), base.toPath());
+        }
+        long position = writePosition.get();
+        for (byte[] bytes : bytesList) {
+            write(position, bytes, 0, bytes.length);
+            position += bytes.length;
+        }
+        writePosition.set(position);
+        return position;
+    }
+
+    private void write(long position, byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            Segment segment = getOrCreateSegment(position);
+            int relPosition = (int) (position - segment.position);
+            int writeLength = Math.min(length, config.getFileDataSize() - relPosition);
+            ByteBuffer data = segment.data.duplicate();
+            data.position(relPosition);
+            data.put(bytes, offset, writeLength);
+            position += writeLength;
+            offset += writeLength;
+            length -= writeLength;
+        }
+    }
+
+    private Segment getOrCreateSegment(long position) throws IOException {
+        long id = position / config.getFileDataSize();
+        Segment segment = segmentTable.get(id);
+        if (null == segment) {
+            synchronized (fileMapMutex) {
+                segment = segmentTable.get(id);
+                if (null == segment) {
+                    segment = createSegment(id, (int) (position - id * config.getFileDataSize()));
+                    segmentTable = segmentTable.append(id, segment);
+                    releaseRetiredSegments(false);
+                }
+            }
+        }
+        return segment;
+    }
+
+    private Segment createSegment(long id, int start) throws IOException {
+        long position = id * config.getFileDataSize();
+        File file = new File(base, String.valueOf(position));
+        checkDiskFreeSpace(base, HEADER_SIZE + config.getFileDataSize());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(HEADER_SIZE + config.getFileDataSize());
+        }
+        Segment segment = mapSegment(file, position);
+        segment.header.putLong(TIMESTAMP_OFFSET, System.currentTimeMillis());
+        segment.header.putLong(START_OFFSET, start);
+        segment.header.putLong(END_OFFSET, start);
+        segment.header.putLong(MAGIC_OFFSET, MAGIC);
+        // 文件头必须先于数据落盘，否则宕机后无法识别这个文件
+        segment.header.force();
+        segment.start = start;
+        segment.end = start;
+        return segment;
+    }
+
+    private Segment mapSegment(File file, long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel fileChannel = raf.getChannel()) {
+            MappedByteBuffer header = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            MappedByteBuffer data = fileChannel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE, config.getFileDataSize());
+            return new Segment(position, file, header, data);
+        }
+    }
+
+    private void checkDiskFreeSpace(File file, long fileSize) {
+        if (file.getFreeSpace() < fileSize) {
+            throw new DiskFullException(file);
+        }
+    }
+
+    @Override
+    public long min() {
+        return leftPosition.get();
+    }
+
+    @Override
+    public long physicalMin() {
+        SegmentTable table = segmentTable;
+        return table.isEmpty() ? min() : table.first().position + table.first().start;
+    }
+
+    @Override
+    public long max() {
+        return writePosition.get();
+    }
+
+    @Override
+    public long flushed() {
+        return flushPosition.get();
+    }
+
+    /**
+     * 数据写入映射内存时就已经进入了页缓存，刷盘只需要更新文件头中的结束位置，不同步存储设备，
+     * 进程宕机后页缓存中的数据和文件头都不会丢失。同步存储设备在{@link #force()}中进行。
+     */
+    @Override
+    public void flush() throws IOException {
+        long flushed = flushPosition.get();
+        long written = writePosition.get();
+        if (flushed < written) {
+            SegmentTable table = segmentTable;
+            for (long id = flushed / config.getFileDataSize(); id <= (written - 1) / config.getFileDataSize(); id++) {
+                Segment segment = table.get(id);
+                if (null == segment) continue;
+                segment.end = (int) Math.min(config.getFileDataSize(), written - segment.position);
+                segment.header.putLong(END_OFFSET, segment.end);
+            }
+            flushPosition.set(written);
+        }
+    }
+
+    /**
+     * 同步[forced, flushed)涉及的段，先数据后文件头，
+     * 保证存储设备上文件头中记录的位置之前的数据都是完整的。
+     */
+    @Override
+    public void force() throws IOException {
+        synchronized (fileMapMutex) {
+            long flushed = flushPosition.get();
+            long forced = forcePosition.get();
+            if (forced < flushed) {
+                SegmentTable table = segmentTable;
+                for (long id = forced / config.getFileDataSize(); id <= (flushed - 1) / config.getFileDataSize(); id++) {
+                    Segment segment = table.get(id);
+                    if (null == segment) continue;
+                    segment.data.force();
+                    segment.header.force();
+                }
+                forcePosition.set(flushed);
+            }
+        }
+    }
+
+    /**
+     * 将位置回滚到position
+     * 与如下操作不能并发：
+     * flush()
+     * append()
+     */
+    @Override
+    public void truncate(long givenMax) throws IOException {
+        synchronized (fileMapMutex) {
+            if (givenMax == max()) return;
+            logger.info("Truncate to position: {}, min: {}, max: {}, flushed: {}, path: {}...",
+                    ThreadSafeFormat.formatWithComma(givenMax),
+                    ThreadSafeFormat.formatWithComma(min()),
+                    ThreadSafeFormat.formatWithComma(max()),
+                    ThreadSafeFormat.formatWithComma(flushPosition.get()),
+                    base.getAbsolutePath());
+
+            if (givenMax < min() || givenMax > max()) {
+                throw new IllegalArgumentException(
+                        String.format("GivenMax %s should between [%s, %s]!",
+                                ThreadSafeFormat.formatWithComma(givenMax),
+                                ThreadSafeFormat.formatWithComma(min()),
+                                ThreadSafeFormat.formatWithComma(max())
+                        )
+                );
+            }
+
+            SegmentTable table = segmentTable;
+            List<Segment> kept = new ArrayList<>(table.segments.length);
+            for (Segment segment : table.segments) {
+                if (segment.position + segment.start >= givenMax) {
+                    logger.info("Delete store file {}.", segment.file.getAbsolutePath());
+                    retire(segment);
+                } else {
+                    if (segment.position + segment.end > givenMax) {
+                        segment.end = (int) (givenMax - segment.position);
+                        segment.header.putLong(END_OFFSET, segment.end);
+                    }
+                    kept.add(segment);
+                }
+            }
+            segmentTable = kept.isEmpty() ? SegmentTable.EMPTY : new SegmentTable(table.firstId, kept.toArray(new Segment[0]));
+
+            this.writePosition.set(givenMax);
+            if (this.flushPosition.get() > givenMax) this.flushPosition.set(givenMax);
+            if (this.forcePosition.get() > givenMax) this.forcePosition.set(givenMax);
+            releaseRetiredSegments(false);
+        }
+    }
+
+    /**
+     * 删除 position之前的文件
+     */
+    @Override
+    public long compact(long givenMin) throws IOException {
+        synchronized (fileMapMutex) {
+            if (givenMin <= min()) {
+                return 0L;
+            }
+            if (givenMin > flushPosition.get()) {
+                throw new IllegalArgumentException(
+                        String.format("GivenMax %s should less than flush position %s!",
+                                ThreadSafeFormat.formatWithComma(givenMin),
+                                ThreadSafeFormat.formatWithComma(flushPosition.get())
+                        )
+                );
+            }
+
+            leftPosition.set(givenMin);
+            SegmentTable table = segmentTable;
+            int removed = 0;
+            long deleteSize = 0L;
+            while (removed < table.segments.length) {
+                Segment segment = table.segments[removed];
+                if (segment.position + config.getFileDataSize() > givenMin) break;
+                retire(segment);
+                deleteSize += segment.end - segment.start;
+                removed++;
+            }
+            if (removed > 0) {
+                segmentTable = removed == table.segments.length ? SegmentTable.EMPTY :
+                        new SegmentTable(table.firstId + removed, Arrays.copyOfRange(table.segments, removed, table.segments.length));
+            }
+            releaseRetiredSegments(false);
+            return deleteSize;
+        }
+    }
+
+    /**
+     * 删除段文件，映射的内存延迟释放。
+     * 在删除（compact）、回滚（truncate）和创建段时释放已经超过延迟时间的段。
+     */
+    private void retire(Segment segment) throws IOException {
+        deleteFile(segment.file);
+        segment.retiredTime = System.currentTimeMillis();
+        retiredSegments.add(segment);
+    }
+
+    private void releaseRetiredSegments(boolean all) {
+        long now = System.currentTimeMillis();
+        Iterator<Segment> iterator = retiredSegments.iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (all || now - segment.retiredTime > RETIRED_SEGMENT_TIMEOUT_MS) {
+                unmap(segment);
+                iterator.remove();
+            }
+        }
+    }
+
+    private static void deleteFile(File file) throws IOException {
+        if (file.exists()) {
+            if (file.delete()) {
+                logger.debug("File {} deleted.", file.getAbsolutePath());
+            } else {
+                throw new IOException(String.format("Delete file %s failed!", file.getAbsolutePath()));
+            }
+        }
+    }
+
+    @Override
+    public byte[] read(long position, int length) throws IOException {
+        if (length == 0) return new byte[0];
+        checkReadPosition(position);
+        byte[] bytes = new byte[(int) Math.min(length, max() - position)];
+        SegmentTable table = segmentTable;
+        int offset = 0;
+        while (offset < bytes.length) {
+            Segment segment = getSegment(table, position + offset);
+            int relPosition = (int) (position + offset - segment.position);
+            int readLength = Math.min(bytes.length - offset, config.getFileDataSize() - relPosition);
+            ByteBuffer data = segment.data.duplicate();
+            data.position(relPosition);
+            data.get(bytes, offset, readLength);
+            offset += readLength;
+        }
+        return bytes;
+    }
+
+    @Override
+    public Long readLong(long position) throws IOException {
+        checkReadPosition(position);
+        Segment segment = getSegment(segmentTable, position);
+        int relPosition = (int) (position - segment.position);
+        if (relPosition + Long.BYTES > config.getFileDataSize()) {
+            return ByteBuffer.wrap(read(position, Long.BYTES)).getLong();
+        }
+        return segment.data.getLong(relPosition);
+    }
+
+    @Override
+    public long[] readLongs(long position, int count) throws IOException {
+        long[] longs = new long[count];
+        if (count == 0) return longs;
+        checkReadPosition(position);
+        checkReadPosition(position + (long) count * Long.BYTES - 1);
+        SegmentTable table = segmentTable;
+        int i = 0;
+        long readPosition = position;
+        while (i < count) {
+            Segment segment = getSegment(table, readPosition);
+            int relPosition = (int) (readPosition - segment.position);
+            while (i < count && relPosition + Long.BYTES <= config.getFileDataSize()) {
+                longs[i++] = segment.data.getLong(relPosition);
+                relPosition += Long.BYTES;
+            }
+            readPosition = segment.position + relPosition;
+            if (i < count && relPosition < config.getFileDataSize()) {
+                // 位置没有按8字节对齐，这个long跨越了两个段
+                longs[i++] = ByteBuffer.wrap(read(readPosition, Long.BYTES)).getLong();
+                readPosition += Long.BYTES;
+            }
+        }
+        return longs;
+    }
+
+    private Segment getSegment(SegmentTable table, long position) {
+        Segment segment = table.get(position / config.getFileDataSize());
+        if (null == segment) {
+            throw new PositionUnderflowException(position, min());
+        }
+        return segment;
+    }
+
+    private void checkReadPosition(long position) {
+        long p;
+        if ((p = min()) > position) {
+            throw new PositionUnderflowException(position, p);
+        } else if (position >= (p = max())) {
+            throw new PositionOverflowException(position, p);
+        }
+    }
+
+    @Override
+    public void delete() throws IOException {
+        detachAll();
+        for (File file : listSegmentFiles(base)) {
+            deleteFile(file);
+        }
+        if (base.exists() && !base.delete()) {
+            throw new IOException(String.format("Can not delete Directory: %s.", base.getAbsolutePath()));
+        }
+    }
+
+    @Override
+    public Path getBasePath() {
+        return base.toPath();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        force();
+        detachAll();
+    }
+
+    /**
+     * 关闭或删除时可能还有无锁读取正在访问映射内存，和删除段一样，只释放已经超过延迟时间的段；
+     * 其余的段不再引用，读取结束后由GC释放映射的内存。
+     */
+    private void detachAll() {
+        synchronized (fileMapMutex) {
+            segmentTable = SegmentTable.EMPTY;
+            releaseRetiredSegments(false);
+            retiredSegments.clear();
+        }
+    }
+
+    /**
+     * 立即释放所有映射的内存，只在恢复时没有读取的情况下使用。
+     */
+    private void unmapAll() {
+        synchronized (fileMapMutex) {
+            SegmentTable table = segmentTable;
+            segmentTable = SegmentTable.EMPTY;
+            for (Segment segment : table.segments) {
+                unmap(segment);
+            }
+            releaseRetiredSegments(true);
+        }
+    }
+
+    private void unmap(Segment segment) {
+        unmap(segment.header);
+        unmap(segment.data);
+    }
+
+    private void unmap(MappedByteBuffer mapped) {
+        try {
+            Method getCleanerMethod = mapped.getClass().getMethod("cleaner");
+            getCleanerMethod.setAccessible(true);
+            Cleaner cleaner = (Cleaner) getCleanerMethod.invoke(mapped, new Object[0]);
+            if (null != cleaner) cleaner.clean();
+        } catch (Exception e) {
+            logger.warn("Release mapped buffer exception: ", e);
+        }
+    }
+
+    @Override
+    public Path getPath() {
+        return getBasePath();
+    }
+
+    @Override
+    public long getFreeSpace() {
+        return base.getFreeSpace();
+    }
+
+    @Override
+    public long getTotalSpace() {
+        return base.getTotalSpace();
+    }
+
+    @Override
+    public String toString() {
+        return "MappedIndexStore{" +
+                "flushPosition=" + flushPosition +
+                ", writePosition(max)=" + writePosition +
+                ", leftPosition(min)=" + leftPosition +
+                '}';
+    }
+
+    private static class Segment {
+        // 段的起始位置，按段长度对齐
+        private final long position;
+        private final File file;
+        private final MappedByteBuffer header;
+        private final MappedByteBuffer data;
+        // 段内数据起始位置
+        private volatile int start;
+        // 段内已刷盘数据的结束位置
+        private volatile int end;
+        private long retiredTime;
+
+        private Segment(long position, File file, MappedByteBuffer header, MappedByteBuffer data) {
+            this.position = position;
+            this.file = file;
+            this.header = header;
+            this.data = data;
+            this.start = (int) header.getLong(START_OFFSET);
+            this.end = (int) header.getLong(END_OFFSET);
+        }
+    }
+
+    /**
+     * 不可变的段表，segments[i]的段序号为firstId + i，
+     * 修改时整体替换。
+     */
+    private static class SegmentTable {
+        private static final SegmentTable EMPTY = new SegmentTable(0L, new Segment[0]);
+        private final long firstId;
+        private final Segment[] segments;
+
+        private SegmentTable(long firstId, Segment[] segments) {
+            this.firstId = firstId;
+            this.segments = segments;
+        }
+
+        private Segment get(long id) {
+            long i = id - firstId;
+            return i >= 0 && i < segments.length ? segments[(int) i] : null;
+        }
+
+        private boolean isEmpty() {
+            return segments.length == 0;
+        }
+
+        private Segment first() {
+            return segments[0];
+        }
+
+        private Segment last() {
+            return segments[segments.length - 1];
+        }
+
+        private SegmentTable append(long id, Segment segment) {
+            if (isEmpty()) {
+                return new SegmentTable(id, new Segment[]{segment});
+            }
+            if (id != firstId + segments.length) {
+                throw new CorruptedStoreException(String.format("Segments are not continuous! expect: %d, actual: %d.",
+                        firstId + segments.length, id));
+            }
+            Segment[] newSegments = Arrays.copyOf(segments, segments.length + 1);
+            newSegments[segments.length] = segment;
+            return new SegmentTable(firstId, newSegments);
+        }
+    }
+
+    public static class Config {
+        final static int DEFAULT_FILE_DATA_SIZE = 16 * 1024 * 1024;
+        final static int DEFAULT_LEGACY_FILE_HEADER_SIZE = 128;
+        final static String FILE_DATA_SIZE_KEY = "file_data_size";
+        final static String LEGACY_FILE_HEADER_SIZE_KEY = "file_header_size";
+        /**
+         * 段文件内数据长度
+         */
+        private int fileDataSize;
+        /**
+         * 旧格式文件的文件头长度，迁移时使用
+         */
+        private int legacyFileHeaderSize;
+
+        int getFileDataSize() {
+            return fileDataSize;
+        }
+
+        void setFileDataSize(int fileDataSize) {
+            this.fileDataSize = fileDataSize;
+        }
+
+        int getLegacyFileHeaderSize() {
+            return legacyFileHeaderSize;
+        }
+
+        void setLegacyFileHeaderSize(int legacyFileHeaderSize) {
+            this.legacyFileHeaderSize = legacyFileHeaderSize;
+        }
+    }
+}
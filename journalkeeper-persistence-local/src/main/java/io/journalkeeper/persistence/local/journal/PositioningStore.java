@@ -26,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -36,8 +37,13 @@ import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Properties;
 import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 带缓存的、无锁、高性能、多文件、基于位置的、Append Only的日志存储存储。
@@ -45,17 +51,32 @@ import java.util.concurrent.atomic.AtomicLong;
  * Date: 2018/8/14
  */
 public class PositioningStore implements JournalPersistence, MonitoredPersistence, Closeable {
+    // 写入时等待刷盘的最长时间，超时后重新检查
+    private static final long FLUSH_WAIT_INTERVAL_MS = 100L;
     private final Logger logger = LoggerFactory.getLogger(PositioningStore.class);
     private final MemoryCacheManager bufferPool;
     private final NavigableMap<Long, StoreFile> storeFileMap = new ConcurrentSkipListMap<>();
     // 删除和回滚不能同时操作fileMap，需要做一下互斥。
     private final Object fileMapMutex = new Object();    // 正在写入的
+    // 按位置查找文件的文件表，读取时不需要查找跳表
+    private volatile StoreFileTable storeFileTable = StoreFileTable.EMPTY;
+    private final Object storeFileTableMutex = new Object();
     private File base;
     private AtomicLong flushPosition = new AtomicLong(0L);
+    // 已经强制写入存储设备（fsync）的位置
+    private AtomicLong forcePosition = new AtomicLong(0L);
     private AtomicLong writePosition = new AtomicLong(0L);
     private AtomicLong leftPosition = new AtomicLong(0L);
     private StoreFile writeStoreFile = null;
     private Config config = null;
+    // 数据文件预分配器，没有开启预分配时为null
+    private StoreFilePreallocator preallocator = null;
+    // 等待刷盘进度的线程在这个条件上等待，由flush()唤醒
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition flushCondition = flushLock.newCondition();
+    private final AtomicInteger flushWaiters = new AtomicInteger(0);
+    // 等待刷盘到指定位置的Future，Key为位置
+    private final NavigableMap<Long, CompletableFuture<Long>> flushFutures = new ConcurrentSkipListMap<>();
 
     public PositioningStore() {
         this.bufferPool = ServiceSupport.load(MemoryCacheManager.class);
@@ -90,24 +111,32 @@ public class PositioningStore implements JournalPersistence, MonitoredPersistenc
                 rollbackFiles(givenMax);
                 this.writePosition.set(givenMax);
                 if (this.flushPosition.get() > givenMax) this.flushPosition.set(givenMax);
+                if (this.forcePosition.get() > givenMax) this.forcePosition.set(givenMax);
                 resetWriteStoreFile();
+                signalFlushed();
             }
         }
     }
 
     private void clearData() throws IOException {
         for (StoreFile storeFile : this.storeFileMap.values()) {
-            if (storeFile.hasPage()) storeFile.unload();
+            storeFile.close();
             File file = storeFile.file();
             if (file.exists() && !file.delete())
                 throw new IOException(String.format("Can not delete file: %s.", file.getAbsolutePath()));
         }
         this.storeFileMap.clear();
+        refreshStoreFileTable();
         this.writeStoreFile = null;
     }
 
     public void delete() throws IOException {
         clearData();
+        if (null != preallocator) {
+            preallocator.close();
+            preallocator = null;
+        }
+        StoreFilePreallocator.deleteSpareFiles(base);
         if (base.exists() && !base.delete()) {
             throw new IOException(String.format("Can not delete Directory: %s.", base.getAbsolutePath()));
         }
@@ -135,6 +164,7 @@ public class PositioningStore implements JournalPersistence, MonitoredPersistenc
                 }
             }
             toBeRemoved.clear();
+            refreshStoreFileTable();
         }
 
 
@@ -159,8 +189,13 @@ public class PositioningStore implements JournalPersistence, MonitoredPersistenc
 
         recoverFileMap(min);
 
+        if (config.getPreallocateFileCount() > 0 && null == preallocator) {
+            preallocator = new StoreFilePreallocator(base, config.getFileHeaderSize(), config.getFileDataSize(), config.getPreallocateFileCount());
+        }
+
         long recoverPosition = this.storeFileMap.isEmpty() ? min : this.storeFileMap.lastKey() + this.storeFileMap.lastEntry().getValue().fileDataSize();
         flushPosition.set(recoverPosition);
+        forcePosition.set(recoverPosition);
         writePosition.set(recoverPosition);
 
         leftPosition.set(this.storeFileMap.isEmpty() ? min : this.storeFileMap.firstKey());
@@ -201,17 +236,29 @@ public class PositioningStore implements JournalPersistence, MonitoredPersistenc
                         Config.MAX_DIRTY_SIZE_KEY,
                         String.valueOf(Config.DEFAULT_MAX_DIRTY_SIZE))));
 
+        config.setWriteThrough(Boolean.parseBoolean(
+                properties.getProperty(
+                        Config.WRITE_THROUGH_KEY,
+                        String.valueOf(Config.DEFAULT_WRITE_THROUGH))));
+
+        config.setPreallocateFileCount(Integer.parseInt(
+                properties.getProperty(
+                        Config.PREALLOCATE_FILE_COUNT_KEY,
+                        String.valueOf(Config.DEFAULT_PREALLOCATE_FILE_COUNT))));
+
         return config;
     }
 
-    private void recoverFileMap(long min) {
+    private void recoverFileMap(long min) throws IOException {
         File[] files = base.listFiles(file -> file.isFile() && file.getName().matches("\\d+"));
         long filePosition;
         if (null != files) {
             for (File file : files) {
                 filePosition = Long.parseLong(file.getName());
-                if (filePosition >= min || filePosition + file.length() - config.getFileHeaderSize() > min) {
-                    storeFileMap.put(filePosition, new LocalStoreFile(filePosition, base, config.getFileHeaderSize(), bufferPool, config.getFileDataSize()));
+                // 预分配的文件，数据长度记录在文件头中
+                StoreFile storeFile = new LocalStoreFile(filePosition, base, config.getFileHeaderSize(), bufferPool, config.getFileDataSize(), config.isWriteThrough());
+                if (filePosition >= min || filePosition + storeFile.fileDataSize() > min) {
+                    storeFileMap.put(filePosition, storeFile);
                 } else {
                     logger.info("Ignore file {}, cause file position is smaller than given min position {}.", file.getAbsolutePath(), min);
                 }
@@ -225,9 +272,10 @@ public class PositioningStore implements JournalPersistence, MonitoredPersistenc
                 if (position != fileEntry.getKey()) {
                     throw new CorruptedStoreException(String.format("Files are not continuous! expect: %d, actual file name: %d, store: %s.", position, fileEntry.getKey(), base.getAbsolutePath()));
                 }
-                position += fileEntry.getValue().file().length() - config.getFileHeaderSize();
+                position += fileEntry.getValue().fileDataSize();
             }
         }
+        refreshStoreFileTable();
     }
 
 
@@ -279,9 +327,17 @@ public class PositioningStore implements JournalPersistence, MonitoredPersistenc
     }
 
 
-    private void maybeWaitForFlush() {
-        while (config.getMaxDirtySize() > 0 && max() - flushed() > config.getMaxDirtySize()) {
-            Thread.yield();
+    private void maybeWaitForFlush() throws IOException {
+        try {
+            while (!awaitWritable(FLUSH_WAIT_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                logger.debug("Waiting for flush, max: {}, flushed: {}, path: {}.",
+                        ThreadSafeFormat.formatWithComma(max()),
+                        ThreadSafeFormat.formatWithComma(flushed()),
+                        base.getAbsolutePath());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for flush!");
         }
     }
 
@@ -309,9 +365,8 @@ public class PositioningStore implements JournalPersistence, MonitoredPersistenc
     @Override
     public void flush() throws IOException {
         if (flushPosition.get() < writePosition.get()) {
-            Map.Entry<Long, StoreFile> entry = storeFileMap.floorEntry(flushPosition.get());
-            if (null == entry) return;
-            StoreFile storeFile = entry.getValue();
+            StoreFile storeFile = getStoreFile(flushPosition.get());
+            if (null == storeFile) return;
             if (!storeFile.isClean()) {
                 storeFile.flush();
                 if (storeFile.position() < storeFileMap.lastKey()) {
@@ -320,17 +375,105 @@ public class PositioningStore implements JournalPersistence, MonitoredPersistenc
             }
             if (flushPosition.get() < storeFile.position() + storeFile.flushPosition()) {
                 flushPosition.set(storeFile.position() + storeFile.flushPosition());
+                signalFlushed();
+            }
+        }
+    }
+
+    @Override
+    public boolean isWritable() {
+        return config.getMaxDirtySize() <= 0 || max() - flushed() <= config.getMaxDirtySize();
+    }
+
+    @Override
+    public boolean awaitWritable(long timeout, TimeUnit unit) throws InterruptedException {
+        if (isWritable()) return true;
+        long nanos = unit.toNanos(timeout);
+        flushWaiters.incrementAndGet();
+        flushLock.lockInterruptibly();
+        try {
+            while (!isWritable()) {
+                if (nanos <= 0L) return false;
+                nanos = flushCondition.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            flushLock.unlock();
+            flushWaiters.decrementAndGet();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Long> flushFuture(long position) {
+        if (flushed() >= position) {
+            return CompletableFuture.completedFuture(flushed());
+        }
+        CompletableFuture<Long> future = flushFutures.computeIfAbsent(position, p -> new CompletableFuture<>());
+        // 注册之后再检查一次，避免错过注册期间完成的刷盘
+        if (flushed() >= position) {
+            completeFlushFutures(flushed());
+        }
+        return future;
+    }
+
+    /**
+     * 刷盘位置变化后，唤醒等待刷盘的写入线程，完成已经刷盘的Future。
+     * 没有等待者时只有两次读操作，不影响刷盘的性能。
+     */
+    private void signalFlushed() {
+        if (!flushFutures.isEmpty()) {
+            completeFlushFutures(flushed());
+        }
+        if (flushWaiters.get() > 0) {
+            flushLock.lock();
+            try {
+                flushCondition.signalAll();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    private void completeFlushFutures(long flushed) {
+        Map.Entry<Long, CompletableFuture<Long>> entry;
+        while ((entry = flushFutures.firstEntry()) != null && entry.getKey() <= flushed) {
+            if (flushFutures.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().complete(flushed);
+            }
+        }
+    }
+
+    @Override
+    public void force() throws IOException {
+        synchronized (fileMapMutex) {
+            long flushed = flushPosition.get();
+            long forced = forcePosition.get();
+            if (forced < flushed && !storeFileMap.isEmpty()) {
+                Long fromKey = storeFileMap.floorKey(forced);
+                // 所有包含[forced, flushed)之间数据的文件都需要fsync
+                for (StoreFile storeFile : storeFileMap.subMap(null == fromKey ? storeFileMap.firstKey() : fromKey, true, flushed, false).values()) {
+                    storeFile.force();
+                }
+                forcePosition.set(flushed);
             }
         }
     }
 
-    private StoreFile createStoreFile(long position) {
-        StoreFile storeFile = new LocalStoreFile(position, base, config.getFileHeaderSize(), bufferPool, config.getFileDataSize());
-        StoreFile present;
+    private StoreFile createStoreFile(long position) throws IOException {
+        StoreFile present = storeFileMap.get(position);
+        if (null != present) {
+            return present;
+        }
+        // 先取预分配的文件，再创建StoreFile，StoreFile需要从文件头中读取数据长度
+        if (null == preallocator || !preallocator.take(new File(base, String.valueOf(position)))) {
+            // 使用预分配的文件时，后台线程已经检查过磁盘空间
+            checkDiskFreeSpace(base, config.getFileDataSize() + config.getFileHeaderSize());
+        }
+        StoreFile storeFile = new LocalStoreFile(position, base, config.getFileHeaderSize(), bufferPool, config.getFileDataSize(), config.isWriteThrough());
         if ((present = storeFileMap.putIfAbsent(position, storeFile)) != null) {
             storeFile = present;
         } else {
-            checkDiskFreeSpace(base, config.getFileDataSize() + config.getFileHeaderSize());
+            refreshStoreFileTable();
         }
         return storeFile;
     }
@@ -352,6 +495,31 @@ public class PositioningStore implements JournalPersistence, MonitoredPersistenc
         return storeFile.read(relPosition, length).array();
     }
 
+    @Override
+    public List<ByteBuffer> readBuffers(long position, int length) throws IOException {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        if (length == 0) return buffers;
+        checkReadPosition(position);
+        checkReadPosition(position + length - 1);
+        long readPosition = position;
+        long end = position + length;
+        // 每个文件只读一次，直接使用StoreFile读出的ByteBuffer，不再转换成byte[]
+        while (readPosition < end) {
+            StoreFile storeFile = getStoreFile(readPosition);
+            if (null == storeFile) {
+                throw new PositionUnderflowException(readPosition, min());
+            }
+            int relPosition = (int) (readPosition - storeFile.position());
+            ByteBuffer buffer = storeFile.read(relPosition, (int) Math.min(end - readPosition, Integer.MAX_VALUE));
+            if (!buffer.hasRemaining()) {
+                throw new CorruptedStoreException(String.format("Read nothing at position %d, store: %s.", readPosition, base.getAbsolutePath()));
+            }
+            readPosition += buffer.remaining();
+            buffers.add(buffer);
+        }
+        return buffers;
+    }
+
     public Long readLong(long position) throws IOException {
         checkReadPosition(position);
         StoreFile storeFile = getStoreFile(position);
@@ -363,11 +531,16 @@ public class PositioningStore implements JournalPersistence, MonitoredPersistenc
     }
 
     private StoreFile getStoreFile(long position) {
-        Map.Entry<Long, StoreFile> storeFileEntry = storeFileMap.floorEntry(position);
-        if (storeFileEntry == null) {
-            return null;
+        return storeFileTable.get(position);
+    }
+
+    /**
+     * 文件增删之后重建文件表
+     */
+    private void refreshStoreFileTable() {
+        synchronized (storeFileTableMutex) {
+            storeFileTable = StoreFileTable.create(storeFileMap, config.getFileDataSize());
         }
-        return storeFileEntry.getValue();
     }
 
     private void checkReadPosition(long position) {
@@ -411,20 +584,34 @@ public class PositioningStore implements JournalPersistence, MonitoredPersistenc
 
                 if (start + fileDataSize > givenMin) break;
                 iterator.remove();
-                forceDeleteStoreFile(storeFile);
+                recycleStoreFile(storeFile);
                 deleteSize += fileDataSize;
             }
+            refreshStoreFileTable();
 
             return deleteSize;
         }
     }
 
 
+    /**
+     * 删除文件，开启预分配时回收文件循环使用，用于compact
+     */
+    private void recycleStoreFile(StoreFile storeFile) throws IOException {
+        if (null != preallocator) {
+            storeFile.close();
+            if (preallocator.recycle(storeFile.file())) {
+                return;
+            }
+        }
+        forceDeleteStoreFile(storeFile);
+    }
+
     /**
      * 删除文件，丢弃未刷盘的数据，用于rollback
      */
     private void forceDeleteStoreFile(StoreFile storeFile) throws IOException {
-        storeFile.forceUnload();
+        storeFile.close();
         File file = storeFile.file();
         if (file.exists()) {
             if (file.delete()) {
@@ -444,9 +631,17 @@ public class PositioningStore implements JournalPersistence, MonitoredPersistenc
     public void close() throws IOException {
         for (StoreFile storeFile : storeFileMap.values()) {
             storeFile.flush();
-            storeFile.forceUnload();
+            storeFile.close();
         }
         bufferPool.removePreLoad(config.fileDataSize);
+        if (null != preallocator) {
+            preallocator.close();
+            preallocator = null;
+        }
+        for (CompletableFuture<Long> future : flushFutures.values()) {
+            future.completeExceptionally(new IOException(String.format("Store %s closed!", base.getAbsolutePath())));
+        }
+        flushFutures.clear();
     }
 
     @Override
@@ -479,11 +674,15 @@ public class PositioningStore implements JournalPersistence, MonitoredPersistenc
         final static int DEFAULT_CACHED_FILE_CORE_COUNT = 0;
         final static int DEFAULT_CACHED_FILE_MAX_COUNT = 2;
         final static long DEFAULT_MAX_DIRTY_SIZE = 0L;
+        final static boolean DEFAULT_WRITE_THROUGH = false;
+        final static int DEFAULT_PREALLOCATE_FILE_COUNT = 0;
         final static String FILE_HEADER_SIZE_KEY = "file_header_size";
         final static String FILE_DATA_SIZE_KEY = "file_data_size";
         final static String CACHED_FILE_CORE_COUNT_KEY = "cached_file_core_count";
         final static String CACHED_FILE_MAX_COUNT_KEY = "cached_file_max_count";
         final static String MAX_DIRTY_SIZE_KEY = "max_dirty_size";
+        final static String WRITE_THROUGH_KEY = "write_through";
+        final static String PREALLOCATE_FILE_COUNT_KEY = "preallocate_file_count";
         /**
          * 文件头长度
          */
@@ -507,6 +706,18 @@ public class PositioningStore implements JournalPersistence, MonitoredPersistenc
          */
         private long maxDirtySize;
 
+        /**
+         * 直写模式：不使用缓存页，append时把所有buffer用一次聚合写（gathering write）直接写入文件，
+         * 省掉一次复制到缓存页的内存拷贝，适合写多读少的分区。
+         */
+        private boolean writeThrough;
+
+        /**
+         * 预分配的空闲文件数量，0表示不预分配。
+         * 开启后由后台线程预先创建好文件，切换文件时直接使用，compact删除的文件也会回收使用。
+         */
+        private int preallocateFileCount;
+
         int getFileHeaderSize() {
             return fileHeaderSize;
         }
@@ -546,5 +757,21 @@ public class PositioningStore implements JournalPersistence, MonitoredPersistenc
         public void setMaxDirtySize(long maxDirtySize) {
             this.maxDirtySize = maxDirtySize;
         }
+
+        boolean isWriteThrough() {
+            return writeThrough;
+        }
+
+        void setWriteThrough(boolean writeThrough) {
+            this.writeThrough = writeThrough;
+        }
+
+        int getPreallocateFileCount() {
+            return preallocateFileCount;
+        }
+
+        void setPreallocateFileCount(int preallocateFileCount) {
+            this.preallocateFileCount = preallocateFileCount;
+        }
     }
 }
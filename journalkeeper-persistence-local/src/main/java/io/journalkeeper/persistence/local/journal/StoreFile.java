@@ -126,4 +126,10 @@ public interface StoreFile extends Timed {
     void force() throws IOException;
 
     Long readLong(int position) throws IOException;
+
+    /**
+     * 关闭文件：丢弃缓存页并关闭打开的文件句柄。
+     * 删除文件或者文件改名之前必须调用。
+     */
+    void close();
 }
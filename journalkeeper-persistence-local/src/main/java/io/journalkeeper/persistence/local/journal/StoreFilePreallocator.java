@@ -0,0 +1,229 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.persistence.local.journal;
+
+import io.journalkeeper.utils.threads.AsyncLoopThread;
+import io.journalkeeper.utils.threads.ThreadBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 数据文件预分配器。
+ * 后台线程在spare目录中预先创建好若干个空闲文件，写好文件头，
+ * 并把数据部分填满0，让文件系统真正分配好磁盘块。
+ * 写入需要切换到新文件时，直接把空闲文件改名为新文件，
+ * 不在写入线程上创建文件、分配磁盘块和检查磁盘剩余空间。
+ * 删除的旧文件重置文件头之后放回来循环使用，已经分配的磁盘块不需要重新分配。
+ *
+ * 预分配的文件长度固定，数据长度记录在文件头中，见{@link LocalStoreFile#DATA_LENGTH_OFFSET}。
+ */
+class StoreFilePreallocator implements Closeable {
+    static final String SPARE_PATH = "spare";
+    private static final Logger logger = LoggerFactory.getLogger(StoreFilePreallocator.class);
+    private static final long INTERVAL_MS = 100L;
+    private static final int FILL_BUFFER_SIZE = 1024 * 1024;
+    private final File spareDir;
+    private final int headerSize;
+    // 创建一个文件需要的磁盘空间
+    private final long fileSize;
+    // 保持的空闲文件数量
+    private final int spareCount;
+    private final Queue<File> spareFiles = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger spareFileCount = new AtomicInteger(0);
+    private final AtomicLong sequence = new AtomicLong(0L);
+    private final AsyncLoopThread preallocateThread;
+
+    StoreFilePreallocator(File base, int headerSize, int fileDataSize, int spareCount) throws IOException {
+        if (headerSize < LocalStoreFile.DATA_LENGTH_OFFSET + Long.BYTES) {
+            throw new IllegalArgumentException(String.format("File header size %d is too small to preallocate files!", headerSize));
+        }
+        this.spareDir = new File(base, SPARE_PATH);
+        this.headerSize = headerSize;
+        this.fileSize = (long) headerSize + fileDataSize;
+        this.spareCount = spareCount;
+        Files.createDirectories(spareDir.toPath());
+        recoverSpareFiles();
+        this.preallocateThread = ThreadBuilder.builder()
+                .name("StoreFilePreallocator-" + base.getAbsolutePath())
+                .sleepTime(INTERVAL_MS, INTERVAL_MS)
+                .condition(() -> spareFileCount.get() < spareCount)
+                .doWork(this::preallocate)
+                .onException(e -> logger.warn("Preallocate store file in {} exception: ", spareDir.getAbsolutePath(), e))
+                .daemon(true)
+                .build();
+        this.preallocateThread.start();
+    }
+
+    /**
+     * 上次留下的空闲文件继续使用，预分配或者回收时中断留下的不完整文件直接删除。
+     */
+    private void recoverSpareFiles() throws IOException {
+        File[] files = spareDir.listFiles(file -> file.isFile() && file.getName().matches("\\d+"));
+        if (null != files) {
+            for (File file : files) {
+                sequence.set(Math.max(sequence.get(), Long.parseLong(file.getName()) + 1));
+                if (isSpareFile(file)) {
+                    addSpareFile(file);
+                } else {
+                    Files.delete(file.toPath());
+                }
+            }
+        }
+    }
+
+    private void preallocate() throws IOException {
+        if (spareDir.getFreeSpace() < fileSize) {
+            // 磁盘空间不足时不再预分配，写入时会检查磁盘空间并抛出DiskFullException
+            return;
+        }
+        File file = nextSpareFile();
+        reset(file);
+        addSpareFile(file);
+        logger.debug("Store file {} preallocated.", file.getAbsolutePath());
+    }
+
+    /**
+     * 把一个空闲文件改名为给定的文件。
+     * @param target 新的数据文件
+     * @return 成功返回true，没有空闲文件或者给定文件已经存在时返回false
+     */
+    boolean take(File target) {
+        if (target.exists()) {
+            return false;
+        }
+        File spare;
+        try {
+            while ((spare = spareFiles.poll()) != null) {
+                spareFileCount.decrementAndGet();
+                try {
+                    Files.move(spare.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    return true;
+                } catch (IOException e) {
+                    logger.warn("Move spare file {} to {} exception: ", spare.getAbsolutePath(), target.getAbsolutePath(), e);
+                    Files.deleteIfExists(spare.toPath());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Delete spare file exception: ", e);
+        } finally {
+            preallocateThread.wakeup();
+        }
+        return false;
+    }
+
+    /**
+     * 回收一个已经删除的数据文件。
+     * @param file 数据文件，这个文件不能再被使用
+     * @return 回收成功返回true，空闲文件已经足够时返回false，需要调用方自行删除文件
+     */
+    boolean recycle(File file) {
+        if (spareFileCount.get() >= spareCount || !file.exists()) {
+            return false;
+        }
+        File spare = nextSpareFile();
+        try {
+            Files.move(file.toPath(), spare.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Recycle file {} exception: ", file.getAbsolutePath(), e);
+            return false;
+        }
+        try {
+            reset(spare);
+            addSpareFile(spare);
+            logger.debug("Store file {} recycled to {}.", file.getAbsolutePath(), spare.getAbsolutePath());
+        } catch (IOException e) {
+            logger.warn("Reset recycled file {} exception: ", spare.getAbsolutePath(), e);
+            if (!spare.delete()) {
+                logger.warn("Delete recycled file {} failed!", spare.getAbsolutePath());
+            }
+        }
+        return true;
+    }
+
+    private File nextSpareFile() {
+        return new File(spareDir, String.valueOf(sequence.getAndIncrement()));
+    }
+
+    /**
+     * 完整的空闲文件：文件长度是文件最大长度，文件头中的数据长度为0
+     */
+    private boolean isSpareFile(File file) throws IOException {
+        return file.length() == fileSize && LocalStoreFile.isPreallocated(file) && LocalStoreFile.readDataLength(file) == 0L;
+    }
+
+    /**
+     * 重置文件头：0位置开始的前8字节写入创建时间戳，然后写入预分配文件的魔数，数据长度为0。
+     * 文件头写完之后再把文件填充到文件最大长度，恢复时长度不足的文件会被删除。
+     */
+    private void reset(File file) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(LocalStoreFile.DATA_LENGTH_OFFSET + Long.BYTES);
+            header.putLong(0, System.currentTimeMillis());
+            header.putLong(LocalStoreFile.PREALLOCATED_MAGIC_OFFSET, LocalStoreFile.PREALLOCATED_MAGIC);
+            header.putLong(LocalStoreFile.DATA_LENGTH_OFFSET, 0L);
+            while (header.hasRemaining()) {
+                fileChannel.write(header, header.position());
+            }
+            long position = Math.max(fileChannel.size(), headerSize);
+            if (position > fileSize) {
+                fileChannel.truncate(fileSize);
+            }
+            ByteBuffer zeros = ByteBuffer.allocate(FILL_BUFFER_SIZE);
+            while (position < fileSize) {
+                zeros.clear();
+                zeros.limit((int) Math.min(zeros.capacity(), fileSize - position));
+                position += fileChannel.write(zeros, position);
+            }
+        }
+    }
+
+    private void addSpareFile(File file) {
+        spareFiles.add(file);
+        spareFileCount.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+        preallocateThread.stop();
+    }
+
+    /**
+     * 删除给定目录下所有的空闲文件
+     * @param base 数据文件所在的目录
+     * @throws IOException 删除失败时抛出
+     */
+    static void deleteSpareFiles(File base) throws IOException {
+        File spareDir = new File(base, SPARE_PATH);
+        File[] files = spareDir.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.deleteIfExists(spareDir.toPath());
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.persistence.local.journal;
+
+import java.util.Arrays;
+import java.util.NavigableMap;
+
+/**
+ * 文件表：按位置查找文件的只读快照，文件增删后整体替换（copy-on-write）。
+ * 如果所有文件都是等长、首尾相接的，直接用(position - 起始位置) / 文件长度计算出文件在数组中的下标；
+ * 否则（例如Journal的文件，写不下一条日志时就切换到新文件，文件长度不一）
+ * 在有序的起始位置数组上二分查找，不需要遍历跳表。
+ */
+class StoreFileTable {
+    static final StoreFileTable EMPTY = new StoreFileTable(new long[0], 0, new StoreFile[0]);
+    private final long[] positions;
+    // 文件等长、首尾相接时为文件长度，否则为0
+    private final int fileDataSize;
+    private final StoreFile[] storeFiles;
+
+    private StoreFileTable(long[] positions, int fileDataSize, StoreFile[] storeFiles) {
+        this.positions = positions;
+        this.fileDataSize = fileDataSize;
+        this.storeFiles = storeFiles;
+    }
+
+    /**
+     * 根据当前的文件创建文件表
+     * @param storeFileMap 所有文件
+     * @param fileDataSize 文件内数据最大长度
+     * @return 文件表
+     */
+    static StoreFileTable create(NavigableMap<Long, StoreFile> storeFileMap, int fileDataSize) {
+        StoreFile[] storeFiles = storeFileMap.values().toArray(new StoreFile[0]);
+        if (storeFiles.length == 0) {
+            return EMPTY;
+        }
+        long[] positions = new long[storeFiles.length];
+        boolean even = true;
+        for (int i = 0; i < storeFiles.length; i++) {
+            positions[i] = storeFiles[i].position();
+            even = even && positions[i] == positions[0] + (long) i * fileDataSize;
+        }
+        return new StoreFileTable(positions, even ? fileDataSize : 0, storeFiles);
+    }
+
+    /**
+     * 查找包含给定位置的文件，和NavigableMap.floorEntry的语义一致：
+     * 位置在最后一个文件之后时，返回最后一个文件。
+     * @param position 全局位置
+     * @return 文件，位置在第一个文件之前时返回null
+     */
+    StoreFile get(long position) {
+        if (storeFiles.length == 0 || position < positions[0]) {
+            return null;
+        }
+        int index;
+        if (fileDataSize > 0) {
+            long i = (position - positions[0]) / fileDataSize;
+            index = i < storeFiles.length ? (int) i : storeFiles.length - 1;
+        } else {
+            index = Arrays.binarySearch(positions, position);
+            if (index < 0) {
+                // 没有精确匹配时，返回插入点的前一个文件
+                index = -index - 2;
+            }
+        }
+        return storeFiles[index];
+    }
+}
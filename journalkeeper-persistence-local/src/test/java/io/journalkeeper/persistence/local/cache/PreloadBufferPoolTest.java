@@ -0,0 +1,90 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.persistence.local.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PreloadBufferPoolTest {
+    private static final int BUFFER_SIZE = 4096;
+
+    @Test
+    public void cacheMetricTest() throws InterruptedException {
+        PreloadBufferPool pool = new PreloadBufferPool();
+        pool.addPreLoad(BUFFER_SIZE, 2, 4);
+        try {
+            PreloadCacheMetric metric = getMetric(pool);
+            long deadline = System.currentTimeMillis() + 10000L;
+            while (metric.getCachedCount() < 2) {
+                Assert.assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10L);
+            }
+
+            List<ByteBuffer> buffers = new ArrayList<>();
+            List<BufferHolder> holders = new ArrayList<>();
+            // 前两个从缓存中取，第三个临时创建
+            for (int i = 0; i < 3; i++) {
+                BufferHolder holder = new TestBufferHolder();
+                holders.add(holder);
+                buffers.add(pool.allocateDirect(BUFFER_SIZE, holder));
+            }
+            Assert.assertEquals(2L, metric.getHitCount());
+            Assert.assertEquals(1L, metric.getMissCount());
+            Assert.assertEquals(0L, metric.getStallCount());
+            Assert.assertEquals(3, metric.getUsedCount());
+
+            for (int i = 0; i < buffers.size(); i++) {
+                pool.releaseDirect(buffers.get(i), holders.get(i));
+            }
+            Assert.assertEquals(0, metric.getUsedCount());
+            Assert.assertTrue(metric.getCachedCount() >= 3);
+        } finally {
+            pool.removePreLoad(BUFFER_SIZE);
+        }
+    }
+
+    private PreloadCacheMetric getMetric(PreloadBufferPool pool) {
+        return pool.getCaches().stream()
+                .filter(metric -> metric.getBufferSize() == BUFFER_SIZE)
+                .findAny().orElseThrow(AssertionError::new);
+    }
+
+    private static class TestBufferHolder implements BufferHolder {
+        private final long lastAccessTime = System.currentTimeMillis();
+
+        @Override
+        public int size() {
+            return BUFFER_SIZE;
+        }
+
+        @Override
+        public boolean isFree() {
+            return false;
+        }
+
+        @Override
+        public boolean evict() {
+            return false;
+        }
+
+        @Override
+        public long lastAccessTime() {
+            return lastAccessTime;
+        }
+    }
+}
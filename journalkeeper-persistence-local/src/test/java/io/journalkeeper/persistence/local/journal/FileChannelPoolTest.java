@@ -0,0 +1,214 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.persistence.local.journal;
+
+import io.journalkeeper.utils.test.TestPathUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class FileChannelPoolTest {
+    private Path path = null;
+
+    @Test
+    public void evictTest() throws IOException {
+        FileChannelPool pool = new FileChannelPool(2);
+        File file0 = new File(path.toFile(), "0");
+        File file1 = new File(path.toFile(), "1");
+        File file2 = new File(path.toFile(), "2");
+
+        // 同一个文件复用同一个句柄
+        FileChannel channel0;
+        try (FileChannelPool.PooledChannel pooledChannel = pool.acquire(file0, true)) {
+            channel0 = pooledChannel.channel();
+            channel0.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), 0L);
+        }
+        try (FileChannelPool.PooledChannel pooledChannel = pool.acquire(file0, false)) {
+            Assert.assertSame(channel0, pooledChannel.channel());
+        }
+
+        // 超过上限时关闭最久没有使用的空闲句柄
+        FileChannel channel1;
+        try (FileChannelPool.PooledChannel pooledChannel = pool.acquire(file1, true)) {
+            channel1 = pooledChannel.channel();
+        }
+        try (FileChannelPool.PooledChannel ignored = pool.acquire(file2, true)) {
+            Assert.assertEquals(2, pool.size());
+            Assert.assertFalse(channel0.isOpen());
+            Assert.assertTrue(channel1.isOpen());
+        }
+
+        // 正在使用的句柄，移出池之后等释放时才关闭
+        FileChannelPool.PooledChannel pooledChannel = pool.acquire(file1, false);
+        pool.close(file1);
+        Assert.assertTrue(channel1.isOpen());
+        pooledChannel.close();
+        Assert.assertFalse(channel1.isOpen());
+        Assert.assertEquals(1, pool.size());
+
+        // 关闭的句柄重新打开后数据仍然可见
+        try (FileChannelPool.PooledChannel reopened = pool.acquire(file0, false)) {
+            ByteBuffer buffer = ByteBuffer.allocate(3);
+            reopened.channel().read(buffer, 0L);
+            Assert.assertArrayEquals(new byte[]{1, 2, 3}, buffer.array());
+        }
+        pool.close(file0);
+        pool.close(file2);
+        Assert.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void interruptTest() throws Exception {
+        FileChannelPool pool = new FileChannelPool(2);
+        File file = new File(path.toFile(), "0");
+        byte[] data = new byte[1024 * 1024];
+        Arrays.fill(data, (byte) 1);
+        try (FileChannelPool.PooledChannel pooledChannel = pool.acquire(file, true)) {
+            pooledChannel.channel().write(ByteBuffer.wrap(data), 0L);
+        }
+
+        // 一个线程不停地读文件，IO过程中被中断，共享的FileChannel被关闭
+        CountDownLatch reading = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocate(data.length);
+            try {
+                while (true) {
+                    try (FileChannelPool.PooledChannel pooledChannel = pool.acquire(file, false)) {
+                        buffer.clear();
+                        pooledChannel.channel().read(buffer, 0L);
+                    }
+                    reading.countDown();
+                }
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+        FileChannel interrupted;
+        try (FileChannelPool.PooledChannel pooledChannel = pool.acquire(file, false)) {
+            interrupted = pooledChannel.channel();
+        }
+        reader.start();
+        reading.await();
+        reader.interrupt();
+        reader.join();
+        Assert.assertTrue(error.get() instanceof ClosedByInterruptException);
+        Assert.assertFalse(interrupted.isOpen());
+
+        // 之后再使用这个文件，重新打开文件，读写正常
+        try (FileChannelPool.PooledChannel pooledChannel = pool.acquire(file, false)) {
+            Assert.assertNotSame(interrupted, pooledChannel.channel());
+            ByteBuffer buffer = ByteBuffer.allocate(data.length);
+            pooledChannel.channel().read(buffer, 0L);
+            Assert.assertArrayEquals(data, buffer.array());
+        }
+        Assert.assertEquals(1, pool.size());
+        pool.close(file);
+    }
+
+    @Test
+    public void closedChannelTest() throws IOException {
+        FileChannelPool pool = new FileChannelPool(2);
+        File file = new File(path.toFile(), "0");
+
+        // 其它线程还持有已经关闭的句柄时，获取句柄也要重新打开文件
+        FileChannelPool.PooledChannel stale = pool.acquire(file, true);
+        stale.channel().close();
+        try (FileChannelPool.PooledChannel pooledChannel = pool.acquire(file, false)) {
+            Assert.assertNotSame(stale.channel(), pooledChannel.channel());
+            Assert.assertTrue(pooledChannel.channel().isOpen());
+        }
+        stale.close();
+        Assert.assertEquals(1, pool.size());
+        pool.close(file);
+        Assert.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void concurrentTest() throws Exception {
+        FileChannelPool pool = new FileChannelPool(4);
+        int fileCount = 16;
+        File[] files = new File[fileCount];
+        for (int i = 0; i < fileCount; i++) {
+            files[i] = new File(path.toFile(), String.valueOf(i));
+            try (FileChannelPool.PooledChannel pooledChannel = pool.acquire(files[i], true)) {
+                pooledChannel.channel().write(ByteBuffer.wrap(new byte[]{(byte) i}), 0L);
+            }
+        }
+
+        // 多个线程同时获取、使用、释放句柄，打开的文件数超过上限时不停地淘汰，不会拿到已经关闭的句柄
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    ByteBuffer buffer = ByteBuffer.allocate(1);
+                    for (int i = 0; i < 10000; i++) {
+                        int index = ThreadLocalRandom.current().nextInt(fileCount);
+                        try (FileChannelPool.PooledChannel pooledChannel = pool.acquire(files[index], false)) {
+                            buffer.clear();
+                            Assert.assertEquals(1, pooledChannel.channel().read(buffer, 0L));
+                            Assert.assertEquals(index, buffer.get(0));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue(pool.size() <= 4);
+        for (File file : files) {
+            pool.close(file);
+        }
+        Assert.assertEquals(0, pool.size());
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void notExistTest() throws IOException {
+        new FileChannelPool(2).acquire(new File(path.toFile(), "0"), false);
+    }
+
+    @Before
+    public void before() throws Exception {
+        path = TestPathUtils.prepareBaseDir();
+    }
+
+    @After
+    public void after() {
+        TestPathUtils.destroyBaseDir();
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.persistence.local.journal;
+
+import io.journalkeeper.persistence.local.cache.BufferHolder;
+import io.journalkeeper.persistence.local.cache.PreloadBufferPool;
+import io.journalkeeper.utils.test.ByteUtils;
+import io.journalkeeper.utils.test.TestPathUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LocalStoreFileTest {
+    private static final int FILE_HEADER_SIZE = 128;
+    private static final int FILE_DATA_SIZE = 4096;
+    private Path path = null;
+
+    @Test
+    public void coldReadTest() throws IOException {
+        // 缓存没有空闲内存，读取时不加载文件
+        PreloadBufferPool bufferPool = new PreloadBufferPool() {
+            @Override
+            public boolean hasFreeMemory(int size) {
+                return false;
+            }
+        };
+        LocalStoreFile storeFile = new LocalStoreFile(0L, path.toFile(), FILE_HEADER_SIZE, bufferPool, FILE_DATA_SIZE);
+        byte[] bytes = ByteUtils.createFixedSizeBytes(FILE_DATA_SIZE);
+        storeFile.append(ByteBuffer.wrap(bytes));
+        storeFile.flush();
+        Assert.assertTrue(storeFile.unload());
+
+        ByteBuffer read = storeFile.read(10, 50);
+        Assert.assertArrayEquals(Arrays.copyOfRange(bytes, 10, 60), read.array());
+        Assert.assertEquals(ByteBuffer.wrap(bytes).getLong(8), (long) storeFile.readLong(8));
+        // 读取超出写入位置的部分被截断
+        read = storeFile.read(bytes.length - 10, 50);
+        Assert.assertArrayEquals(Arrays.copyOfRange(bytes, bytes.length - 10, bytes.length), read.array());
+        Assert.assertFalse(storeFile.hasPage());
+    }
+
+    @Test
+    public void writeThroughTailReadTest() throws IOException {
+        // 直写模式下，追加数据之后读取不会重新映射文件
+        AtomicInteger mmapCount = new AtomicInteger(0);
+        PreloadBufferPool bufferPool = new PreloadBufferPool() {
+            @Override
+            public void allocateMMap(BufferHolder bufferHolder) {
+                mmapCount.incrementAndGet();
+                super.allocateMMap(bufferHolder);
+            }
+        };
+        LocalStoreFile storeFile = new LocalStoreFile(0L, path.toFile(), FILE_HEADER_SIZE, bufferPool, FILE_DATA_SIZE, true);
+        byte[] bytes = ByteUtils.createFixedSizeBytes(FILE_DATA_SIZE);
+        int chunk = 256;
+        for (int position = 0; position < bytes.length; position += chunk) {
+            storeFile.append(ByteBuffer.wrap(bytes, position, chunk));
+            ByteBuffer read = storeFile.read(position, chunk);
+            Assert.assertArrayEquals(Arrays.copyOfRange(bytes, position, position + chunk), read.array());
+            Assert.assertEquals(ByteBuffer.wrap(bytes).getLong(position), (long) storeFile.readLong(position));
+            // 跨越映射边界的读取
+            if (position > 0) {
+                read = storeFile.read(position - 10, 20);
+                Assert.assertArrayEquals(Arrays.copyOfRange(bytes, position - 10, position + 10), read.array());
+            }
+        }
+        Assert.assertEquals(1, mmapCount.get());
+        Assert.assertTrue(storeFile.hasPage());
+        storeFile.forceUnload();
+    }
+
+    @Before
+    public void before() throws Exception {
+        path = TestPathUtils.prepareBaseDir();
+    }
+
+    @After
+    public void after() {
+        TestPathUtils.destroyBaseDir();
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.persistence.local.journal;
+
+import io.journalkeeper.persistence.JournalPersistence;
+import io.journalkeeper.utils.test.TestPathUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+public class MappedIndexStoreTest {
+    private static final Logger logger = LoggerFactory.getLogger(MappedIndexStoreTest.class);
+    // 每个段存放8个long
+    private static final int FILE_DATA_SIZE = 8 * Long.BYTES;
+    private Path path = null;
+
+    @Test
+    public void readWriteTest() throws IOException {
+        try (JournalPersistence store = prepareStore(0L)) {
+            long count = 100;
+            appendLongs(store, 0, count);
+            Assert.assertEquals(count * Long.BYTES, store.max());
+
+            for (long i = 0; i < count; i++) {
+                Assert.assertEquals(i, (long) store.readLong(i * Long.BYTES));
+            }
+
+            // 跨越多个段批量读取
+            long[] longs = store.readLongs(5 * Long.BYTES, 50);
+            for (int i = 0; i < longs.length; i++) {
+                Assert.assertEquals(i + 5, longs[i]);
+            }
+
+            byte[] bytes = store.read(3 * Long.BYTES, 20 * Long.BYTES);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            for (long i = 3; i < 23; i++) {
+                Assert.assertEquals(i, buffer.getLong());
+            }
+        }
+    }
+
+    @Test
+    public void recoverTest() throws IOException {
+        long min = 13 * Long.BYTES;
+        JournalPersistence store = prepareStore(min);
+        appendLongs(store, 13, 30);
+        store.flush();
+        store.force();
+        store.close();
+
+        store = prepareStore(min);
+        Assert.assertEquals(min, store.min());
+        Assert.assertEquals(43 * Long.BYTES, store.max());
+        long[] longs = store.readLongs(min, 30);
+        for (int i = 0; i < longs.length; i++) {
+            Assert.assertEquals(i + 13, longs[i]);
+        }
+
+        appendLongs(store, 43, 10);
+        Assert.assertEquals(52L, (long) store.readLong(52 * Long.BYTES));
+        store.close();
+    }
+
+    @Test
+    public void truncateTest() throws IOException {
+        try (JournalPersistence store = prepareStore(0L)) {
+            appendLongs(store, 0, 50);
+            store.flush();
+
+            store.truncate(20 * Long.BYTES);
+            Assert.assertEquals(20 * Long.BYTES, store.max());
+            Assert.assertEquals(20 * Long.BYTES, store.flushed());
+
+            appendLongs(store, 100, 10);
+            Assert.assertEquals(19L, (long) store.readLong(19 * Long.BYTES));
+            Assert.assertEquals(100L, (long) store.readLong(20 * Long.BYTES));
+            Assert.assertEquals(109L, (long) store.readLong(29 * Long.BYTES));
+
+            store.truncate(0L);
+            Assert.assertEquals(0L, store.max());
+            appendLongs(store, 200, 3);
+            Assert.assertEquals(202L, (long) store.readLong(2 * Long.BYTES));
+        }
+    }
+
+    @Test
+    public void compactTest() throws IOException {
+        try (JournalPersistence store = prepareStore(0L)) {
+            appendLongs(store, 0, 50);
+            store.flush();
+
+            store.compact(20 * Long.BYTES);
+            Assert.assertEquals(20 * Long.BYTES, store.min());
+            // 20所在的段从16开始，之前的段都被删除
+            Assert.assertEquals(16 * Long.BYTES, store.physicalMin());
+            Assert.assertEquals(20L, (long) store.readLong(20 * Long.BYTES));
+            try {
+                store.readLong(19 * Long.BYTES);
+                Assert.fail();
+            } catch (PositionUnderflowException ignored) {
+            }
+        }
+    }
+
+    @Test
+    public void migrateLegacyFilesTest() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("file_data_size", String.valueOf(20 * Long.BYTES));
+        PositioningStore legacyStore = new PositioningStore();
+        legacyStore.recover(path, properties);
+        // 旧格式的文件不要求对齐，写入若干长度不一的批次
+        long index = 0;
+        for (int batch : new int[]{3, 7, 15, 1, 12, 9}) {
+            List<byte[]> bytesList = new ArrayList<>(batch);
+            for (int i = 0; i < batch; i++) {
+                bytesList.add(toBytes(index++));
+            }
+            legacyStore.append(bytesList);
+        }
+        while (legacyStore.flushed() < legacyStore.max()) {
+            legacyStore.flush();
+        }
+        legacyStore.close();
+
+        try (JournalPersistence store = prepareStore(0L)) {
+            Assert.assertEquals(0L, store.min());
+            Assert.assertEquals(index * Long.BYTES, store.max());
+            long[] longs = store.readLongs(0L, (int) index);
+            for (int i = 0; i < longs.length; i++) {
+                Assert.assertEquals(i, longs[i]);
+            }
+        }
+    }
+
+    /**
+     * 模拟迁移完成、旧文件删除到一半时宕机：恢复时不能再用残缺的旧文件重新迁移。
+     */
+    @Test
+    public void migrateInterruptedTest() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("file_data_size", String.valueOf(20 * Long.BYTES));
+        PositioningStore legacyStore = new PositioningStore();
+        legacyStore.recover(path, properties);
+        long index = 0;
+        for (int batch : new int[]{3, 7, 15, 1, 12, 9}) {
+            List<byte[]> bytesList = new ArrayList<>(batch);
+            for (int i = 0; i < batch; i++) {
+                bytesList.add(toBytes(index++));
+            }
+            legacyStore.append(bytesList);
+        }
+        while (legacyStore.flushed() < legacyStore.max()) {
+            legacyStore.flush();
+        }
+        legacyStore.close();
+
+        Path backupPath = path.resolve("backup");
+        Files.createDirectories(backupPath);
+        File[] legacyFiles = path.toFile().listFiles(File::isFile);
+        Assert.assertNotNull(legacyFiles);
+        Assert.assertTrue(legacyFiles.length > 1);
+        Arrays.sort(legacyFiles, Comparator.comparingLong(file -> Long.parseLong(file.getName())));
+        for (File file : legacyFiles) {
+            Files.copy(file.toPath(), backupPath.resolve(file.getName()));
+        }
+
+        try (JournalPersistence store = prepareStore(0L)) {
+            Assert.assertEquals(index * Long.BYTES, store.max());
+        }
+
+        // 第一个旧文件已经删除，其余的还在
+        Path migratedPath = path.resolve("legacy.migrated");
+        Files.createDirectories(migratedPath);
+        for (int i = 1; i < legacyFiles.length; i++) {
+            Files.move(backupPath.resolve(legacyFiles[i].getName()), migratedPath.resolve(legacyFiles[i].getName()));
+        }
+
+        try (JournalPersistence store = prepareStore(0L)) {
+            Assert.assertEquals(0L, store.min());
+            Assert.assertEquals(index * Long.BYTES, store.max());
+            long[] longs = store.readLongs(0L, (int) index);
+            for (int i = 0; i < longs.length; i++) {
+                Assert.assertEquals(i, longs[i]);
+            }
+        }
+        Assert.assertFalse(Files.exists(migratedPath));
+        Assert.assertFalse(Files.exists(path.resolve("legacy")));
+    }
+
+    /**
+     * 从段文件切换回旧格式，再切换回段文件，数据保持不变。
+     */
+    @Test
+    public void rollbackSegmentFilesTest() throws IOException {
+        long min = 13 * Long.BYTES;
+        long count = 30;
+        try (JournalPersistence store = prepareStore(min)) {
+            appendLongs(store, 13, count);
+            store.flush();
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty("file_data_size", String.valueOf(FILE_DATA_SIZE));
+        try (JournalPersistence store = new IndexStore()) {
+            store.recover(path, min, properties);
+            assertLongs(store, 13, count);
+            appendLongs(store, 13 + count, 5);
+            while (store.flushed() < store.max()) {
+                store.flush();
+            }
+        }
+        Assert.assertFalse(Files.exists(path.resolve("segments")));
+        Assert.assertFalse(Files.exists(path.resolve("segments.rolledback")));
+
+        properties.setProperty(IndexStore.STORE_TYPE_KEY, IndexStore.STORE_TYPE_MAPPED);
+        try (JournalPersistence store = new IndexStore()) {
+            store.recover(path, min, properties);
+            assertLongs(store, 13, count + 5);
+        }
+    }
+
+    private void assertLongs(JournalPersistence store, long start, long count) throws IOException {
+        Assert.assertEquals(start * Long.BYTES, store.min());
+        Assert.assertEquals((start + count) * Long.BYTES, store.max());
+        long[] longs = store.readLongs(start * Long.BYTES, (int) count);
+        for (int i = 0; i < longs.length; i++) {
+            Assert.assertEquals(start + i, longs[i]);
+        }
+    }
+
+    private void appendLongs(JournalPersistence store, long start, long count) throws IOException {
+        for (long i = start; i < start + count; i++) {
+            store.append(toBytes(i));
+        }
+    }
+
+    private byte[] toBytes(long l) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(l).array();
+    }
+
+    private JournalPersistence prepareStore(long min) throws IOException {
+        JournalPersistence store = new MappedIndexStore();
+        Properties properties = new Properties();
+        properties.setProperty("file_data_size", String.valueOf(FILE_DATA_SIZE));
+        store.recover(path, min, properties);
+        return store;
+    }
+
+    @Before
+    public void before() throws Exception {
+        path = TestPathUtils.prepareBaseDir();
+        logger.info("Base directory: {}.", path);
+    }
+
+    @After
+    public void after() {
+        TestPathUtils.destroyBaseDir();
+    }
+}
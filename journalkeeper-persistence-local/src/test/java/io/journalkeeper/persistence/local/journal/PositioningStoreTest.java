@@ -28,10 +28,15 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
 
 
@@ -95,6 +100,196 @@ public class PositioningStoreTest {
 
     }
 
+    @Test
+    public void writeThroughTest() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("write_through", "true");
+        properties.setProperty("file_data_size", String.valueOf(16 * 1024));
+        JournalPersistence store = new PositioningStore();
+        store.recover(path, properties);
+        int size = 50;
+        int maxLength = 999;
+        long start = store.max();
+        List<byte[]> journals = ByteUtils.createRandomSizeByteList(maxLength, size);
+        List<byte[]> batch = ByteUtils.createRandomSizeByteList(maxLength, 10);
+        int length = journals.stream().mapToInt(journal -> journal.length).sum();
+        int batchLength = batch.stream().mapToInt(journal -> journal.length).sum();
+
+        long writePosition = 0L;
+        for (byte[] journal : journals) {
+            writePosition = store.append(journal);
+            // 读取已映射的页之后继续写入，验证读取时能看到新写入的数据
+            Assert.assertArrayEquals(journal, store.read(writePosition - journal.length, journal.length));
+        }
+        Assert.assertEquals(length + start, writePosition);
+
+        writePosition = store.append(batch);
+        Assert.assertEquals(length + batchLength + start, writePosition);
+        Assert.assertEquals(writePosition, store.max());
+
+        assertEntries(store, start, journals);
+        assertEntries(store, start + length, batch);
+
+        while (store.flushed() < store.max()) {
+            store.flush();
+        }
+        store.close();
+
+        store = new PositioningStore();
+        store.recover(path, properties);
+        Assert.assertEquals(writePosition, store.max());
+        assertEntries(store, start, journals);
+        assertEntries(store, start + length, batch);
+        store.close();
+    }
+
+    private void assertEntries(JournalPersistence store, long start, List<byte[]> journals) throws IOException {
+        long position = start;
+        for (byte[] journal : journals) {
+            Assert.assertArrayEquals(journal, store.read(position, journal.length));
+            position += journal.length;
+        }
+    }
+
+    @Test
+    public void flushBackpressureTest() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("max_dirty_size", String.valueOf(1024));
+        JournalPersistence store = new PositioningStore();
+        store.recover(path, properties);
+        try {
+            Assert.assertTrue(store.isWritable());
+            long position = store.append(new byte[2048]);
+            Assert.assertFalse(store.isWritable());
+            Assert.assertFalse(store.awaitWritable(10, TimeUnit.MILLISECONDS));
+
+            CompletableFuture<Long> flushFuture = store.flushFuture(position);
+            Assert.assertFalse(flushFuture.isDone());
+            CompletableFuture<Void> flushing = CompletableFuture.runAsync(() -> {
+                try {
+                    Thread.sleep(50L);
+                    store.flush();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            Assert.assertTrue(store.awaitWritable(10, TimeUnit.SECONDS));
+            Assert.assertTrue(flushFuture.get(10, TimeUnit.SECONDS) >= position);
+            flushing.get();
+            Assert.assertTrue(store.flushFuture(position).isDone());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void preallocateTest() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("preallocate_file_count", String.valueOf(2));
+        properties.setProperty("file_data_size", String.valueOf(16 * 1024));
+        File spareDir = path.resolve(StoreFilePreallocator.SPARE_PATH).toFile();
+        PositioningStore store = new PositioningStore();
+        store.recover(path, properties);
+        waitForSpareFiles(spareDir, 2);
+        // 空闲文件预先分配到文件的最大长度
+        for (File spareFile : Objects.requireNonNull(spareDir.listFiles())) {
+            Assert.assertEquals(128 + 16 * 1024, spareFile.length());
+        }
+
+        int size = 100;
+        int maxLength = 999;
+        List<byte[]> journals = ByteUtils.createRandomSizeByteList(maxLength, size);
+        long start = store.max();
+        long writePosition = 0L;
+        for (byte[] journal : journals) {
+            writePosition = store.append(journal);
+        }
+        while (store.flushed() < store.max()) {
+            store.flush();
+        }
+        waitForSpareFiles(spareDir, 2);
+
+        // 数据文件都是预分配的，恢复时按照文件头中记录的数据长度恢复写入位置
+        store.close();
+        store = new PositioningStore();
+        store.recover(path, properties);
+        Assert.assertEquals(writePosition, store.max());
+
+        // compact删除的文件回收为空闲文件，空闲文件足够之后多余的文件直接删除
+        long compactPosition = start + journals.get(0).length + journals.get(1).length + 16 * 1024;
+        store.compact(compactPosition);
+        File[] spareFiles = spareDir.listFiles();
+        Assert.assertNotNull(spareFiles);
+        Assert.assertTrue(spareFiles.length >= 2);
+        for (File spareFile : spareFiles) {
+            Assert.assertEquals(128 + 16 * 1024, spareFile.length());
+        }
+        store.close();
+
+        store = new PositioningStore();
+        store.recover(path, compactPosition, properties);
+        Assert.assertEquals(writePosition, store.max());
+        long position = start;
+        for (byte[] journal : journals) {
+            if (position >= store.min()) {
+                Assert.assertArrayEquals(journal, store.read(position, journal.length));
+            }
+            position += journal.length;
+        }
+
+        // 回滚之后文件长度不变，恢复时按照文件头中的数据长度恢复
+        long truncatePosition = writePosition - journals.get(journals.size() - 1).length;
+        store.truncate(truncatePosition);
+        store.close();
+        store = new PositioningStore();
+        store.recover(path, compactPosition, properties);
+        Assert.assertEquals(truncatePosition, store.max());
+
+        store.close();
+        store.delete();
+        Assert.assertFalse(spareDir.exists());
+    }
+
+    private void waitForSpareFiles(File spareDir, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000L;
+        File[] files;
+        while ((files = spareDir.listFiles(file -> file.length() == 128 + 16 * 1024)) == null || files.length < count) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10L);
+        }
+    }
+
+    @Test
+    public void fixedSizeFilesReadLongTest() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("file_data_size", String.valueOf(1024));
+        JournalPersistence store = new PositioningStore();
+        store.recover(path, properties);
+        int count = 1000;
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        for (long i = 0; i < count; i++) {
+            buffer.clear();
+            buffer.putLong(i);
+            store.append(buffer.array());
+        }
+        while (store.flushed() < store.max()) {
+            store.flush();
+        }
+        for (long i = 0; i < count; i++) {
+            Assert.assertEquals(i, (long) store.readLong(i * Long.BYTES));
+        }
+
+        store.compact(300 * Long.BYTES);
+        store.truncate(900 * Long.BYTES);
+        for (long i = store.min() / Long.BYTES; i < 900; i++) {
+            Assert.assertEquals(i, (long) store.readLong(i * Long.BYTES));
+        }
+        long position = store.append(buffer.array());
+        Assert.assertEquals(count - 1, (long) store.readLong(position - Long.BYTES));
+        store.close();
+    }
+
     // recover
     @Test
     public void recoverTest() throws IOException {
@@ -0,0 +1,87 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.persistence.local.journal;
+
+import io.journalkeeper.utils.test.TestPathUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+public class StoreFileTableTest {
+    private static final int FILE_DATA_SIZE = 1024;
+    private Path path = null;
+
+    @Test
+    public void evenFilesTest() throws IOException {
+        StoreFileTable table = StoreFileTable.create(createFiles(2048L, 3072L, 4096L), FILE_DATA_SIZE);
+        assertFile(table, 2048L, 2048L);
+        assertFile(table, 2048L, 3071L);
+        assertFile(table, 3072L, 3072L);
+        assertFile(table, 4096L, 5000L);
+        // 超出最后一个文件时返回最后一个文件
+        assertFile(table, 4096L, 100000L);
+        Assert.assertNull(table.get(2047L));
+    }
+
+    @Test
+    public void unevenFilesTest() throws IOException {
+        // Journal的文件写不下一条日志就切换，文件长度不一
+        StoreFileTable table = StoreFileTable.create(createFiles(100L, 1000L, 1900L, 2850L), FILE_DATA_SIZE);
+        assertFile(table, 100L, 100L);
+        assertFile(table, 100L, 999L);
+        assertFile(table, 1000L, 1000L);
+        assertFile(table, 1000L, 1899L);
+        assertFile(table, 1900L, 2849L);
+        assertFile(table, 2850L, 2850L);
+        assertFile(table, 2850L, 100000L);
+        Assert.assertNull(table.get(99L));
+    }
+
+    @Test
+    public void emptyTest() {
+        StoreFileTable table = StoreFileTable.create(new TreeMap<>(), FILE_DATA_SIZE);
+        Assert.assertSame(StoreFileTable.EMPTY, table);
+        Assert.assertNull(table.get(0L));
+    }
+
+    private void assertFile(StoreFileTable table, long expectedFilePosition, long position) {
+        StoreFile storeFile = table.get(position);
+        Assert.assertNotNull(storeFile);
+        Assert.assertEquals(expectedFilePosition, storeFile.position());
+    }
+
+    private NavigableMap<Long, StoreFile> createFiles(long... positions) throws IOException {
+        NavigableMap<Long, StoreFile> storeFileMap = new TreeMap<>();
+        for (long position : positions) {
+            storeFileMap.put(position, new LocalStoreFile(position, path.toFile(), 128, null, FILE_DATA_SIZE));
+        }
+        return storeFileMap;
+    }
+
+    @Before
+    public void before() throws Exception {
+        path = TestPathUtils.prepareBaseDir();
+    }
+
+    @After
+    public void after() {
+        TestPathUtils.destroyBaseDir();
+    }
+}
@@ -15,9 +15,13 @@ package io.journalkeeper.persistence;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 日志持久化接口
@@ -58,6 +62,43 @@ public interface JournalPersistence extends Closeable {
     default void flush() throws IOException {
     }
 
+    /**
+     * 将已经刷盘的数据强制写入存储设备（fsync），
+     * 调用返回后，当前刷盘位置之前的数据在掉电后也不会丢失。
+     * @throws IOException 发生IO异常时抛出
+     */
+    default void force() throws IOException {
+    }
+
+    /**
+     * 是否可以继续写入。未刷盘的数据超过上限时返回false，这时写入会阻塞，直到刷盘追上来。
+     * 调用方可以据此暂停接收新的写入，而不是阻塞在写入上。
+     * @return 可以写入返回true，否则返回false
+     */
+    default boolean isWritable() {
+        return true;
+    }
+
+    /**
+     * 等待直到可以继续写入。等待期间线程挂起，由刷盘唤醒。
+     * @param timeout 最长等待时间
+     * @param unit 时间单位
+     * @return 超时前可以写入返回true，否则返回false
+     * @throws InterruptedException 等待时线程被中断
+     */
+    default boolean awaitWritable(long timeout, TimeUnit unit) throws InterruptedException {
+        return true;
+    }
+
+    /**
+     * 返回一个刷盘位置不小于给定位置时完成的Future。
+     * @param position 位置
+     * @return 完成时的值为当时的刷盘位置
+     */
+    default CompletableFuture<Long> flushFuture(long position) {
+        return CompletableFuture.completedFuture(flushed());
+    }
+
     ;
 
     /**
@@ -104,6 +145,28 @@ public interface JournalPersistence extends Closeable {
      */
     byte[] read(long position, int length) throws IOException;
 
+    /**
+     * 批量读取一段连续的数据，这段数据可能跨越多个文件。
+     * 返回的ByteBuffer按顺序首尾相接，恰好覆盖[position, position + length)。
+     * @param position 起始位置
+     * @param length 读取长度
+     * @return 存放数据的ByteBuffer列表
+     * @throws IOException 发生IO异常时抛出
+     */
+    default List<ByteBuffer> readBuffers(long position, int length) throws IOException {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        int readLength = 0;
+        while (readLength < length) {
+            byte[] bytes = read(position + readLength, length - readLength);
+            if (null == bytes || bytes.length == 0) {
+                throw new IOException(String.format("Read nothing at position %d!", position + readLength));
+            }
+            buffers.add(ByteBuffer.wrap(bytes));
+            readLength += bytes.length;
+        }
+        return buffers;
+    }
+
     /**
      * 读取long
      * @param position 起始位置
@@ -112,6 +175,28 @@ public interface JournalPersistence extends Closeable {
      */
     Long readLong(long position) throws IOException;
 
+    /**
+     * 批量读取连续的count个long
+     * @param position 起始位置
+     * @param count 读取long的数量
+     * @return long数组
+     * @throws IOException 发生IO异常时抛出
+     */
+    default long[] readLongs(long position, int count) throws IOException {
+        long[] longs = new long[count];
+        if (count == 0) return longs;
+        // 同一个long可能跨越两个ByteBuffer，先拼接再解析
+        ByteBuffer buffer = ByteBuffer.allocate(count * Long.BYTES);
+        for (ByteBuffer b : readBuffers(position, count * Long.BYTES)) {
+            buffer.put(b);
+        }
+        buffer.flip();
+        for (int i = 0; i < count; i++) {
+            longs[i] = buffer.getLong();
+        }
+        return longs;
+    }
+
     /**
      * 从指定Path恢复Journal，如果没有则创建一个空的。
      * @param path journal存放路径
@@ -23,4 +23,13 @@ public interface PersistenceFactory {
 
     JournalPersistence createJournalPersistenceInstance();
 
+    /**
+     * 创建索引的持久化实例。索引由定长（8字节）的long组成，
+     * 实现可以针对定长数据做优化，默认与{@link #createJournalPersistenceInstance()}相同。
+     * @return 索引持久化实例
+     */
+    default JournalPersistence createIndexPersistenceInstance() {
+        return createJournalPersistenceInstance();
+    }
+
 }
@@ -43,9 +43,7 @@ import io.journalkeeper.rpc.BaseResponse;
 import io.journalkeeper.rpc.RpcException;
 import io.journalkeeper.rpc.codec.RpcTypes;
 import io.journalkeeper.rpc.header.JournalKeeperHeader;
-import io.journalkeeper.rpc.remoting.transport.Transport;
 import io.journalkeeper.rpc.remoting.transport.TransportClient;
-import io.journalkeeper.rpc.remoting.transport.TransportState;
 import io.journalkeeper.rpc.remoting.transport.exception.TransportException;
 import io.journalkeeper.rpc.utils.CommandSupport;
 import io.journalkeeper.utils.event.EventBus;
@@ -72,7 +70,7 @@ public class ClientServerRpcStub implements ClientServerRpc {
     protected final TransportClient transportClient;
     protected final InetSocketAddress inetSocketAddress;
     protected final URI uri;
-    protected Transport transport;
+    protected final TransportPool transportPool;
     protected EventBus eventBus = null;
     protected AsyncLoopThread pullEventThread = null;
     protected long pullWatchId = -1L;
@@ -81,10 +79,19 @@ public class ClientServerRpcStub implements ClientServerRpc {
     protected final int version;
 
     public ClientServerRpcStub(TransportClient transportClient, URI uri, InetSocketAddress inetSocketAddress, int version) {
+        this(transportClient, uri, inetSocketAddress, version, 1);
+    }
+
+    /**
+     * @param controlConnections 控制通道的连接数，批量通道固定只有一个连接
+     */
+    public ClientServerRpcStub(TransportClient transportClient, URI uri, InetSocketAddress inetSocketAddress, int version,
+                               int controlConnections) {
         this.transportClient = transportClient;
         this.uri = uri;
         this.version = version;
         this.inetSocketAddress = inetSocketAddress;
+        this.transportPool = new TransportPool(transportClient, inetSocketAddress, controlConnections);
         logger.info("Using protocol version {}, supported versions up to {}.", version, JournalKeeperHeader.DEFAULT_VERSION);
     }
 
@@ -95,17 +102,16 @@ public class ClientServerRpcStub implements ClientServerRpc {
     }
 
     protected <Q, R extends BaseResponse> CompletableFuture<R> sendRequest(Q request, int rpcType) {
+        TransportPool.Connection connection = transportPool.select(rpcType);
+        connection.requestSent();
         try {
-            if (!isAlive()) {
-                closeTransport();
-                transport = createTransport();
-            }
-            CompletableFuture<R> future = CommandSupport.sendRequest(request, rpcType, transport, uri, version);
+            CompletableFuture<R> future = CommandSupport.sendRequest(request, rpcType, connection.transport(), uri, version);
 
             future.whenCompleteAsync((response, exception) -> {
+                connection.requestCompleted();
                 if (null != exception) {
-                    // 如果发生异常，
-                    stop();
+                    // 如果发生异常，只关闭出错的连接，下次使用时重新创建
+                    connection.close();
                     lastRequestSuccess.set(false);
                 } else {
                     lastRequestSuccess.set(true);
@@ -123,6 +129,7 @@ public class ClientServerRpcStub implements ClientServerRpc {
                 }
             });
         } catch (Throwable t) {
+            connection.requestCompleted();
             CompletableFuture<R> completableFuture = new CompletableFuture<>();
             completableFuture.completeExceptionally(new io.journalkeeper.exceptions.TransportException(t));
             return completableFuture;
@@ -305,24 +312,9 @@ public class ClientServerRpcStub implements ClientServerRpc {
 
     }
 
-    private synchronized Transport createTransport() {
-        return transportClient.createTransport(inetSocketAddress);
-    }
-
-    private synchronized void closeTransport() {
-        if (null != transport) {
-            transport.stop();
-            transport = null;
-        }
-    }
-
-    private boolean isAlive() {
-        return null != transport && transport.state() == TransportState.CONNECTED;
-    }
-
     @Override
     public void stop() {
         destroyPullEvent();
-        closeTransport();
+        transportPool.close();
     }
 }
@@ -32,7 +32,9 @@ public class JournalKeeperClientServerRpcAccessPoint implements ClientServerRpcA
     private final TransportClient transportClient;
     private Map<URI, ClientServerRpcStub> serverInstances = new ConcurrentHashMap<>();
     public final String PROTOCOL_VERSION_KEY = "protocol.version";
+    public final String CONTROL_CONNECTIONS_KEY = "connection.control_count";
     private final int protocolVersion;
+    private final int controlConnections;
 
     public JournalKeeperClientServerRpcAccessPoint(TransportClient transportClient, Properties properties) {
         this.transportClient = transportClient;
@@ -43,6 +45,7 @@ public class JournalKeeperClientServerRpcAccessPoint implements ClientServerRpcA
         }
         this.properties = properties;
         protocolVersion = Integer.parseInt(properties.getProperty(PROTOCOL_VERSION_KEY, String.valueOf(JournalKeeperHeader.DEFAULT_VERSION)));
+        controlConnections = Integer.parseInt(properties.getProperty(CONTROL_CONNECTIONS_KEY, "1"));
 
     }
 
@@ -63,7 +66,8 @@ public class JournalKeeperClientServerRpcAccessPoint implements ClientServerRpcA
     }
 
     private ClientServerRpcStub createClientServerRpc(URI server) {
-        return new ClientServerRpcStub(transportClient, server, UriSupport.parseUri(server), protocolVersion);
+        return new ClientServerRpcStub(transportClient, server, UriSupport.parseUri(server), protocolVersion,
+                controlConnections);
     }
 
     private void disconnect(ClientServerRpcStub clientServerRpc) {
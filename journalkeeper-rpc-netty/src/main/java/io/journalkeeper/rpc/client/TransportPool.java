@@ -0,0 +1,147 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.rpc.client;
+
+import io.journalkeeper.rpc.codec.RpcTypes;
+import io.journalkeeper.rpc.remoting.transport.Transport;
+import io.journalkeeper.rpc.remoting.transport.TransportClient;
+import io.journalkeeper.rpc.remoting.transport.TransportState;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 到一个节点的连接池。
+ * 连接分成两个通道：
+ * 批量通道：复制日志、安装快照、读取日志等数据量大的请求；
+ * 控制通道：投票、检查领导权和其它客户端请求，
+ * 这些请求很小，不会排在几MB的复制请求后面等待（队头阻塞）而超时，引起不必要的选举。
+ *
+ * 控制通道可以有多个连接，请求发送到未完成请求最少的连接上。
+ * 连接在第一次使用时创建，断开后在下次使用时重新创建。客户端不发送批量请求，所以只会创建控制通道的连接。
+ *
+ * 注意：批量通道固定只有一个连接。
+ * Follower在收到请求的Netty IO线程上同步追加或截断日志，追加没有加锁，
+ * 复制日志和安装快照必须都从同一个连接（同一个IO线程）到达，否则并发写入会损坏Follower的日志和索引。
+ * 心跳和复制日志共用同一个请求类型，也放在批量通道上，保证和复制请求的顺序一致。
+ */
+class TransportPool {
+    private final TransportClient transportClient;
+    private final InetSocketAddress inetSocketAddress;
+    private final Lane controlLane;
+    private final Lane bulkLane;
+
+    TransportPool(TransportClient transportClient, InetSocketAddress inetSocketAddress, int controlConnections) {
+        this.transportClient = transportClient;
+        this.inetSocketAddress = inetSocketAddress;
+        this.controlLane = new Lane(controlConnections);
+        this.bulkLane = new Lane(1);
+    }
+
+    /**
+     * 是否是走批量通道的请求
+     * @param rpcType 请求类型
+     * @return 是返回true
+     */
+    static boolean isBulk(int rpcType) {
+        switch (rpcType) {
+            case RpcTypes.ASYNC_APPEND_ENTRIES_REQUEST:
+            case RpcTypes.INSTALL_SNAPSHOT_REQUEST:
+            case RpcTypes.GET_SERVER_ENTRIES_REQUEST:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 为请求选择一个连接
+     * @param rpcType 请求类型
+     * @return 批量请求返回批量通道唯一的连接，其它请求返回控制通道中未完成请求最少的连接
+     */
+    Connection select(int rpcType) {
+        return isBulk(rpcType) ? bulkLane.select() : controlLane.select();
+    }
+
+    void close() {
+        controlLane.close();
+        bulkLane.close();
+    }
+
+    private class Lane {
+        private final Connection[] connections;
+
+        private Lane(int size) {
+            connections = new Connection[Math.max(size, 1)];
+            for (int i = 0; i < connections.length; i++) {
+                connections[i] = new Connection();
+            }
+        }
+
+        private Connection select() {
+            Connection selected = connections[0];
+            for (int i = 1; i < connections.length; i++) {
+                if (connections[i].outstanding() < selected.outstanding()) {
+                    selected = connections[i];
+                }
+            }
+            return selected;
+        }
+
+        private void close() {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * 池中的一个连接，记录在这个连接上还没有收到响应的请求数
+     */
+    class Connection {
+        private final AtomicInteger outstanding = new AtomicInteger(0);
+        private Transport transport = null;
+
+        /**
+         * 获取连接的Transport，连接不可用时重新创建
+         * @return Transport
+         */
+        synchronized Transport transport() {
+            if (null == transport || transport.state() != TransportState.CONNECTED) {
+                close();
+                transport = transportClient.createTransport(inetSocketAddress);
+            }
+            return transport;
+        }
+
+        int outstanding() {
+            return outstanding.get();
+        }
+
+        void requestSent() {
+            outstanding.incrementAndGet();
+        }
+
+        void requestCompleted() {
+            outstanding.decrementAndGet();
+        }
+
+        synchronized void close() {
+            if (null != transport) {
+                transport.stop();
+                transport = null;
+            }
+        }
+    }
+}
@@ -19,6 +19,8 @@ import io.journalkeeper.rpc.remoting.transport.command.Type;
 import io.journalkeeper.rpc.server.AsyncAppendEntriesRequest;
 import io.netty.buffer.ByteBuf;
 
+import java.nio.ByteBuffer;
+
 /**
  * @author LiYue
  * Date: 2019-04-02
@@ -30,8 +32,9 @@ public class AsyncAppendEntriesRequestCodec extends GenericPayloadCodec<AsyncApp
         CodecSupport.encodeUri(buffer, request.getLeader());
         CodecSupport.encodeLong(buffer, request.getPrevLogIndex());
         CodecSupport.encodeInt(buffer, request.getPrevLogTerm());
-        CodecSupport.encodeList(buffer, request.getEntries(),
-                (obj, buffer1) -> CodecSupport.encodeBytes(buffer1, (byte[]) obj));
+        // 直接写入LEADER读出的日志切片，不先复制成byte[]
+        CodecSupport.encodeList(buffer, request.getEntryBuffers(),
+                (obj, buffer1) -> CodecSupport.encodeByteBuffer(buffer1, (ByteBuffer) obj));
         CodecSupport.encodeLong(buffer, request.getLeaderCommit());
         CodecSupport.encodeLong(buffer, request.getMaxIndex());
 
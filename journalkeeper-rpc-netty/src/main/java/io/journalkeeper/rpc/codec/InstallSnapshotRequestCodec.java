@@ -30,7 +30,16 @@ public class InstallSnapshotRequestCodec extends GenericPayloadCodec<InstallSnap
         CodecSupport.encodeUri(buffer, request.getLeaderId());
         CodecSupport.encodeLong(buffer, request.getLastIncludedIndex());
         CodecSupport.encodeInt(buffer, request.getLastIncludedTerm());
-        CodecSupport.encodeInt(buffer, request.getOffset());
+        if (header.getVersion() >= JournalKeeperHeader.LONG_SNAPSHOT_OFFSET_VERSION) {
+            CodecSupport.encodeLong(buffer, request.getOffset());
+        } else {
+            // 旧版本的协议offset是int，无法发送超过2GB的快照
+            if (request.getOffset() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(String.format(
+                        "Snapshot offset %d exceeds the limit of protocol version %d!", request.getOffset(), header.getVersion()));
+            }
+            CodecSupport.encodeInt(buffer, (int) request.getOffset());
+        }
         CodecSupport.encodeBytes(buffer, request.getData());
         CodecSupport.encodeBoolean(buffer, request.isDone());
     }
@@ -42,7 +51,8 @@ public class InstallSnapshotRequestCodec extends GenericPayloadCodec<InstallSnap
                 CodecSupport.decodeUri(buffer),
                 CodecSupport.decodeLong(buffer),
                 CodecSupport.decodeInt(buffer),
-                CodecSupport.decodeInt(buffer),
+                header.getVersion() >= JournalKeeperHeader.LONG_SNAPSHOT_OFFSET_VERSION ?
+                        CodecSupport.decodeLong(buffer) : CodecSupport.decodeInt(buffer),
                 CodecSupport.decodeBytes(buffer),
                 CodecSupport.decodeBoolean(buffer));
     }
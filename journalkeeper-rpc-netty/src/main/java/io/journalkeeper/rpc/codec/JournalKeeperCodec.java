@@ -28,22 +28,39 @@ import io.netty.buffer.ByteBuf;
  * Date: 2019-04-01
  */
 public class JournalKeeperCodec implements Codec {
-    private Codec headerCodec;
+    private JournalKeeperHeaderCodec headerCodec;
     private PayloadCodecFactory payloadCodecFactory;
 
     private Decoder decoder;
     private Encoder encoder;
 
     public JournalKeeperCodec() {
-        PayloadCodecFactory payloadCodecFactory = new PayloadCodecFactory();
-        PayloadCodecRegistry.register(payloadCodecFactory);
-        this.headerCodec = new JournalKeeperHeaderCodec();
+        this(createPayloadCodecFactory(), new JournalKeeperHeaderCodec());
+    }
+
+    private JournalKeeperCodec(PayloadCodecFactory payloadCodecFactory, JournalKeeperHeaderCodec headerCodec) {
+        this.headerCodec = headerCodec;
         this.payloadCodecFactory = payloadCodecFactory;
         this.decoder = new DefaultDecoder(headerCodec, payloadCodecFactory);
         this.encoder = new DefaultEncoder(headerCodec, payloadCodecFactory);
 
     }
 
+    private static PayloadCodecFactory createPayloadCodecFactory() {
+        PayloadCodecFactory payloadCodecFactory = new PayloadCodecFactory();
+        PayloadCodecRegistry.register(payloadCodecFactory);
+        return payloadCodecFactory;
+    }
+
+    /**
+     * 每个连接使用独立的协议头编解码器，保存这个连接上协商的路由，
+     * 请求的协议头中只需要发送路由ID，不必每次都发送完整的URI。
+     */
+    @Override
+    public Codec forChannel() {
+        return new JournalKeeperCodec(payloadCodecFactory, new JournalKeeperHeaderCodec(true));
+    }
+
     @Override
     public Object decode(ByteBuf buffer) throws TransportException.CodecException {
         return decoder.decode(buffer);
@@ -51,7 +68,13 @@ public class JournalKeeperCodec implements Codec {
 
     @Override
     public void encode(Object obj, ByteBuf buffer) throws TransportException.CodecException {
-        encoder.encode(obj, buffer);
+        try {
+            encoder.encode(obj, buffer);
+        } catch (TransportException.CodecException e) {
+            // 这一帧不会发送出去，其中新定义的路由对端收不到，重新开始定义路由
+            headerCodec.resetRoutes();
+            throw e;
+        }
     }
 
     public PayloadCodecFactory getPayloadCodecFactory() {
@@ -27,7 +27,15 @@ public class JournalKeeperHeader implements Header {
 
     public final static int MAGIC = 0x3f4e93d7;
     private static final AtomicInteger requestIdGenerator = new AtomicInteger(0);
-    public final static int DEFAULT_VERSION = 2;
+    public final static int DEFAULT_VERSION = 3;
+    /**
+     * 从这个版本开始使用紧凑的协议头，见{@link JournalKeeperHeaderCodec}
+     */
+    public final static int COMPACT_HEADER_VERSION = 3;
+    /**
+     * 从这个版本开始，InstallSnapshot请求中的offset使用long编码
+     */
+    public final static int LONG_SNAPSHOT_OFFSET_VERSION = 3;
     private boolean oneWay;
     private int status;
     private String error;
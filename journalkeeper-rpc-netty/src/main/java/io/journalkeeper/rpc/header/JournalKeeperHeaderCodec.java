@@ -21,6 +21,8 @@ import io.journalkeeper.rpc.remoting.transport.exception.TransportException;
 import io.netty.buffer.ByteBuf;
 
 import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * JournalKeeper协议头编解码器
@@ -34,15 +36,34 @@ import java.net.URI;
  *      4: Unused
  *
  *      3: Unused
- *      2: Unused
+ *      2: HAS_ERROR(VERSION 3+ only): 1: ERROR present 0: no ERROR
  *      1: ONE_WAY: 1: ONE_WAY 0: REQUEST_RESPONSE
  *      0: DIRECTION: 0: REQUEST, 1: RESPONSE
+ *
+ * VERSION 1-2:
  * REQUEST_ID: 4 bytes
  * TYPE: 1 byte
  * TIMESTAMP: 8 bytes
- * STATUS(Response only): 2 bytes
+ * STATUS(Response only): 1 byte
  * ERROR(Response only): variable
  * DESTINATION: variable
+ *
+ * VERSION 3+（紧凑格式）:
+ * TYPE: 1 byte
+ * REQUEST_ID: varint, 1-5 bytes
+ * TIMESTAMP: varint, 1-10 bytes
+ * STATUS(Response only): 1 byte
+ * ERROR(Response with HAS_ERROR only): variable
+ * ROUTE(Request only): varint, 1-5 bytes:
+ *      0: 不使用路由，后面跟着完整的DESTINATION
+ *      ID * 2 + 1: 定义路由ID，后面跟着完整的DESTINATION
+ *      ID * 2: 引用这个连接上之前定义过的路由ID，后面没有DESTINATION
+ *
+ * 路由是每个连接各自协商的：请求第一次发往某个DESTINATION时定义路由，之后只发送路由ID。
+ * 只有每个连接独立的实例（{@link #JournalKeeperHeaderCodec(boolean)}）才会定义路由，
+ * 共享的实例总是发送完整的DESTINATION。
+ * 解码时根据VERSION选择格式，所以仍然可以解码旧版本的协议头。
+ *
  * author: gaohaoxiang
  *
  * date: 2018/8/21
@@ -50,10 +71,33 @@ import java.net.URI;
 public class JournalKeeperHeaderCodec implements Codec {
 
     private static final int HEADER_LENGTH = 4 + 1 + 1 + 4 + 1 + 8;
+    private static final int MAGIC_VERSION_LENGTH = 4 + 1;
+    // 每个连接最多定义的路由数量，超过之后发送完整的DESTINATION
+    private static final int MAX_ROUTES = 1024;
+    private static final int ROUTE_NONE = 0;
+
+    private final boolean routing;
+    // 编码：已经在这个连接上定义过的路由
+    private final Map<URI, Integer> encodeRoutes;
+    // 解码：对端在这个连接上定义的路由
+    private final Map<Integer, URI> decodeRoutes;
+
+    public JournalKeeperHeaderCodec() {
+        this(false);
+    }
+
+    /**
+     * @param routing 是否在连接上协商路由，只有每个连接独立的实例才可以为true
+     */
+    public JournalKeeperHeaderCodec(boolean routing) {
+        this.routing = routing;
+        this.encodeRoutes = routing ? new HashMap<>() : null;
+        this.decodeRoutes = routing ? new HashMap<>() : null;
+    }
 
     @Override
     public JournalKeeperHeader decode(ByteBuf buffer) throws TransportException.CodecException {
-        if (buffer.readableBytes() < HEADER_LENGTH) {
+        if (buffer.readableBytes() < MAGIC_VERSION_LENGTH) {
             return null;
         }
 
@@ -63,6 +107,12 @@ public class JournalKeeperHeaderCodec implements Codec {
         }
 
         byte version = buffer.readByte();
+        if (version >= JournalKeeperHeader.COMPACT_HEADER_VERSION) {
+            return decodeCompact(version, buffer);
+        }
+        if (buffer.readableBytes() < HEADER_LENGTH - MAGIC_VERSION_LENGTH) {
+            return null;
+        }
         byte identity = buffer.readByte();
         int requestId = buffer.readInt();
         byte type = buffer.readByte();
@@ -91,9 +141,63 @@ public class JournalKeeperHeaderCodec implements Codec {
         return new JournalKeeperHeader(version, oneWay, direction, requestId, type, sendTime, destination, status, error);
     }
 
+    private JournalKeeperHeader decodeCompact(byte version, ByteBuf buffer) throws TransportException.CodecException {
+        try {
+            byte identity = buffer.readByte();
+            byte type = buffer.readByte();
+            int requestId = CodecSupport.decodeVarInt(buffer);
+            long sendTime = CodecSupport.decodeVarLong(buffer);
+            short status = 0;
+            String error = null;
+            Direction direction = Direction.valueOf(identity & 0x1);
+            boolean oneWay = ((identity >> 1) & 0x1) == 0x1;
+            boolean hasError = ((identity >> 2) & 0x1) == 0x1;
+
+            URI destination = null;
+            if (direction.equals(Direction.RESPONSE)) {
+                status = buffer.readUnsignedByte();
+                if (hasError) {
+                    error = CodecSupport.decodeString(buffer);
+                }
+            } else {
+                destination = decodeDestination(buffer);
+            }
+            return new JournalKeeperHeader(version, oneWay, direction, requestId, type, sendTime, destination, status, error);
+        } catch (TransportException.CodecException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new TransportException.CodecException(e.getMessage());
+        }
+    }
+
+    private URI decodeDestination(ByteBuf buffer) throws TransportException.CodecException {
+        int route = CodecSupport.decodeVarInt(buffer);
+        if (route == ROUTE_NONE) {
+            return URI.create(CodecSupport.decodeString(buffer));
+        }
+        int routeId = route >>> 1;
+        if (!routing || routeId > MAX_ROUTES) {
+            throw new TransportException.CodecException(String.format("Invalid route id: %d!", routeId));
+        }
+        if ((route & 0x1) == 0x1) {
+            URI destination = URI.create(CodecSupport.decodeString(buffer));
+            decodeRoutes.put(routeId, destination);
+            return destination;
+        }
+        URI destination = decodeRoutes.get(routeId);
+        if (null == destination) {
+            throw new TransportException.CodecException(String.format("Unknown route id: %d!", routeId));
+        }
+        return destination;
+    }
+
     @Override
     public void encode(Object payload, ByteBuf buffer) throws TransportException.CodecException {
         JournalKeeperHeader header = (JournalKeeperHeader) payload;
+        if (header.getVersion() >= JournalKeeperHeader.COMPACT_HEADER_VERSION) {
+            encodeCompact(header, buffer);
+            return;
+        }
         // 响应类型
         byte identity = (byte) ((header.getDirection().ordinal() & 0x1) | (header.isOneWay() ? 0x2 : 0x0));
 
@@ -115,4 +219,59 @@ public class JournalKeeperHeaderCodec implements Codec {
             CodecSupport.encodeString(buffer, header.getDestination().toASCIIString());
         }
     }
-}
\ No newline at end of file
+
+    private void encodeCompact(JournalKeeperHeader header, ByteBuf buffer) throws TransportException.CodecException {
+        boolean isResponse = header.getDirection().equals(Direction.RESPONSE);
+        boolean hasError = isResponse && null != header.getError();
+        byte identity = (byte) ((header.getDirection().ordinal() & 0x1) | (header.isOneWay() ? 0x2 : 0x0) | (hasError ? 0x4 : 0x0));
+
+        buffer.writeInt(JournalKeeperHeader.MAGIC);
+        buffer.writeByte(header.getVersion());
+        buffer.writeByte(identity);
+        buffer.writeByte(header.getType());
+        CodecSupport.encodeVarInt(buffer, header.getRequestId());
+        CodecSupport.encodeVarLong(buffer, header.getSendTime());
+        if (isResponse) {
+            buffer.writeByte(header.getStatus());
+            if (hasError) {
+                try {
+                    CodecSupport.encodeString(buffer, header.getError());
+                } catch (Exception e) {
+                    throw new TransportException.CodecException(e.getMessage());
+                }
+            }
+        } else {
+            encodeDestination(header.getDestination(), buffer);
+        }
+    }
+
+    private void encodeDestination(URI destination, ByteBuf buffer) {
+        if (routing) {
+            Integer routeId = encodeRoutes.get(destination);
+            if (null != routeId) {
+                CodecSupport.encodeVarInt(buffer, routeId << 1);
+                return;
+            }
+            if (encodeRoutes.size() < MAX_ROUTES) {
+                routeId = encodeRoutes.size() + 1;
+                encodeRoutes.put(destination, routeId);
+                CodecSupport.encodeVarInt(buffer, (routeId << 1) | 0x1);
+                CodecSupport.encodeString(buffer, destination.toASCIIString());
+                return;
+            }
+        }
+        CodecSupport.encodeVarInt(buffer, ROUTE_NONE);
+        CodecSupport.encodeString(buffer, destination.toASCIIString());
+    }
+
+    /**
+     * 清空已经定义的路由，之后的请求重新定义路由。
+     * 编码失败、这一帧没有发送出去时调用，避免引用对端没有收到的路由。
+     * 重新定义的路由会覆盖对端记录的同一个路由ID。
+     */
+    public void resetRoutes() {
+        if (routing) {
+            encodeRoutes.clear();
+        }
+    }
+}
@@ -18,6 +18,7 @@ import io.journalkeeper.rpc.remoting.transport.codec.Encoder;
 import io.netty.buffer.ByteBuf;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -50,6 +51,16 @@ public class CodecSupport {
         return new byte[0];
     }
 
+    /**
+     * 与{@link #encodeBytes(ByteBuf, byte[])}的格式相同，直接把ByteBuffer中的数据写入byteBuf，不改变ByteBuffer的位置。
+     */
+    public static void encodeByteBuffer(ByteBuf byteBuf, ByteBuffer buffer) {
+        byteBuf.writeInt(buffer.remaining());
+        if (buffer.hasRemaining()) {
+            byteBuf.writeBytes(buffer.duplicate());
+        }
+    }
+
     public static void encodeBytes(ByteBuf byteBuf, byte[] bytes) {
         if (null == bytes) {
             bytes = new byte[0];
@@ -69,6 +80,45 @@ public class CodecSupport {
         return byteBuf.readLong();
     }
 
+    /**
+     * 变长编码一个无符号的long，每个字节低7位是数据，最高位表示后面是否还有字节。
+     * 数值越小占用的字节越少，最少1个字节，最多10个字节。
+     * @param byteBuf 目标buffer
+     * @param l 按无符号数编码的long
+     */
+    public static void encodeVarLong(ByteBuf byteBuf, long l) {
+        while ((l & ~0x7FL) != 0L) {
+            byteBuf.writeByte((int) ((l & 0x7F) | 0x80));
+            l >>>= 7;
+        }
+        byteBuf.writeByte((int) l);
+    }
+
+    public static long decodeVarLong(ByteBuf byteBuf) {
+        long l = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = byteBuf.readByte();
+            l |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return l;
+            }
+        }
+        throw new IllegalArgumentException("Malformed var long!");
+    }
+
+    /**
+     * 变长编码一个按无符号数处理的int，最多5个字节。
+     * @param byteBuf 目标buffer
+     * @param i 按无符号数编码的int
+     */
+    public static void encodeVarInt(ByteBuf byteBuf, int i) {
+        encodeVarLong(byteBuf, i & 0xFFFFFFFFL);
+    }
+
+    public static int decodeVarInt(ByteBuf byteBuf) {
+        return (int) decodeVarLong(byteBuf);
+    }
+
     public static void encodeInt(ByteBuf byteBuf, int i) {
         byteBuf.writeInt(i);
     }
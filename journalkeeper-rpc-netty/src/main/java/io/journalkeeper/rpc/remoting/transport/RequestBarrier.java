@@ -15,35 +15,51 @@ package io.journalkeeper.rpc.remoting.transport;
 
 import io.journalkeeper.rpc.remoting.transport.config.TransportConfig;
 import io.journalkeeper.rpc.remoting.transport.exception.TransportException;
+import io.journalkeeper.utils.threads.NamedThreadFactory;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Iterator;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 请求并发控制
+ * 未完成的请求按请求ID分段存放在以int为键的Map中，
+ * 每个请求的超时由时间轮在到期时检查，不需要定时遍历所有请求。
  * Created by hexiaofeng on 16-6-23.
  */
 public class RequestBarrier {
 
     protected static Logger logger = LoggerFactory.getLogger(RequestBarrier.class);
+    // 分段数，必须是2的幂
+    private static final int SEGMENTS = 16;
     // 单向信号量
     public Semaphore onewaySemaphore;
     // 异步信号量
     public Semaphore asyncSemaphore;
-    // 存放同步和异步命令应答
-    public Map<Integer, ResponseFuture> futures = new ConcurrentHashMap<Integer, ResponseFuture>(200);
+    // 存放同步和异步命令应答，按请求ID分段，每段用自身加锁
+    private final IntObjectMap<ResponseFuture>[] futures;
+    // 超时的请求数
+    private final AtomicLong timeoutRequests = new AtomicLong(0L);
     private TransportConfig config;
 
 
+    @SuppressWarnings("unchecked")
     public RequestBarrier(TransportConfig config) {
         this.config = config;
-        this.onewaySemaphore = config.getMaxOneway() > 0 ? new Semaphore(config.getMaxOneway(), true) : null;
-        this.asyncSemaphore = config.getMaxAsync() > 0 ? new Semaphore(config.getMaxAsync(), true) : null;
+        this.onewaySemaphore = config.getMaxOneway() > 0 ? new Semaphore(config.getMaxOneway(), config.isFairSemaphore()) : null;
+        this.asyncSemaphore = config.getMaxAsync() > 0 ? new Semaphore(config.getMaxAsync(), config.isFairSemaphore()) : null;
+        this.futures = new IntObjectMap[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            futures[i] = new IntObjectHashMap<>();
+        }
     }
 
     /**
@@ -62,17 +78,26 @@ public class RequestBarrier {
      * @return 异步调用
      */
     public ResponseFuture get(final int requestId) {
-        return futures.get(requestId);
+        IntObjectMap<ResponseFuture> segment = segment(requestId);
+        synchronized (segment) {
+            return segment.get(requestId);
+        }
     }
 
     /**
-     * 缓存异步调用
+     * 缓存异步调用，并在时间轮上登记超时检查
      *
      * @param requestId 请求ID
      * @param future    异步调用
      */
     public void put(final int requestId, final ResponseFuture future) {
-        futures.put(requestId, future);
+        IntObjectMap<ResponseFuture> segment = segment(requestId);
+        synchronized (segment) {
+            segment.put(requestId, future);
+        }
+        long delay = future.getBeginTime() + future.getTimeout() - System.currentTimeMillis();
+        future.setTimeoutTask(TimerHolder.TIMER.newTimeout(
+                timeout -> onTimeout(requestId, future), Math.max(delay, 0L), TimeUnit.MILLISECONDS));
     }
 
     /**
@@ -82,42 +107,58 @@ public class RequestBarrier {
      * @return 异步调用
      */
     public ResponseFuture remove(final int requestId) {
-        return futures.remove(requestId);
+        ResponseFuture future;
+        IntObjectMap<ResponseFuture> segment = segment(requestId);
+        synchronized (segment) {
+            future = segment.remove(requestId);
+        }
+        if (future != null) {
+            future.cancelTimeoutTask();
+        }
+        return future;
     }
 
     /**
-     * 清理所有超时的请求
+     * 时间轮上的超时检查到期：请求还没有收到应答，则移除并以超时失败
      */
-    public void evict() {
-        Iterator<Map.Entry<Integer, ResponseFuture>> iterator = futures.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<Integer, ResponseFuture> entry = iterator.next();
-            ResponseFuture future = entry.getValue();
-            long timeout = future.getBeginTime() + future.getTimeout();
-
-            if (timeout <= System.currentTimeMillis() && future.getResponse() == null) {
-                iterator.remove();
-                if (future.release()) {
-                    try {
-                        future.onFailed(TransportException.RequestTimeoutException
-                                .build(IpUtil.toAddress(future.getTransport().remoteAddress())));
-                    } catch (Throwable e) {
-                        logger.error("clear timeout response exception", e);
-                    }
-                }
-                logger.info("remove timeout request id={} begin={} timeout={}", future.getRequestId(),
-                        future.getBeginTime(), timeout);
+    private void onTimeout(final int requestId, final ResponseFuture future) {
+        IntObjectMap<ResponseFuture> segment = segment(requestId);
+        synchronized (segment) {
+            if (segment.get(requestId) != future || future.getResponse() != null) {
+                return;
+            }
+            segment.remove(requestId);
+        }
+        expire(future);
+    }
+
+    private void expire(ResponseFuture future) {
+        timeoutRequests.incrementAndGet();
+        if (future.release()) {
+            try {
+                future.onFailed(TransportException.RequestTimeoutException
+                        .build(IpUtil.toAddress(future.getTransport().remoteAddress())));
+            } catch (Throwable e) {
+                logger.error("clear timeout response exception", e);
             }
         }
+        logger.info("remove timeout request id={} begin={} timeout={}", future.getRequestId(),
+                future.getBeginTime(), future.getBeginTime() + future.getTimeout());
     }
 
     /**
      * 释放所有的异步调用
      */
     public void clear() {
-        ResponseFuture future;
-        for (Map.Entry<Integer, ResponseFuture> entry : futures.entrySet()) {
-            future = entry.getValue();
+        List<ResponseFuture> pending = new ArrayList<>();
+        for (IntObjectMap<ResponseFuture> segment : futures) {
+            synchronized (segment) {
+                pending.addAll(segment.values());
+                segment.clear();
+            }
+        }
+        for (ResponseFuture future : pending) {
+            future.cancelTimeoutTask();
             if (future.release()) {
                 try {
                     future.onFailed(TransportException.RequestTimeoutException
@@ -126,7 +167,52 @@ public class RequestBarrier {
                 }
             }
         }
-        futures.clear();
+    }
+
+    /**
+     * 未完成的请求数
+     *
+     * @return 未完成的请求数
+     */
+    public int getInflightRequests() {
+        int size = 0;
+        for (IntObjectMap<ResponseFuture> segment : futures) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 累计超时的请求数
+     *
+     * @return 超时的请求数
+     */
+    public long getTimeoutRequests() {
+        return timeoutRequests.get();
+    }
+
+    /**
+     * 剩余的异步请求许可数
+     *
+     * @return 剩余许可数，不限制异步请求数时返回-1
+     */
+    public int getAvailableAsyncPermits() {
+        return null == asyncSemaphore ? -1 : asyncSemaphore.availablePermits();
+    }
+
+    /**
+     * 剩余的单向请求许可数
+     *
+     * @return 剩余许可数，不限制单向请求数时返回-1
+     */
+    public int getAvailableOnewayPermits() {
+        return null == onewaySemaphore ? -1 : onewaySemaphore.availablePermits();
+    }
+
+    private IntObjectMap<ResponseFuture> segment(int requestId) {
+        return futures[requestId & (SEGMENTS - 1)];
     }
 
     /**
@@ -185,4 +271,11 @@ public class RequestBarrier {
         ONEWAY
     }
 
+    /**
+     * 所有RequestBarrier共用一个时间轮，只占用一个线程
+     */
+    private static class TimerHolder {
+        private static final Timer TIMER = new HashedWheelTimer(
+                new NamedThreadFactory("JournalKeeper-Request-Timeout", true), 10, TimeUnit.MILLISECONDS, 512);
+    }
 }
\ No newline at end of file
@@ -15,6 +15,7 @@ package io.journalkeeper.rpc.remoting.transport;
 
 import io.journalkeeper.rpc.remoting.transport.command.Command;
 import io.journalkeeper.rpc.remoting.transport.command.CommandCallback;
+import io.netty.util.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,6 +62,8 @@ public class ResponseFuture implements Future {
     private volatile boolean isDone = false;
     // 是否取消
     private volatile boolean isCancel = false;
+    // 超时检查任务
+    private volatile Timeout timeoutTask;
 
     /**
      * 异步调用构造函数
@@ -136,6 +139,20 @@ public class ResponseFuture implements Future {
         return transport;
     }
 
+    public void setTimeoutTask(Timeout timeoutTask) {
+        this.timeoutTask = timeoutTask;
+    }
+
+    /**
+     * 取消超时检查任务
+     */
+    public void cancelTimeoutTask() {
+        Timeout task = this.timeoutTask;
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
     /**
      * 是否超时
      *
@@ -79,4 +79,11 @@ public interface TransportClient extends LifeCycle {
      * @param listener 监听器
      */
     void removeListener(EventListener<TransportEvent> listener);
+
+    /**
+     * 请求并发控制，可以从中获取未完成的请求数等统计
+     *
+     * @return 请求并发控制
+     */
+    RequestBarrier getRequestBarrier();
 }
\ No newline at end of file
@@ -23,12 +23,14 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.epoll.Epoll;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -118,6 +120,19 @@ public abstract class TransportClientSupport extends Service {
 
     protected abstract ChannelHandler newChannelHandlerPipeline();
 
+    /**
+     * 开启合并flush时，在pipeline的最前面加上合并flush的处理器
+     *
+     * @param pipeline pipeline
+     * @return pipeline
+     */
+    protected ChannelPipeline addFlushConsolidationHandler(ChannelPipeline pipeline) {
+        if (config.isFlushConsolidation()) {
+            pipeline.addFirst(new FlushConsolidationHandler(config.getFlushMaxFlushes(), true));
+        }
+        return pipeline;
+    }
+
     public ClientConfig getConfig() {
         return config;
     }
@@ -21,12 +21,14 @@ import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.epoll.Epoll;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -155,6 +157,19 @@ public abstract class TransportServerSupport extends Service implements Transpor
 
     protected abstract ChannelHandler newChannelHandlerPipeline();
 
+    /**
+     * 开启合并flush时，在pipeline的最前面加上合并flush的处理器
+     *
+     * @param pipeline pipeline
+     * @return pipeline
+     */
+    protected ChannelPipeline addFlushConsolidationHandler(ChannelPipeline pipeline) {
+        if (serverConfig.isFlushConsolidation()) {
+            pipeline.addFirst(new FlushConsolidationHandler(serverConfig.getFlushMaxFlushes(), true));
+        }
+        return pipeline;
+    }
+
     public ServerConfig getServerConfig() {
         return serverConfig;
     }
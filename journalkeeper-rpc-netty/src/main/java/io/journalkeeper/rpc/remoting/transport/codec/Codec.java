@@ -19,4 +19,14 @@ package io.journalkeeper.rpc.remoting.transport.codec;
  */
 public interface Codec extends Encoder, Decoder {
 
+    /**
+     * 为一个连接创建编解码器。
+     * 需要保存连接状态的编解码器（例如协议头中每个连接协商的路由），每个连接使用独立的实例；
+     * 无状态的编解码器直接返回自身。
+     * 同一个连接的编解码都在这个连接的IO线程中执行，连接内的状态不需要同步。
+     * @return 这个连接使用的编解码器
+     */
+    default Codec forChannel() {
+        return this;
+    }
 }
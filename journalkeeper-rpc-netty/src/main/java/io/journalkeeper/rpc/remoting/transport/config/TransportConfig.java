@@ -55,10 +55,16 @@ public class TransportConfig {
     private boolean nonBlockOneway = false;
     // 最大异步请求数
     private int maxAsync = 10240;
+    // 单向和异步请求的信号量是否公平
+    private boolean fairSemaphore = false;
     // 异步回调线程数量
     private int callbackThreads = Runtime.getRuntime().availableProcessors();
     // 默认发送数据包超时时间
     private int sendTimeout = 1000;
+    // 是否合并flush，减少系统调用
+    private boolean flushConsolidation = true;
+    // 合并flush时，最多合并的flush次数，发送缓冲区满（不可写）时也会立即flush
+    private int flushMaxFlushes = 256;
 
     /*** 重试策略配置 ***/
     // 最大重试次数(无限制)
@@ -271,4 +277,28 @@ public class TransportConfig {
     public void setNonBlockOneway(boolean nonBlockOneway) {
         this.nonBlockOneway = nonBlockOneway;
     }
-}
\ No newline at end of file
+
+    public boolean isFairSemaphore() {
+        return fairSemaphore;
+    }
+
+    public void setFairSemaphore(boolean fairSemaphore) {
+        this.fairSemaphore = fairSemaphore;
+    }
+
+    public boolean isFlushConsolidation() {
+        return flushConsolidation;
+    }
+
+    public void setFlushConsolidation(boolean flushConsolidation) {
+        this.flushConsolidation = flushConsolidation;
+    }
+
+    public int getFlushMaxFlushes() {
+        return flushMaxFlushes;
+    }
+
+    public void setFlushMaxFlushes(int flushMaxFlushes) {
+        this.flushMaxFlushes = flushMaxFlushes;
+    }
+}
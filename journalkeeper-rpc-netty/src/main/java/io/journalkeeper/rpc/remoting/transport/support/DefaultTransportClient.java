@@ -37,8 +37,6 @@ import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 
 import java.net.SocketAddress;
-import java.util.Timer;
-import java.util.TimerTask;
 
 /**
  * 默认通信客户端
@@ -53,7 +51,6 @@ public class DefaultTransportClient extends TransportClientSupport implements Tr
     private RequestHandler requestHandler;
     private ResponseHandler responseHandler;
     private EventBus<TransportEvent> transportEventBus;
-    private Timer clearTimer;
 
     public DefaultTransportClient(ClientConfig config, Codec codec, final RequestBarrier requestBarrier, RequestHandler requestHandler, ResponseHandler responseHandler, EventBus<TransportEvent> transportEventBus) {
         super(config);
@@ -62,7 +59,6 @@ public class DefaultTransportClient extends TransportClientSupport implements Tr
         this.requestHandler = requestHandler;
         this.responseHandler = responseHandler;
         this.transportEventBus = transportEventBus;
-        this.clearTimer = new Timer("DefaultTransportClient-Clear-Timer");
 
 
     }
@@ -73,9 +69,10 @@ public class DefaultTransportClient extends TransportClientSupport implements Tr
         return new ChannelInitializer<Channel>() {
             @Override
             protected void initChannel(Channel channel) {
-                channel.pipeline()
-                        .addLast(new NettyDecoder(codec))
-                        .addLast(new NettyEncoder(codec))
+                Codec channelCodec = codec.forChannel();
+                addFlushConsolidationHandler(channel.pipeline())
+                        .addLast(new NettyDecoder(channelCodec))
+                        .addLast(new NettyEncoder(channelCodec))
                         .addLast(new ClientConnectionHandler())
                         .addLast(new TransportEventHandler(requestBarrier, transportEventBus))
                         .addLast(new CommandInvocation(commandDispatcher));
@@ -114,22 +111,20 @@ public class DefaultTransportClient extends TransportClientSupport implements Tr
         this.transportEventBus.removeListener(listener);
     }
 
+    @Override
+    public RequestBarrier getRequestBarrier() {
+        return requestBarrier;
+    }
+
     @Override
     protected void doStart() throws Exception {
         super.doStart();
-        this.clearTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                requestBarrier.evict();
-            }
-        }, getConfig().getSendTimeout(), getConfig().getSendTimeout());
         transportEventBus.start();
     }
 
     @Override
     protected void doStop() {
         super.doStop();
-        clearTimer.cancel();
         transportEventBus.stop(false);
         requestBarrier.clear();
         responseHandler.stop();
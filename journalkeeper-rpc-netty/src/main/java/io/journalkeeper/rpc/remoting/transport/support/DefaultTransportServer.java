@@ -67,9 +67,10 @@ public class DefaultTransportServer extends TransportServerSupport {
         return new ChannelInitializer<Channel>() {
             @Override
             protected void initChannel(Channel channel) throws Exception {
-                channel.pipeline()
-                        .addLast(new NettyDecoder(codec))
-                        .addLast(new NettyEncoder(codec))
+                Codec channelCodec = codec.forChannel();
+                addFlushConsolidationHandler(channel.pipeline())
+                        .addLast(new NettyDecoder(channelCodec))
+                        .addLast(new NettyEncoder(channelCodec))
                         .addLast(new TransportEventHandler(requestBarrier, transportEventBus))
                         .addLast(new ExceptionChannelHandler(exceptionHandler, requestBarrier))
                         .addLast(new CommandInvocation(commandDispatcher));
@@ -17,6 +17,7 @@ import io.journalkeeper.rpc.remoting.concurrent.EventBus;
 import io.journalkeeper.rpc.remoting.concurrent.EventListener;
 import io.journalkeeper.rpc.remoting.event.TransportEvent;
 import io.journalkeeper.rpc.remoting.transport.ChannelTransport;
+import io.journalkeeper.rpc.remoting.transport.RequestBarrier;
 import io.journalkeeper.rpc.remoting.transport.Transport;
 import io.journalkeeper.rpc.remoting.transport.TransportClient;
 import io.journalkeeper.rpc.remoting.transport.TransportClientSupport;
@@ -74,6 +75,11 @@ public class FailoverTransportClient implements TransportClient {
         delegate.removeListener(listener);
     }
 
+    @Override
+    public RequestBarrier getRequestBarrier() {
+        return delegate.getRequestBarrier();
+    }
+
     @Override
     public void start() throws Exception {
         delegate.start();
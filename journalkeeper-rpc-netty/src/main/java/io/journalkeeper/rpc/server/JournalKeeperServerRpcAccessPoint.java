@@ -13,9 +13,11 @@
  */
 package io.journalkeeper.rpc.server;
 
+import io.journalkeeper.monitor.RpcMonitorInfo;
 import io.journalkeeper.rpc.RpcException;
 import io.journalkeeper.rpc.UriSupport;
 import io.journalkeeper.rpc.header.JournalKeeperHeader;
+import io.journalkeeper.rpc.remoting.transport.RequestBarrier;
 import io.journalkeeper.rpc.remoting.transport.TransportClient;
 
 import java.net.URI;
@@ -32,7 +34,9 @@ public class JournalKeeperServerRpcAccessPoint implements ServerRpcAccessPoint {
     private final TransportClient transportClient;
     private Map<URI, ServerRpcStub> serverInstances = new HashMap<>();
     public final String PROTOCOL_VERSION_KEY = "protocol.version";
+    public final String CONTROL_CONNECTIONS_KEY = "connection.control_count";
     private final int protocolVersion;
+    private final int controlConnections;
 
     public JournalKeeperServerRpcAccessPoint(TransportClient transportClient, Properties properties) {
         this.transportClient = transportClient;
@@ -43,10 +47,12 @@ public class JournalKeeperServerRpcAccessPoint implements ServerRpcAccessPoint {
         }
         this.properties = properties;
         protocolVersion = Integer.parseInt(properties.getProperty(PROTOCOL_VERSION_KEY, String.valueOf(JournalKeeperHeader.DEFAULT_VERSION)));
+        controlConnections = Integer.parseInt(properties.getProperty(CONTROL_CONNECTIONS_KEY, "1"));
     }
 
     private ServerRpcStub createServerRpc(URI server) {
-        return new ServerRpcStub(transportClient, server, UriSupport.parseUri(server), protocolVersion);
+        return new ServerRpcStub(transportClient, server, UriSupport.parseUri(server), protocolVersion,
+                controlConnections);
     }
 
     @Override
@@ -61,4 +67,15 @@ public class JournalKeeperServerRpcAccessPoint implements ServerRpcAccessPoint {
         transportClient.stop();
     }
 
+    @Override
+    public RpcMonitorInfo collectMonitorInfo() {
+        RequestBarrier requestBarrier = transportClient.getRequestBarrier();
+        RpcMonitorInfo rpcMonitorInfo = new RpcMonitorInfo();
+        rpcMonitorInfo.setInflightRequests(requestBarrier.getInflightRequests());
+        rpcMonitorInfo.setTimeoutRequests(requestBarrier.getTimeoutRequests());
+        rpcMonitorInfo.setAvailableAsyncPermits(requestBarrier.getAvailableAsyncPermits());
+        rpcMonitorInfo.setAvailableOnewayPermits(requestBarrier.getAvailableOnewayPermits());
+        return rpcMonitorInfo;
+    }
+
 }
@@ -31,6 +31,11 @@ public class ServerRpcStub extends ClientServerRpcStub implements ServerRpc {
         super(transportClient, uri, inetSocketAddress, version);
     }
 
+    public ServerRpcStub(TransportClient transportClient, URI uri, InetSocketAddress inetSocketAddress, int version,
+                         int controlConnections) {
+        super(transportClient, uri, inetSocketAddress, version, controlConnections);
+    }
+
     @Override
     public CompletableFuture<AsyncAppendEntriesResponse> asyncAppendEntries(AsyncAppendEntriesRequest request) {
         return sendRequest(request, RpcTypes.ASYNC_APPEND_ENTRIES_REQUEST);
@@ -26,6 +26,7 @@ import io.journalkeeper.core.api.transaction.UUIDTransactionId;
 import io.journalkeeper.exceptions.IndexOverflowException;
 import io.journalkeeper.exceptions.IndexUnderflowException;
 import io.journalkeeper.exceptions.NotLeaderException;
+import io.journalkeeper.monitor.RpcMonitorInfo;
 import io.journalkeeper.rpc.client.AddPullWatchResponse;
 import io.journalkeeper.rpc.client.CheckLeadershipResponse;
 import io.journalkeeper.rpc.client.ClientServerRpc;
@@ -571,6 +572,11 @@ public class RpcTest {
                                 testListOfBytesEquals(r.getEntries(), request.getEntries())
                 ));
 
+        // 应答都已经收到，没有未完成的请求
+        RpcMonitorInfo rpcMonitorInfo = serverRpcAccessPoint.collectMonitorInfo();
+        Assert.assertNotNull(rpcMonitorInfo);
+        Assert.assertEquals(0, rpcMonitorInfo.getInflightRequests());
+        Assert.assertEquals(0L, rpcMonitorInfo.getTimeoutRequests());
     }
 
     @Test
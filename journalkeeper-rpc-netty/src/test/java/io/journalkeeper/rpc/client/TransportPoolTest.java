@@ -0,0 +1,54 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.rpc.client;
+
+import io.journalkeeper.rpc.codec.RpcTypes;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TransportPoolTest {
+
+    @Test
+    public void selectTest() {
+        TransportPool pool = new TransportPool(null, null, 2);
+
+        // 批量请求和控制请求使用不同的连接
+        TransportPool.Connection bulk = pool.select(RpcTypes.ASYNC_APPEND_ENTRIES_REQUEST);
+        Assert.assertSame(bulk, pool.select(RpcTypes.INSTALL_SNAPSHOT_REQUEST));
+        Assert.assertSame(bulk, pool.select(RpcTypes.GET_SERVER_ENTRIES_REQUEST));
+        TransportPool.Connection control = pool.select(RpcTypes.REQUEST_VOTE_REQUEST);
+        Assert.assertNotSame(bulk, control);
+
+        // 批量通道上有未完成的请求时，控制请求不受影响
+        bulk.requestSent();
+        Assert.assertSame(control, pool.select(RpcTypes.CHECK_LEADERSHIP_REQUEST));
+        // 批量请求无论有多少未完成的请求，总是使用同一个连接
+        bulk.requestSent();
+        Assert.assertSame(bulk, pool.select(RpcTypes.ASYNC_APPEND_ENTRIES_REQUEST));
+        Assert.assertSame(bulk, pool.select(RpcTypes.INSTALL_SNAPSHOT_REQUEST));
+
+        // 控制请求发送到未完成请求最少的连接上
+        control.requestSent();
+        TransportPool.Connection another = pool.select(RpcTypes.REQUEST_VOTE_REQUEST);
+        Assert.assertNotSame(control, another);
+        Assert.assertNotSame(bulk, another);
+        another.requestSent();
+        another.requestSent();
+        Assert.assertSame(control, pool.select(RpcTypes.REQUEST_VOTE_REQUEST));
+        control.requestCompleted();
+        Assert.assertEquals(0, control.outstanding());
+        Assert.assertEquals(2, another.outstanding());
+        pool.close();
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.rpc.codec;
+
+import io.journalkeeper.rpc.header.JournalKeeperHeader;
+import io.journalkeeper.rpc.payload.GenericPayload;
+import io.journalkeeper.rpc.remoting.transport.command.Direction;
+import io.journalkeeper.rpc.server.AsyncAppendEntriesRequest;
+import io.journalkeeper.utils.test.ByteUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * LEADER使用日志切片构建的复制请求，编码结果和使用byte[]构建的请求完全相同。
+ */
+public class AsyncAppendEntriesRequestCodecTest {
+    private static final URI LEADER = URI.create("jk://192.168.1.1:9999");
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void entryBuffersTest() throws Exception {
+        // LEADER发送的日志是从一段连续的数据中切分出来的切片
+        byte[] journal = ByteUtils.createFixedSizeBytes(1000);
+        ByteBuffer journalBuffer = ByteBuffer.wrap(journal);
+        List<ByteBuffer> entryBuffers = new ArrayList<>();
+        List<byte[]> entries = new ArrayList<>();
+        for (int offset = 0; offset < journal.length; offset += 100) {
+            journalBuffer.position(offset);
+            ByteBuffer entry = journalBuffer.slice();
+            entry.limit(100);
+            entryBuffers.add(entry);
+            entries.add(Arrays.copyOfRange(journal, offset, offset + 100));
+        }
+        AsyncAppendEntriesRequest request = AsyncAppendEntriesRequest.fromEntryBuffers(
+                8, LEADER, 1000L, 8, entryBuffers, 999L, 1010L);
+        Assert.assertEquals(entries.size(), request.getEntryCount());
+        Assert.assertEquals(journal.length, request.getEntriesLength());
+
+        AsyncAppendEntriesRequestCodec codec = new AsyncAppendEntriesRequestCodec();
+        JournalKeeperHeader header = new JournalKeeperHeader(JournalKeeperHeader.DEFAULT_VERSION, Direction.REQUEST,
+                RpcTypes.ASYNC_APPEND_ENTRIES_REQUEST, URI.create("jk://192.168.1.2:9999"));
+        ByteBuf buffer = Unpooled.buffer();
+        codec.encode(new GenericPayload<>(request), buffer, header);
+        ByteBuf bytesBuffer = Unpooled.buffer();
+        codec.encode(new GenericPayload<>(new AsyncAppendEntriesRequest(
+                8, LEADER, 1000L, 8, entries, 999L, 1010L)), bytesBuffer, header);
+        Assert.assertEquals(bytesBuffer, buffer);
+
+        // 编码不改变切片的位置，请求可以重复发送
+        for (ByteBuffer entry : entryBuffers) {
+            Assert.assertEquals(0, entry.position());
+            Assert.assertEquals(100, entry.remaining());
+        }
+
+        AsyncAppendEntriesRequest decoded =
+                ((GenericPayload<AsyncAppendEntriesRequest>) codec.decode(header, buffer)).getPayload();
+        Assert.assertFalse(buffer.isReadable());
+        Assert.assertEquals(request.getPrevLogIndex(), decoded.getPrevLogIndex());
+        Assert.assertEquals(request.getMaxIndex(), decoded.getMaxIndex());
+        assertEntriesEquals(entries, decoded.getEntries());
+        assertEntriesEquals(entries, request.getEntries());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void heartbeatTest() throws Exception {
+        AsyncAppendEntriesRequest request = AsyncAppendEntriesRequest.fromEntryBuffers(
+                8, LEADER, 1000L, 8, new ArrayList<>(), 999L, 1001L);
+        AsyncAppendEntriesRequestCodec codec = new AsyncAppendEntriesRequestCodec();
+        JournalKeeperHeader header = new JournalKeeperHeader(JournalKeeperHeader.DEFAULT_VERSION, Direction.REQUEST,
+                RpcTypes.ASYNC_APPEND_ENTRIES_REQUEST, URI.create("jk://192.168.1.2:9999"));
+        ByteBuf buffer = Unpooled.buffer();
+        codec.encode(new GenericPayload<>(request), buffer, header);
+        AsyncAppendEntriesRequest decoded =
+                ((GenericPayload<AsyncAppendEntriesRequest>) codec.decode(header, buffer)).getPayload();
+        Assert.assertTrue(decoded.getEntries().isEmpty());
+        Assert.assertEquals(0L, request.getEntriesLength());
+    }
+
+    private void assertEntriesEquals(List<byte[]> expected, List<byte[]> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.rpc.codec;
+
+import io.journalkeeper.rpc.header.JournalKeeperHeader;
+import io.journalkeeper.rpc.payload.GenericPayload;
+import io.journalkeeper.rpc.remoting.transport.command.Direction;
+import io.journalkeeper.rpc.server.InstallSnapshotRequest;
+import io.journalkeeper.utils.test.ByteUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+
+public class InstallSnapshotRequestCodecTest {
+
+    @Test
+    public void longOffsetTest() throws Exception {
+        long offset = 3L * Integer.MAX_VALUE;
+        InstallSnapshotRequest request = createRequest(offset);
+        ByteBuf buffer = Unpooled.buffer();
+        JournalKeeperHeader header = createHeader(JournalKeeperHeader.DEFAULT_VERSION);
+        InstallSnapshotRequestCodec codec = new InstallSnapshotRequestCodec();
+        codec.encode(new GenericPayload<>(request), buffer, header);
+        Assert.assertEquals(request, decode(codec, header, buffer));
+    }
+
+    @Test
+    public void legacyVersionTest() throws Exception {
+        InstallSnapshotRequestCodec codec = new InstallSnapshotRequestCodec();
+        for (int version = 1; version < JournalKeeperHeader.LONG_SNAPSHOT_OFFSET_VERSION; version++) {
+            JournalKeeperHeader header = createHeader(version);
+            InstallSnapshotRequest request = createRequest(1024L * 1024L);
+            ByteBuf buffer = Unpooled.buffer();
+            codec.encode(new GenericPayload<>(request), buffer, header);
+            ByteBuf longOffsetBuffer = Unpooled.buffer();
+            codec.encode(new GenericPayload<>(request), longOffsetBuffer, createHeader(JournalKeeperHeader.LONG_SNAPSHOT_OFFSET_VERSION));
+            // 旧版本的offset仍然是int
+            Assert.assertEquals(longOffsetBuffer.readableBytes() - Integer.BYTES, buffer.readableBytes());
+            Assert.assertEquals(request, decode(codec, header, buffer));
+
+            try {
+                codec.encode(new GenericPayload<>(createRequest(Integer.MAX_VALUE + 1L)), Unpooled.buffer(), header);
+                Assert.fail();
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private InstallSnapshotRequest decode(InstallSnapshotRequestCodec codec, JournalKeeperHeader header, ByteBuf buffer) throws Exception {
+        InstallSnapshotRequest decoded =
+                ((GenericPayload<InstallSnapshotRequest>) codec.decode(header, buffer)).getPayload();
+        Assert.assertFalse(buffer.isReadable());
+        return decoded;
+    }
+
+    private InstallSnapshotRequest createRequest(long offset) {
+        return new InstallSnapshotRequest(8, URI.create("jk://192.168.1.1:9999"), 1000L, 7,
+                offset, ByteUtils.createFixedSizeBytes(128), false);
+    }
+
+    private JournalKeeperHeader createHeader(int version) {
+        return new JournalKeeperHeader(version, Direction.REQUEST,
+                RpcTypes.INSTALL_SNAPSHOT_REQUEST, URI.create("jk://192.168.1.2:9999"));
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.rpc.header;
+
+import io.journalkeeper.rpc.remoting.transport.command.Direction;
+import io.journalkeeper.rpc.remoting.transport.exception.TransportException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+
+public class JournalKeeperHeaderCodecTest {
+    private static final URI DESTINATION = URI.create("jk://192.168.1.1:9999");
+
+    @Test
+    public void oldVersionTest() throws TransportException.CodecException {
+        // 新版本的编解码器仍然可以读写旧版本的协议头
+        JournalKeeperHeaderCodec codec = new JournalKeeperHeaderCodec(true);
+        JournalKeeperHeader request = new JournalKeeperHeader(2, Direction.REQUEST, 1, DESTINATION);
+        assertHeaderEquals(request, roundTrip(codec, codec, request));
+
+        JournalKeeperHeader response = new JournalKeeperHeader(2, false, Direction.RESPONSE, 666, 2, System.currentTimeMillis(), null, 3, "error");
+        assertHeaderEquals(response, roundTrip(codec, codec, response));
+    }
+
+    @Test
+    public void compactHeaderTest() throws TransportException.CodecException {
+        JournalKeeperHeaderCodec encoder = new JournalKeeperHeaderCodec(true);
+        JournalKeeperHeaderCodec decoder = new JournalKeeperHeaderCodec(true);
+
+        // 第一次请求定义路由，之后只发送路由ID
+        JournalKeeperHeader first = new JournalKeeperHeader(JournalKeeperHeader.COMPACT_HEADER_VERSION, Direction.REQUEST, 1, DESTINATION);
+        ByteBuf buffer = Unpooled.buffer();
+        encoder.encode(first, buffer);
+        int firstLength = buffer.readableBytes();
+        assertHeaderEquals(first, decoder.decode(buffer));
+
+        JournalKeeperHeader second = new JournalKeeperHeader(JournalKeeperHeader.COMPACT_HEADER_VERSION, Direction.REQUEST, 1, DESTINATION);
+        buffer = Unpooled.buffer();
+        encoder.encode(second, buffer);
+        Assert.assertTrue(buffer.readableBytes() < firstLength - DESTINATION.toASCIIString().length());
+        assertHeaderEquals(second, decoder.decode(buffer));
+
+        // 比旧版本的协议头短
+        ByteBuf oldBuffer = Unpooled.buffer();
+        new JournalKeeperHeaderCodec().encode(new JournalKeeperHeader(2, Direction.REQUEST, 1, DESTINATION), oldBuffer);
+        Assert.assertTrue(firstLength < oldBuffer.readableBytes());
+
+        // 没有异常信息的响应不编码异常信息，requestId是负数时也可以正确编解码
+        JournalKeeperHeader response = new JournalKeeperHeader(JournalKeeperHeader.COMPACT_HEADER_VERSION, true, Direction.RESPONSE, -5, 2, System.currentTimeMillis(), null, 3, null);
+        assertHeaderEquals(response, roundTrip(encoder, decoder, response));
+        response.setError("error");
+        assertHeaderEquals(response, roundTrip(encoder, decoder, response));
+    }
+
+    @Test
+    public void resetRoutesTest() throws TransportException.CodecException {
+        JournalKeeperHeaderCodec encoder = new JournalKeeperHeaderCodec(true);
+        JournalKeeperHeaderCodec decoder = new JournalKeeperHeaderCodec(true);
+        URI another = URI.create("jk://192.168.1.2:9999");
+
+        encoder.encode(new JournalKeeperHeader(JournalKeeperHeader.COMPACT_HEADER_VERSION, Direction.REQUEST, 1, DESTINATION), Unpooled.buffer());
+        // 上一帧没有发送出去，重置之后重新定义路由
+        encoder.resetRoutes();
+        JournalKeeperHeader request = new JournalKeeperHeader(JournalKeeperHeader.COMPACT_HEADER_VERSION, Direction.REQUEST, 1, another);
+        assertHeaderEquals(request, roundTrip(encoder, decoder, request));
+        assertHeaderEquals(request, roundTrip(encoder, decoder, request));
+    }
+
+    @Test(expected = TransportException.CodecException.class)
+    public void unknownRouteTest() throws TransportException.CodecException {
+        JournalKeeperHeaderCodec encoder = new JournalKeeperHeaderCodec(true);
+        JournalKeeperHeader request = new JournalKeeperHeader(JournalKeeperHeader.COMPACT_HEADER_VERSION, Direction.REQUEST, 1, DESTINATION);
+        encoder.encode(request, Unpooled.buffer());
+        ByteBuf buffer = Unpooled.buffer();
+        encoder.encode(request, buffer);
+        new JournalKeeperHeaderCodec(true).decode(buffer);
+    }
+
+    private JournalKeeperHeader roundTrip(JournalKeeperHeaderCodec encoder, JournalKeeperHeaderCodec decoder, JournalKeeperHeader header) throws TransportException.CodecException {
+        ByteBuf buffer = Unpooled.buffer();
+        encoder.encode(header, buffer);
+        JournalKeeperHeader decoded = decoder.decode(buffer);
+        Assert.assertFalse(buffer.isReadable());
+        return decoded;
+    }
+
+    private void assertHeaderEquals(JournalKeeperHeader expected, JournalKeeperHeader actual) {
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(expected.getVersion(), actual.getVersion());
+        Assert.assertEquals(expected.isOneWay(), actual.isOneWay());
+        Assert.assertEquals(expected.getDirection(), actual.getDirection());
+        Assert.assertEquals(expected.getRequestId(), actual.getRequestId());
+        Assert.assertEquals(expected.getType(), actual.getType());
+        Assert.assertEquals(expected.getSendTime(), actual.getSendTime());
+        Assert.assertEquals(expected.getDestination(), actual.getDestination());
+        if (expected.getDirection() == Direction.RESPONSE) {
+            Assert.assertEquals(expected.getStatus(), actual.getStatus());
+            Assert.assertEquals(expected.getError(), actual.getError());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.rpc.remoting.transport;
+
+import io.journalkeeper.rpc.header.JournalKeeperHeader;
+import io.journalkeeper.rpc.remoting.transport.command.Command;
+import io.journalkeeper.rpc.remoting.transport.command.CommandCallback;
+import io.journalkeeper.rpc.remoting.transport.command.Direction;
+import io.journalkeeper.rpc.remoting.transport.config.TransportConfig;
+import io.journalkeeper.rpc.remoting.transport.exception.TransportException;
+import io.journalkeeper.rpc.remoting.transport.support.DefaultChannelTransport;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class RequestBarrierTest {
+
+    @Test
+    public void timeoutTest() throws Exception {
+        RequestBarrier barrier = new RequestBarrier(new TransportConfig());
+        Transport transport = new DefaultChannelTransport(new EmbeddedChannel(), barrier, new InetSocketAddress("127.0.0.1", 9999));
+
+        CompletableFuture<Throwable> timeoutFuture = new CompletableFuture<>();
+        barrier.put(1, new ResponseFuture(transport, command(1), 50L, callback(timeoutFuture), null, null));
+        CompletableFuture<Throwable> answeredFuture = new CompletableFuture<>();
+        ResponseFuture answered = new ResponseFuture(transport, command(2), 50L, callback(answeredFuture), null, null);
+        barrier.put(2, answered);
+        Assert.assertEquals(2, barrier.getInflightRequests());
+
+        // 收到应答的请求移出之后不会再超时
+        Assert.assertSame(answered, barrier.remove(2));
+        Assert.assertEquals(1, barrier.getInflightRequests());
+
+        // 没有收到应答的请求到期后由时间轮移除，并以超时失败
+        Throwable cause = timeoutFuture.get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(cause instanceof TransportException.RequestTimeoutException);
+        Assert.assertNull(barrier.get(1));
+        Assert.assertEquals(0, barrier.getInflightRequests());
+        Assert.assertEquals(1, barrier.getTimeoutRequests());
+        Thread.sleep(100L);
+        Assert.assertFalse(answeredFuture.isDone());
+        Assert.assertEquals(1, barrier.getTimeoutRequests());
+    }
+
+    private Command command(int requestId) {
+        return new Command(new JournalKeeperHeader(JournalKeeperHeader.DEFAULT_VERSION, Direction.REQUEST, requestId, 1,
+                URI.create("jk://127.0.0.1:9999")), null);
+    }
+
+    private CommandCallback callback(CompletableFuture<Throwable> future) {
+        return new CommandCallback() {
+            @Override
+            public void onSuccess(Command request, Command response) {
+                future.complete(null);
+            }
+
+            @Override
+            public void onException(Command request, Throwable cause) {
+                future.complete(cause);
+            }
+        };
+    }
+}
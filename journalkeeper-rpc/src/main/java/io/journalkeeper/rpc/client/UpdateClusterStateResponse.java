@@ -60,6 +60,10 @@ public class UpdateClusterStateResponse extends LeaderResponse {
             throw throwable;
         } catch (ServerBusyException e) {
             setStatusCode(StatusCode.SERVER_BUSY);
+            // 保留异常中建议的重试时间
+            if (null != e.getMessage()) {
+                setError(e.getMessage());
+            }
         } catch (Throwable t) {
             super.onSetException(throwable);
         }
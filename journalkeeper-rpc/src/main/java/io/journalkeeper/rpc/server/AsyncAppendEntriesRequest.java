@@ -14,6 +14,8 @@
 package io.journalkeeper.rpc.server;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -26,20 +28,40 @@ public class AsyncAppendEntriesRequest implements Termed {
     private final URI leader;
     private final long prevLogIndex;
     private final int prevLogTerm;
-    private final List<byte[]> entries;
+    private volatile List<byte[]> entries;
+    /**
+     * LEADER从日志中读出的数据切片，编码时直接写入发送缓冲区。
+     * 使用byte[]构建的请求为null。
+     */
+    private final List<ByteBuffer> entryBuffers;
     private final long leaderCommit;
     private final long maxIndex;
 
     public AsyncAppendEntriesRequest(int term, URI leader, long prevLogIndex, int prevLogTerm, List<byte[]> entries, long leaderCommit, long maxIndex) {
+        this(term, leader, prevLogIndex, prevLogTerm, entries, null, leaderCommit, maxIndex);
+    }
+
+    private AsyncAppendEntriesRequest(int term, URI leader, long prevLogIndex, int prevLogTerm,
+                                      List<byte[]> entries, List<ByteBuffer> entryBuffers, long leaderCommit, long maxIndex) {
         this.term = term;
         this.leader = leader;
         this.prevLogIndex = prevLogIndex;
         this.prevLogTerm = prevLogTerm;
         this.entries = entries;
+        this.entryBuffers = entryBuffers;
         this.leaderCommit = leaderCommit;
         this.maxIndex = maxIndex;
     }
 
+    /**
+     * 使用日志数据的切片构建请求，切片不会被复制成byte[]，编码时直接写入发送缓冲区。
+     * 请求发送完成之前，不能修改切片的内容。
+     */
+    public static AsyncAppendEntriesRequest fromEntryBuffers(int term, URI leader, long prevLogIndex, int prevLogTerm,
+                                                             List<ByteBuffer> entryBuffers, long leaderCommit, long maxIndex) {
+        return new AsyncAppendEntriesRequest(term, leader, prevLogIndex, prevLogTerm, null, entryBuffers, leaderCommit, maxIndex);
+    }
+
     public int getTerm() {
         return term;
     }
@@ -56,8 +78,57 @@ public class AsyncAppendEntriesRequest implements Termed {
         return prevLogTerm;
     }
 
+    /**
+     * 使用切片构建的请求，第一次调用时把切片复制成byte[]。
+     */
     public List<byte[]> getEntries() {
-        return entries;
+        List<byte[]> ret = entries;
+        if (null == ret) {
+            ret = new ArrayList<>(entryBuffers.size());
+            for (ByteBuffer entryBuffer : entryBuffers) {
+                byte[] bytes = new byte[entryBuffer.remaining()];
+                entryBuffer.duplicate().get(bytes);
+                ret.add(bytes);
+            }
+            entries = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * 返回日志数据的切片，使用byte[]构建的请求返回包装byte[]的ByteBuffer。
+     * 调用方需要使用{@link ByteBuffer#duplicate()}读取，不能改变切片的位置。
+     */
+    public List<ByteBuffer> getEntryBuffers() {
+        if (null != entryBuffers || null == entries) {
+            return entryBuffers;
+        }
+        List<ByteBuffer> ret = new ArrayList<>(entries.size());
+        for (byte[] entry : entries) {
+            ret.add(ByteBuffer.wrap(entry));
+        }
+        return ret;
+    }
+
+    public int getEntryCount() {
+        return null != entryBuffers ? entryBuffers.size() : entries.size();
+    }
+
+    /**
+     * 所有日志的总字节数
+     */
+    public long getEntriesLength() {
+        long length = 0L;
+        if (null != entryBuffers) {
+            for (ByteBuffer entryBuffer : entryBuffers) {
+                length += entryBuffer.remaining();
+            }
+        } else {
+            for (byte[] entry : entries) {
+                length += entry.length;
+            }
+        }
+        return length;
     }
 
     public long getLeaderCommit() {
@@ -75,7 +146,7 @@ public class AsyncAppendEntriesRequest implements Termed {
                 ", leader=" + leader +
                 ", prevLogIndex=" + prevLogIndex +
                 ", prevLogTerm=" + prevLogTerm +
-                ", entries=" + entries.size() +
+                ", entries=" + getEntryCount() +
                 ", leaderCommit=" + leaderCommit +
                 ", maxIndex=" + maxIndex +
                 '}';
@@ -13,6 +13,8 @@
  */
 package io.journalkeeper.rpc.server;
 
+import io.journalkeeper.monitor.RpcMonitorInfo;
+
 import java.net.URI;
 
 /**
@@ -24,4 +26,12 @@ public interface ServerRpcAccessPoint {
     ServerRpc getServerRpcAgent(URI uri);
 
     void stop();
+
+    /**
+     * 采集发往其它节点的RPC请求统计，用于监控
+     * @return RPC请求统计，不支持时返回null
+     */
+    default RpcMonitorInfo collectMonitorInfo() {
+        return null;
+    }
 }
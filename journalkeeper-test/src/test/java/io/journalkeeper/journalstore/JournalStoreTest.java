@@ -245,6 +245,34 @@ public class JournalStoreTest {
         writeReadTest(2, partitions,1024, 10, 2L * 1024 * 1024 * 1024, true, ResponseConfig.RECEIVE, false, properties);
     }
 
+    @Test
+    public void pipelinedReplicationTest() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("replication_window_size", String.valueOf(8));
+        properties.setProperty("replication_batch_size", String.valueOf(16));
+        writeReadTest(3, Sets.newSet(0, 1, 2, 3, 4), 1024, 10, 10L * 1024 * 1024, true, ResponseConfig.REPLICATION, true, properties);
+    }
+
+    /**
+     * 对比停等复制（replication_window_size = 1）和流水线复制的写入性能
+     */
+    @Ignore
+    @Test
+    public void pipelinedReplicationPerformanceTest() throws Exception {
+        Set<Integer> partitions = Sets.newSet(0, 1, 2, 3, 4);
+        for (int windowSize : new int[]{1, 4, 16}) {
+            Properties properties = new Properties();
+            properties.setProperty("cache_requests", String.valueOf(10L * 1024));
+            properties.setProperty("enable_events", String.valueOf(false));
+            properties.setProperty("replication_batch_size", String.valueOf(128));
+            properties.setProperty("replication_window_size", String.valueOf(windowSize));
+            logger.info("Replication window size: {}.", windowSize);
+            writeReadTest(3, partitions, 1024, 10, 1024L * 1024 * 1024, true, ResponseConfig.REPLICATION, false, properties);
+            after();
+            before();
+        }
+    }
+
     /**
      * 读写测试
      * @param nodes 节点数量
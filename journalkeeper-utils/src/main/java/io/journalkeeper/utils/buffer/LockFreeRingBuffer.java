@@ -21,8 +21,19 @@ package io.journalkeeper.utils.buffer;
 
 import java.lang.reflect.Array;
 import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
+ * 有界的多生产者、单消费者（MPSC）无锁环形队列。
+ *
+ * 多个生产者线程可以并发调用{@link #put(Object)}，通过CAS申请写入位置，队列满时立即返回false，不会阻塞；
+ * {@link #get()}、{@link #remove()}、{@link #removeAll()}和{@link #clear()}只能在同一个消费者线程中调用。
+ * 消费者可以调用{@link #awaitNotEmpty(long, TimeUnit)}在队列为空时挂起，生产者写入后会唤醒它。
+ *
  * @author LiYue
  * Date: 2019-09-19
  */
@@ -30,11 +41,21 @@ public class LockFreeRingBuffer<T> {
 
 
     private final static int DEFAULT_SIZE = 1024;
-    private final T[] buffer;
+    private final AtomicReferenceArray<T> buffer;
     private final int bufferSize;
     private final Class<T> type;
-    private int head = 0;
-    private int tail = 0;
+    /**
+     * 下一个读取的位置，只有消费者线程修改
+     */
+    private volatile long head = 0L;
+    /**
+     * 下一个写入的位置，生产者通过CAS申请
+     */
+    private final AtomicLong tail = new AtomicLong(0L);
+    /**
+     * 正在等待的消费者线程
+     */
+    private volatile Thread waiter = null;
 
     public LockFreeRingBuffer(Class<T> type) {
         this(type, DEFAULT_SIZE);
@@ -43,79 +64,115 @@ public class LockFreeRingBuffer<T> {
     public LockFreeRingBuffer(Class<T> type, int initSize) {
         this.type = type;
         this.bufferSize = initSize;
-        this.buffer = createArray(bufferSize);
+        this.buffer = new AtomicReferenceArray<>(bufferSize);
     }
 
     public boolean empty() {
-        return head == tail;
+        return head == tail.get();
     }
 
     public boolean full() {
-        return (tail + 1) % bufferSize == head;
+        return tail.get() - head >= bufferSize;
+    }
+
+    public int capacity() {
+        return bufferSize;
     }
 
     public void clear() {
-        Arrays.fill(buffer, null);
-        this.head = 0;
-        this.tail = 0;
+        while (null != remove()) {
+        }
     }
 
+    /**
+     * 写入一个元素，可以被多个线程并发调用。
+     * @param v 待写入的元素，不能为null
+     * @return 写入成功返回true，队列已满返回false
+     */
     public boolean put(T v) {
-        if (full()) {
-            return false;
+        Objects.requireNonNull(v);
+        long t;
+        do {
+            t = tail.get();
+            if (t - head >= bufferSize) {
+                return false;
+            }
+        } while (!tail.compareAndSet(t, t + 1));
+        buffer.set(index(t), v);
+        Thread w = waiter;
+        if (null != w) {
+            LockSupport.unpark(w);
         }
-        buffer[tail] = v;
-        tail = (tail + 1) % bufferSize;
         return true;
     }
 
+    /**
+     * 移除并返回队首的元素。
+     * @return 队首的元素，如果队列为空或者队首的元素还没有写入完成，返回null
+     */
     public T remove() {
-        if (empty()) {
-            return null;
+        long h = head;
+        int i = index(h);
+        T result = buffer.get(i);
+        if (null != result) {
+            buffer.lazySet(i, null);
+            head = h + 1;
         }
-        T result = buffer[head];
-        head = (head + 1) % bufferSize;
         return result;
     }
 
+    /**
+     * 返回队首的元素，但不移除。
+     * @return 队首的元素，如果队列为空或者队首的元素还没有写入完成，返回null
+     */
     public T get() {
-        if (empty()) {
-            return null;
-        }
-        return buffer[head];
+        return buffer.get(index(head));
     }
 
     public int size() {
-        int copyTail = tail;
-        return head < copyTail ? copyTail - head : bufferSize - head + copyTail;
+        long size = tail.get() - head;
+        return size <= 0L ? 0 : (int) Math.min(size, bufferSize);
     }
 
+    @SuppressWarnings("unchecked")
     public T[] removeAll() {
-        if (empty()) {
-            return createArray(0);
+        int cnt = size();
+        T[] result = (T[]) Array.newInstance(type, cnt);
+        int i = 0;
+        T v;
+        while (i < cnt && null != (v = remove())) {
+            result[i++] = v;
         }
-        int copyTail = tail;
-        int cnt = head < copyTail ? copyTail - head : bufferSize - head + copyTail;
-        T[] result = createArray(cnt);
-        if (head < copyTail) {
-            for (int i = head; i < copyTail; i++) {
-                result[i - head] = buffer[i];
-            }
-        } else {
-            for (int i = head; i < bufferSize; i++) {
-                result[i - head] = buffer[i];
+        return i == cnt ? result : Arrays.copyOf(result, i);
+    }
+
+    /**
+     * 消费者线程调用，队列为空时挂起当前线程，直到有新的元素写入或者超时。
+     * @param timeout 最长等待时间
+     * @param unit 时间单位
+     * @return 队首有可读取的元素返回true，否则返回false
+     * @throws InterruptedException 等待时线程被中断
+     */
+    public boolean awaitNotEmpty(long timeout, TimeUnit unit) throws InterruptedException {
+        if (null == get()) {
+            waiter = Thread.currentThread();
+            try {
+                // 设置waiter之后需要再检查一次，避免错过生产者的唤醒
+                if (null == get()) {
+                    LockSupport.parkNanos(this, unit.toNanos(timeout));
+                }
+            } finally {
+                waiter = null;
             }
-            for (int i = 0; i < copyTail; i++) {
-                result[bufferSize - head + i] = buffer[i];
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
             }
         }
-        head = copyTail;
-        return result;
+        return null != get();
     }
 
-    @SuppressWarnings("unchecked")
-    private T[] createArray(int size) {
-        return (T[]) Array.newInstance(type, size);
+    private int index(long position) {
+        return (int) (position % bufferSize);
     }
 
 }
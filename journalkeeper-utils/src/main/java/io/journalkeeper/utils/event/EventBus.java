@@ -92,6 +92,20 @@ public class EventBus implements Watchable {
      * @param event 事件
      */
     public synchronized void fireEvent(Event event) {
+        fireEventUnsafe(event);
+    }
+
+    /**
+     * 按顺序触发一批事件
+     * @param events 事件列表
+     */
+    public synchronized void fireEvents(List<Event> events) {
+        for (Event event : events) {
+            fireEventUnsafe(event);
+        }
+    }
+
+    private void fireEventUnsafe(Event event) {
         for (EventInterceptor interceptor : interceptors) {
             if (!interceptor.onEvent(event, this)) {
                 logger.info("Event canceled by an interceptor, type: {}, data: {}"
@@ -43,6 +43,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -86,6 +87,20 @@ public class FileUtils {
     }
 
     public static void dump(Path srcPath, Path destPath) throws IOException {
+        dump(srcPath, destPath, file -> false);
+    }
+
+    /**
+     * 复制目录，对于可以共享的文件，使用硬链接代替复制。
+     * 如果文件系统不支持硬链接，退化为复制。
+     * 调用方需要保证可以共享的文件不会被原地修改。
+     *
+     * @param srcPath 源目录
+     * @param destPath 目标目录
+     * @param linkable 判断文件是否可以共享，参数为文件相对于源目录的相对路径
+     * @throws IOException 发生IO异常时抛出
+     */
+    public static void dump(Path srcPath, Path destPath, Predicate<Path> linkable) throws IOException {
         List<Path> srcFiles = listAllFiles(srcPath);
 
         List<Path> destFiles = srcFiles.stream()
@@ -97,6 +112,14 @@ public class FileUtils {
             Path srcFile = srcFiles.get(i);
             Path destFile = destFiles.get(i);
             Files.createDirectories(destFile.getParent());
+            if (linkable.test(srcPath.relativize(srcFile))) {
+                try {
+                    Files.createLink(destFile, srcFile);
+                    continue;
+                } catch (UnsupportedOperationException | IOException ignored) {
+                    // 文件系统不支持硬链接，复制文件
+                }
+            }
             Files.copy(srcFile, destFile);
         }
     }
@@ -0,0 +1,160 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.journalkeeper.utils.buffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class LockFreeRingBufferTest {
+
+    @Test
+    public void emptyAndFullTest() {
+        LockFreeRingBuffer<Long> ringBuffer = new LockFreeRingBuffer<>(Long.class, 4);
+        Assert.assertTrue(ringBuffer.empty());
+        Assert.assertNull(ringBuffer.get());
+        Assert.assertNull(ringBuffer.remove());
+        Assert.assertEquals(0, ringBuffer.removeAll().length);
+
+        for (long i = 0; i < 4; i++) {
+            Assert.assertTrue(ringBuffer.put(i));
+        }
+        Assert.assertTrue(ringBuffer.full());
+        Assert.assertEquals(4, ringBuffer.size());
+        // 队列满时立即返回false，不覆盖未读取的元素
+        Assert.assertFalse(ringBuffer.put(4L));
+        Assert.assertEquals(0L, (long) ringBuffer.get());
+
+        Assert.assertEquals(0L, (long) ringBuffer.remove());
+        Assert.assertFalse(ringBuffer.full());
+        Assert.assertTrue(ringBuffer.put(4L));
+        Assert.assertArrayEquals(new Long[]{1L, 2L, 3L, 4L}, ringBuffer.removeAll());
+        Assert.assertTrue(ringBuffer.empty());
+    }
+
+    @Test
+    public void wraparoundTest() {
+        LockFreeRingBuffer<Long> ringBuffer = new LockFreeRingBuffer<>(Long.class, 3);
+        long next = 0L, expected = 0L;
+        // 写入和读取的位置多次绕过数组的末尾
+        for (int round = 0; round < 100; round++) {
+            int count = round % 3 + 1;
+            for (int i = 0; i < count; i++) {
+                Assert.assertTrue(ringBuffer.put(next++));
+            }
+            Assert.assertEquals(count, ringBuffer.size());
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(expected++, (long) ringBuffer.remove());
+            }
+            Assert.assertTrue(ringBuffer.empty());
+        }
+        ringBuffer.put(next);
+        ringBuffer.clear();
+        Assert.assertTrue(ringBuffer.empty());
+        Assert.assertNull(ringBuffer.remove());
+    }
+
+    @Test
+    public void multiProducersTest() throws InterruptedException {
+        final int producers = 4;
+        final long countPerProducer = 100000L;
+        // 容量远小于写入总数，生产者会频繁遇到队列满
+        LockFreeRingBuffer<long[]> ringBuffer = new LockFreeRingBuffer<>(long[].class, 64);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>(producers);
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread(() -> {
+                for (long i = 0; i < countPerProducer; i++) {
+                    long[] value = new long[]{producer, i};
+                    while (!ringBuffer.put(value)) {
+                        Thread.yield();
+                    }
+                }
+            }, "producer-" + p);
+            thread.setUncaughtExceptionHandler((t, e) -> error.set(e));
+            threads.add(thread);
+        }
+        threads.forEach(Thread::start);
+
+        // 每个生产者写入的元素按顺序出现，没有丢失也没有重复
+        long[] nextValues = new long[producers];
+        long received = 0L;
+        long deadline = System.currentTimeMillis() + 60000L;
+        while (received < producers * countPerProducer) {
+            Assert.assertTrue("Timeout, received: " + received, System.currentTimeMillis() < deadline);
+            long[] value = ringBuffer.remove();
+            if (null == value) {
+                ringBuffer.awaitNotEmpty(10L, TimeUnit.MILLISECONDS);
+                continue;
+            }
+            int producer = (int) value[0];
+            Assert.assertEquals(nextValues[producer]++, value[1]);
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(error.get());
+        Assert.assertTrue(ringBuffer.empty());
+        for (long nextValue : nextValues) {
+            Assert.assertEquals(countPerProducer, nextValue);
+        }
+    }
+
+    @Test
+    public void awaitNotEmptyTest() throws InterruptedException {
+        LockFreeRingBuffer<Long> ringBuffer = new LockFreeRingBuffer<>(Long.class, 4);
+        // 队列为空时等到超时
+        Assert.assertFalse(ringBuffer.awaitNotEmpty(50L, TimeUnit.MILLISECONDS));
+
+        // 队列不为空时立即返回
+        ringBuffer.put(1L);
+        Assert.assertTrue(ringBuffer.awaitNotEmpty(10L, TimeUnit.SECONDS));
+        ringBuffer.remove();
+
+        // 生产者写入之后唤醒等待的消费者，不需要等到超时
+        CountDownLatch waiting = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                waiting.await();
+                Thread.sleep(100L);
+                ringBuffer.put(2L);
+            } catch (InterruptedException ignored) {
+            }
+        });
+        producer.start();
+        waiting.countDown();
+        long start = System.nanoTime();
+        // 挂起的线程可能被虚假唤醒，这时继续等待
+        while (!ringBuffer.awaitNotEmpty(30L, TimeUnit.SECONDS)) {
+            Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10L));
+        }
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10L));
+        Assert.assertEquals(2L, (long) ringBuffer.remove());
+        producer.join();
+    }
+
+    @Test(expected = InterruptedException.class)
+    public void awaitNotEmptyInterruptedTest() throws InterruptedException {
+        LockFreeRingBuffer<Long> ringBuffer = new LockFreeRingBuffer<>(Long.class, 4);
+        Thread.currentThread().interrupt();
+        ringBuffer.awaitNotEmpty(10L, TimeUnit.SECONDS);
+    }
+}